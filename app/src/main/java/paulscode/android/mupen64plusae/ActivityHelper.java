@@ -29,6 +29,7 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -38,11 +39,15 @@ import java.util.List;
 import paulscode.android.mupen64plusae.game.GameActivity;
 import paulscode.android.mupen64plusae.input.DiagnosticActivity;
 import paulscode.android.mupen64plusae.jni.CoreService;
+import paulscode.android.mupen64plusae.jni.CoreWarmupService;
+import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.AudioPrefsActivity;
 import paulscode.android.mupen64plusae.persistent.DataPrefsActivity;
 import paulscode.android.mupen64plusae.persistent.DefaultsPrefsActivity;
 import paulscode.android.mupen64plusae.persistent.DisplayPrefsActivity;
+import paulscode.android.mupen64plusae.persistent.GamePrefs;
 import paulscode.android.mupen64plusae.persistent.GamePrefsActivity;
+import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
 import paulscode.android.mupen64plusae.persistent.InputPrefsActivity;
 import paulscode.android.mupen64plusae.persistent.LibraryPrefsActivity;
 import paulscode.android.mupen64plusae.persistent.TouchscreenPrefsActivity;
@@ -57,7 +62,9 @@ import paulscode.android.mupen64plusae.task.CacheRomInfoService;
 import paulscode.android.mupen64plusae.task.DeleteFilesService;
 import paulscode.android.mupen64plusae.task.ExtractRomService;
 import paulscode.android.mupen64plusae.task.ExtractTexturesService;
+import paulscode.android.mupen64plusae.task.StorageCleanupService;
 import paulscode.android.mupen64plusae.util.LogcatActivity;
+import paulscode.android.mupen64plusae.util.StartupTraceActivity;
 
 import static android.content.Context.ACTIVITY_SERVICE;
 import static paulscode.android.mupen64plusae.GalleryActivity.KEY_IS_LEANBACK;
@@ -112,6 +119,10 @@ public class ActivityHelper
         public static final String CORE_USER_CONFIG_DIR = NAMESPACE + "CORE_USER_CONFIG_DIR";
         public static final String USER_SAVE_DIR        = NAMESPACE + "USER_SAVE_DIR";
         public static final String LIBS_DIR             = NAMESPACE + "LIBS_DIR";
+        public static final String PRELOAD_LIBS         = NAMESPACE + "PRELOAD_LIBS";
+        public static final String SKIN_DIR             = NAMESPACE + "SKIN_DIR";
+        public static final String SKIN_SCALE           = NAMESPACE + "SKIN_SCALE";
+        public static final String LAUNCH_TIME          = NAMESPACE + "LAUNCH_TIME";
         public static final String EXIT_GAME            = NAMESPACE + "EXIT_GAME";
         public static final String FORCE_EXIT_GAME      = NAMESPACE + "FORCE_EXIT_GAME";
 
@@ -221,6 +232,7 @@ public class ActivityHelper
         intent.putExtra( ActivityHelper.Keys.ROM_GOOD_NAME, romGoodName );
         intent.putExtra( ActivityHelper.Keys.ROM_LEGACY_SAVE, romLegacySave );
         intent.putExtra( ActivityHelper.Keys.DO_RESTART, doRestart );
+        intent.putExtra( ActivityHelper.Keys.LAUNCH_TIME, SystemClock.elapsedRealtime() );
         activity.startActivityForResult( intent, GAME_ACTIVITY_CODE );
     }
 
@@ -238,6 +250,7 @@ public class ActivityHelper
         intent.putExtra( ActivityHelper.Keys.ROM_GOOD_NAME, romGoodName );
         intent.putExtra( ActivityHelper.Keys.ROM_LEGACY_SAVE, romLegacySave );
         intent.putExtra( ActivityHelper.Keys.DO_RESTART, doRestart );
+        intent.putExtra( ActivityHelper.Keys.LAUNCH_TIME, SystemClock.elapsedRealtime() );
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         context.startActivity( intent );
     }
@@ -350,6 +363,11 @@ public class ActivityHelper
     {
         context.startActivity( new Intent( context, LogcatActivity.class) );
     }
+
+    static void startStartupTraceActivity( Context context )
+    {
+        context.startActivity( new Intent( context, StartupTraceActivity.class) );
+    }
     
     static void startCacheRomInfoService(Context context, ServiceConnection serviceConnection,
         String searchPath, String databasePath, String configPath, String artDir, String unzipDir,
@@ -467,6 +485,52 @@ public class ActivityHelper
         context.bindService(intent, serviceConnection, 0);
     }
 
+    /**
+     * Spawns the game process and loads the native libraries in it, so that launching a game
+     * afterwards skips that work.
+     *
+     * @param gamePrefs The preferences of the game likely to be launched, or null if not known
+     */
+    public static void startCoreWarmupService(Context context, AppData appData, GlobalPrefs globalPrefs,
+        GamePrefs gamePrefs)
+    {
+        if(!globalPrefs.isWarmStartEnabled || !appData.isValidInstallation())
+        {
+            return;
+        }
+
+        Intent intent = new Intent(context, CoreWarmupService.class);
+        intent.putExtra(Keys.LIBS_DIR, appData.libsDir);
+        intent.putExtra(Keys.PRELOAD_LIBS, CoreWarmupService.getPluginPaths(appData, globalPrefs, gamePrefs));
+
+        if(gamePrefs == null || gamePrefs.isTouchscreenEnabled)
+        {
+            intent.putExtra(Keys.SKIN_DIR, globalPrefs.touchscreenSkinPath);
+            intent.putExtra(Keys.SKIN_SCALE, globalPrefs.touchscreenScale);
+        }
+
+        try {
+            context.startService(intent);
+        } catch (IllegalStateException e) {
+            // Background service starts are not allowed, the game simply starts cold
+            Log.w("ActivityHelper", "Unable to start warm up service: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Measures the user data and applies the storage policies in the background, in the game
+     * process.
+     */
+    static void startStorageCleanupService(Context context)
+    {
+        try {
+            context.startService(new Intent(context, StorageCleanupService.class));
+        } catch (IllegalStateException e) {
+            // Done the next time the gallery is shown
+            Log.w("ActivityHelper", "Unable to start storage cleanup service: " + e.getMessage());
+        }
+    }
+
     public static void stopCoreService(Context context, ServiceConnection serviceConnection)
     {
         Intent intent = new Intent(context, CoreService.class);
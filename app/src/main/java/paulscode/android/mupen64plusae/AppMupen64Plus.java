@@ -20,7 +20,9 @@
  */
 package paulscode.android.mupen64plusae;
 
+import paulscode.android.mupen64plusae.input.map.SkinAtlas;
 import paulscode.android.mupen64plusae.util.CrashHandler;
+import paulscode.android.mupen64plusae.util.StartupTrace;
 
 public class AppMupen64Plus extends android.app.Application
 {
@@ -31,5 +33,11 @@ public class AppMupen64Plus extends android.app.Application
         
         // Initialize local crash log system
         CrashHandler.init( this );
+
+        // Initialize game launch tracing, in each process
+        StartupTrace.init( this );
+
+        // Initialize the touchscreen skin cache
+        SkinAtlas.init( this );
     }
 }
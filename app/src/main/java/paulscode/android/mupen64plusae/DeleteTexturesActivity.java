@@ -23,6 +23,7 @@ import paulscode.android.mupen64plusae.dialog.ConfirmationDialog.PromptConfirmLi
 import paulscode.android.mupen64plusae.dialog.Prompt;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.util.FileUtil;
 import paulscode.android.mupen64plusae.DeleteFilesFragment.DeleteFilesFinishedListener;
 
@@ -67,7 +68,7 @@ public class DeleteTexturesActivity extends AppCompatActivity implements OnItemC
         setContentView(R.layout.delete_textures_activity);
 
         AppData appData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, appData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, appData );
         
         Button cancelButton = findViewById( R.id.buttonCancel );
         cancelButton.setOnClickListener(new View.OnClickListener() {
@@ -61,17 +61,20 @@ import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.ConfigFile;
 import paulscode.android.mupen64plusae.persistent.GamePrefs;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.task.ComputeMd5Task;
 import paulscode.android.mupen64plusae.task.ExtractAssetsTask;
 import paulscode.android.mupen64plusae.task.GalleryRefreshTask;
 import paulscode.android.mupen64plusae.task.GalleryRefreshTask.GalleryRefreshFinishedListener;
 import paulscode.android.mupen64plusae.task.UpdateLeanbackProgramsTask;
 import paulscode.android.mupen64plusae.util.CountryCode;
+import paulscode.android.mupen64plusae.util.CrashHandler;
 import paulscode.android.mupen64plusae.util.FileUtil;
 import paulscode.android.mupen64plusae.util.LocaleContextWrapper;
 import paulscode.android.mupen64plusae.util.Notifier;
 import paulscode.android.mupen64plusae.util.RomDatabase;
 import paulscode.android.mupen64plusae.util.RomHeader;
+import paulscode.android.mupen64plusae.util.StartupTrace;
 
 public class GalleryActivity extends AppCompatActivity implements GameSidebarActionHandler, PromptConfirmListener,
         GalleryRefreshFinishedListener
@@ -233,7 +236,7 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
 
         // Get app data and user preferences
         mAppData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
         mConfig = new ConfigFile(mGlobalPrefs.romInfoCache_cfg);
 
         // Lay out the content
@@ -409,6 +412,15 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
 
         super.onResume();
 
+        // Get the game process ready while the user picks a game
+        ActivityHelper.startCoreWarmupService(this, mAppData, mGlobalPrefs, null);
+
+        // Trim saves and caches while no game is running
+        ActivityHelper.startStorageCleanupService(this);
+
+        // A game process that crashed left its crash log waiting for the logcat
+        CrashHandler.finishPendingLogs(this);
+
         //mRefreshNeeded will be set to true whenever a game is launched
         if(mRefreshNeeded)
         {
@@ -639,6 +651,9 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
         case R.id.menuItem_logcat:
             ActivityHelper.startLogcatActivity(this);
             return true;
+        case R.id.menuItem_startupTrace:
+            ActivityHelper.startStartupTraceActivity(this);
+            return true;
         case R.id.menuItem_hardwareInfo:
             Popups.showHardwareInfo(this);
             return true;
@@ -888,7 +903,7 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
     {
         //Reload global prefs
         mAppData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
 
         GalleryRefreshTask galleryRefreshTask = new GalleryRefreshTask(this, this, mGlobalPrefs, mSearchQuery, mConfig);
         galleryRefreshTask.execute();
@@ -985,9 +1000,10 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
             String romHeaderName, byte romCountryCode, String romArtPath, String romGoodName, boolean isRestarting)
     {
         //Log.i( "GalleryActivity", "launchGameActivity" );
+        StartupTrace.startLaunch(romGoodName);
 
         // Make sure that the storage is accessible
-        if( !ExtractAssetsTask.areAllAssetsPresent(SplashActivity.SOURCE_DIR, mAppData.coreSharedDataDir))
+        if( !ExtractAssetsTask.areAllAssetsPresent(mAppData.coreSharedDataDir))
         {
             //Log.e( "GalleryActivity", "SD Card not accessible" );
             Notifier.showToast( this, R.string.toast_sdInaccessible );
@@ -56,9 +56,9 @@ import app.cooln64.v5.coolemulators.R;
 import java.io.File;
 import java.util.List;
 
-import paulscode.android.mupen64plusae.cheat.CheatUtils;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.preference.PathPreference;
 import paulscode.android.mupen64plusae.preference.PrefUtil;
 import paulscode.android.mupen64plusae.task.ExtractAssetsTask;
@@ -184,7 +184,7 @@ public class SplashActivity extends AppCompatActivity implements ExtractAssetsLi
 
         // Get app data and user preferences
         mAppData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
 
         // Ensure that any missing preferences are populated with defaults (e.g. preference added to
         // new release)
@@ -207,7 +207,7 @@ public class SplashActivity extends AppCompatActivity implements ExtractAssetsLi
         // @formatter:on
 
         // Refresh the preference data wrapper
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
 
         // Make sure custom skin directory exist
         FileUtil.makeDirs(mGlobalPrefs.touchscreenCustomSkinsDir);
@@ -386,8 +386,8 @@ public class SplashActivity extends AppCompatActivity implements ExtractAssetsLi
         }
 
         if( mAppData.getAssetCheckNeeded() || mAppData.getAppVersion() != mAppData.appVersionCode ||
-                !ExtractAssetsTask.areAllAssetsValid(PreferenceManager.getDefaultSharedPreferences(this),
-                        SOURCE_DIR, mAppData.coreSharedDataDir))
+                !ExtractAssetsTask.areAllAssetsValid(getAssets(), PreferenceManager.getDefaultSharedPreferences(this),
+                        mAppData.coreSharedDataDir))
         {
             mAppData.putAppVersion(mAppData.appVersionCode);
 
@@ -441,10 +441,9 @@ public class SplashActivity extends AppCompatActivity implements ExtractAssetsLi
     {
         if( failures.size() == 0 )
         {
-            // Extraction succeeded, record new asset version and merge cheats
+            // Extraction succeeded, record new asset version
             mTextView.setText( R.string.assetExtractor_finished );
             mAppData.putAssetCheckNeeded( false );
-            CheatUtils.mergeCheatFiles( mAppData.mupencheat_default, mGlobalPrefs.customCheats_txt, mAppData.mupencheat_txt );
 
             if(!RomDatabase.getInstance().hasDatabaseFile())
             {
@@ -56,13 +56,12 @@ import paulscode.android.mupen64plusae.dialog.MenuDialogFragment;
 import paulscode.android.mupen64plusae.dialog.MenuDialogFragment.OnDialogMenuItemSelectedListener;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
-import paulscode.android.mupen64plusae.task.ExtractCheatsTask;
-import paulscode.android.mupen64plusae.task.ExtractCheatsTask.ExtractCheatListener;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.util.FileUtil;
 import paulscode.android.mupen64plusae.util.LocaleContextWrapper;
 
-public class CheatEditorActivity extends AppCompatListActivity implements ExtractCheatListener,
-    OnDialogMenuItemSelectedListener, OnEditCompleteListener, OnAdvancedEditCompleteListener
+public class CheatEditorActivity extends AppCompatListActivity implements OnDialogMenuItemSelectedListener,
+    OnEditCompleteListener, OnAdvancedEditCompleteListener
 {
 
     static public final class CheatOptionData
@@ -114,7 +113,6 @@ public class CheatEditorActivity extends AppCompatListActivity implements Extrac
     private static final String STATE_CHEAT_EDIT_DIALOG_FRAGMENT = "STATE_CHEAT_EDIT_DIALOG_FRAGMENT";
     
     private final ArrayList<Cheat> userCheats = new ArrayList<>();
-    private final ArrayList<Cheat> systemCheats = new ArrayList<>();
     private CheatListAdapter cheatListAdapter = null;
     private AppData mAppData = null;
     private GlobalPrefs mGlobalPrefs = null;
@@ -140,7 +138,7 @@ public class CheatEditorActivity extends AppCompatListActivity implements Extrac
     {
         super.onCreate( savedInstanceState );
         mAppData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
         
         // Get the ROM header info
         Bundle extras = getIntent().getExtras();
@@ -201,11 +199,7 @@ public class CheatEditorActivity extends AppCompatListActivity implements Extrac
         if( crc == null )
             return;
         
-        //Do this in a separate task since it takes longer
-        ExtractCheatsTask cheatsTask = new ExtractCheatsTask(this, this, mAppData.mupencheat_default, crc, countryCode);
-        cheatsTask.execute((String) null);
-        
-        //We don't extract user cheats in a separate task since there aren't as many
+        //Only user cheats are edited, the default cheats are merged in when they are needed
         CheatFile usrcheat_txt = new CheatFile( mGlobalPrefs.customCheats_txt, true );
         userCheats.clear();        
         userCheats.addAll( CheatUtils.populate( mRomCrc, mRomCountryCode, usrcheat_txt, false, this ) );
@@ -214,27 +208,12 @@ public class CheatEditorActivity extends AppCompatListActivity implements Extrac
         setListAdapter( cheatListAdapter );
     }
     
-    @Override
-    public void onExtractFinished(ArrayList<Cheat> moreCheats)
-    {
-        systemCheats.clear();
-        systemCheats.addAll( moreCheats );
-    }    
-    
     private void save( String crc )
     {
-        ArrayList<Cheat> combinedCheats;
-        combinedCheats = new ArrayList<>();
-        combinedCheats.addAll(systemCheats);
-        combinedCheats.addAll(userCheats);
-        Collections.sort(combinedCheats);
-
         FileUtil.makeDirs(new File( mGlobalPrefs.customCheats_txt ).getParentFile().getPath());
         
         CheatFile usrcheat_txt = new CheatFile( mGlobalPrefs.customCheats_txt, true );
-        CheatFile mupencheat_txt = new CheatFile( mAppData.mupencheat_txt, true );
         CheatUtils.save( crc, usrcheat_txt, userCheats, mRomHeaderName, mRomCountryCode, this, false );
-        CheatUtils.save( crc, mupencheat_txt, combinedCheats, mRomHeaderName, mRomCountryCode, this, true );
         
         setResult(RESULT_OK, null);
     }
@@ -230,18 +230,23 @@ class CheatFile
     }
     
     /**
-     * Returns the first cheat section whose key matches the specified regular expression (not
-     * necessarily the only match).
+     * Returns the cheat section whose key starts with the specified prefix. Keys are normally
+     * exactly the ROM CRC and country code, so this is a direct lookup, falling back to a scan
+     * only for sections whose key carries trailing text.
      * 
-     * @param pattern a regular expression to match the key to
+     * @param prefix the ROM CRC and country code, e.g. "12345678-9ABCDEF0-C:45"
      * 
-     * @return cheat section whose key matches the given regex, or null if no match was found
+     * @return the first cheat section whose key starts with the prefix, or null if none was found
      */
-    public CheatSection match( String pattern )
+    public CheatSection find( String prefix )
     {
+        CheatSection section = mSections.get( prefix );
+        if( section != null )
+            return section;
+        
         for( String key : mSections.keySet() )
         {
-            if( key.matches( pattern ) )
+            if( key.startsWith( prefix ) )
                 return mSections.get( key );
         }
         return null;
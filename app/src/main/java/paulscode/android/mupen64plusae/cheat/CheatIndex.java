@@ -0,0 +1,360 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.cheat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * Sorted table of the cheat sections in a cheat file, mapping each section key (ROM CRC and
+ * country code) to the byte range of the section body. The table is saved next to the cheat file
+ * and rebuilt only when the cheat file changes, so finding the cheats of a ROM is a binary search
+ * and a read of that section instead of a scan of the whole file.
+ */
+class CheatIndex
+{
+    private static final String TAG = "CheatIndex";
+
+    /** Extension of the index file, appended to the cheat file path. */
+    static final String EXTENSION = ".idx";
+
+    /** Format version of the index file. */
+    private static final int VERSION = 1;
+
+    /** Indexes already loaded in this process, by cheat file path. */
+    private static final Map<String, CheatIndex> sIndexes = new HashMap<>();
+
+    /** Path of the cheat file. */
+    private final String mFilename;
+
+    /** Length and modification time of the cheat file this index was built from. */
+    private final long mSourceLength;
+    private final long mSourceModified;
+
+    /** Section keys, sorted. */
+    private final String[] mKeys;
+
+    /** Offset and length of the body of each section, following the "crc " line. */
+    private final long[] mOffsets;
+    private final int[] mLengths;
+
+    private CheatIndex( String filename, long sourceLength, long sourceModified, String[] keys,
+            long[] offsets, int[] lengths )
+    {
+        mFilename = filename;
+        mSourceLength = sourceLength;
+        mSourceModified = sourceModified;
+        mKeys = keys;
+        mOffsets = offsets;
+        mLengths = lengths;
+    }
+
+    /**
+     * Returns the index of a cheat file, loading it from disk or building it if it's missing or
+     * out of date.
+     *
+     * @param filename the path of the cheat file
+     *
+     * @return the index, or null if the cheat file can't be read
+     */
+    static CheatIndex get( String filename )
+    {
+        File source = new File( filename );
+        if( !source.isFile() )
+            return null;
+
+        synchronized( sIndexes )
+        {
+            CheatIndex index = sIndexes.get( filename );
+            if( index == null || !index.isValid( source ) )
+            {
+                index = load( filename );
+                if( index == null || !index.isValid( source ) )
+                    index = build( filename );
+
+                if( index == null )
+                    sIndexes.remove( filename );
+                else
+                    sIndexes.put( filename, index );
+            }
+            return index;
+        }
+    }
+
+    private boolean isValid( File source )
+    {
+        return source.length() == mSourceLength && source.lastModified() == mSourceModified;
+    }
+
+    /**
+     * Returns the key of the first section that starts with the given prefix.
+     *
+     * @param prefix ROM CRC and country code, e.g. "12345678-9ABCDEF0-C:45"
+     *
+     * @return the full section key, or null if there is no such section
+     */
+    String find( String prefix )
+    {
+        int position = find( mKeys, prefix );
+        return position < 0 ? null : mKeys[position];
+    }
+
+    /**
+     * Opens the body of a cheat section, the lines following its "crc " line.
+     *
+     * @param prefix ROM CRC and country code, e.g. "12345678-9ABCDEF0-C:45"
+     *
+     * @return a reader over the section body, or null if there is no such section
+     */
+    BufferedReader open( String prefix )
+    {
+        int position = find( mKeys, prefix );
+        if( position < 0 )
+            return null;
+
+        byte[] section = new byte[mLengths[position]];
+        try( RandomAccessFile file = new RandomAccessFile( mFilename, "r" ) )
+        {
+            file.seek( mOffsets[position] );
+            file.readFully( section );
+        }
+        catch( IOException e )
+        {
+            Log.e( TAG, "Could not read " + mFilename + ": " + e.getMessage() );
+            return null;
+        }
+
+        // Decode like FileReader so sections read the same as through CheatFile
+        return new BufferedReader( new InputStreamReader( new ByteArrayInputStream( section ) ) );
+    }
+
+    private static int find( String[] keys, String prefix )
+    {
+        int position = Arrays.binarySearch( keys, prefix );
+        if( position >= 0 )
+            return position;
+
+        // Keys may carry trailing text, the first key after the prefix is the only candidate
+        position = -position - 1;
+        if( position < keys.length && keys[position].startsWith( prefix ) )
+            return position;
+        return -1;
+    }
+
+    private static File getIndexFile( String filename )
+    {
+        return new File( filename + EXTENSION );
+    }
+
+    private static CheatIndex load( String filename )
+    {
+        File indexFile = getIndexFile( filename );
+        if( !indexFile.isFile() )
+            return null;
+
+        try( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) ) )
+        {
+            if( in.readInt() != VERSION )
+                return null;
+
+            long sourceLength = in.readLong();
+            long sourceModified = in.readLong();
+            int count = in.readInt();
+            String[] keys = new String[count];
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            for( int i = 0; i < count; i++ )
+            {
+                keys[i] = in.readUTF();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+            }
+            return new CheatIndex( filename, sourceLength, sourceModified, keys, offsets, lengths );
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Could not read " + indexFile.getName() + ": " + e.getMessage() );
+            return null;
+        }
+    }
+
+    private static CheatIndex build( String filename )
+    {
+        long start = System.currentTimeMillis();
+        File source = new File( filename );
+        long sourceLength = source.length();
+        long sourceModified = source.lastModified();
+
+        final List<Entry> entries = new ArrayList<>();
+        try( InputStream in = new BufferedInputStream( new FileInputStream( source ) ) )
+        {
+            // Only the text of "crc " lines is kept, everything else is just counted
+            byte[] head = new byte[4];
+            ByteArrayOutputStream key = new ByteArrayOutputStream();
+            Entry current = null;
+            int lineLength = 0;
+            long lineStart = 0;
+            long position = 0;
+            int b;
+            do
+            {
+                b = in.read();
+                if( b != -1 && b != '\n' )
+                {
+                    if( lineLength < head.length )
+                        head[lineLength] = (byte) b;
+                    else if( isSectionHeader( head ) )
+                        key.write( b );
+                    lineLength++;
+                    position++;
+                    continue;
+                }
+
+                if( b == '\n' )
+                    position++;
+
+                if( lineLength > head.length && isSectionHeader( head ) )
+                {
+                    if( current != null )
+                        current.length = (int) ( lineStart - current.offset );
+
+                    String text = key.toString();
+                    if( text.endsWith( "\r" ) )
+                        text = text.substring( 0, text.length() - 1 );
+                    current = new Entry( text, position );
+                    entries.add( current );
+                }
+                key.reset();
+                lineLength = 0;
+                lineStart = position;
+            }
+            while( b != -1 );
+
+            if( current != null )
+                current.length = (int) ( position - current.offset );
+        }
+        catch( IOException e )
+        {
+            Log.e( TAG, "Could not read " + filename + ": " + e.getMessage() );
+            return null;
+        }
+
+        // Sort by key, the first section in the file wins if a key appears twice
+        Entry[] sorted = entries.toArray( new Entry[entries.size()] );
+        Arrays.sort( sorted );
+
+        List<Entry> unique = new ArrayList<>( sorted.length );
+        for( Entry entry : sorted )
+        {
+            if( unique.isEmpty() || !unique.get( unique.size() - 1 ).key.equals( entry.key ) )
+                unique.add( entry );
+        }
+
+        int count = unique.size();
+        String[] keys = new String[count];
+        long[] offsets = new long[count];
+        int[] lengths = new int[count];
+        for( int i = 0; i < count; i++ )
+        {
+            Entry entry = unique.get( i );
+            keys[i] = entry.key;
+            offsets[i] = entry.offset;
+            lengths[i] = entry.length;
+        }
+
+        CheatIndex index = new CheatIndex( filename, sourceLength, sourceModified, keys, offsets, lengths );
+        index.save();
+
+        Log.i( TAG, "Indexed " + count + " cheat sections of " + source.getName() + " in "
+                + ( System.currentTimeMillis() - start ) + " ms" );
+        return index;
+    }
+
+    private static boolean isSectionHeader( byte[] head )
+    {
+        return head[0] == 'c' && head[1] == 'r' && head[2] == 'c' && head[3] == ' ';
+    }
+
+    private void save()
+    {
+        File indexFile = getIndexFile( mFilename );
+        File tempFile = new File( indexFile.getPath() + ".tmp" );
+        try( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) ) )
+        {
+            out.writeInt( VERSION );
+            out.writeLong( mSourceLength );
+            out.writeLong( mSourceModified );
+            out.writeInt( mKeys.length );
+            for( int i = 0; i < mKeys.length; i++ )
+            {
+                out.writeUTF( mKeys[i] );
+                out.writeLong( mOffsets[i] );
+                out.writeInt( mLengths[i] );
+            }
+        }
+        catch( IOException e )
+        {
+            // The index is rebuilt in memory on every start until it can be saved
+            Log.w( TAG, "Could not write " + indexFile.getName() + ": " + e.getMessage() );
+            return;
+        }
+
+        if( !tempFile.renameTo( indexFile ) )
+            Log.w( TAG, "Could not write " + indexFile.getName() );
+    }
+
+    private static class Entry implements Comparable<Entry>
+    {
+        final String key;
+        final long offset;
+        int length;
+
+        Entry( String key, long offset )
+        {
+            this.key = key;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo( Entry another )
+        {
+            int result = key.compareTo( another.key );
+            return result != 0 ? result : Long.compare( offset, another.offset );
+        }
+    }
+}
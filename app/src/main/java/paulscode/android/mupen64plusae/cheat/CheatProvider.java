@@ -0,0 +1,159 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.cheat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import paulscode.android.mupen64plusae.cheat.CheatUtils.Cheat;
+import paulscode.android.mupen64plusae.cheat.CheatFile.CheatSection;
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Overlay of the user cheats on top of the default cheat database. Both files are left as they
+ * are, the cheats of a ROM are merged only when they're needed: the default cheats of the ROM
+ * come first, followed by the user cheats, so cheat numbers stay the same as long as neither file
+ * changes.
+ */
+public class CheatProvider
+{
+    private final String mDefaultPath;
+    private final String mUserPath;
+
+    /**
+     * @param defaultPath the path of the default cheat database
+     * @param userPath the path of the user cheat file, or null to only read the default cheats
+     */
+    public CheatProvider( String defaultPath, String userPath )
+    {
+        mDefaultPath = defaultPath;
+        mUserPath = userPath;
+    }
+
+    /**
+     * Returns the merged cheats of a ROM.
+     *
+     * @param crc the CRC of the ROM
+     * @param countryCode the country code of the ROM
+     * @param con the context used to format the cheat options
+     *
+     * @return the cheats of the ROM, sorted by name
+     */
+    public ArrayList<Cheat> getCheats( String crc, byte countryCode, Context con )
+    {
+        return CheatUtils.populate( getSection( crc, countryCode ), crc, con );
+    }
+
+    /**
+     * Writes the merged cheat section of a ROM to the cheat file read by the core, so the core
+     * only has to parse this one section.
+     *
+     * @param crc the CRC of the ROM
+     * @param countryCode the country code of the ROM
+     * @param cheatArgs the enabled cheats, as returned by GamePrefs.getCheatArgs()
+     * @param coreCheatPath the path of the cheat file read by the core
+     *
+     * @return the value of the --cheats argument, or null if no cheats should be enabled
+     */
+    public String prepareCoreCheats( String crc, byte countryCode, String cheatArgs,
+            String coreCheatPath )
+    {
+        if( TextUtils.isEmpty( cheatArgs ) || crc == null )
+            return null;
+
+        CheatSection section = getSection( crc, countryCode );
+        if( section == null )
+        {
+            Log.w( "CheatProvider", "No cheat section found for '" + crc + "'" );
+            return null;
+        }
+
+        CheatFile coreCheats = new CheatFile( coreCheatPath, false );
+        coreCheats.add( section );
+        if( !coreCheats.save() )
+            return null;
+
+        return cheatArgs;
+    }
+
+    /**
+     * Returns the default cheat section of a ROM with the user cheats appended to it.
+     */
+    CheatSection getSection( String crc, byte countryCode )
+    {
+        String key = CheatUtils.getKey( crc, countryCode );
+        CheatSection defaultSection = readSection( mDefaultPath, key );
+        CheatSection userSection = mUserPath == null ? null : readSection( mUserPath, key );
+
+        if( userSection == null || userSection.size() == 0 )
+            return defaultSection;
+
+        CheatSection section = defaultSection;
+        if( section == null )
+        {
+            // This ROM is not present in the default cheat file
+            section = new CheatSection( key.substring( 0, 17 ), userSection.goodName, key.substring( 20 ) );
+        }
+
+        for( int o = 0; o < userSection.size(); o++ )
+        {
+            section.add( userSection.get( o ) );
+        }
+        return section;
+    }
+
+    private static CheatSection readSection( String filename, String key )
+    {
+        if( TextUtils.isEmpty( filename ) || !new File( filename ).exists() )
+            return null;
+
+        CheatIndex index = CheatIndex.get( filename );
+        if( index == null )
+            return null;
+
+        String fullKey = index.find( key );
+        BufferedReader reader = fullKey == null ? null : index.open( key );
+        if( reader == null )
+            return null;
+
+        try
+        {
+            return new CheatSection( fullKey, reader );
+        }
+        catch( IOException e )
+        {
+            Log.e( "CheatProvider", "Could not read " + filename );
+            return null;
+        }
+        finally
+        {
+            try
+            {
+                reader.close();
+            }
+            catch( IOException ignored )
+            {
+            }
+        }
+    }
+}
@@ -20,11 +20,6 @@
  */
 package paulscode.android.mupen64plusae.cheat;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -36,7 +31,6 @@ import paulscode.android.mupen64plusae.cheat.CheatFile.CheatBlock;
 import paulscode.android.mupen64plusae.cheat.CheatFile.CheatCode;
 import paulscode.android.mupen64plusae.cheat.CheatFile.CheatOption;
 import paulscode.android.mupen64plusae.cheat.CheatFile.CheatSection;
-import paulscode.android.mupen64plusae.util.FileUtil;
 import android.content.Context;
 import android.text.TextUtils;
 import android.util.Log;
@@ -61,131 +55,29 @@ public class CheatUtils
         }
     }
     
-    public static void mergeCheatFiles( String defaultpath, String userpath, String volatilepath )
-    {        
-        // Reset the volatile cheatfile to the default data
-        File cheat_volatile = new File( volatilepath );
-        File cheat_default = new File( defaultpath );
-        FileUtil.copyFile( cheat_default, cheat_volatile );
-        
-        // Merge user cheats if they exist
-        File cheat_user = new File( userpath );
-        if( cheat_user.exists() )
-        {
-            CheatFile cheat_v = new CheatFile( volatilepath, true );
-            CheatFile cheat_u = new CheatFile( userpath, true );
-            
-            for( String key : cheat_u.keySet() )
-            {
-                if( !CheatFile.NO_KEY.equals( key ) )
-                {
-                    CheatSection cheat_section_v = cheat_v.get( key );
-                    CheatSection cheat_section_u = cheat_u.get( key );
-                    assert( cheat_section_u != null );
-                    
-                    // Create the cheat section in the destination if necessary (i.e. this ROM
-                    // is not present in the default cheat file)
-                    if( cheat_section_v == null )
-                    {
-                        String name = cheat_section_u.goodName;
-                        String crc = key.substring( 0, 17 );
-                        String country = key.substring( 20 );
-                        cheat_section_v = new CheatSection( crc, name, country );
-                        cheat_v.add( cheat_section_v );
-                    }
-                    
-                    // Append the user cheats to the volatile cheatfile
-                    for( int o = 0; o < cheat_section_u.size(); o++ )
-                    {
-                        cheat_section_v.add( cheat_section_u.get( o ) );
-                    }
-                }
-            }
-            cheat_v.save();
-        }
-    }
-    
-    public static BufferedReader getCheatsLocation(String regularExpression, String filename)
+    /**
+     * Returns the key of the cheat section of a ROM, without any trailing text.
+     *
+     * @param crc the CRC of the ROM
+     * @param countryCode the country code of the ROM
+     *
+     * @return the key of the cheat section, e.g. "12345678-9ABCDEF0-C:45"
+     */
+    static String getKey( String crc, byte countryCode )
     {
-        // Make sure a file was specified in the constructor
-        if( TextUtils.isEmpty( filename ) )
-        {
-            Log.e( "CheatFile", "Filename not specified in method reload()" );
-            return null;
-        }
-        
-        BufferedReader reader = null;
-        try
-        {
-            reader = new BufferedReader( new FileReader( filename ) );
-            boolean done = false;
-            
-            String fullLine = null;
-            while( !done && ( fullLine = reader.readLine() ) != null)
-            {
-                if( fullLine.startsWith( "crc " ) )
-                {
-                    // Start of the next cheat section, return
-                    done = fullLine.substring( 4 ).matches( regularExpression );
-                }
-            }
-            
-            if(fullLine != null)
-            {
-                Log.i("CheatUtils", fullLine);
-            }
-        }
-        catch( FileNotFoundException e )
-        {
-            Log.e( "CheatFile", "Could not open " + filename );
-            return null;
-        }
-        catch( IOException e )
-        {
-            Log.e( "CheatFile", "Could not read " + filename );
-            return null;
-        }
-        return reader;
+        String countryString = String.format("%02x", countryCode).substring(0, 2);
+        return crc.replace( ' ', '-' ) + "-C:" + countryString;
     }
-    
 
-    public static ArrayList<Cheat> populateWithPosition( BufferedReader startPosition,
-        String crc, byte countryCode, Context con )
-    {
-        CheatSection cheatSection;
-        try
-        {
-            String countryString = String.format("%02x", countryCode).substring(0, 2);
-            String key = crc + "-C:" + countryString;
-            
-            cheatSection = new CheatSection( key, startPosition );
-        }
-        catch (IOException e)
-        {
-            cheatSection = null;
-        }
-        
-        try
-        {
-            startPosition.close();
-        }
-        catch( IOException ignored )
-        {
-        }
-        
-        return populateCommon(cheatSection, crc, con);
-    }
-    
     public static ArrayList<Cheat> populate( String crc, byte countryCode, CheatFile mupencheat_txt,
             boolean isSystemDefault, Context con )
     {
-        String countryString = String.format("%02x", countryCode).substring(0, 2);
-        CheatSection cheatSection = mupencheat_txt.match( "^" + crc.replace( ' ', '-') + "-C:" + countryString + ".*");
+        CheatSection cheatSection = mupencheat_txt.find( getKey( crc, countryCode ) );
         
-        return populateCommon(cheatSection, crc, con);
+        return populate(cheatSection, crc, con);
     }
     
-    private static ArrayList<Cheat> populateCommon(CheatSection cheatSection, String crc, Context con)
+    static ArrayList<Cheat> populate(CheatSection cheatSection, String crc, Context con)
     {
         ArrayList<Cheat> cheats = new ArrayList<Cheat>();
         
@@ -301,7 +193,7 @@ public class CheatUtils
         byte countryCode, Context con, boolean isSystemDefault)
     {
         String countryString = String.format("%02x", countryCode).substring(0, 2);
-        CheatSection c = mupencheat_txt.match("^" + crc.replace(' ', '-') + "-C:" + countryString + ".*");
+        CheatSection c = mupencheat_txt.find(getKey(crc, countryCode));
         if (c == null)
         {
             // Game name and country code from header
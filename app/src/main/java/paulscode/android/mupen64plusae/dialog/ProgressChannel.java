@@ -0,0 +1,156 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.dialog;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest progress state of a background task. Workers overwrite the state as often as they like
+ * without locking or allocating, and the UI samples it when it draws a frame, so intermediate
+ * states that were never displayed are simply dropped. The listener is only called for the first
+ * change after each sample, so the UI is woken up once per frame at most, and not at all while
+ * nothing changes.
+ */
+public class ProgressChannel
+{
+    private volatile CharSequence mText = null;
+    private volatile CharSequence mSubtext = null;
+    private volatile CharSequence mMessage = null;
+    private volatile int mMessageId = 0;
+    private volatile long mMaxProgress = -1;
+    private final AtomicLong mProgress = new AtomicLong();
+
+    /** Set by every change, cleared by the reader before it samples the state. */
+    private final AtomicBoolean mChanged = new AtomicBoolean( false );
+    private volatile Runnable mOnChangedListener = null;
+
+    public void setText( CharSequence text )
+    {
+        mText = text;
+        changed();
+    }
+
+    public void setSubtext( CharSequence text )
+    {
+        mSubtext = text;
+        changed();
+    }
+
+    public void setMessage( CharSequence text )
+    {
+        mMessage = text;
+        mMessageId = 0;
+        changed();
+    }
+
+    public void setMessage( int resid )
+    {
+        mMessageId = resid;
+        changed();
+    }
+
+    public void setMaxProgress( long size )
+    {
+        mMaxProgress = size;
+        mProgress.set( 0 );
+        changed();
+    }
+
+    public void incrementProgress( long inc )
+    {
+        mProgress.addAndGet( inc );
+        changed();
+    }
+
+    /**
+     * Sets the listener called, on the updating thread, for the first change after
+     * {@link #clearChanged()}.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public void setOnChangedListener( Runnable listener )
+    {
+        mOnChangedListener = listener;
+    }
+
+    /**
+     * Must be called before the state is sampled, so changes made while it is read call the
+     * listener again.
+     *
+     * @return True if the state changed since the last call.
+     */
+    public boolean clearChanged()
+    {
+        return mChanged.getAndSet( false );
+    }
+
+    private void changed()
+    {
+        // The state is written before the flag, so a reader that cleared it sees the new state
+        if( !mChanged.get() && mChanged.compareAndSet( false, true ) )
+        {
+            final Runnable listener = mOnChangedListener;
+            if( listener != null )
+                listener.run();
+        }
+    }
+
+    /**
+     * @return The text, or null if it was never set.
+     */
+    public CharSequence getText()
+    {
+        return mText;
+    }
+
+    /**
+     * @return The subtext, or null if it was never set.
+     */
+    public CharSequence getSubtext()
+    {
+        return mSubtext;
+    }
+
+    /**
+     * @return The message, only meaningful when {@link #getMessageId()} returns 0.
+     */
+    public CharSequence getMessage()
+    {
+        return mMessage;
+    }
+
+    /**
+     * @return The string resource of the message, or 0 if the message was last set as text.
+     */
+    public int getMessageId()
+    {
+        return mMessageId;
+    }
+
+    public long getMaxProgress()
+    {
+        return mMaxProgress;
+    }
+
+    public long getProgress()
+    {
+        return mProgress.get();
+    }
+}
@@ -7,11 +7,17 @@ import android.app.AlertDialog;
 import android.app.AlertDialog.Builder;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
-public class ProgressDialog implements OnClickListener
+/**
+ * Progress dialog for background tasks. Tasks may update it from any thread and as often as they
+ * like: updates go to a {@link ProgressChannel}, and the first one after each sample asks for a
+ * frame, in which the dialog samples the channel. No frames are requested while nothing changes.
+ */
+public class ProgressDialog implements OnClickListener, Choreographer.FrameCallback
 {
     public interface OnCancelListener
     {
@@ -22,6 +28,8 @@ public class ProgressDialog implements OnClickListener
     private static final float PROGRESS_PRECISION = 1000f;
     
     private final Activity mActivity;
+    private final Choreographer mChoreographer;
+    private final ProgressChannel mChannel;
     private final TextView mTextProgress;
     private final TextView mTextSubprogress;
     private final TextView mTextMessage;
@@ -29,14 +37,48 @@ public class ProgressDialog implements OnClickListener
     private AlertDialog mDialog;
     private AlertDialog mAbortDialog;
     
-    private long mMaxProgress = -1;
-    private long mProgress = 0;
     private OnCancelListener mOnCancelListener = null;
+    private boolean mShown = false;
+    
+    /** Called on the task's thread, at most once per frame. */
+    private final Runnable mOnChannelChanged = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            mActivity.runOnUiThread( mRequestFrame );
+        }
+    };
+    
+    private final Runnable mRequestFrame = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if( mShown )
+                mChoreographer.postFrameCallback( ProgressDialog.this );
+        }
+    };
+    
+    // Channel state currently displayed
+    private CharSequence mText = null;
+    private CharSequence mSubtext = null;
+    private CharSequence mMessage = null;
+    private int mMessageId = 0;
+    private long mMaxProgress = -1;
     
     public ProgressDialog( Activity activity, CharSequence title,
             CharSequence subtitle, CharSequence message, boolean cancelable )
+    {
+        this( activity, new ProgressChannel(), title, subtitle, message, cancelable );
+    }
+    
+    private ProgressDialog( Activity activity, ProgressChannel channel, CharSequence title,
+            CharSequence subtitle, CharSequence message, boolean cancelable )
     {
         mActivity = activity;
+        mChoreographer = Choreographer.getInstance();
+        mChannel = channel;
         View layout = View.inflate(activity, R.layout.progress_dialog, null );
         
         mTextProgress = (TextView) layout.findViewById( R.id.textProgress );
@@ -59,22 +101,13 @@ public class ProgressDialog implements OnClickListener
     public ProgressDialog(ProgressDialog original, Activity activity, CharSequence title,
         CharSequence subtitle, CharSequence message, boolean cancelable)
     {
-        this(activity, title, subtitle, message, cancelable);
+        // Keep the channel, so the task carries on reporting to the new dialog
+        this(activity, original != null ? original.mChannel : new ProgressChannel(), title, subtitle,
+            message, cancelable);
         
         if(original != null)
-        {            
-
+        {
             mOnCancelListener = original.mOnCancelListener;
-            
-            setMaxProgress(original.mMaxProgress);
-            
-            mProgress = original.mProgress;
-            
-            incrementProgress(0);
-            
-            mTextProgress.setText(original.mTextProgress.getText());
-            mTextSubprogress.setText(original.mTextSubprogress.getText());
-            mTextMessage.setText(original.mTextMessage.getText());
         }
     }
     
@@ -82,10 +115,23 @@ public class ProgressDialog implements OnClickListener
     {
         mAbortDialog.show();
         mDialog.show();
+        
+        if( !mShown )
+        {
+            mShown = true;
+            mChannel.setOnChangedListener( mOnChannelChanged );
+            
+            // Clears the flag, so changes made before the listener was set are not missed
+            doFrame( 0 );
+        }
     }
     
     public void dismiss()
     {
+        mShown = false;
+        mChannel.setOnChangedListener( null );
+        mChoreographer.removeFrameCallback( this );
+        
         mAbortDialog.dismiss();
         mDialog.dismiss();
     }
@@ -121,84 +167,92 @@ public class ProgressDialog implements OnClickListener
         return builder;
     }
     
-    public void setText( final CharSequence text )
+    public void setText( CharSequence text )
     {
-        mActivity.runOnUiThread( new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                mTextProgress.setText( text );
-            }
-        } );
+        mChannel.setText( text );
     }
     
-    public void setSubtext( final CharSequence text )
+    public void setSubtext( CharSequence text )
     {
-        mActivity.runOnUiThread( new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                mTextSubprogress.setText( text );
-            }
-        } );
+        mChannel.setSubtext( text );
     }
     
-    public void setMessage( final CharSequence text )
+    public void setMessage( CharSequence text )
     {
-        mActivity.runOnUiThread( new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                mTextMessage.setText( text );
-            }
-        } );
+        mChannel.setMessage( text );
     }
     
-    public void setMessage( final int resid )
+    public void setMessage( int resid )
     {
-        mActivity.runOnUiThread( new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                mTextMessage.setText( resid );
-            }
-        } );
+        mChannel.setMessage( resid );
     }
     
-    public void setMaxProgress( final long size )
+    public void setMaxProgress( long size )
     {
-        mActivity.runOnUiThread( new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                mMaxProgress = size;
-                mProgress = 0;
-                mProgressTotal.setProgress( 0 );
-                mProgressTotal.setVisibility( mMaxProgress > 0 ? View.VISIBLE : View.GONE );
-            }
-        } );
+        mChannel.setMaxProgress( size );
+    }
+    
+    public void incrementProgress( long inc )
+    {
+        mChannel.incrementProgress( inc );
     }
     
-    public void incrementProgress( final long inc )
+    @Override
+    public void doFrame( long frameTimeNanos )
     {
-        mActivity.runOnUiThread( new Runnable()
+        if( !mShown )
+            return;
+        
+        // The next change after this requests another frame
+        mChannel.clearChanged();
+        updateViews();
+    }
+    
+    private void updateViews()
+    {
+        // Views are only touched when the value differs from the one already displayed
+        final CharSequence text = mChannel.getText();
+        if( text != null && text != mText )
         {
-            @Override
-            public void run()
-            {
-                if( mMaxProgress > 0 )
-                {
-                    mProgress += inc;
-                    int pctProgress = Math.round( ( PROGRESS_PRECISION * mProgress )
-                            / mMaxProgress );
-                    mProgressTotal.setProgress( pctProgress );
-                }
-            }
-        } );
+            mText = text;
+            mTextProgress.setText( text );
+        }
+        
+        final CharSequence subtext = mChannel.getSubtext();
+        if( subtext != null && subtext != mSubtext )
+        {
+            mSubtext = subtext;
+            mTextSubprogress.setText( subtext );
+        }
+        
+        final int messageId = mChannel.getMessageId();
+        final CharSequence message = mChannel.getMessage();
+        if( messageId != 0 && messageId != mMessageId )
+        {
+            mMessageId = messageId;
+            mMessage = null;
+            mTextMessage.setText( messageId );
+        }
+        else if( messageId == 0 && message != null && ( message != mMessage || mMessageId != 0 ) )
+        {
+            mMessageId = 0;
+            mMessage = message;
+            mTextMessage.setText( message );
+        }
+        
+        final long maxProgress = mChannel.getMaxProgress();
+        if( maxProgress > 0 )
+        {
+            final int pctProgress = Math.round( ( PROGRESS_PRECISION * mChannel.getProgress() ) / maxProgress );
+            if( pctProgress != mProgressTotal.getProgress() )
+                mProgressTotal.setProgress( pctProgress );
+        }
+        if( maxProgress != mMaxProgress )
+        {
+            mMaxProgress = maxProgress;
+            if( maxProgress <= 0 )
+                mProgressTotal.setProgress( 0 );
+            mProgressTotal.setVisibility( maxProgress > 0 ? View.VISIBLE : View.GONE );
+        }
     }
 }
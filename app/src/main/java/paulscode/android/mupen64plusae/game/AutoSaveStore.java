@@ -0,0 +1,422 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.game;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import paulscode.android.mupen64plusae.jni.CoreService;
+
+/**
+ * Auto save history of a game. The newest auto save is kept as the file written by the core so
+ * that resuming doesn't have to rebuild it. Older auto saves are split into chunks stored by
+ * content hash, with a manifest listing the chunks of each save. Consecutive auto saves share
+ * most of their memory, so each one only adds the chunks that changed.
+ *
+ * Layout of the auto save directory:
+ * <ul>
+ * <li>autosaves.index: names of the auto saves, oldest first</li>
+ * <li>name, name.complete: auto save written by the core, not chunked yet</li>
+ * <li>manifests/name: size of the state followed by the hash of each chunk</li>
+ * <li>chunks/hash: deflated chunk</li>
+ * </ul>
+ */
+public class AutoSaveStore
+{
+    private static final String TAG = "AutoSaveStore";
+
+    private static final String INDEX_FILE = "autosaves.index";
+    private static final String MANIFEST_DIR = "manifests";
+    private static final String CHUNK_DIR = "chunks";
+    private static final String RESTORE_FILE = "restore.sav";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** All stores are modified from the game process only, one lock covers them all. */
+    private static final Object sLock = new Object();
+
+    private final File mDir;
+    private final File mIndexFile;
+    private final File mManifestDir;
+    private final File mChunkDir;
+
+    /**
+     * @param dir The auto save directory of the game.
+     */
+    public AutoSaveStore( File dir )
+    {
+        mDir = dir;
+        mIndexFile = new File( dir, INDEX_FILE );
+        mManifestDir = new File( dir, MANIFEST_DIR );
+        mChunkDir = new File( dir, CHUNK_DIR );
+    }
+
+    /**
+     * Records an auto save the core finished writing.
+     *
+     * @param saveFile The file written by the core, in the auto save directory.
+     */
+    public void add( File saveFile )
+    {
+        synchronized( sLock )
+        {
+            List<String> entries = readIndex();
+            entries.remove( saveFile.getName() );
+            entries.add( saveFile.getName() );
+            writeIndex( entries );
+        }
+    }
+
+    /**
+     * @return A file the core can load the newest auto save from, or null if there is none.
+     */
+    String getLatest()
+    {
+        // The index is replaced in one step and the newest save is never chunked or deleted by
+        // compact(), so the usual case doesn't wait for a compaction to finish
+        List<String> entries = readIndex();
+        if( !entries.isEmpty() )
+        {
+            File saveFile = new File( mDir, entries.get( entries.size() - 1 ) );
+            if( saveFile.exists() )
+                return saveFile.getPath();
+        }
+
+        synchronized( sLock )
+        {
+            List<String> entries = readIndex();
+            for( int i = entries.size() - 1; i >= 0; i-- )
+            {
+                String name = entries.get( i );
+                File saveFile = new File( mDir, name );
+                if( saveFile.exists() )
+                    return saveFile.getPath();
+
+                // The core reads uncompressed states as well
+                File restoreFile = new File( mManifestDir, RESTORE_FILE );
+                if( restore( name, restoreFile ) )
+                    return restoreFile.getPath();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Drops the oldest auto saves and chunks everything but the newest one.
+     *
+     * @param maxEntries     The number of auto saves to keep.
+     * @param completeSaves  Auto saves found in the directory that were completely written, they
+     *                       are adopted if they predate the index.
+     * @param partialSaves   Auto saves found in the directory without a completion marker, they are
+     *                       deleted if a newer save exists.
+     */
+    void compact( int maxEntries, List<File> completeSaves, List<File> partialSaves )
+    {
+        synchronized( sLock )
+        {
+            List<String> entries = readIndex();
+            boolean changed = false;
+
+            for( File save : completeSaves )
+            {
+                if( !entries.contains( save.getName() ) )
+                {
+                    entries.add( insertionPoint( entries, save.getName() ), save.getName() );
+                    changed = true;
+                }
+            }
+
+            // The newest one may still be being written by the core
+            for( File save : partialSaves )
+            {
+                if( !entries.isEmpty() && save.getName().compareTo( entries.get( entries.size() - 1 ) ) < 0 )
+                    deleteSaveFile( save );
+            }
+
+            boolean removed = false;
+            while( entries.size() > maxEntries )
+            {
+                String name = entries.remove( 0 );
+                Log.i( TAG, "Deleting old autosave: " + name );
+                deleteSaveFile( new File( mDir, name ) );
+                if( !new File( mManifestDir, name ).delete() && new File( mManifestDir, name ).exists() )
+                    Log.w( TAG, "Unable to delete autosave manifest: " + name );
+                changed = removed = true;
+            }
+
+            for( int i = 0; i < entries.size() - 1; i++ )
+            {
+                File saveFile = new File( mDir, entries.get( i ) );
+                if( saveFile.exists() && chunk( saveFile, new File( mManifestDir, entries.get( i ) ) ) )
+                    deleteSaveFile( saveFile );
+            }
+
+            if( changed )
+                writeIndex( entries );
+
+            if( removed )
+                collectChunks( entries );
+        }
+    }
+
+    private static int insertionPoint( List<String> entries, String name )
+    {
+        int index = 0;
+        while( index < entries.size() && entries.get( index ).compareTo( name ) < 0 )
+            index++;
+        return index;
+    }
+
+    private static void deleteSaveFile( File saveFile )
+    {
+        File completeFile = new File( saveFile.getPath() + "." + CoreService.COMPLETE_EXTENSION );
+        if( saveFile.exists() && !saveFile.delete() )
+            Log.w( TAG, "Unable to delete autosave file: " + saveFile.getName() );
+        if( completeFile.exists() && !completeFile.delete() )
+            Log.w( TAG, "Unable to delete autosave marker: " + completeFile.getName() );
+    }
+
+    /**
+     * Splits a save written by the core into chunks.
+     *
+     * @return True if the manifest was written and the save file can be deleted.
+     */
+    private boolean chunk( File saveFile, File manifestFile )
+    {
+        if( manifestFile.exists() )
+            return true;
+
+        if( !mManifestDir.isDirectory() && !mManifestDir.mkdirs() )
+            return false;
+        if( !mChunkDir.isDirectory() && !mChunkDir.mkdirs() )
+            return false;
+
+        long start = System.currentTimeMillis();
+        int newChunks = 0;
+        long size = 0;
+        List<String> hashes = new ArrayList<>();
+
+        try( InputStream in = new GZIPInputStream( new BufferedInputStream( new FileInputStream( saveFile ), CHUNK_SIZE ), CHUNK_SIZE ) )
+        {
+            MessageDigest digester = MessageDigest.getInstance( "SHA-1" );
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int length;
+            while( ( length = readFully( in, buffer ) ) > 0 )
+            {
+                digester.update( buffer, 0, length );
+                String hash = toHex( digester.digest() );
+                hashes.add( hash );
+                size += length;
+
+                File chunkFile = new File( mChunkDir, hash );
+                if( !chunkFile.exists() )
+                {
+                    writeChunk( chunkFile, buffer, length );
+                    newChunks++;
+                }
+            }
+        }
+        catch( IOException|NoSuchAlgorithmException e )
+        {
+            Log.w( TAG, "Unable to chunk autosave " + saveFile.getName() + ": " + e );
+            return false;
+        }
+
+        File tempFile = new File( manifestFile.getPath() + TEMP_EXTENSION );
+        try( PrintWriter writer = new PrintWriter( new FileWriter( tempFile ) ) )
+        {
+            writer.println( size );
+            for( String hash : hashes )
+                writer.println( hash );
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Unable to write manifest " + manifestFile.getName() + ": " + e );
+            return false;
+        }
+
+        if( !tempFile.renameTo( manifestFile ) )
+        {
+            Log.w( TAG, "Unable to write manifest " + manifestFile.getName() );
+            return false;
+        }
+
+        Log.i( TAG, "Chunked autosave " + saveFile.getName() + ": " + newChunks + " of " + hashes.size() +
+                " chunks written in " + ( System.currentTimeMillis() - start ) + " ms" );
+        return true;
+    }
+
+    private static void writeChunk( File chunkFile, byte[] buffer, int length ) throws IOException
+    {
+        File tempFile = new File( chunkFile.getPath() + TEMP_EXTENSION );
+        try( OutputStream out = new DeflaterOutputStream( new FileOutputStream( tempFile ), new Deflater( Deflater.BEST_SPEED ) ) )
+        {
+            out.write( buffer, 0, length );
+        }
+
+        if( !tempFile.renameTo( chunkFile ) )
+            throw new IOException( "Unable to rename " + tempFile.getName() );
+    }
+
+    /**
+     * Rebuilds a chunked save as an uncompressed state.
+     */
+    private boolean restore( String name, File target )
+    {
+        List<String> manifest = readLines( new File( mManifestDir, name ) );
+        if( manifest.isEmpty() )
+            return false;
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try( OutputStream out = new BufferedOutputStream( new FileOutputStream( target ), CHUNK_SIZE ) )
+        {
+            for( String hash : manifest.subList( 1, manifest.size() ) )
+            {
+                try( InputStream in = new InflaterInputStream( new FileInputStream( new File( mChunkDir, hash ) ) ) )
+                {
+                    int length = readFully( in, buffer );
+                    out.write( buffer, 0, length );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Unable to restore autosave " + name + ": " + e );
+            return false;
+        }
+
+        return target.length() == Long.parseLong( manifest.get( 0 ) );
+    }
+
+    /**
+     * Deletes the chunks no remaining manifest refers to.
+     */
+    private void collectChunks( List<String> entries )
+    {
+        File[] chunkFiles = mChunkDir.listFiles();
+        if( chunkFiles == null )
+            return;
+
+        Set<String> referenced = new HashSet<>();
+        for( String name : entries )
+        {
+            List<String> manifest = readLines( new File( mManifestDir, name ) );
+            if( !manifest.isEmpty() )
+                referenced.addAll( manifest.subList( 1, manifest.size() ) );
+        }
+
+        int deleted = 0;
+        for( File chunkFile : chunkFiles )
+        {
+            if( !referenced.contains( chunkFile.getName() ) && chunkFile.delete() )
+                deleted++;
+        }
+        Log.i( TAG, "Deleted " + deleted + " unreferenced chunks, " + referenced.size() + " left" );
+    }
+
+    private List<String> readIndex()
+    {
+        return readLines( mIndexFile );
+    }
+
+    private void writeIndex( List<String> entries )
+    {
+        File tempFile = new File( mIndexFile.getPath() + TEMP_EXTENSION );
+        try( PrintWriter writer = new PrintWriter( new FileWriter( tempFile ) ) )
+        {
+            for( String name : entries )
+                writer.println( name );
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Unable to write autosave index: " + e );
+            return;
+        }
+
+        if( !tempFile.renameTo( mIndexFile ) )
+            Log.w( TAG, "Unable to write autosave index" );
+    }
+
+    private static List<String> readLines( File file )
+    {
+        List<String> lines = new ArrayList<>();
+        if( !file.exists() )
+            return lines;
+
+        try( BufferedReader reader = new BufferedReader( new FileReader( file ) ) )
+        {
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                if( !line.isEmpty() )
+                    lines.add( line );
+            }
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Unable to read " + file.getName() + ": " + e );
+        }
+        return lines;
+    }
+
+    private static int readFully( InputStream in, byte[] buffer ) throws IOException
+    {
+        int total = 0;
+        int read;
+        while( total < buffer.length && ( read = in.read( buffer, total, buffer.length - total ) ) > 0 )
+            total += read;
+        return total;
+    }
+
+    private static String toHex( byte[] bytes )
+    {
+        char[] chars = new char[bytes.length * 2];
+        for( int i = 0; i < bytes.length; i++ )
+        {
+            chars[i * 2] = HEX_DIGITS[( bytes[i] >> 4 ) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String( chars );
+    }
+}
@@ -29,9 +29,11 @@ import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.graphics.drawable.BitmapDrawable;
 import android.hardware.SensorManager;
+import android.hardware.input.InputManager;
 import android.media.AudioManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentManager;
@@ -54,6 +56,7 @@ import android.view.Window;
 import android.view.WindowManager.LayoutParams;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.FrameLayout;
+import android.widget.TextView;
 
 import com.bda.controller.Controller;
 
@@ -66,6 +69,7 @@ import paulscode.android.mupen64plusae.ActivityHelper;
 import paulscode.android.mupen64plusae.DrawerDrawable;
 import paulscode.android.mupen64plusae.GameSidebar;
 import paulscode.android.mupen64plusae.GameSidebar.GameSidebarActionHandler;
+import paulscode.android.mupen64plusae.cheat.CheatProvider;
 import paulscode.android.mupen64plusae.dialog.ConfirmationDialog.PromptConfirmListener;
 import paulscode.android.mupen64plusae.dialog.Prompt;
 import paulscode.android.mupen64plusae.dialog.Prompt.PromptIntegerListener;
@@ -81,16 +85,20 @@ import paulscode.android.mupen64plusae.input.provider.KeyProvider.ImeFormula;
 import paulscode.android.mupen64plusae.input.provider.MogaProvider;
 import paulscode.android.mupen64plusae.jni.CoreFragment;
 import paulscode.android.mupen64plusae.jni.CoreFragment.CoreEventListener;
-import paulscode.android.mupen64plusae.jni.NativeImports.OnFpsChangedListener;
+import paulscode.android.mupen64plusae.jni.CoreWarmupService;
+import paulscode.android.mupen64plusae.jni.FrameStats.OnFpsChangedListener;
+import paulscode.android.mupen64plusae.jni.PerformanceTelemetry;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GamePrefs;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.persistent.GamePrefs.PakType;
 import paulscode.android.mupen64plusae.profile.ControllerProfile;
 import paulscode.android.mupen64plusae.util.CountryCode;
 import paulscode.android.mupen64plusae.util.LocaleContextWrapper;
 import paulscode.android.mupen64plusae.util.Notifier;
 import paulscode.android.mupen64plusae.util.RomDatabase;
+import paulscode.android.mupen64plusae.util.StartupTrace;
 
 import static paulscode.android.mupen64plusae.ActivityHelper.Keys.ROM_PATH;
 import static paulscode.android.mupen64plusae.persistent.GlobalPrefs.DEFAULT_LOCALE_OVERRIDE;
@@ -140,6 +148,8 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
     private GameDrawerLayout mDrawerLayout;
     private GameSidebar mGameSidebar;
     private SurfaceView mSurfaceView;
+    private TextView mStatsPanel;
+    private final StringBuilder mStatsText = new StringBuilder();
 
     // Input resources
     private VisibleTouchMap mTouchscreenMap;
@@ -180,6 +190,14 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
 
     private boolean mScreenOrientationSet = false;
 
+    // True while the save to load and the cheats are prepared for the first start of the core
+    private boolean mIsPreparingCore = false;
+
+    // Launch time and whether the native libraries were loaded before this activity started,
+    // used to report the launch to first frame time
+    private long mLaunchTime = 0;
+    private boolean mIsWarmStart = false;
+
     @Override
     protected void attachBaseContext(Context newBase) {
 
@@ -235,6 +253,7 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
     @Override
     public void onCreate(Bundle savedInstanceState) {
         Log.i("GameActivity", "onCreate");
+        final long createStart = StartupTrace.now();
         super.onCreate(savedInstanceState);
         super.setTheme( androidx.appcompat.R.style.Theme_AppCompat_NoActionBar );
 
@@ -280,11 +299,17 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         if( TextUtils.isEmpty( mRomPath ) || TextUtils.isEmpty( mRomMd5 ) )
             finish();
 
+        if( savedInstanceState == null )
+        {
+            mLaunchTime = extras.getLong( ActivityHelper.Keys.LAUNCH_TIME, 0 );
+            mIsWarmStart = CoreWarmupService.isWarm();
+        }
+
         // Initialize MOGA controller API
         MogaHack.init( mMogaController, this );
 
         // Get app data and user preferences
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
 
         //Allow volume keys to control media volume if they are not mapped
 
@@ -293,8 +318,14 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
             this.setVolumeControlStream(AudioManager.STREAM_MUSIC);
         }
 
+        // Not shared through PrefsCache, GameDataManager may switch its data directory
+        final long gamePrefsStart = StartupTrace.now();
         mGamePrefs = new GamePrefs( this, mRomMd5, mRomCrc, mRomHeaderName, mRomGoodName,
             CountryCode.getCountryCode(mRomCountryCode).toString(), mAppData, mGlobalPrefs, mRomLegacySave );
+        StartupTrace.record( "GamePrefs", gamePrefsStart );
+
+        // Load the plugins of this game while the surface is being created
+        ActivityHelper.startCoreWarmupService( this, mAppData, mGlobalPrefs, mGamePrefs );
 
         mGameDataManager = new GameDataManager(mGlobalPrefs, mGamePrefs, mGlobalPrefs.maxAutoSaves);
         mGameDataManager.makeDirs();
@@ -333,6 +364,7 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         mOverlay = findViewById(R.id.gameOverlay);
         mDrawerLayout = findViewById(R.id.drawerLayout);
         mGameSidebar = findViewById(R.id.gameSidebar);
+        mStatsPanel = findViewById(R.id.gameStats);
 
         // Don't darken the game screen when the drawer is open
         mDrawerLayout.setScrimColor(0x0);
@@ -420,12 +452,15 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         if( mGamePrefs.isTouchscreenEnabled || mGlobalPrefs.isFpsEnabled )
         {
             // The touch map and overlay are needed to display frame rate and/or controls
+            final long touchMapStart = StartupTrace.now();
             mTouchscreenMap = new VisibleTouchMap( this.getResources() );
             mTouchscreenMap.load( mGlobalPrefs.touchscreenSkinPath, mGamePrefs.touchscreenProfile,
                     mGlobalPrefs.isTouchscreenAnimated, mGlobalPrefs.isFpsEnabled, mGlobalPrefs.fpsXPosition,
                     mGlobalPrefs.fpsYPosition, mGlobalPrefs.touchscreenScale, mGlobalPrefs.touchscreenTransparency );
+            StartupTrace.record( "Load touch map", touchMapStart );
             mOverlay.initialize(mTouchscreenMap, !mGamePrefs.isTouchscreenHidden, mGlobalPrefs.isFpsEnabled,
-                    mGamePrefs.isAnalogHiddenWhenSensor, mGlobalPrefs.isTouchscreenAnimated);
+                    mGamePrefs.isAnalogHiddenWhenSensor, mGlobalPrefs.isTouchscreenAnimated,
+                    mGlobalPrefs.isTouchscreenLayered);
         }
 
         // Initialize user interface devices
@@ -443,11 +478,19 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
 
         if(mGlobalPrefs.touchscreenAutoHideEnabled)
             mHandler.postDelayed(mPeriodicChecker, 500);
+
+        StartupTrace.record( "GameActivity.onCreate", createStart );
     }
 
     @Override
     public void onFpsChanged(int newValue)
     {
+        if (mLaunchTime != 0) {
+            Log.i("GameActivity", "Launch to first frame: " + (SystemClock.elapsedRealtime() - mLaunchTime) +
+                    " ms, " + (mIsWarmStart ? "warm" : "cold") + " start");
+            mLaunchTime = 0;
+        }
+
         // Set the screen orientation the first time there is a screen update
         if (mGlobalPrefs.displayOrientation == -1 && !mScreenOrientationSet) {
             setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
@@ -562,11 +605,17 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         if(mHandler != null)
         {
             mHandler.removeCallbacks(mPeriodicChecker);
+            mHandler.removeCallbacks(mStatsUpdater);
         }
 
         if (mOverlay != null) {
             mOverlay.onDestroy();
         }
+
+        if (mAxisProvider != null) {
+            final InputManager inputManager = (InputManager) this.getSystemService( Context.INPUT_SERVICE );
+            inputManager.unregisterInputDeviceListener(mAxisProvider);
+        }
     }
 
     @Override
@@ -741,6 +790,17 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         case R.id.menuItem_player_four:
             setPakTypeFromPrompt(4);
             break;
+        case R.id.menuItem_performance_stats:
+            if (mStatsPanel.getVisibility() == View.VISIBLE) {
+                mStatsPanel.setVisibility(View.GONE);
+                mHandler.removeCallbacks(mStatsUpdater);
+                mOverlay.setMeasuring(false);
+            } else {
+                mStatsPanel.setVisibility(View.VISIBLE);
+                mOverlay.setMeasuring(true);
+                mHandler.post(mStatsUpdater);
+            }
+            break;
         case R.id.menuItem_setIme:
             final InputMethodManager imeManager = (InputMethodManager)
                 this.getSystemService(Context.INPUT_METHOD_SERVICE);
@@ -874,11 +934,8 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         {
             mCoreFragment.setSurface(holder.getSurface());
 
-            if (!mCoreFragment.IsInProgress()) {
-                final String latestSave = mGameDataManager.getLatestAutoSave();
-                mCoreFragment.startCore(mAppData, mGlobalPrefs, mGamePrefs, mRomGoodName, mRomPath,
-                        mRomMd5, mRomCrc, mRomHeaderName, mRomCountryCode, mRomArtPath, mRomLegacySave,
-                        mGamePrefs.getCheatArgs(), mDoRestart, latestSave);
+            if (!mCoreFragment.IsInProgress() && !mIsPreparingCore) {
+                prepareAndStartCore();
             }
 
             // Try running now in case the core service has already started
@@ -888,6 +945,46 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         }
     }
 
+    /**
+     * Finds the auto save to load and the cheats off the UI thread, finding the auto save may
+     * have to wait for a compaction or rebuild a chunked save, then starts the core.
+     */
+    private void prepareAndStartCore()
+    {
+        mIsPreparingCore = true;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long phaseStart = StartupTrace.now();
+                final String latestSave = mGameDataManager.getLatestAutoSave();
+                StartupTrace.record("Find auto save", phaseStart);
+
+                // The core only gets the cheat section of this game
+                phaseStart = StartupTrace.now();
+                final String cheatArgs = new CheatProvider(mAppData.mupencheat_default, mGlobalPrefs.customCheats_txt)
+                        .prepareCoreCheats(mRomCrc, mRomCountryCode, mGamePrefs.getCheatArgs(), mAppData.mupencheat_txt);
+                StartupTrace.record("Prepare cheats", phaseStart);
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mIsPreparingCore = false;
+
+                        if (isFinishing() || mCoreFragment == null) {
+                            return;
+                        }
+
+                        mCoreFragment.startCore(mAppData, mGlobalPrefs, mGamePrefs, mRomGoodName, mRomPath,
+                                mRomMd5, mRomCrc, mRomHeaderName, mRomCountryCode, mRomArtPath, mRomLegacySave,
+                                cheatArgs, mDoRestart, latestSave);
+                        tryRunning();
+                    }
+                });
+            }
+        }, "PrepareCore").start();
+    }
+
     @Override
     public void surfaceDestroyed( SurfaceHolder holder )
     {
@@ -1146,6 +1243,8 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
                 mGlobalPrefs.unmappableKeyCodes );
         final MogaProvider mogaProvider = new MogaProvider( mMogaController );
         mAxisProvider = new AxisProvider();
+        final InputManager inputManager = (InputManager) this.getSystemService( Context.INPUT_SERVICE );
+        inputManager.registerInputDeviceListener( mAxisProvider, null );
 
         // Request focus for proper listening
         inputSource.requestFocus();
@@ -1209,6 +1308,26 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         finishActivity();
     }
 
+    //Refreshes the performance stats panel every 500ms while it's visible
+    Runnable mStatsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            final PerformanceTelemetry telemetry = mCoreFragment != null ? mCoreFragment.getPerformanceTelemetry() : null;
+
+            if (telemetry != null) {
+                telemetry.sample();
+                mStatsText.setLength(0);
+                telemetry.appendSummary(mStatsText);
+                mOverlay.appendStats(mStatsText);
+                mStatsPanel.setText(mStatsText);
+            }
+
+            if (mStatsPanel.getVisibility() == View.VISIBLE) {
+                mHandler.postDelayed(mStatsUpdater, 500);
+            }
+        }
+    };
+
     //Checks a few things every 500ms
     Runnable mPeriodicChecker = new Runnable() {
         @Override
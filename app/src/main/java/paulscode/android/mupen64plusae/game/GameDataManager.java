@@ -7,13 +7,16 @@ import java.io.FileFilter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import paulscode.android.mupen64plusae.jni.CoreService;
 import paulscode.android.mupen64plusae.persistent.GamePrefs;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.StorageIndex;
 import paulscode.android.mupen64plusae.util.FileUtil;
 
 public class GameDataManager
@@ -28,6 +31,9 @@ public class GameDataManager
     private static final String sMatcherString = "^\\d\\d\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d\\..*sav$";
     private static final String sDefaultString = "yyyy-mm-dd-hh-mm-ss.sav";
 
+    //Compactions run one at a time, in the order they were requested
+    private static final ExecutorService sCompactExecutor = Executors.newSingleThreadExecutor();
+
     GameDataManager(GlobalPrefs globalPrefs, GamePrefs gamePrefs, int maxAutoSaves)
     {
         mGlobalPrefs = globalPrefs;
@@ -38,46 +44,20 @@ public class GameDataManager
 
     String getLatestAutoSave()
     {
-        final List<String> result = new ArrayList<>();
-        final File savePath = new File(mAutoSavePath);
-
-        //Only find files that end with .sav
-        final FileFilter fileFilter = new FileFilter(){
-
-            @Override
-            public boolean accept(File pathname)
-            {
-                //It must match this format "yyyy-MM-dd-HH-mm-ss"
-                final String fileName = pathname.getName();
-                return fileName.matches(sMatcherString);
-            }
-
-        };
-
-        final File[] fileList = savePath.listFiles(fileFilter);
-
-        //Add all files found
-        if(fileList != null)
+        final String latestSave = getAutoSaveStore().getLatest();
+        if(latestSave != null)
         {
-            for( final File file : fileList )
-            {
-                //Do not attempt to load states that are missing a corresponding ".complete" file
-                //but only check for .complete if it's a V2 file
-                File completeFile = new File(file.getPath() + "." + CoreService.COMPLETE_EXTENSION);
-                if(!file.getPath().contains(V2) || completeFile.exists())
-                {
-                    result.add( file.getPath() );
-                }
-            }
+            return latestSave;
         }
 
-        //Sort by file name
-        Collections.sort(result);
+        //Saves written before the index existed are only found by listing the directory
+        final List<File> completeSaves = new ArrayList<>();
+        listAutoSaves(new File(mAutoSavePath), completeSaves, null);
 
         String resultValue;
-        if(result.size() > 0)
+        if(completeSaves.size() > 0)
         {
-            resultValue = result.get(result.size()-1);
+            resultValue = completeSaves.get(completeSaves.size()-1).getPath();
         }
         else
         {
@@ -85,59 +65,90 @@ public class GameDataManager
             resultValue = mAutoSavePath + sDefaultString;
         }
 
-        //Grab the last file
         return resultValue;
     }
 
     void clearOldest()
     {
-        final List<File> result = new ArrayList<>();
-        final File savePath = new File(mAutoSavePath);
+        final AutoSaveStore store = getAutoSaveStore();
+        final List<File> completeSaves = new ArrayList<>();
+        final List<File> partialSaves = new ArrayList<>();
+        listAutoSaves(new File(mAutoSavePath), completeSaves, partialSaves);
 
-        if(savePath.listFiles() != null && savePath.listFiles().length != 0)
-        {
-            //Only find files that match the matcher string
-            final FileFilter fileFilter = new FileFilter(){
+        //The core rewrote SRAM and caches in place, the next storage refresh measures them again
+        StorageIndex.markChanged(mGlobalPrefs, mGamePrefs);
 
-                @Override
-                public boolean accept(File pathname)
-                {
-                    //It must match this format "yyyy-MM-dd-HH-mm-ss"
-                    final String fileName = pathname.getName();
-                    return fileName.matches(sMatcherString);
-                }
+        //Chunking reads and hashes whole states, keep it off the UI thread
+        sCompactExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                store.compact(mMaxAutoSave, completeSaves, partialSaves);
+            }
+        });
+    }
 
-            };
+    /**
+     * Drops the oldest auto saves of a game, for games other than the one being played
+     *
+     * @param autoSaveDir The auto save directory of the game
+     * @param maxAutoSaves The number of auto saves to keep
+     */
+    public static void compactAutoSaves(File autoSaveDir, int maxAutoSaves)
+    {
+        final List<File> completeSaves = new ArrayList<>();
+        final List<File> partialSaves = new ArrayList<>();
+        listAutoSaves(autoSaveDir, completeSaves, partialSaves);
+        new AutoSaveStore(autoSaveDir).compact(maxAutoSaves, completeSaves, partialSaves);
+    }
 
-            //Add all files found
-            Collections.addAll(result, savePath.listFiles(fileFilter) );
+    /**
+     * Lists the auto saves written by the core that are still stored as whole files, sorted by name
+     */
+    private static void listAutoSaves(File savePath, List<File> completeSaves, List<File> partialSaves)
+    {
 
-            //Sort by file name
-            Collections.sort(result);
+        //Only find files that end with .sav
+        final FileFilter fileFilter = new FileFilter(){
 
-            while(result.size() > mMaxAutoSave)
+            @Override
+            public boolean accept(File pathname)
             {
-                Log.i("GameDataManager", "Deleting old autosave file: " + result.get(0).getName());
-                File theResult = result.get(0);
+                //It must match this format "yyyy-MM-dd-HH-mm-ss"
+                final String fileName = pathname.getName();
+                return fileName.matches(sMatcherString);
+            }
 
-                if(!theResult.isDirectory())
-                {
-                    boolean deleteResult = theResult.delete();
+        };
 
-                    //Also remove the corresponding ".complete" file
-                    String completeFile = theResult.getAbsolutePath();
-                    completeFile = completeFile + "." + CoreService.COMPLETE_EXTENSION;
-                    deleteResult = deleteResult && new File(completeFile).delete();
+        final File[] fileList = savePath.listFiles(fileFilter);
 
-                    if (!deleteResult) {
-                        Log.w("GameDataManager", "Unable to delete autosave file: " + result.get(0).getName());
-                    }
+        if(fileList != null)
+        {
+            //Sort by file name
+            Arrays.sort(fileList);
+
+            for( final File file : fileList )
+            {
+                //Do not attempt to load states that are missing a corresponding ".complete" file
+                //but only check for .complete if it's a V2 file
+                File completeFile = new File(file.getPath() + "." + CoreService.COMPLETE_EXTENSION);
+                if(!file.getPath().contains(V2) || completeFile.exists())
+                {
+                    completeSaves.add(file);
+                }
+                else if(partialSaves != null)
+                {
+                    partialSaves.add(file);
                 }
-                result.remove(0);
             }
         }
     }
 
+    private AutoSaveStore getAutoSaveStore()
+    {
+        return new AutoSaveStore(new File(mAutoSavePath));
+    }
+
     String getAutoSaveFileName()
     {
         final DateFormat dateFormat = new SimpleDateFormat(sFormatString, java.util.Locale.getDefault());
@@ -22,17 +22,30 @@ package paulscode.android.mupen64plusae.game;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.os.Handler;
 import android.util.AttributeSet;
-import android.view.View;
+import android.view.MotionEvent;
+import android.widget.FrameLayout;
+
+import java.util.Locale;
 
 import paulscode.android.mupen64plusae.input.TouchController;
 import paulscode.android.mupen64plusae.input.map.TouchMap;
 import paulscode.android.mupen64plusae.input.map.VisibleTouchMap;
-import paulscode.android.mupen64plusae.jni.NativeImports.OnFpsChangedListener;
+import paulscode.android.mupen64plusae.jni.FrameStats.OnFpsChangedListener;
 import paulscode.android.mupen64plusae.util.DeviceUtil;
 
-public class GameOverlay extends View implements TouchController.OnStateChangedListener, OnFpsChangedListener
+/**
+ * Draws the virtual gamepad and the FPS indicator over the game.
+ *
+ * The overlay either draws everything itself whenever anything changes, or draws each part of the
+ * gamepad in its own {@link OverlayLayer}. Layers are only drawn again when their content changes,
+ * fading the gamepad and moving the analog stick just update view properties, so the per frame
+ * cost stays small whatever the refresh rate. The layered renderer is meant for the game, the
+ * touchscreen profile editor moves buttons around and uses the simple one.
+ */
+public class GameOverlay extends FrameLayout implements TouchController.OnStateChangedListener, OnFpsChangedListener
 {
     private VisibleTouchMap mTouchMap;
     private boolean mDrawingEnabled = true;
@@ -42,21 +55,176 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
     private int mHatRefreshCount = 0;
     private double mCurrentAlpha = 1.0;
     private boolean mHiding = false;
+
+    /** The parts of the gamepad drawn in their own views, null if the overlay draws everything. */
+    private OverlayLayer[] mLayers = null;
+    private final Rect mAnalogBackFrame = new Rect();
+    private final Rect mAnalogForeFrame = new Rect();
+
+    /** Draw time measurement, shown in the performance stats panel. */
+    private boolean mMeasuring = false;
+    private int mStatsUpdates = 0;
+    private int mStatsDraws = 0;
+    private long mStatsDrawNs = 0;
+    private long mStatsMaxDrawNs = 0;
     
     public GameOverlay(Context context, AttributeSet attribs )
     {
         super( context, attribs );
+        setWillNotDraw( false );
         requestFocus();
     }
     
     public void initialize(VisibleTouchMap touchMap, boolean drawingEnabled, boolean fpsEnabled,
-                           boolean isAnalogHiddenWhenSensor, boolean joystickAnimated )
+                           boolean isAnalogHiddenWhenSensor, boolean joystickAnimated, boolean layered )
     {
         mTouchMap = touchMap;
         mDrawingEnabled = drawingEnabled;
         mFpsEnabled = fpsEnabled;
         mIsAnalogHiddenWhenSensor = isAnalogHiddenWhenSensor;
         mHatRefreshPeriod = joystickAnimated ? 3 : 0;
+
+        removeAllViews();
+        mLayers = null;
+        if( layered )
+        {
+            mLayers = new OverlayLayer[OverlayLayer.FPS + 1];
+            for( int part = 0; part < mLayers.length; part++ )
+            {
+                mLayers[part] = new OverlayLayer( getContext(), this, part );
+                addView( mLayers[part], new LayoutParams( LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT ) );
+            }
+
+            for( int part = OverlayLayer.BUTTONS; part < OverlayLayer.FPS; part++ )
+                mLayers[part].setVisibility( drawingEnabled ? VISIBLE : GONE );
+            mLayers[OverlayLayer.FPS].setVisibility( fpsEnabled ? VISIBLE : GONE );
+
+            // Moving the stick doesn't redraw anything, follow every update
+            if( joystickAnimated )
+                mHatRefreshPeriod = 1;
+        }
+    }
+
+    /**
+     * Starts or stops measuring the time spent drawing the overlay.
+     */
+    public void setMeasuring( boolean measuring )
+    {
+        mMeasuring = measuring;
+        resetStats();
+    }
+
+    /**
+     * Appends the overlay draw time since the last call, for the performance stats panel. This is
+     * the time the UI thread spends drawing, composition happens later on the render thread.
+     *
+     * @param builder The builder to append to, it is not cleared.
+     */
+    public void appendStats( StringBuilder builder )
+    {
+        if( !mMeasuring || mTouchMap == null )
+            return;
+
+        builder.append( String.format( Locale.US, "\nOverlay (%s): %d updates, %d draws, avg %.3f ms, max %.3f ms",
+                mLayers != null ? "layers" : "canvas", mStatsUpdates, mStatsDraws,
+                mStatsDraws == 0 ? 0.0 : mStatsDrawNs / 1e6 / mStatsDraws, mStatsMaxDrawNs / 1e6 ) );
+        resetStats();
+    }
+
+    private void resetStats()
+    {
+        mStatsUpdates = 0;
+        mStatsDraws = 0;
+        mStatsDrawNs = 0;
+        mStatsMaxDrawNs = 0;
+    }
+
+    private void countUpdate()
+    {
+        if( mMeasuring )
+            mStatsUpdates++;
+    }
+
+    private void countDraw( long startNs )
+    {
+        if( mMeasuring )
+        {
+            final long drawNs = System.nanoTime() - startNs;
+            mStatsDraws++;
+            mStatsDrawNs += drawNs;
+            mStatsMaxDrawNs = Math.max( mStatsMaxDrawNs, drawNs );
+        }
+    }
+
+    /**
+     * Redraws the given layer, or the whole overlay if it draws everything itself.
+     */
+    private void invalidateLayer( int part )
+    {
+        countUpdate();
+        if( mLayers != null )
+            mLayers[part].invalidate();
+        else
+            postInvalidate();
+    }
+
+    /**
+     * Draws a part of the gamepad, called by the layers.
+     *
+     * @return The bounds of the analog stick part drawn, null for other parts.
+     */
+    Rect drawLayer( Canvas canvas, int part )
+    {
+        if( mTouchMap == null )
+            return null;
+
+        final long start = mMeasuring ? System.nanoTime() : 0;
+        Rect frame = null;
+        switch( part )
+        {
+            case OverlayLayer.BUTTONS:
+                mTouchMap.drawButtons( canvas );
+                break;
+            case OverlayLayer.AUTO_HOLD:
+                mTouchMap.drawAutoHold( canvas );
+                break;
+            case OverlayLayer.ANALOG_BACK:
+                frame = mTouchMap.drawAnalogBack( canvas );
+                break;
+            case OverlayLayer.ANALOG_FORE:
+                frame = mTouchMap.drawAnalogFore( canvas );
+                break;
+            case OverlayLayer.FPS:
+                mTouchMap.drawFps( canvas );
+                break;
+        }
+        countDraw( start );
+        return frame;
+    }
+
+    /**
+     * Fades the gamepad, the FPS indicator is not affected.
+     */
+    private void setControlsAlpha( double alpha )
+    {
+        if( mLayers != null )
+        {
+            countUpdate();
+            for( int part = OverlayLayer.BUTTONS; part < OverlayLayer.FPS; part++ )
+                mLayers[part].setAlpha( (float) Math.max( 0.0, Math.min( alpha, 1.0 ) ) );
+        }
+        else
+        {
+            mTouchMap.setTouchControllerAlpha( alpha );
+            invalidateLayer( OverlayLayer.BUTTONS );
+        }
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent( MotionEvent event )
+    {
+        // The layers only draw, touches are handled by the listener of the overlay
+        return mLayers != null || super.onInterceptTouchEvent( event );
     }
     
     @Override
@@ -75,7 +243,17 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
             if( mHatRefreshCount % mHatRefreshPeriod == 0 && mTouchMap != null
                     && mTouchMap.updateAnalog( axisFractionX, axisFractionY ) )
             {
-                postInvalidate();
+                if( mLayers != null && mTouchMap.getAnalogFrames( mAnalogBackFrame, mAnalogForeFrame ) )
+                {
+                    // Input events arrive on the UI thread, move the stick without drawing it
+                    countUpdate();
+                    mLayers[OverlayLayer.ANALOG_BACK].moveTo( mAnalogBackFrame );
+                    mLayers[OverlayLayer.ANALOG_FORE].moveTo( mAnalogForeFrame );
+                }
+                else
+                {
+                    invalidateLayer( OverlayLayer.ANALOG_FORE );
+                }
             }
         }
     }
@@ -86,16 +264,16 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
         // Update the AutoHold mask, and redraw if required
         if( mTouchMap != null && mTouchMap.updateAutoHold( autoHold , index) )
         {
-            postInvalidate();
+            invalidateLayer( OverlayLayer.AUTO_HOLD );
         }
     }
     
     @Override
     public void onFpsChanged( int fps )
     {
-        // Update the FPS indicator assets, and redraw if required
+        // Update the FPS indicator assets, and redraw if required. This is called from the UI thread.
         if( mTouchMap != null && mTouchMap.updateFps( fps ) )
-            postInvalidate();
+            invalidateLayer( OverlayLayer.FPS );
     }
     
     @Override
@@ -105,14 +283,26 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
         if( mTouchMap != null )
             mTouchMap.resize( w, h, DeviceUtil.getDisplayMetrics( this ) );
         super.onSizeChanged( w, h, oldw, oldh );
+
+        // Everything moved, draw the layers again in place
+        if( mLayers != null )
+        {
+            for( OverlayLayer layer : mLayers )
+            {
+                layer.setTranslationX( 0 );
+                layer.setTranslationY( 0 );
+                layer.invalidate();
+            }
+        }
     }
     
     @Override
     protected void onDraw( Canvas canvas )
     {
-        if( mTouchMap == null || canvas == null )
+        if( mTouchMap == null || canvas == null || mLayers != null )
             return;
         
+        final long start = mMeasuring ? System.nanoTime() : 0;
         if( mDrawingEnabled )
         {
             // Redraw the static buttons
@@ -130,12 +320,15 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
             // Redraw the dynamic frame rate info
             mTouchMap.drawFps( canvas );
         }
+        countDraw( start );
     }
 
     @Override
     public void onSensorEnabled(boolean sensorEnabled) {
         if (mTouchMap != null && mIsAnalogHiddenWhenSensor) {
             mTouchMap.setAnalogEnabled(!sensorEnabled);
+            invalidateLayer(OverlayLayer.ANALOG_BACK);
+            invalidateLayer(OverlayLayer.ANALOG_FORE);
         }
         onAutoHold(sensorEnabled, TouchMap.TOGGLE_SENSOR);
     }
@@ -146,15 +339,16 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
         public void run() {
             if(mCurrentAlpha < 1.0) {
                 if (mTouchMap != null) {
-                    mTouchMap.setTouchControllerAlpha(mCurrentAlpha);
-                    postInvalidate();
+                    setControlsAlpha(mCurrentAlpha);
                     mCurrentAlpha += 0.032;
                 }
                 mHandler.postDelayed(mShowTouchscreen, 16);
 
             } else {
                 // Show touch controls
-                if( mTouchMap != null && mTouchMap.showTouchController() )
+                if( mLayers != null )
+                    setControlsAlpha( 1.0 );
+                else if( mTouchMap != null && mTouchMap.showTouchController() )
                     postInvalidate();
             }
         }
@@ -176,15 +370,16 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
         public void run() {
             if(mCurrentAlpha > 0) {
                 if (mTouchMap != null) {
-                    mTouchMap.setTouchControllerAlpha(mCurrentAlpha);
-                    postInvalidate();
+                    setControlsAlpha(mCurrentAlpha);
                     mCurrentAlpha -= 0.016;
                 }
                 mHandler.postDelayed(mHideTouchscreen, 16);
 
             } else {
                 // Hide touch controls
-                if( mTouchMap != null && mTouchMap.hideTouchController() )
+                if( mLayers != null )
+                    setControlsAlpha( 0.0 );
+                else if( mTouchMap != null && mTouchMap.hideTouchController() )
                     postInvalidate();
             }
         }
@@ -0,0 +1,99 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.game;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.View;
+
+/**
+ * One part of the virtual gamepad drawn by {@link GameOverlay} in its own view. With hardware
+ * acceleration each view keeps its drawing in a display list, so fading the gamepad or moving the
+ * analog stick only changes the alpha and translation of the view, nothing is drawn again.
+ */
+class OverlayLayer extends View
+{
+    static final int BUTTONS = 0;
+    static final int AUTO_HOLD = 1;
+    static final int ANALOG_BACK = 2;
+    static final int ANALOG_FORE = 3;
+    static final int FPS = 4;
+
+    private final GameOverlay mOverlay;
+    private final int mPart;
+
+    /** Where the part was when it was last drawn, offset by the translation of the view then. */
+    private int mOriginX = 0;
+    private int mOriginY = 0;
+
+    OverlayLayer( Context context, GameOverlay overlay, int part )
+    {
+        super( context );
+        mOverlay = overlay;
+        mPart = part;
+        setFocusable( false );
+        setClickable( false );
+
+        // The buttons never change, keep them in a texture that alpha changes only recomposite
+        if( part == BUTTONS )
+            setLayerType( LAYER_TYPE_HARDWARE, null );
+    }
+
+    /**
+     * Moves the part to a new position without drawing it again.
+     *
+     * @param frame The new bounds of the part, in pixels.
+     */
+    void moveTo( Rect frame )
+    {
+        setTranslationX( frame.left - mOriginX );
+        setTranslationY( frame.top - mOriginY );
+    }
+
+    @Override
+    public boolean hasOverlappingRendering()
+    {
+        // Single images can be faded without an offscreen buffer
+        return mPart == BUTTONS || mPart == AUTO_HOLD || mPart == FPS;
+    }
+
+    @Override
+    protected void onDraw( Canvas canvas )
+    {
+        if( mPart == ANALOG_BACK || mPart == ANALOG_FORE )
+        {
+            // Draw at the current position of the part whatever the translation of the view
+            final int translationX = (int) getTranslationX();
+            final int translationY = (int) getTranslationY();
+            canvas.translate( -translationX, -translationY );
+
+            final Rect frame = mOverlay.drawLayer( canvas, mPart );
+            if( frame != null )
+            {
+                mOriginX = frame.left - translationX;
+                mOriginY = frame.top - translationY;
+            }
+        }
+        else
+        {
+            mOverlay.drawLayer( canvas, mPart );
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ * 
+ * Copyright (C) 2013 Paul Lamb
+ * 
+ * This file is part of Mupen64PlusAE.
+ * 
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Authors: littleguy77
+ */
+package paulscode.android.mupen64plusae.input;
+
+/**
+ * The deadzone and sensitivity of an analog stick, resolved once when the controller is created.
+ * The two axes are combined radially, so the deadzone is a circle around the center.
+ */
+final class AnalogStick
+{
+    /** The analog deadzone, between 0 and 1, inclusive. */
+    private final float mDeadzoneFraction;
+
+    /** The square of the analog deadzone, compared against the squared stick magnitude. */
+    private final float mDeadzoneFractionSquared;
+
+    /** The factor that rescales magnitudes past the deadzone back to [0,1]. */
+    private final float mDeadzoneScale;
+
+    /** The analog sensitivity, the amount by which to scale stick values, nominally 1. */
+    private final float mSensitivityFractionX;
+    private final float mSensitivityFractionY;
+
+    /** The stick position computed by the last {@link #apply}, each between -1 and 1. */
+    float x = 0;
+    float y = 0;
+
+    /**
+     * @param deadzone     The analog deadzone in percent.
+     * @param sensitivityX The analog X sensitivity in percent.
+     * @param sensitivityY The analog Y sensitivity in percent.
+     */
+    AnalogStick( int deadzone, int sensitivityX, int sensitivityY )
+    {
+        mDeadzoneFraction = ( (float) deadzone ) / 100f;
+        mDeadzoneFractionSquared = mDeadzoneFraction * mDeadzoneFraction;
+        mDeadzoneScale = 1f / ( 1f - mDeadzoneFraction );
+        mSensitivityFractionX = ( (float) sensitivityX ) / 100f;
+        mSensitivityFractionY = ( (float) sensitivityY ) / 100f;
+    }
+
+    /**
+     * Computes the stick position.
+     *
+     * @param strengthX The net strength of the X axis, right is positive.
+     * @param strengthY The net strength of the Y axis, up is positive.
+     */
+    void apply( float strengthX, float strengthY )
+    {
+        float rawX = mSensitivityFractionX * strengthX;
+        float rawY = mSensitivityFractionY * strengthY;
+        float magnitudeSquared = ( rawX * rawX ) + ( rawY * rawY );
+
+        if( magnitudeSquared > mDeadzoneFractionSquared )
+        {
+            float magnitude = (float) Math.sqrt( magnitudeSquared );
+
+            // Rescale strength to account for deadzone, and normalize the vector
+            float scaled = Math.min( Math.max( ( magnitude - mDeadzoneFraction ) * mDeadzoneScale, 0f ), 1f );
+            float scale = scaled / magnitude;
+            x = rawX * scale;
+            y = rawY * scale;
+        }
+        else
+        {
+            // In the deadzone
+            x = 0;
+            y = 0;
+        }
+    }
+}
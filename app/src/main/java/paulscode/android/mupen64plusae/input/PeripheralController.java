@@ -33,7 +33,6 @@ import paulscode.android.mupen64plusae.input.map.InputMap;
 import paulscode.android.mupen64plusae.input.map.PlayerMap;
 import paulscode.android.mupen64plusae.input.provider.AbstractProvider;
 import paulscode.android.mupen64plusae.jni.CoreFragment;
-import paulscode.android.mupen64plusae.util.Utility;
 
 /**
  * A class for generating N64 controller commands from peripheral hardware (gamepads, joysticks,
@@ -53,12 +52,8 @@ public class PeripheralController extends AbstractController implements
     /** The map from input codes to entries w/ the N64 command index. */
     private final SparseArray<InputEntry> mEntryMap = new SparseArray<InputEntry>();
     
-    /** The analog deadzone, between 0 and 1, inclusive. */
-    private final float mDeadzoneFraction;
-    
-    /** The analog sensitivity, the amount by which to scale stick values, nominally 1. */
-    private final float mSensitivityFractionX;
-    private final float mSensitivityFractionY;
+    /** The analog deadzone and sensitivity. */
+    private final AnalogStick mStick;
     
     /** The state change listener. */
     private final OnStateChangedListener mListener;
@@ -109,9 +104,7 @@ public class PeripheralController extends AbstractController implements
         
         // Assign the maps
         mPlayerMap = playerMap;
-        mDeadzoneFraction = ( (float) inputDeadzone ) / 100f;
-        mSensitivityFractionX = ( (float) inputSensitivityX ) / 100f;
-        mSensitivityFractionY = ( (float) inputSensitivityY ) / 100f;
+        mStick = new AnalogStick( inputDeadzone, inputSensitivityX, inputSensitivityY );
         mListener = listener;
         mKeyListener = keyListener;
         mSensorController = sensorController;
@@ -225,30 +218,10 @@ public class PeripheralController extends AbstractController implements
                     return false;
             }
             
-            // Calculate the net position of the analog stick
-            float rawX = mSensitivityFractionX * ( mStrengthXpos - mStrengthXneg );
-            float rawY = mSensitivityFractionY * ( mStrengthYpos - mStrengthYneg );
-            float magnitude = (float) Math.sqrt( ( rawX * rawX ) + ( rawY * rawY ) );
-            
-            // Update controller state
-            if( magnitude > mDeadzoneFraction )
-            {
-                // Normalize the vector
-                float normalizedX = rawX / magnitude;
-                float normalizedY = rawY / magnitude;
-
-                // Rescale strength to account for deadzone
-                magnitude = ( magnitude - mDeadzoneFraction ) / ( 1f - mDeadzoneFraction );
-                magnitude = Utility.clamp( magnitude, 0f, 1f );
-                mState.axisFractionX = normalizedX * magnitude;
-                mState.axisFractionY = normalizedY * magnitude;
-            }
-            else
-            {
-                // In the deadzone 
-                mState.axisFractionX = 0;
-                mState.axisFractionY = 0;
-            }
+            // Calculate the net position of the analog stick and update controller state
+            mStick.apply( mStrengthXpos - mStrengthXneg, mStrengthYpos - mStrengthYneg );
+            mState.axisFractionX = mStick.x;
+            mState.axisFractionY = mStick.y;
         } else if(mPlayerNumber == 1) {
             if (keyDown) {
                 switch (n64Index) {
@@ -296,6 +269,10 @@ public class PeripheralController extends AbstractController implements
                         Log.v("PeripheralController", "FUNC_GAMESHARK");
                         mCoreFragment.emuGameShark(true);
                         break;
+                    case InputMap.FUNC_REWIND:
+                        Log.v("PeripheralController", "FUNC_REWIND");
+                        mCoreFragment.rewind(true);
+                        break;
                     case InputMap.FUNC_SIMULATE_BACK: {
                         KeyEvent event = new KeyEvent(KeyEvent.ACTION_DOWN, 0);
                         mKeyListener.onKey(null, KeyEvent.KEYCODE_BACK, event);
@@ -341,6 +318,10 @@ public class PeripheralController extends AbstractController implements
                         Log.v("PeripheralController", "FUNC_GAMESHARK");
                         mCoreFragment.emuGameShark(false);
                         break;
+                    case InputMap.FUNC_REWIND:
+                        Log.v("PeripheralController", "FUNC_REWIND");
+                        mCoreFragment.rewind(false);
+                        break;
                     default:
                         return false;
                 }
@@ -0,0 +1,490 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input.map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import paulscode.android.mupen64plusae.util.FileUtil;
+import paulscode.android.mupen64plusae.util.Image;
+
+/**
+ * The images of a touchscreen skin packed into a few large bitmaps, scaled for the screen density
+ * and cached on disk. Loading a skin then decodes one or two bitmaps instead of every button,
+ * mask and FPS digit image, and low density screens keep smaller bitmaps in memory.
+ *
+ * Masks are scaled without filtering so their colors stay exact for hit-testing. Images that
+ * don't fit in a page are left out and loaded from the skin folder as before.
+ */
+public class SkinAtlas
+{
+    private static final String TAG = "SkinAtlas";
+
+    /** Format version of the index file. */
+    private static final int VERSION = 1;
+
+    private static final String INDEX_FILE = "atlas.idx";
+    private static final String PAGE_PREFIX = "page";
+    private static final String IMAGE_EXTENSION = ".png";
+    private static final String MASK_SUFFIX = "-mask";
+
+    /** Largest page dimension, well within the texture size of hardware accelerated canvases. */
+    private static final int MAX_PAGE_SIZE = 2048;
+
+    /** Empty pixels around each image, so filtering doesn't bleed neighbors in. */
+    private static final int PADDING = 2;
+
+    /** The screen density at which skin images are drawn at their own size, see VisibleTouchMap. */
+    private static final float NATIVE_DPI = 260.0f;
+
+    /** Standard density buckets, in dpi. */
+    private static final int[] DENSITY_BUCKETS = { 120, 160, 213, 240, 320, 480, 640 };
+
+    /** Where atlases are cached, null until {@link #init(Context)} is called. */
+    private static File sCacheDir = null;
+
+    /** The last atlas loaded in this process, reused when the same skin is loaded again. */
+    private static SkinAtlas sLastAtlas = null;
+
+    private final String mSkinDir;
+    private final float mScale;
+    private final String mStamp;
+    private final Bitmap[] mPages;
+    private final Map<String, Region> mRegions;
+
+    /** Where an image is in the atlas. */
+    private static class Region
+    {
+        final int page;
+        final Rect source;
+        final int width;
+        final int height;
+
+        Region( int page, Rect source, int width, int height )
+        {
+            this.page = page;
+            this.source = source;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private SkinAtlas( String skinDir, float scale, String stamp, Bitmap[] pages, Map<String, Region> regions )
+    {
+        mSkinDir = skinDir;
+        mScale = scale;
+        mStamp = stamp;
+        mPages = pages;
+        mRegions = regions;
+    }
+
+    /**
+     * Sets up the atlas cache, called once per process.
+     */
+    public static void init( Context context )
+    {
+        sCacheDir = new File( context.getCacheDir(), "skins" );
+    }
+
+    /**
+     * Returns the factor the images of a skin are scaled by in its atlas. Images are never scaled
+     * up, drawing them larger does that at no memory cost.
+     *
+     * @param densityDpi The density of the screen.
+     * @param userScale The scaling factor set by the user.
+     */
+    static float getScale( int densityDpi, float userScale )
+    {
+        // Round up to the density bucket and to a quarter of user scale, so atlases are shared
+        int bucket = DENSITY_BUCKETS[DENSITY_BUCKETS.length - 1];
+        for( int dpi : DENSITY_BUCKETS )
+        {
+            if( dpi >= densityDpi )
+            {
+                bucket = dpi;
+                break;
+            }
+        }
+        final float roundedScale = (float) Math.ceil( userScale * 4.0f ) / 4.0f;
+        return Math.min( 1.0f, bucket / NATIVE_DPI * roundedScale );
+    }
+
+    /**
+     * Returns the atlas of a skin, loading it from the cache or building it.
+     *
+     * @param skinDir The directory containing the skin images.
+     * @param scale The factor the images are scaled by, see {@link #getScale(int, float)}.
+     *
+     * @return The atlas, or null if it can't be built.
+     */
+    static synchronized SkinAtlas get( String skinDir, float scale )
+    {
+        if( sCacheDir == null )
+            return null;
+
+        final File[] sources = listImages( skinDir );
+        if( sources == null || sources.length == 0 )
+            return null;
+
+        final String stamp = getStamp( sources );
+        if( sLastAtlas != null && sLastAtlas.mSkinDir.equals( skinDir ) && sLastAtlas.mScale == scale &&
+                sLastAtlas.mStamp.equals( stamp ) )
+        {
+            return sLastAtlas;
+        }
+
+        final long start = System.currentTimeMillis();
+        final File cacheDir = getCacheDir( skinDir, scale );
+        SkinAtlas atlas = load( cacheDir, skinDir, scale, stamp );
+        if( atlas == null )
+        {
+            atlas = build( sources, skinDir, scale, stamp );
+            if( atlas != null )
+                atlas.save( cacheDir );
+        }
+
+        if( atlas != null )
+        {
+            Log.i( TAG, "Loaded " + atlas.mRegions.size() + " images of " + skinDir + " in " +
+                    atlas.mPages.length + " pages at scale " + scale + " in " +
+                    ( System.currentTimeMillis() - start ) + " ms" );
+        }
+
+        sLastAtlas = atlas;
+        return atlas;
+    }
+
+    /**
+     * Builds the cached atlas of a skin ahead of time if it is missing or out of date, so the
+     * next game start only has to load it.
+     *
+     * @param skinDir The directory containing the skin images.
+     * @param densityDpi The density of the screen.
+     * @param userScale The scaling factor set by the user.
+     */
+    public static void prepare( String skinDir, int densityDpi, float userScale )
+    {
+        get( skinDir, getScale( densityDpi, userScale ) );
+    }
+
+    /**
+     * Gets an image of the skin.
+     *
+     * @param name The name of the image file, without extension.
+     *
+     * @return A new image backed by the atlas, or null if the image isn't in the atlas.
+     */
+    Image getImage( String name )
+    {
+        final Region region = mRegions.get( name );
+        if( region == null )
+            return null;
+
+        return new Image( mPages[region.page], region.source, region.width, region.height );
+    }
+
+    private static File[] listImages( String skinDir )
+    {
+        final File[] files = new File( skinDir ).listFiles( new FilenameFilter()
+        {
+            @Override
+            public boolean accept( File dir, String filename )
+            {
+                return filename.toLowerCase( Locale.US ).endsWith( IMAGE_EXTENSION );
+            }
+        } );
+
+        if( files != null )
+        {
+            Arrays.sort( files );
+        }
+        return files;
+    }
+
+    /**
+     * @return A string that changes whenever an image of the skin is added, removed or modified.
+     */
+    private static String getStamp( File[] sources )
+    {
+        final StringBuilder builder = new StringBuilder();
+        for( File source : sources )
+        {
+            builder.append( source.getName() ).append( ':' ).append( source.length() ).append( ':' )
+                    .append( source.lastModified() ).append( ';' );
+        }
+        return builder.toString();
+    }
+
+    private static File getCacheDir( String skinDir, float scale )
+    {
+        final String name = new File( skinDir ).getName() + "-" + Integer.toHexString( skinDir.hashCode() ) +
+                "-" + Math.round( scale * 100 );
+        return new File( sCacheDir, name );
+    }
+
+    private static String getName( File source )
+    {
+        final String filename = source.getName();
+        return filename.substring( 0, filename.length() - IMAGE_EXTENSION.length() );
+    }
+
+    private static SkinAtlas load( File cacheDir, String skinDir, float scale, String stamp )
+    {
+        final File indexFile = new File( cacheDir, INDEX_FILE );
+        if( !indexFile.isFile() )
+            return null;
+
+        try( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) ) )
+        {
+            if( in.readInt() != VERSION || !in.readUTF().equals( skinDir ) || in.readFloat() != scale ||
+                    !in.readUTF().equals( stamp ) )
+            {
+                return null;
+            }
+
+            final Bitmap[] pages = new Bitmap[in.readInt()];
+            final int count = in.readInt();
+            final Map<String, Region> regions = new HashMap<>( count * 2 );
+            for( int i = 0; i < count; i++ )
+            {
+                final String name = in.readUTF();
+                final int page = in.readInt();
+                final Rect source = new Rect( in.readInt(), in.readInt(), in.readInt(), in.readInt() );
+                regions.put( name, new Region( page, source, in.readInt(), in.readInt() ) );
+            }
+
+            for( int page = 0; page < pages.length; page++ )
+            {
+                pages[page] = BitmapFactory.decodeFile( new File( cacheDir, PAGE_PREFIX + page + IMAGE_EXTENSION ).getPath() );
+                if( pages[page] == null )
+                    return null;
+            }
+
+            return new SkinAtlas( skinDir, scale, stamp, pages, regions );
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Could not read " + indexFile.getPath() + ": " + e.getMessage() );
+            return null;
+        }
+    }
+
+    /** An image being packed. */
+    private static class Entry
+    {
+        final File source;
+        final int width;
+        final int height;
+        final int scaledWidth;
+        final int scaledHeight;
+        int page;
+        int x;
+        int y;
+
+        Entry( File source, int width, int height, float scale )
+        {
+            this.source = source;
+            this.width = width;
+            this.height = height;
+            this.scaledWidth = Math.max( 1, Math.round( width * scale ) );
+            this.scaledHeight = Math.max( 1, Math.round( height * scale ) );
+        }
+    }
+
+    private static SkinAtlas build( File[] sources, String skinDir, float scale, String stamp )
+    {
+        final long start = System.currentTimeMillis();
+
+        // Read the image sizes without decoding them
+        final List<Entry> entries = new ArrayList<>();
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        for( File source : sources )
+        {
+            BitmapFactory.decodeFile( source.getPath(), bounds );
+            if( bounds.outWidth <= 0 || bounds.outHeight <= 0 )
+                continue;
+
+            final Entry entry = new Entry( source, bounds.outWidth, bounds.outHeight, scale );
+            if( entry.scaledWidth + 2 * PADDING <= MAX_PAGE_SIZE && entry.scaledHeight + 2 * PADDING <= MAX_PAGE_SIZE )
+                entries.add( entry );
+        }
+
+        if( entries.isEmpty() )
+            return null;
+
+        // Pack tallest first into rows, starting a new page when a page is full
+        Collections.sort( entries, new Comparator<Entry>()
+        {
+            @Override
+            public int compare( Entry lhs, Entry rhs )
+            {
+                return rhs.scaledHeight - lhs.scaledHeight;
+            }
+        } );
+
+        final List<int[]> pageSizes = new ArrayList<>();
+        int page = 0;
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        int pageWidth = 0;
+        for( Entry entry : entries )
+        {
+            final int width = entry.scaledWidth + 2 * PADDING;
+            final int height = entry.scaledHeight + 2 * PADDING;
+            if( x + width > MAX_PAGE_SIZE )
+            {
+                x = 0;
+                y += rowHeight;
+                rowHeight = 0;
+            }
+            if( y + height > MAX_PAGE_SIZE )
+            {
+                pageSizes.add( new int[] { pageWidth, y } );
+                page++;
+                x = y = rowHeight = pageWidth = 0;
+            }
+
+            entry.page = page;
+            entry.x = x + PADDING;
+            entry.y = y + PADDING;
+            x += width;
+            rowHeight = Math.max( rowHeight, height );
+            pageWidth = Math.max( pageWidth, x );
+        }
+        pageSizes.add( new int[] { pageWidth, y + rowHeight } );
+
+        // Draw the images into the pages, one decoded image at a time
+        final Bitmap[] pages = new Bitmap[pageSizes.size()];
+        final Canvas[] canvases = new Canvas[pages.length];
+        try
+        {
+            for( int i = 0; i < pages.length; i++ )
+            {
+                pages[i] = Bitmap.createBitmap( pageSizes.get( i )[0], pageSizes.get( i )[1], Bitmap.Config.ARGB_8888 );
+                canvases[i] = new Canvas( pages[i] );
+            }
+        }
+        catch( OutOfMemoryError e )
+        {
+            Log.w( TAG, "Not enough memory to build the atlas of " + skinDir );
+            return null;
+        }
+
+        final Paint filtered = new Paint( Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG );
+        final Paint exact = new Paint();
+        final Map<String, Region> regions = new HashMap<>( entries.size() * 2 );
+        for( Entry entry : entries )
+        {
+            final Bitmap bitmap = BitmapFactory.decodeFile( entry.source.getPath() );
+            if( bitmap == null )
+                continue;
+
+            final String name = getName( entry.source );
+            final Rect destination = new Rect( entry.x, entry.y, entry.x + entry.scaledWidth, entry.y + entry.scaledHeight );
+            canvases[entry.page].drawBitmap( bitmap, null, destination, name.endsWith( MASK_SUFFIX ) ? exact : filtered );
+            bitmap.recycle();
+
+            regions.put( name, new Region( entry.page, destination, entry.width, entry.height ) );
+        }
+
+        Log.i( TAG, "Built atlas of " + skinDir + " in " + ( System.currentTimeMillis() - start ) + " ms" );
+        return new SkinAtlas( skinDir, scale, stamp, pages, regions );
+    }
+
+    private void save( File cacheDir )
+    {
+        // The index is written last, a partially written atlas is never loaded
+        final File indexFile = new File( cacheDir, INDEX_FILE );
+        if( indexFile.exists() && !indexFile.delete() )
+            return;
+
+        FileUtil.makeDirs( cacheDir.getPath() );
+
+        for( int page = 0; page < mPages.length; page++ )
+        {
+            final File pageFile = new File( cacheDir, PAGE_PREFIX + page + IMAGE_EXTENSION );
+            try( OutputStream out = new BufferedOutputStream( new FileOutputStream( pageFile ) ) )
+            {
+                mPages[page].compress( Bitmap.CompressFormat.PNG, 100, out );
+            }
+            catch( IOException e )
+            {
+                Log.w( TAG, "Could not write " + pageFile.getPath() + ": " + e.getMessage() );
+                return;
+            }
+        }
+
+        final File tempFile = new File( cacheDir, INDEX_FILE + ".tmp" );
+        try( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) ) )
+        {
+            out.writeInt( VERSION );
+            out.writeUTF( mSkinDir );
+            out.writeFloat( mScale );
+            out.writeUTF( mStamp );
+            out.writeInt( mPages.length );
+            out.writeInt( mRegions.size() );
+            for( Map.Entry<String, Region> entry : mRegions.entrySet() )
+            {
+                final Region region = entry.getValue();
+                out.writeUTF( entry.getKey() );
+                out.writeInt( region.page );
+                out.writeInt( region.source.left );
+                out.writeInt( region.source.top );
+                out.writeInt( region.source.right );
+                out.writeInt( region.source.bottom );
+                out.writeInt( region.width );
+                out.writeInt( region.height );
+            }
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Could not write " + indexFile.getPath() + ": " + e.getMessage() );
+            return;
+        }
+
+        if( !tempFile.renameTo( indexFile ) )
+            Log.w( TAG, "Could not write " + indexFile.getPath() );
+    }
+}
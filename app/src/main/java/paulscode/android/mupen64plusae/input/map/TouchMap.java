@@ -75,6 +75,9 @@ public class TouchMap
     /** Folder containing the images. */
     String skinFolder;
     
+    /** Pre-scaled images of the skin, null if the images are loaded one by one. */
+    private SkinAtlas mAtlas;
+    
     /** Scaling factor to apply to images. */
     protected float scale = 1.0f;
     
@@ -352,7 +355,7 @@ public class TouchMap
                         && yLocation < top )
                 {
                     // Get the mask color at this location
-                    int c = buttonMasks.get( i ).image.getPixel( (int) ( ( xLocation - buttonMasks.get( i ).x ) / 
+                    int c = buttonMasks.get( i ).getPixel( (int) ( ( xLocation - buttonMasks.get( i ).x ) / 
                             ( buttonScaling.get( i ) * scale ) ), (int) ( ( yLocation - buttonMasks.get( i ).y ) / ( buttonScaling.get( i ) * scale ) ) );
                     
                     // Ignore the alpha component if any
@@ -577,6 +580,8 @@ public class TouchMap
         // Load the configuration files
         skinFolder = skinDir;
         ConfigFile skin_ini = new ConfigFile( skinFolder + "/skin.ini" );
+        mAtlas = SkinAtlas.get( skinFolder,
+                SkinAtlas.getScale( mResources.getDisplayMetrics().densityDpi, getScalingFactor() ) );
         
         mSplitAB = SafeMethods.toBoolean( skin_ini.get( "INFO", "split-AB" ), false);
         
@@ -732,12 +737,12 @@ public class TouchMap
             // The images (used by touchscreens) are in PNG image format.
             if( animated )
             {
-                 analogBackImage = new Image( mResources, skinFolder + "/analog-back.png" );
-                 analogForeImage = new Image( mResources, skinFolder + "/analog-fore.png" );
+                 analogBackImage = loadImage( "analog-back" );
+                 analogForeImage = loadImage( "analog-fore" );
             }
             else
             {
-                analogBackImage = new Image( mResources, skinFolder + "/analog.png" );
+                analogBackImage = loadImage( "analog" );
             }
             
             // Sensitivity (percentages of the radius, i.e. half the image width)
@@ -768,12 +773,37 @@ public class TouchMap
             buttonNames.add( name );
             
             // Load the displayed and mask images
-            buttonImages.add( new Image( mResources, skinFolder + "/" + name + ".png" ) );
-            buttonMasks.add( new Image( mResources, skinFolder + "/" + name + "-mask.png" ) );
+            buttonImages.add( loadImage( name ) );
+            buttonMasks.add( loadImage( name + "-mask" ) );
             buttonScaling.add( (float) scaling / 100.f );
         }
     }
 
+    /**
+     * Loads an image of the skin, from the atlas if it has it.
+     * 
+     * @param name The name of the image file, without extension.
+     * 
+     * @return The image.
+     */
+    Image loadImage( String name )
+    {
+        Image image = mAtlas == null ? null : mAtlas.getImage( name );
+        if( image == null )
+            image = new Image( skinFolder + "/" + name + ".png" );
+        return image;
+    }
+    
+    /**
+     * Returns the factor the user scales the skin by, which the atlas takes into account.
+     * 
+     * @return The scaling factor.
+     */
+    float getScalingFactor()
+    {
+        return 1.0f;
+    }
+    
     /**
      * Determines if the two specified line segments intersect with each other, and calculates where
      * the intersection occurs if they do.
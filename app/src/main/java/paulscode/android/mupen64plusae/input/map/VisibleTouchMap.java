@@ -22,11 +22,10 @@ package paulscode.android.mupen64plusae.input.map;
 
 import android.content.res.Resources;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.util.DisplayMetrics;
 import android.util.Log;
 
-import java.util.concurrent.CopyOnWriteArrayList;
-
 import paulscode.android.mupen64plusae.game.GameOverlay;
 import paulscode.android.mupen64plusae.persistent.ConfigFile;
 import paulscode.android.mupen64plusae.profile.Profile;
@@ -90,12 +89,21 @@ public class VisibleTouchMap extends TouchMap
     /** The last height passed to {@link #resize(int, int, DisplayMetrics)}. */
     private DisplayMetrics cacheMetrics;
     
+    /** Maximum number of digits shown by the FPS indicator. */
+    private static final int MAX_FPS_DIGITS = 4;
+    
     /** The set of images representing the FPS string. */
-    private final CopyOnWriteArrayList<Image> mFpsDigits;
+    private final Image[] mFpsDigits;
+    
+    /** The number of valid entries in {@link #mFpsDigits}. */
+    private int mFpsDigitCount;
     
     /** The set of images representing the numerals 0, 1, 2, ..., 9. */
     private final Image[] mNumerals;
     
+    /** Copies of the numerals for each digit position, so that FPS updates don't allocate. */
+    private final Image[][] mDigitNumerals;
+    
     /** Auto-hold overlay images. */
     private final Image[] autoHoldImages;
 
@@ -116,8 +124,9 @@ public class VisibleTouchMap extends TouchMap
     public VisibleTouchMap( Resources resources )
     {
         super( resources );
-        mFpsDigits = new CopyOnWriteArrayList<>();
+        mFpsDigits = new Image[MAX_FPS_DIGITS];
         mNumerals = new Image[10];
+        mDigitNumerals = new Image[MAX_FPS_DIGITS][10];
         autoHoldImages = new Image[NUM_N64_PSEUDOBUTTONS];
         autoHoldImagesPressed = new boolean[NUM_N64_PSEUDOBUTTONS];
         autoHoldX = new int[NUM_N64_PSEUDOBUTTONS];
@@ -137,9 +146,16 @@ public class VisibleTouchMap extends TouchMap
         mFpsFrameX = mFpsFrameY = 0;
         mFpsTextX = mFpsTextY = 50;
         mFpsValue = 0;
-        mFpsDigits.clear();
+        mFpsDigitCount = 0;
+        for( int i = 0; i < mFpsDigits.length; i++ )
+            mFpsDigits[i] = null;
         for( int i = 0; i < mNumerals.length; i++ )
             mNumerals[i] = null;
+        for( Image[] digitNumerals : mDigitNumerals )
+        {
+            for( int i = 0; i < digitNumerals.length; i++ )
+                digitNumerals[i] = null;
+        }
         for( int i = 0; i < autoHoldImages.length; i++ )
         {
             autoHoldImagesPressed[i] = false;
@@ -239,6 +255,14 @@ public class VisibleTouchMap extends TouchMap
             if( image != null )
                 image.setScale( fpsScale );
         }
+        for( Image[] digitNumerals : mDigitNumerals )
+        {
+            for( Image image : digitNumerals )
+            {
+                if( image != null )
+                    image.setScale( fpsScale );
+            }
+        }
         
         // Compute the FPS digit locations
         refreshFpsImages();
@@ -284,16 +308,61 @@ public class VisibleTouchMap extends TouchMap
     public void drawAnalog( Canvas canvas )
     {
         // Draw the background image
-        if( analogBackImage != null )
-        {
-            analogBackImage.draw( canvas );
-        }
+        drawAnalogBack( canvas );
         
         // Draw the movable foreground (the stick)
-        if( analogForeImage != null )
-        {
-            analogForeImage.draw( canvas );
-        }
+        drawAnalogFore( canvas );
+    }
+    
+    /**
+     * Draws the background of the analog stick.
+     * 
+     * @param canvas The canvas on which to draw.
+     * 
+     * @return The bounds of the background, or null if there is none. Owned by the touch map.
+     */
+    public Rect drawAnalogBack( Canvas canvas )
+    {
+        if( analogBackImage == null )
+            return null;
+        
+        analogBackImage.draw( canvas );
+        return analogBackImage.drawRect;
+    }
+    
+    /**
+     * Draws the movable foreground of the analog stick.
+     * 
+     * @param canvas The canvas on which to draw.
+     * 
+     * @return The bounds of the foreground, or null if there is none. Owned by the touch map.
+     */
+    public Rect drawAnalogFore( Canvas canvas )
+    {
+        if( analogForeImage == null )
+            return null;
+        
+        analogForeImage.draw( canvas );
+        return analogForeImage.drawRect;
+    }
+    
+    /**
+     * Gets the current bounds of the analog stick assets, as updated by
+     * {@link #updateAnalog(float, float)}.
+     * 
+     * @param back Set to the bounds of the background.
+     * @param fore Set to the bounds of the foreground.
+     * 
+     * @return True if the analog stick is animated.
+     */
+    public boolean getAnalogFrames( Rect back, Rect fore )
+    {
+        if( analogForeImage == null || analogBackImage == null )
+            return false;
+        
+        back.set( analogBackImage.drawRect );
+        fore.set( analogForeImage.drawRect );
+        return true;
     }
     
     /**
@@ -311,8 +380,8 @@ public class VisibleTouchMap extends TouchMap
             mFpsFrame.draw( canvas );
         
         // Draw each digit of the FPS number
-        for( Image digit : mFpsDigits )
-            digit.draw( canvas );
+        for( int i = 0; i < mFpsDigitCount; i++ )
+            mFpsDigits[i].draw( canvas );
     }
     
     /**
@@ -404,21 +473,25 @@ public class VisibleTouchMap extends TouchMap
      */
     private void refreshFpsImages()
     {
-        // Refresh the list of FPS digits
-        String fpsString = Integer.toString( mFpsValue );
-        mFpsDigits.clear();
-        for( int i = 0; i < 4; i++ )
+        // Count the digits, the value is already clamped to [0 - 9999]
+        int digitCount = 1;
+        for( int value = mFpsValue / 10; value > 0; value /= 10 )
+            digitCount++;
+        
+        // Pick the pre-cloned numeral images for each digit, most significant first
+        int value = mFpsValue;
+        mFpsDigitCount = 0;
+        for( int i = digitCount - 1; i >= 0; i-- )
         {
-            // Create a new sequence of numeral images
-            if( i < fpsString.length() )
-            {
-                int numeral = SafeMethods.toInt( fpsString.substring( i, i + 1 ), -1 );
-                if( numeral > -1 && numeral < 10 )
-                {
-                    // Clone the numeral from the font images and move to next digit
-                    mFpsDigits.add( new Image( mResources, mNumerals[numeral] ) );
-                }
-            }
+            mFpsDigits[i] = mDigitNumerals[i][value % 10];
+            value /= 10;
+        }
+        for( int i = 0; i < digitCount; i++ )
+        {
+            // Numerals might not exist if the skin failed to load them
+            if( mFpsDigits[i] == null )
+                return;
+            mFpsDigitCount++;
         }
     }
     
@@ -438,15 +511,16 @@ public class VisibleTouchMap extends TouchMap
         
         // Compute the width of the FPS text
         int totalWidth = 0;
-        for( Image digit : mFpsDigits )
-            totalWidth += (int) ( digit.width * digit.scale );
+        for( int i = 0; i < mFpsDigitCount; i++ )
+            totalWidth += (int) ( mFpsDigits[i].width * mFpsDigits[i].scale );
         
         // Compute the starting position of the FPS text
         x -= (int) ( totalWidth / 2f );
         
         // Compute the position of each digit
-        for( Image digit : mFpsDigits )
+        for( int i = 0; i < mFpsDigitCount; i++ )
         {
+            Image digit = mFpsDigits[i];
             digit.setPos( x, y - (int) ( digit.hHeight * digit.scale ) );
             x += (int) ( digit.width * digit.scale );
         }
@@ -669,7 +743,7 @@ public class VisibleTouchMap extends TouchMap
             mFpsFrameY = mFpsYPos;
             
             // Load frame image
-            mFpsFrame = new Image( mResources, skinFolder + "/fps.png" );
+            mFpsFrame = loadImage( "fps" );
             
             // Minimum factor the FPS indicator can be scaled by
             mFpsMinScale = mFpsMinPixels / (float) mFpsFrame.width;
@@ -682,7 +756,11 @@ public class VisibleTouchMap extends TouchMap
                 for( int i = 0; i < mNumerals.length; i++ )
                 {
                     filename = skinFolder + "/fps-" + i + ".png";
-                    mNumerals[i] = new Image( mResources, filename );
+                    mNumerals[i] = loadImage( "fps-" + i );
+                    
+                    // Each digit position gets its own copy since they are drawn at different places
+                    for( Image[] digitNumerals : mDigitNumerals )
+                        digitNumerals[i] = new Image( mNumerals[i] );
                 }
             }
             catch( Exception e )
@@ -694,6 +772,12 @@ public class VisibleTouchMap extends TouchMap
         }
     }
     
+    @Override
+    float getScalingFactor()
+    {
+        return mScalingFactor;
+    }
+    
     /**
      * Loads auto-hold assets and properties from the filesystem.
      * 
@@ -720,7 +804,7 @@ public class VisibleTouchMap extends TouchMap
             autoHoldY[index] = y;
             
             // The drawable image is in PNG image format.
-            autoHoldImages[index] = new Image( mResources, skinFolder + "/" + name + ".png" );
+            autoHoldImages[index] = loadImage( name );
             autoHoldImages[index].setAlpha( 0 );
         }
     }
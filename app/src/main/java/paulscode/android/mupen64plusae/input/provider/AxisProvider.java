@@ -20,17 +20,19 @@
  */
 package paulscode.android.mupen64plusae.input.provider;
 
+import android.hardware.input.InputManager;
+import android.util.SparseArray;
 import android.view.InputDevice;
-import android.view.InputDevice.MotionRange;
 import android.view.MotionEvent;
 import android.view.View;
 
-import paulscode.android.mupen64plusae.input.map.AxisMap;
-
 /**
- * A class for transforming Android MotionEvent inputs into a common format.
+ * A class for transforming Android MotionEvent inputs into a common format. Register it with
+ * {@link InputManager#registerInputDeviceListener} so the calibration of disconnected devices is
+ * released.
  */
-public class AxisProvider extends AbstractProvider implements View.OnGenericMotionListener
+public class AxisProvider extends AbstractProvider implements View.OnGenericMotionListener,
+        InputManager.InputDeviceListener
 {
     /** The input codes to listen for. */
     private int[] mInputCodes;
@@ -38,11 +40,11 @@ public class AxisProvider extends AbstractProvider implements View.OnGenericMoti
     /** The default number of input codes to listen for. */
     private static final int DEFAULT_NUM_INPUTS = 128;
 
-    /** Max flat value to determine if we should override it */
-    private static final float MAX_FLAT = 0.5f;
+    /** The compiled axis calibration of each device, by device id. */
+    private final SparseArray<AxisTransform> mTransforms = new SparseArray<AxisTransform>();
 
-    /** Flat value override if the os privided one is above MAX_FLAT */
-    private static final float FLAT_OVERRIDE = 0.25f;
+    /** The strengths passed to listeners, reused across events. */
+    private float[] mStrengths = new float[0];
 
     /**
      * Instantiates a new axis provider.
@@ -80,33 +82,6 @@ public class AxisProvider extends AbstractProvider implements View.OnGenericMoti
         mInputCodes = inputCodeFilter.clone();
     }
 
-    private static float getCenteredAxis(MotionEvent event, InputDevice device, int axis)
-    {
-        final InputDevice.MotionRange range = device.getMotionRange(axis, event.getSource());
-
-        // A joystick at rest does not always report an absolute position of
-        // (0,0). Use the getFlat() method to determine the range of values
-        // bounding the joystick axis center.
-        if (range != null) {
-            float flat = range.getFlat();
-            final float value = event.getAxisValue(axis);
-
-            //Some devices with bad drivers report invalid flat regions
-            if(flat > MAX_FLAT || flat < 0.0)
-            {
-                flat = FLAT_OVERRIDE;
-            }
-
-            // Ignore axis values that are within the 'flat' region of the
-            // joystick axis center.
-            if (Math.abs(value) > flat) {
-                return value;
-            }
-        }
-
-        return 0;
-    }
-
     /**
      * Manually dispatches a MotionEvent through the provider's listening chain.
      * 
@@ -130,94 +105,42 @@ public class AxisProvider extends AbstractProvider implements View.OnGenericMoti
         if(device == null)
             return false;
 
-        AxisMap axisInfo = AxisMap.getMap( device );
-
-        // Read all the requested axes
-        float[] strengths = new float[mInputCodes.length];
-        for( int i = 0; i < mInputCodes.length; i++ )
+        // Calibration is compiled once per device, each event is then a few table lookups
+        int source = event.getSource();
+        AxisTransform transform = mTransforms.get( device.getId() );
+        if( transform == null || !transform.matches( device, source, mInputCodes ) )
         {
-            int inputCode = mInputCodes[i];
-
-            // Compute the axis code from the input code
-            int axisCode = inputToAxisCode( inputCode );
-
-            // Get the analog value using the Android API
-            float strength = getCenteredAxis(event, device, axisCode);
-
-            // Modify strength if necessary
-            strength = strength != 0 ? normalizeStrength( strength, axisInfo, device, axisCode ) : 0.0f;
-
-            // If the strength points in the correct direction, record it
-            boolean direction1 = inputToAxisDirection( inputCode );
-            boolean direction2 = strength > 0;
-            if( direction1 == direction2 )
-                strengths[i] = Math.abs( strength );
-            else
-                strengths[i] = 0;
+            transform = new AxisTransform( device, source, mInputCodes );
+            mTransforms.put( device.getId(), transform );
         }
 
+        // Read all the requested axes
+        if( mStrengths.length != mInputCodes.length )
+            mStrengths = new float[mInputCodes.length];
+        float[] strengths = mStrengths;
+        transform.apply( event, strengths );
+
         // Notify listeners about new input data
         notifyListeners( mInputCodes, strengths, getHardwareId( event ) );
 
         return true;
     }
 
-    private float normalizeStrength( float strength, AxisMap axisInfo, InputDevice device,
-                                     int axisCode )
+    @Override
+    public void onInputDeviceAdded( int deviceId )
     {
-        if( axisInfo != null )
-        {
-            int axisClass = axisInfo.getClass( axisCode );
-            float tempStrengh = 0;
-
-            if( axisClass == AxisMap.AXIS_CLASS_IGNORED )
-            {
-                // We should ignore this axis
-                strength = 0;
-            }
-            else if( device != null )
-            {
-                // We should normalize this axis
-                MotionRange motionRange = device.getMotionRange( axisCode, InputDevice.SOURCE_JOYSTICK );
-                if( motionRange != null )
-                {
-                    float flat = motionRange.getFlat();
-                    //Some devices with bad drivers report invalid flat regions
-                    if(flat > MAX_FLAT || flat < 0.0)
-                    {
-                        flat = FLAT_OVERRIDE;
-                    }
-
-                    switch( axisClass )
-                    {
-                        case AxisMap.AXIS_CLASS_NORMAL:
-                            // Normalize
-                            //strength = ( strength - motionRange.getMin() ) / motionRange.getRange() * 2f - 1f;
-                            tempStrengh = (Math.abs(strength) - flat) / (1.0f - flat);
-                            //Restore sign
-                            strength = tempStrengh * Math.signum(strength);
-                            break;
-                        case AxisMap.AXIS_CLASS_N64_USB_STICK:
-                            // Normalize to [-1,1]
-                            // The Raphnet adapters through v2.x and some other USB adapters assume the N64
-                            // controller produces values in the range [-127,127].  However, the official N64 spec
-                            // says that raw values of +/- 80 indicate full strength.  Therefore we rescale by
-                            // multiplying by 127/80 (dividing by 0.63).
-                            // http://naesten.dyndns.org:8080/psyq/man/os/osContGetReadData.html
-                            // http://raphnet-tech.com/products/gc_n64_usb_adapters/
-                            // https://github.com/mupen64plus-ae/mupen64plus-ae/issues/89
-                            // https://github.com/mupen64plus-ae/mupen64plus-ae/issues/99
-                            // https://github.com/mupen64plus-ae/mupen64plus-ae/issues/188
-                            // http://www.paulscode.com/forum/index.php?topic=1076
-                            strength = strength / 0.63f;
-                            break;
-                        case AxisMap.AXIS_CLASS_UNKNOWN:
-                        default:
-                            // Do nothing
-                    }
-                }
-            }
-        }
-        return strength;
+    }
+
+    @Override
+    public void onInputDeviceRemoved( int deviceId )
+    {
+        mTransforms.remove( deviceId );
+    }
+
+    @Override
+    public void onInputDeviceChanged( int deviceId )
+    {
+        // Compiled again from the new motion ranges on the next event
+        mTransforms.remove( deviceId );
     }
 }
@@ -0,0 +1,226 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Authors: littleguy77
+ */
+package paulscode.android.mupen64plusae.input.provider;
+
+import android.util.SparseArray;
+import android.view.InputDevice;
+import android.view.InputDevice.MotionRange;
+import android.view.MotionEvent;
+
+import paulscode.android.mupen64plusae.input.map.AxisMap;
+
+/**
+ * The axis calibration of one input device. Motion ranges, flat regions and axis classes only
+ * change when a device is (re)connected, so they are resolved once here instead of on every motion
+ * event, which leaves a few multiplications per axis.
+ */
+class AxisTransform
+{
+    /** Max flat value to determine if we should override it */
+    private static final float MAX_FLAT = 0.5f;
+
+    /** Flat value override if the os privided one is above MAX_FLAT */
+    private static final float FLAT_OVERRIDE = 0.25f;
+
+    /** The device the calibration was resolved for. */
+    private final InputDevice mDevice;
+
+    /** The event source the calibration was resolved for. */
+    private final int mSource;
+
+    /** The input codes the calibration was resolved for. */
+    private final int[] mInputCodes;
+
+    /** The axis read for each input code. */
+    private final int[] mAxisCodes;
+
+    /** The curve for each input code, null if the input always reads zero. */
+    private final Curve[] mCurves;
+
+    /** Whether each input code listens to the positive direction of its axis. */
+    private final boolean[] mPositive;
+
+    /**
+     * Resolves the calibration of a device.
+     *
+     * @param device     The device that generated the events.
+     * @param source     The source of the events.
+     * @param inputCodes The universal input codes to compute strengths for.
+     */
+    AxisTransform( InputDevice device, int source, int[] inputCodes )
+    {
+        mDevice = device;
+        mSource = source;
+        mInputCodes = inputCodes;
+        mAxisCodes = new int[inputCodes.length];
+        mCurves = new Curve[inputCodes.length];
+        mPositive = new boolean[inputCodes.length];
+
+        AxisMap axisInfo = AxisMap.getMap( device );
+
+        // Both directions of an axis share the same curve
+        SparseArray<Curve> curves = new SparseArray<Curve>();
+        for( int i = 0; i < inputCodes.length; i++ )
+        {
+            int axisCode = AbstractProvider.inputToAxisCode( inputCodes[i] );
+            mAxisCodes[i] = axisCode;
+            mPositive[i] = AbstractProvider.inputToAxisDirection( inputCodes[i] );
+
+            int index = curves.indexOfKey( axisCode );
+            if( index >= 0 )
+            {
+                mCurves[i] = curves.valueAt( index );
+            }
+            else
+            {
+                mCurves[i] = compile( device, source, axisInfo, axisCode );
+                curves.put( axisCode, mCurves[i] );
+            }
+        }
+    }
+
+    /**
+     * @return True if the calibration was resolved for this device, source and set of input codes.
+     */
+    boolean matches( InputDevice device, int source, int[] inputCodes )
+    {
+        // InputDevice instances are replaced by the framework when a device is reconfigured
+        return mDevice == device && mSource == source && mInputCodes == inputCodes;
+    }
+
+    /**
+     * Computes the strength of every input code from a motion event.
+     *
+     * @param event     The motion event.
+     * @param strengths Receives the strength of each input code, between 0 and 1.
+     */
+    void apply( MotionEvent event, float[] strengths )
+    {
+        for( int i = 0; i < mCurves.length; i++ )
+        {
+            Curve curve = mCurves[i];
+            float strength = curve == null ? 0 : curve.get( event.getAxisValue( mAxisCodes[i] ) );
+
+            // If the strength points in the correct direction, record it
+            if( mPositive[i] == strength > 0 )
+                strengths[i] = Math.abs( strength );
+            else
+                strengths[i] = 0;
+        }
+    }
+
+    private static Curve compile( InputDevice device, int source, AxisMap axisInfo, int axisCode )
+    {
+        // A joystick at rest does not always report an absolute position of (0,0), values within
+        // the 'flat' region of the axis center are ignored
+        MotionRange range = device.getMotionRange( axisCode, source );
+        if( range == null )
+            return null;
+
+        int axisClass = axisInfo != null ? axisInfo.getClass( axisCode ) : AxisMap.AXIS_CLASS_UNKNOWN;
+
+        // Normalization uses the joystick range, which may differ from the event source's
+        MotionRange joystickRange = device.getMotionRange( axisCode, InputDevice.SOURCE_JOYSTICK );
+        return compile( range.getFlat(), axisClass, joystickRange != null,
+                joystickRange != null ? joystickRange.getFlat() : 0 );
+    }
+
+    /**
+     * @param flat             The flat region of the axis for the event source.
+     * @param axisClass        The class of the axis, AXIS_CLASS_UNKNOWN if the device has no map.
+     * @param hasJoystickRange Whether the axis has a joystick range to normalize with.
+     * @param joystickFlat     The flat region of the joystick range.
+     * @return The curve, or null if the axis is ignored.
+     */
+    static Curve compile( float flat, int axisClass, boolean hasJoystickRange, float joystickFlat )
+    {
+        if( axisClass == AxisMap.AXIS_CLASS_IGNORED )
+            return null;
+
+        if( !hasJoystickRange )
+            return new Curve( flat, AxisMap.AXIS_CLASS_UNKNOWN, 0 );
+
+        return new Curve( flat, axisClass, joystickFlat );
+    }
+
+    /**
+     * Some devices with bad drivers report invalid flat regions.
+     */
+    static float sanitizeFlat( float flat )
+    {
+        return flat > MAX_FLAT || flat < 0.0f ? FLAT_OVERRIDE : flat;
+    }
+
+    /**
+     * The calibration curve of a single axis.
+     */
+    static final class Curve
+    {
+        private final float mFlat;
+        private final int mAxisClass;
+        private final float mNormalizeFlat;
+
+        /**
+         * @param flat          The flat region around the center, as reported by the device.
+         * @param axisClass     The axis class, AXIS_CLASS_UNKNOWN if it should not be normalized.
+         * @param normalizeFlat The flat region used for normalization, as reported by the device.
+         */
+        Curve( float flat, int axisClass, float normalizeFlat )
+        {
+            mFlat = sanitizeFlat( flat );
+            mAxisClass = axisClass;
+            mNormalizeFlat = sanitizeFlat( normalizeFlat );
+        }
+
+        /**
+         * @param value The raw axis value.
+         * @return The calibrated, signed strength.
+         */
+        float get( float value )
+        {
+            if( Math.abs( value ) <= mFlat )
+                return 0;
+
+            switch( mAxisClass )
+            {
+                case AxisMap.AXIS_CLASS_NORMAL:
+                    // Normalize and restore sign
+                    return ( Math.abs( value ) - mNormalizeFlat ) / ( 1.0f - mNormalizeFlat ) * Math.signum( value );
+                case AxisMap.AXIS_CLASS_N64_USB_STICK:
+                    // Normalize to [-1,1]
+                    // The Raphnet adapters through v2.x and some other USB adapters assume the N64
+                    // controller produces values in the range [-127,127].  However, the official N64 spec
+                    // says that raw values of +/- 80 indicate full strength.  Therefore we rescale by
+                    // multiplying by 127/80 (dividing by 0.63).
+                    // http://naesten.dyndns.org:8080/psyq/man/os/osContGetReadData.html
+                    // http://raphnet-tech.com/products/gc_n64_usb_adapters/
+                    // https://github.com/mupen64plus-ae/mupen64plus-ae/issues/89
+                    // https://github.com/mupen64plus-ae/mupen64plus-ae/issues/99
+                    // https://github.com/mupen64plus-ae/mupen64plus-ae/issues/188
+                    // http://www.paulscode.com/forum/index.php?topic=1076
+                    return value / 0.63f;
+                case AxisMap.AXIS_CLASS_UNKNOWN:
+                default:
+                    return value;
+            }
+        }
+    }
+}
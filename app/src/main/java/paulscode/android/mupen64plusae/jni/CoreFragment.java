@@ -48,8 +48,9 @@ import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GamePrefs;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
 import paulscode.android.mupen64plusae.util.Notifier;
+import paulscode.android.mupen64plusae.util.StartupTrace;
 import paulscode.android.mupen64plusae.util.Utility;
-import paulscode.android.mupen64plusae.jni.NativeImports.OnFpsChangedListener;
+import paulscode.android.mupen64plusae.jni.FrameStats.OnFpsChangedListener;
 
 import static paulscode.android.mupen64plusae.jni.NativeConstants.EMULATOR_STATE_UNKNOWN;
 
@@ -288,7 +289,11 @@ public class CoreFragment extends Fragment implements CoreServiceListener
 
         if(!mIsRunning)
         {
-            if(!NativeConfigFiles.syncConfigFiles( mGamePrefs, mGlobalPrefs, mAppData ))
+            final long syncStart = StartupTrace.now();
+            final boolean synced = NativeConfigFiles.syncConfigFiles( mGamePrefs, mGlobalPrefs, mAppData );
+            StartupTrace.record( "NativeConfigFiles.syncConfigFiles", syncStart );
+
+            if(!synced)
             {
                 if(getActivity() != null)
                 {
@@ -313,6 +318,7 @@ public class CoreFragment extends Fragment implements CoreServiceListener
     private void actuallyStartCore(Activity activity)
     {
         Log.i("CoreFragment", "actuallyStartCore");
+        final long bindStart = StartupTrace.now();
 
         // Defines callbacks for service binding, passed to bindService()
         mServiceConnection = new ServiceConnection() {
@@ -323,6 +329,7 @@ public class CoreFragment extends Fragment implements CoreServiceListener
                 // We've bound to LocalService, cast the IBinder and get LocalService instance
                 LocalBinder binder = (LocalBinder) service;
                 mCoreService = binder.getService();
+                StartupTrace.record("Bind CoreService", bindStart);
 
                 mCoreService.setSurface(mSurface);
                 mCoreService.addOnFpsChangedListener(mFpsChangeListener, mFpsRecalcPeriod);
@@ -414,6 +421,16 @@ public class CoreFragment extends Fragment implements CoreServiceListener
         }
     }
 
+    public void rewind(boolean pressed)
+    {
+        Log.i("CoreFragment", "rewind");
+
+        if(mCoreService != null)
+        {
+            mCoreService.rewind(pressed);
+        }
+    }
+
     public void clearOnFpsChangedListener()
     {
         Log.i("CoreFragment", "clearOnFpsChangedListener");
@@ -791,6 +808,14 @@ public class CoreFragment extends Fragment implements CoreServiceListener
         return mCoreService != null &&  mCoreService.getFramelimiter();
     }
 
+    /**
+     * @return The performance telemetry of the running game, null if the core is not running
+     */
+    public PerformanceTelemetry getPerformanceTelemetry()
+    {
+        return mCoreService != null ? mCoreService.getPerformanceTelemetry() : null;
+    }
+
     public void restart()
     {
         Log.i("CoreFragment", "restart");
@@ -49,15 +49,20 @@ import app.cooln64.v5.coolemulators.R;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import paulscode.android.mupen64plusae.ActivityHelper;
+import paulscode.android.mupen64plusae.game.AutoSaveStore;
 import paulscode.android.mupen64plusae.game.GameActivity;
+import paulscode.android.mupen64plusae.util.Breadcrumbs;
+import paulscode.android.mupen64plusae.util.StartupTrace;
+import paulscode.android.mupen64plusae.util.Utility;
 
 import static paulscode.android.mupen64plusae.jni.NativeExports.emuGetFramelimiter;
 import static paulscode.android.mupen64plusae.jni.NativeImports.removeOnStateCallbackListener;
 
 @SuppressWarnings("unused")
-public class CoreService extends Service implements NativeImports.OnFpsChangedListener
+public class CoreService extends Service implements FrameStats.OnFpsChangedListener
 {
     interface CoreServiceListener
     {
@@ -89,6 +94,19 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
     // Slot info - used internally
     private static final int NUM_SLOTS = 10;
 
+    // How often the frame statistics block is sampled, in milliseconds
+    private static final int FRAME_STATS_SAMPLE_PERIOD = 250;
+
+    // How often the frame statistics block is sampled until the first frame, so that the first
+    // frame is noticed promptly
+    private static final int FIRST_FRAME_SAMPLE_PERIOD = 16;
+
+    // Per session performance reports are written here, relative to the game save directory
+    private static final String TELEMETRY_DIR = "Telemetry";
+
+    // Number of per session performance reports kept for each game, older ones are deleted
+    private static final int MAX_TELEMETRY_REPORTS = 10;
+
     // Startup info - used internally
     private String mRomGoodName = null;
     private String mRomPath = null;
@@ -105,6 +123,9 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
     private String mCoreUserConfigDir = null;
     private String mUserSaveDir = null;
     private boolean mIsRunning = false;
+
+    // True while the service exists, the core may be using the unzipped ROM and caches
+    private static volatile boolean sIsActive = false;
     private boolean mIsPaused = false;
     private String mArtPath = null;
     private String mRomMd5 = null;
@@ -128,6 +149,17 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
     private long mLastFpsChangedTime;
     private Handler mFpsCangedHandler = new Handler();
 
+    // Frame rate info - sampled from the statistics block written by ae-vidext
+    private FrameStats mFrameStats = null;
+    private PerformanceTelemetry mTelemetry = null;
+    private int mLastFrameCount = 0;
+    private volatile FrameStats.OnFpsChangedListener[] mFpsListeners = new FrameStats.OnFpsChangedListener[0];
+
+    // The frame statistics are only sampled while there are listeners and the core isn't paused,
+    // both are only changed on the main thread
+    private boolean mIsSamplingFrameStats = false;
+    private boolean mIsCorePaused = false;
+
     final static int ONGOING_NOTIFICATION_ID = 1;
 
     // Our handler for received Intents. This will be called whenever an Intent
@@ -162,6 +194,14 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
         return mIsRunning;
     }
 
+    /**
+     * @return True if a game is starting or running in this process
+     */
+    public static boolean isActive()
+    {
+        return sIsActive;
+    }
+
     boolean isShuttingDown()
     {
         return mIsShuttingDown;
@@ -220,6 +260,9 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
                             if (!new File(latestSave + "." + COMPLETE_EXTENSION).createNewFile()) {
                                 Log.e("CoreService", "Unable to save file due to file write failure: " + latestSave);
                             }
+
+                            final File saveFile = new File(latestSave);
+                            new AutoSaveStore(saveFile.getParentFile()).add(saveFile);
                         } catch (IOException e) {
                             Log.e("CoreService", "Unable to save file due to file write failure: " + latestSave);
                         }
@@ -335,14 +378,105 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
         NativeExports.emuGameShark(pressed);
     }
 
-    void removeOnFpsChangedListener(NativeImports.OnFpsChangedListener fpsListener )
+    void rewind(boolean pressed)
+    {
+        if (pressed) {
+            NativeExports.emuRewindStart();
+        } else {
+            NativeExports.emuRewindStop();
+        }
+    }
+
+    void removeOnFpsChangedListener(FrameStats.OnFpsChangedListener fpsListener )
+    {
+        // Copy on write, the sampler iterates over the array without locking or allocating
+        ArrayList<FrameStats.OnFpsChangedListener> listeners = new ArrayList<>(Arrays.asList(mFpsListeners));
+        if(listeners.remove(fpsListener))
+        {
+            mFpsListeners = listeners.toArray(new FrameStats.OnFpsChangedListener[0]);
+            updateFrameStatsSampler();
+        }
+    }
+
+    void addOnFpsChangedListener(FrameStats.OnFpsChangedListener fpsListener, int fpsRecalcPeriod )
+    {
+        ArrayList<FrameStats.OnFpsChangedListener> listeners = new ArrayList<>(Arrays.asList(mFpsListeners));
+        if(fpsListener != null && !listeners.contains(fpsListener))
+        {
+            listeners.add(fpsListener);
+            mFpsListeners = listeners.toArray(new FrameStats.OnFpsChangedListener[0]);
+            NativeExports.FPSEnabled(fpsRecalcPeriod);
+            updateFrameStatsSampler();
+        }
+    }
+
+    /**
+     * Starts or stops sampling the frame statistics, nothing is posted while no one listens or
+     * the core is paused.
+     */
+    private void updateFrameStatsSampler()
+    {
+        final boolean sample = mFrameStats != null && mFpsListeners.length > 0 && !mIsCorePaused;
+        if(sample == mIsSamplingFrameStats)
+            return;
+
+        mIsSamplingFrameStats = sample;
+        if(sample)
+        {
+            mFpsCangedHandler.postDelayed(mFrameStatsSampler,
+                    mLastFrameCount == 0 ? FIRST_FRAME_SAMPLE_PERIOD : FRAME_STATS_SAMPLE_PERIOD);
+        }
+        else
+        {
+            mFpsCangedHandler.removeCallbacks(mFrameStatsSampler);
+        }
+    }
+
+    /**
+     * @return The frame statistics reader, null if the native libraries are not loaded yet
+     */
+    FrameStats getFrameStats()
+    {
+        return mFrameStats;
+    }
+
+    /**
+     * @return The performance telemetry reader, null if the native libraries are not loaded yet
+     */
+    PerformanceTelemetry getPerformanceTelemetry()
     {
-        NativeImports.removeOnFpsChangedListener( fpsListener );
+        return mTelemetry;
     }
 
-    void addOnFpsChangedListener(NativeImports.OnFpsChangedListener fpsListener, int fpsRecalcPeriod )
+    /**
+     * Writes the telemetry of the current session to the game's save directory
+     */
+    private void writeTelemetryReport()
     {
-        NativeImports.addOnFpsChangedListener( fpsListener, fpsRecalcPeriod );
+        if(mTelemetry == null || mUserSaveDir == null)
+        {
+            return;
+        }
+
+        File reportDir = new File(mUserSaveDir + "/" + TELEMETRY_DIR);
+        File reportFile = new File(reportDir, Utility.getDateString() + ".txt");
+        try {
+            mTelemetry.writeReport(reportFile, mRomGoodName);
+        } catch (IOException e) {
+            Log.e("CoreService", "Unable to write telemetry report: " + reportFile.getPath());
+        }
+
+        //Report names are dates, so the oldest reports sort first
+        String[] reports = reportDir.list();
+        if (reports != null && reports.length > MAX_TELEMETRY_REPORTS) {
+            Arrays.sort(reports);
+            for (int i = 0; i < reports.length - MAX_TELEMETRY_REPORTS; i++) {
+                File oldReport = new File(reportDir, reports[i]);
+                if (!oldReport.delete()) {
+                    Log.w("CoreService", "Unable to delete telemetry report: " + oldReport.getPath());
+                }
+            }
+        }
     }
 
     void setControllerState( int controllerNum, boolean[] buttons, int axisX, int axisY )
@@ -408,11 +542,13 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
             }
 
             // Initialize input-android plugin (even if we aren't going to use it)
+            final long inputStart = StartupTrace.now();
             NativeInput.init();
             NativeInput.setConfig( 0, mIsPlugged.get(0), mPakType.get(0) );
             NativeInput.setConfig( 1, mIsPlugged.get(1), mPakType.get(1) );
             NativeInput.setConfig( 2, mIsPlugged.get(2), mPakType.get(2) );
             NativeInput.setConfig( 3, mIsPlugged.get(3), mPakType.get(3) );
+            StartupTrace.record( "NativeInput.init", inputStart );
 
             Log.i("CoreService", "Pak type=" + mPakType.get(0).toString());
 
@@ -447,7 +583,11 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
             }
 
             //This call blocks until emulation is stopped
+            Breadcrumbs.add( "Emulation started: " + mRomPath );
             final int result = NativeExports.emuStart( mCoreUserDataDir, mCoreUserCacheDir, arglist.toArray() );
+            Breadcrumbs.add( "Emulation stopped, result " + result );
+
+            writeTelemetryReport();
 
             if(mListener != null)
             {
@@ -476,6 +616,8 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
 
     @Override
     public void onCreate() {
+        sIsActive = true;
+
         // Start up the thread running the service.  Note that we create a
         // separate thread because the service normally runs in the process's
         // main thread, which we don't want to block.  We also make it
@@ -621,7 +763,16 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
             // Load the native libraries, this must be done outside the thread to prevent race conditions
             // that depend on the libraries being loaded after this call is made
             NativeExports.loadLibrariesIfNotLoaded( libsDir, Build.VERSION.SDK_INT );
-            NativeImports.addOnFpsChangedListener( CoreService.this, 15 );
+            addOnFpsChangedListener( CoreService.this, 15 );
+
+            if(mFrameStats == null)
+            {
+                mFrameStats = new FrameStats();
+                mTelemetry = new PerformanceTelemetry();
+
+                NativeImports.addOnStateCallbackListener(mEmuStateListener);
+                updateFrameStatsSampler();
+            }
 
             updateNotification();
         }
@@ -636,9 +787,12 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
     public void onDestroy()
     {
         Log.i("CoreService", "onDestroy");
+        sIsActive = false;
 
         // Unregister since the activity is about to be closed.
         unregisterReceiver(mMessageReceiver);
+        removeOnStateCallbackListener(mEmuStateListener);
+        mFpsCangedHandler.removeCallbacks(mFrameStatsSampler);
 
         //Stop the service
         stopForeground(true);
@@ -698,6 +852,59 @@ public class CoreService extends Service implements NativeImports.OnFpsChangedLi
         }
     };
 
+    /**
+     * Pauses the frame statistics sampling while the core is paused
+     */
+    private final NativeImports.OnStateCallbackListener mEmuStateListener = new NativeImports.OnStateCallbackListener() {
+        @Override
+        public void onStateCallback( int paramChanged, final int newValue ) {
+            if (paramChanged != NativeConstants.M64CORE_EMU_STATE)
+                return;
+
+            mFpsCangedHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mIsCorePaused = newValue == NativeConstants.EMULATOR_STATE_PAUSED;
+                    updateFrameStatsSampler();
+                }
+            });
+        }
+    };
+
+    /**
+     * Samples the frame statistics on the main thread, the emulation thread never posts anything
+     * for frame rate updates.
+     */
+    Runnable mFrameStatsSampler = new Runnable() {
+        @Override
+        public void run() {
+            if(mFrameStats.sample() && mFrameStats.frameCount != mLastFrameCount)
+            {
+                // The native phases of the start path are all done by the first frame
+                if(mLastFrameCount == 0)
+                {
+                    StartupTrace.mark("First frame sampled");
+                    StartupTrace.recordNativePhases(NativeExports.getStartupTraceBuffer());
+                    StartupTrace.flush();
+                }
+
+                mLastFrameCount = mFrameStats.frameCount;
+
+                for(FrameStats.OnFpsChangedListener listener : mFpsListeners)
+                {
+                    listener.onFpsChanged(mFrameStats.fps);
+                }
+            }
+
+            // A listener may have stopped the sampling
+            if(mIsSamplingFrameStats)
+            {
+                mFpsCangedHandler.postDelayed(mFrameStatsSampler,
+                        mLastFrameCount == 0 ? FIRST_FRAME_SAMPLE_PERIOD : FRAME_STATS_SAMPLE_PERIOD);
+            }
+        }
+    };
+
     @Override
     public void onFpsChanged(int newValue) {
         mLastFpsChangedTime = System.currentTimeMillis() / 1000L;
@@ -0,0 +1,167 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.jni;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+import paulscode.android.mupen64plusae.ActivityHelper;
+import paulscode.android.mupen64plusae.input.map.SkinAtlas;
+import paulscode.android.mupen64plusae.persistent.AppData;
+import paulscode.android.mupen64plusae.persistent.GamePrefs;
+import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+
+/**
+ * Runs in the game process and loads the native libraries ahead of a game launch, while the user
+ * is still browsing games. The service stops itself once the libraries are loaded and leaves the
+ * process cached, so CoreService finds everything in place and goes straight to loading the ROM.
+ */
+public class CoreWarmupService extends Service
+{
+    private static final String TAG = "CoreWarmupService";
+
+    private Looper mServiceLooper;
+    private ServiceHandler mServiceHandler;
+
+    private final class ServiceHandler extends Handler
+    {
+        ServiceHandler( Looper looper )
+        {
+            super( looper );
+        }
+
+        @Override
+        public void handleMessage( Message msg )
+        {
+            final Intent intent = (Intent) msg.obj;
+            final String libsDir = intent.getStringExtra( ActivityHelper.Keys.LIBS_DIR );
+            final String[] preloadLibs = intent.getStringArrayExtra( ActivityHelper.Keys.PRELOAD_LIBS );
+
+            final long start = SystemClock.elapsedRealtime();
+            final boolean wasLoaded = NativeExports.areLibrariesLoaded();
+
+            NativeExports.loadLibrariesIfNotLoaded( libsDir, Build.VERSION.SDK_INT );
+
+            if( preloadLibs != null )
+                NativeExports.preloadLibrariesIfNotLoaded( preloadLibs );
+
+            Log.i( TAG, ( wasLoaded ? "Plugins" : "Core and plugins" ) + " loaded in " +
+                    ( SystemClock.elapsedRealtime() - start ) + " ms" );
+
+            // Build the touchscreen skin atlas now rather than when the game starts
+            final String skinDir = intent.getStringExtra( ActivityHelper.Keys.SKIN_DIR );
+            if( !TextUtils.isEmpty( skinDir ) )
+            {
+                SkinAtlas.prepare( skinDir, getResources().getDisplayMetrics().densityDpi,
+                        intent.getFloatExtra( ActivityHelper.Keys.SKIN_SCALE, 1.0f ) );
+            }
+
+            // The process stays alive as a cached process until a game is launched
+            stopSelf( msg.arg1 );
+        }
+    }
+
+    /**
+     * Returns the plugin libraries the front-end will load for a game, for use as
+     * {@link ActivityHelper.Keys#PRELOAD_LIBS}.
+     *
+     * @param appData The application data.
+     * @param globalPrefs The global preferences.
+     * @param gamePrefs The preferences of the game about to be launched, or null if not known yet,
+     *                  in which case only the plugins shared by all games are returned.
+     */
+    public static String[] getPluginPaths( AppData appData, GlobalPrefs globalPrefs, GamePrefs gamePrefs )
+    {
+        final ArrayList<String> paths = new ArrayList<>();
+        paths.add( appData.inputLib );
+        paths.add( NativeConfigFiles.getAudioPluginPath( globalPrefs ) );
+
+        if( gamePrefs != null )
+        {
+            paths.add( gamePrefs.rspPluginPath );
+            paths.add( NativeConfigFiles.getVideoPluginPath( gamePrefs, AppData.doesSupportFullGL() ) );
+        }
+
+        return paths.toArray( new String[paths.size()] );
+    }
+
+    /**
+     * @return True if the native libraries were already loaded in this process, meaning a game
+     * launched now gets a warm start.
+     */
+    public static boolean isWarm()
+    {
+        return NativeExports.areLibrariesLoaded();
+    }
+
+    @Override
+    public void onCreate()
+    {
+        // Loading is I/O and relocation work, keep it away from the UI
+        final HandlerThread thread = new HandlerThread( "CoreWarmup", Process.THREAD_PRIORITY_BACKGROUND );
+        thread.start();
+
+        mServiceLooper = thread.getLooper();
+        mServiceHandler = new ServiceHandler( mServiceLooper );
+    }
+
+    @Override
+    public int onStartCommand( Intent intent, int flags, int startId )
+    {
+        if( intent != null )
+        {
+            final Message msg = mServiceHandler.obtainMessage();
+            msg.arg1 = startId;
+            msg.obj = intent;
+            mServiceHandler.sendMessage( msg );
+        }
+        else
+        {
+            stopSelf( startId );
+        }
+
+        // Nothing to warm up if the process is restarted by the system
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        // Unlike CoreService, the process is not killed: keeping it is the point
+        mServiceLooper.quit();
+    }
+
+    @Override
+    public IBinder onBind( Intent intent )
+    {
+        return null;
+    }
+}
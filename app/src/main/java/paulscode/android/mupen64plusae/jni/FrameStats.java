@@ -0,0 +1,137 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Authors: fzurita
+ */
+package paulscode.android.mupen64plusae.jni;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Reader for the frame statistics block written by ae-vidext. The native side updates the block
+ * every FPS recalculation period without calling into Java, the UI samples it whenever it wants.
+ * Sampling does not allocate.
+ *
+ * see mupen64plus-ui-console/ae-bridge/ae_vidext.cpp
+ */
+public class FrameStats
+{
+    public interface OnFpsChangedListener
+    {
+        /**
+         * Called when the frame rate has changed.
+         *
+         * @param newValue The new FPS value.
+         */
+        void onFpsChanged( int newValue );
+    }
+
+    // Field offsets, must match FrameStatsBlock in ae_vidext.cpp
+    private static final int SEQUENCE = 0;
+    private static final int FPS = 1;
+    private static final int CORE_FPS = 2;
+    private static final int FRAME_TIME_AVG_US = 3;
+    private static final int FRAME_TIME_MAX_US = 4;
+    private static final int FRAME_COUNT = 5;
+
+    /** Number of times a torn read is retried before giving up until the next sample. */
+    private static final int MAX_READ_ATTEMPTS = 4;
+
+    private final IntBuffer mBlock;
+
+    /** Only accessed to order the plain buffer reads, see {@link #loadFence()}. */
+    private volatile int mFence;
+
+    /** Buffer swaps per second. */
+    public int fps;
+
+    /** Frames per second reported by the core frame callback. */
+    public int coreFps;
+
+    /** Average time between buffer swaps in the last period, in microseconds. */
+    public int frameTimeAvgUs;
+
+    /** Longest time between buffer swaps in the last period, in microseconds. */
+    public int frameTimeMaxUs;
+
+    /** Total number of buffer swaps counted since the video extension was initialized. */
+    public int frameCount;
+
+    FrameStats()
+    {
+        ByteBuffer buffer = NativeExports.getFrameStatsBuffer();
+        mBlock = buffer.order( ByteOrder.nativeOrder() ).asIntBuffer();
+    }
+
+    /**
+     * Copies the latest values published by the native side into the public fields.
+     *
+     * @return True if a consistent set of values was read.
+     */
+    public boolean sample()
+    {
+        for( int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++ )
+        {
+            int sequence = mBlock.get( SEQUENCE );
+
+            // Writer is in the middle of an update
+            if( ( sequence & 1 ) != 0 )
+                continue;
+
+            // The values must not be read before the sequence number
+            loadFence();
+
+            int newFps = mBlock.get( FPS );
+            int newCoreFps = mBlock.get( CORE_FPS );
+            int newFrameTimeAvgUs = mBlock.get( FRAME_TIME_AVG_US );
+            int newFrameTimeMaxUs = mBlock.get( FRAME_TIME_MAX_US );
+            int newFrameCount = mBlock.get( FRAME_COUNT );
+
+            // Nor the sequence number again before the values
+            loadFence();
+
+            if( sequence == mBlock.get( SEQUENCE ) )
+            {
+                fps = newFps;
+                coreFps = newCoreFps;
+                frameTimeAvgUs = newFrameTimeAvgUs;
+                frameTimeMaxUs = newFrameTimeMaxUs;
+                frameCount = newFrameCount;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Keeps the buffer reads before the fence ahead of the buffer reads after it, the native side
+     * publishes the sequence number with a release store. VarHandle fences are not available on
+     * the API levels we support, so a volatile write followed by a volatile read stands in for a
+     * load fence: earlier reads cannot move past the write, later reads cannot move ahead of the
+     * read, and the two stay in order.
+     */
+    private void loadFence()
+    {
+        mFence = 0;
+        if( mFence != 0 )
+            mFence = 0;
+    }
+}
@@ -53,6 +53,12 @@ class NativeConfigFiles
     //True if this device supports full GL mode
     private static boolean supportsFullGl = false;
 
+    //Parsed GLideN64 override file and the state of the file it was parsed from
+    private static ConfigFile glideN64Overrides = null;
+    private static String glideN64OverridesPath = null;
+    private static long glideN64OverridesLength = 0;
+    private static long glideN64OverridesModified = 0;
+
     /**
      * Populates the core configuration files with the user preferences.
      */
@@ -63,7 +69,7 @@ class NativeConfigFiles
         supportsFullGl = AppData.doesSupportFullGL();
 
         // gln64 config file
-        final ConfigFile gln64_conf = new ConfigFile( appData.gln64_conf );
+        final SyncedConfigFile gln64_conf = new SyncedConfigFile( appData.gln64_conf );
         gln64_conf.put( ConfigFile.SECTIONLESS_NAME, "window width", String.valueOf( game.videoRenderWidth ) );
         gln64_conf.put( ConfigFile.SECTIONLESS_NAME, "window height", String.valueOf( game.videoRenderHeight ) );
         gln64_conf.put( ConfigFile.SECTIONLESS_NAME, "auto frameskip", boolToNum( game.isGln64AutoFrameskipEnabled ) );
@@ -78,11 +84,11 @@ class NativeConfigFiles
         gln64_conf.put( ConfigFile.SECTIONLESS_NAME, "hack z", boolToNum( game.isGln64HackDepthEnabled ) );
 
         // glide64 config file
-        final ConfigFile glide64_conf = new ConfigFile( appData.glide64mk2_ini );
+        final SyncedConfigFile glide64_conf = new SyncedConfigFile( appData.glide64mk2_ini );
         glide64_conf.put( "DEFAULT", "aspect", "2" );                                                                       // Stretch to SurfaceView, Java will manage aspect ratio
 
         // Core and rice config file
-        final ConfigFile mupen64plus_cfg = new ConfigFile( game.getMupen64plusCfg() );
+        final SyncedConfigFile mupen64plus_cfg = new SyncedConfigFile( game.getMupen64plusCfg() );
 
         mupen64plus_cfg.put( "Audio-OpenSLES", "Version", "1.000000" );                                                          // Mupen64Plus OpenSLES Audio Plugin config parameter version number
         mupen64plus_cfg.put( "Audio-OpenSLES", "SWAP_CHANNELS", boolToTF( global.audioSwapChannels ) );                          // Swaps left and right channels
@@ -101,6 +107,8 @@ class NativeConfigFiles
         mupen64plus_cfg.put( "Core", "SaveSRAMPath", '"' + game.getSramDataDir() + '"' );                                        // Path to directory where SRAM/EEPROM data (in-game saves) are stored. If this is blank, the default value of ${UserConfigPath}/save will be used
         mupen64plus_cfg.put( "Core", "SharedDataPath", '"' + appData.coreSharedDataDir + '"' );                             // Path to a directory to search when looking for shared data files
         mupen64plus_cfg.put( "Core", "CountPerOp", String.valueOf( game.countPerOp ) );                                     // Count per op
+        mupen64plus_cfg.put( "Core", "RewindBufferSize", String.valueOf( global.rewindBufferSize ) );                       // Memory in megabytes used to record rewind history, 0 disables rewinding
+        mupen64plus_cfg.put( "Core", "SaveStateCodec", '"' + global.saveStateCodec + '"' );                                 // Compression of save states: deflate, deflate-fast, rle or none
 
         mupen64plus_cfg.put( "CoreEvents", "Version", "1.000000" );                                                         // Mupen64Plus CoreEvents config parameter set version number.  Please don't change this version number.
         mupen64plus_cfg.put( "CoreEvents", "Kbd Mapping Stop", EMPTY );
@@ -144,40 +152,8 @@ class NativeConfigFiles
         mupen64plus_cfg.put( "Transferpak", "GB-rom-4", game.getTransferPakRom(4) );
         mupen64plus_cfg.put( "Transferpak", "GB-ram-4", game.getTransferPakRam(4) );
 
-        //Add safety checks to prevent users from manually inputting unsupported plugins for their device
-        String videoPluginString = game.videoPlugin.path;
-
-        if(game.isGliden64Enabled)
-        {
-            // Fix old format GLideN64 library using regular expression, for example, this will replace
-            // libmupen64plus-video-gliden64-gles3.so with libmupen64plus-video-gliden64.so
-            videoPluginString = videoPluginString.replaceAll("libmupen64plus-video-gliden64.*so", "libmupen64plus-video-gliden64.so");
-        }
-
-        if(game.isGlide64Enabled && supportsFullGl)
-        {
-            //Use the full GL version of Glide64mk2 if it's supported by the device
-            videoPluginString = videoPluginString.replace("libmupen64plus-video-glide64mk2.so", "libmupen64plus-video-glide64mk2-egl.so");
-        }
-
-        // Angrylion was replaced with Angrylion RDP Plus
-        videoPluginString = videoPluginString.replaceAll("libmupen64plus-video-angrylion.so", "libmupen64plus-video-angrylion-rdp-plus.so");
-
-        mupen64plus_cfg.put( "UI-Console", "VideoPlugin", '"' + videoPluginString + '"' );                              // Filename of video plugin
-
-        //Use the FP version of the SLES audio plugin if the API level is high enough
-        String audioPluginString = global.audioPlugin.path;
-
-        if(audioPluginString.endsWith("libmupen64plus-audio-sles.so"))
-        {
-            //If running lollipop, use the floating point version
-            if(AppData.IS_LOLLIPOP && global.audioSLESFloatingPoint)
-            {
-                audioPluginString = audioPluginString.replace("libmupen64plus-audio-sles.so", "libmupen64plus-audio-sles-fp.so");
-            }
-        }
-
-        mupen64plus_cfg.put( "UI-Console", "AudioPlugin", '"' + audioPluginString + '"' );                            // Filename of audio plugin
+        mupen64plus_cfg.put( "UI-Console", "VideoPlugin", '"' + getVideoPluginPath( game, supportsFullGl ) + '"' );   // Filename of video plugin
+        mupen64plus_cfg.put( "UI-Console", "AudioPlugin", '"' + getAudioPluginPath( global ) + '"' );                 // Filename of audio plugin
         mupen64plus_cfg.put( "UI-Console", "InputPlugin", '"' + appData.inputLib + '"' );                                   // Filename of input plugin
         mupen64plus_cfg.put( "UI-Console", "RspPlugin", '"' + game.rspPluginPath + '"' );                                       // Filename of RSP plugin
 
@@ -249,8 +225,8 @@ class NativeConfigFiles
 
         readHiResSettings(game, global);
 
-        // gln64 config file
-        final ConfigFile glideN64_conf = new ConfigFile( appData.glideN64_conf );
+        // GLideN64 per game overrides
+        final ConfigFile glideN64_conf = getGLideN64Overrides( appData.glideN64_conf );
 
         mupen64plus_cfg.put( "Video-GLideN64", "configVersion", String.valueOf(GLideN64Prefs.VERSION) );
 
@@ -330,6 +306,7 @@ class NativeConfigFiles
         mupen64plus_cfg.put( "Video-Angrylion-Plus", "ViWidescreen", boolToTF( game.angrylionPlusPrefs.viWidescreen ) );
         mupen64plus_cfg.put( "Video-Angrylion-Plus", "ViHideOverscan", boolToTF( game.angrylionPlusPrefs.viHideOverscan ) );
 
+        // Only files whose values changed since the last sync are rewritten
         gln64_conf.save();
         glide64_conf.save();
         return mupen64plus_cfg.save();
@@ -337,6 +314,24 @@ class NativeConfigFiles
         //@formatter:on
     }
 
+    /**
+     * The GLideN64 override file only changes when assets are extracted, keep it parsed between
+     * syncs as long as it isn't modified.
+     */
+    private static synchronized ConfigFile getGLideN64Overrides( String filename )
+    {
+        final File file = new File( filename );
+        if( glideN64Overrides == null || !filename.equals( glideN64OverridesPath ) ||
+                file.length() != glideN64OverridesLength || file.lastModified() != glideN64OverridesModified )
+        {
+            glideN64Overrides = new ConfigFile( filename );
+            glideN64OverridesPath = filename;
+            glideN64OverridesLength = file.length();
+            glideN64OverridesModified = file.lastModified();
+        }
+        return glideN64Overrides;
+    }
+
     private static String boolToTF( boolean b )
     {
         return b ? "True" : "False";
@@ -403,7 +398,7 @@ class NativeConfigFiles
      * @param setting Setting value to look up
      * @param value Value to use if setting is not present in the file
      */
-    private static void putGLideN64Setting(ConfigFile mupenConfigFile, ConfigFile glideN64ConfigFile,
+    private static void putGLideN64Setting(SyncedConfigFile mupenConfigFile, ConfigFile glideN64ConfigFile,
         GamePrefs game, String setting, String value)
     {
         String headerNameURL = game.gameHeaderName;
@@ -435,4 +430,50 @@ class NativeConfigFiles
         }
     }
 
+    /**
+     * Returns the video plugin library the front-end should load.
+     */
+    static String getVideoPluginPath( GamePrefs game, boolean supportsFullGl )
+    {
+        //Add safety checks to prevent users from manually inputting unsupported plugins for their device
+        String videoPluginString = game.videoPlugin.path;
+
+        if(game.isGliden64Enabled)
+        {
+            // Fix old format GLideN64 library using regular expression, for example, this will replace
+            // libmupen64plus-video-gliden64-gles3.so with libmupen64plus-video-gliden64.so
+            videoPluginString = videoPluginString.replaceAll("libmupen64plus-video-gliden64.*so", "libmupen64plus-video-gliden64.so");
+        }
+
+        if(game.isGlide64Enabled && supportsFullGl)
+        {
+            //Use the full GL version of Glide64mk2 if it's supported by the device
+            videoPluginString = videoPluginString.replace("libmupen64plus-video-glide64mk2.so", "libmupen64plus-video-glide64mk2-egl.so");
+        }
+
+        // Angrylion was replaced with Angrylion RDP Plus
+        videoPluginString = videoPluginString.replaceAll("libmupen64plus-video-angrylion.so", "libmupen64plus-video-angrylion-rdp-plus.so");
+
+        return videoPluginString;
+    }
+
+    /**
+     * Returns the audio plugin library the front-end should load.
+     */
+    static String getAudioPluginPath( GlobalPrefs global )
+    {
+        //Use the FP version of the SLES audio plugin if the API level is high enough
+        String audioPluginString = global.audioPlugin.path;
+
+        if(audioPluginString.endsWith("libmupen64plus-audio-sles.so"))
+        {
+            //If running lollipop, use the floating point version
+            if(AppData.IS_LOLLIPOP && global.audioSLESFloatingPoint)
+            {
+                audioPluginString = audioPluginString.replace("libmupen64plus-audio-sles.so", "libmupen64plus-audio-sles-fp.so");
+            }
+        }
+
+        return audioPluginString;
+    }
 }
@@ -24,6 +24,10 @@ package paulscode.android.mupen64plusae.jni;
 import android.util.Log;
 import android.view.Surface;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+
 /**
  * Call-outs made from Java to the native ae-exports library. Any function names changed here should
  * also be changed in the corresponding C code, and vice versa.
@@ -41,11 +45,12 @@ public class NativeExports
 
     static boolean mLibrariesLoaded = false;
 
+    /** Plugin libraries opened ahead of emulation, they stay open until the process ends. */
+    private static final HashSet<String> mPreloadedLibraries = new HashSet<>();
 
-    
     // TODO: Add javadoc
 
-    static void loadLibrariesIfNotLoaded(String libPath, int androidSDK )
+    static synchronized void loadLibrariesIfNotLoaded(String libPath, int androidSDK )
     {
         if(!mLibrariesLoaded)
         {
@@ -54,18 +59,54 @@ public class NativeExports
         }
     }
 
-    static void unloadLibrariesIfLoaded()
+    static synchronized void unloadLibrariesIfLoaded()
     {
         if(mLibrariesLoaded)
         {
             unloadLibraries();
             mLibrariesLoaded = false;
+
+            synchronized( mPreloadedLibraries )
+            {
+                mPreloadedLibraries.clear();
+            }
         }
     }
-    
+
+    static synchronized boolean areLibrariesLoaded()
+    {
+        return mLibrariesLoaded;
+    }
+
+    /**
+     * Opens plugin libraries ahead of emulation so they are already relocated and paged in when
+     * the front-end loads them. Paths that don't exist, e.g. the "dummy" plugin, are skipped.
+     *
+     * @param libPaths Full paths of the plugin libraries.
+     */
+    static void preloadLibrariesIfNotLoaded( String[] libPaths )
+    {
+        synchronized( mPreloadedLibraries )
+        {
+            for( String libPath : libPaths )
+            {
+                if( libPath == null || mPreloadedLibraries.contains( libPath ) || !new File( libPath ).isFile() )
+                    continue;
+
+                if( preloadLibrary( libPath ) )
+                {
+                    mPreloadedLibraries.add( libPath );
+                    Log.i( "NativeExports", "Preloaded " + libPath );
+                }
+            }
+        }
+    }
+
     static native void loadLibraries( String libPath, int androidSDK );
     
     static native void unloadLibraries();
+
+    static native boolean preloadLibrary( String libPath );
     
     static native int emuStart( String userDataPath, String userCachePath, Object[] args );
     
@@ -97,9 +138,19 @@ public class NativeExports
     
     static native void emuGameShark( boolean pressed );
 
+    static native void emuRewindStart();
+
+    static native void emuRewindStop();
+
     static native void emuDestroySurface();
 
     static native void FPSEnabled(int recalc);
+
+    static native ByteBuffer getFrameStatsBuffer();
+
+    static native ByteBuffer getTelemetryBuffer();
+
+    static native ByteBuffer getStartupTraceBuffer();
     
     static native int emuGetState();
     
@@ -20,8 +20,6 @@
  */
 package paulscode.android.mupen64plusae.jni;
 
-import java.util.ArrayList;
-
 /**
  * Call-ins made from the native ae-imports library to Java. Any function names changed here should
  * also be changed in the corresponding C code, and vice versa.
@@ -41,43 +39,22 @@ public class NativeImports
         void onStateCallback( int paramChanged, int newValue );
     }
 
-    public interface OnFpsChangedListener
-    {
-        /**
-         * Called when the frame rate has changed.
-         *
-         * @param newValue The new FPS value.
-         */
-        void onFpsChanged( int newValue );
-    }
-
-    // Core state callbacks - used by NativeImports
-    private static final ArrayList<OnStateCallbackListener> sStateCallbackListeners = new ArrayList<>();
-    private static final Object sStateCallbackLock = new Object();
-
-    //Frame rate info - used by ae-vidext
-    private static final ArrayList<OnFpsChangedListener> sFpsListeners = new ArrayList<>();
+    // Core state callbacks - delivered on their own thread so listeners never stall the core
+    private static final StateCallbackDispatcher sStateCallbackDispatcher = new StateCallbackDispatcher();
 
     static void addOnStateCallbackListener( OnStateCallbackListener listener )
     {
-        synchronized( sStateCallbackLock )
-        {
-            // Do not allow multiple instances, in case listeners want to remove themselves
-            if( !sStateCallbackListeners.contains( listener ) )
-                sStateCallbackListeners.add( listener );
-        }
+        sStateCallbackDispatcher.addListener( listener );
     }
 
     static void removeOnStateCallbackListener( OnStateCallbackListener listener )
     {
-        synchronized( sStateCallbackLock )
-        {
-            sStateCallbackListeners.remove( listener );
-        }
+        sStateCallbackDispatcher.removeListener( listener );
     }
 
     /**
-     * Callback for when an emulator's state/parameter has changed.
+     * Callback for when an emulator's state/parameter has changed. This only queues the change,
+     * listeners are notified on the dispatcher thread.
      * 
      * @param paramChanged The changed parameter's ID.
      * @param newValue The new value of the changed parameter.
@@ -85,43 +62,6 @@ public class NativeImports
      */
     static void stateCallback( int paramChanged, int newValue )
     {
-        synchronized( sStateCallbackLock )
-        {
-            for( int i = sStateCallbackListeners.size(); i > 0; i-- )
-            {
-                // Traverse the list backwards in case any listeners remove themselves
-                sStateCallbackListeners.get( i - 1 ).onStateCallback( paramChanged, newValue );
-            }
-        }
-    }
-
-    static void removeOnFpsChangedListener(OnFpsChangedListener fpsListener)
-    {
-        synchronized (sFpsListeners)
-        {
-            sFpsListeners.remove(fpsListener);
-        }
-    }
-
-    static void addOnFpsChangedListener(OnFpsChangedListener fpsListener, int fpsRecalcPeriod )
-    {
-        synchronized (sFpsListeners)
-        {
-            if(fpsListener != null && !sFpsListeners.contains(fpsListener))
-            {
-                sFpsListeners.add(fpsListener);
-                NativeExports.FPSEnabled(fpsRecalcPeriod);
-            }
-        }
-    }
-
-    static void FPSCounter (int fps)
-    {
-        synchronized (sFpsListeners)
-        {
-            for (OnFpsChangedListener listener: sFpsListeners ) {
-                listener.onFpsChanged(fps);
-            }
-        }
+        sStateCallbackDispatcher.post( paramChanged, newValue );
     }
 }
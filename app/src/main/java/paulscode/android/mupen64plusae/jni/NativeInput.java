@@ -20,9 +20,10 @@
  */
 package paulscode.android.mupen64plusae.jni;
 
-
 import android.os.Vibrator;
 
+import java.nio.ByteBuffer;
+
 /**
  * Calls made between the native input-android library and Java. Any function names changed here
  * should also be changed in the corresponding C code, and vice versa.
@@ -32,15 +33,13 @@ import android.os.Vibrator;
  */
 public class NativeInput
 {
-    /** Maximum duration for vibration if no further vibration commands are issued. */
-    private static final long VIBRATE_TIMEOUT = 1000;
-    
     static
     {
         System.loadLibrary( "mupen64plus-input-android" );
     }
 
-    private static final Vibrator[] sVibrators = new Vibrator[4];
+    /** Created when the first vibrator is registered, so that games without rumble don't poll. */
+    private static RumbleScheduler sRumbleScheduler = null;
     
     /**
      * Initialize input-android plugin.
@@ -70,19 +69,11 @@ public class NativeInput
     static native void setConfig( int controllerNum, boolean plugged, int pakType );
     
     /**
-     * @deprecated This method should only be called by native code.
-     * @see jni/input-android/plugin.c
+     * Get the rumble state block written by the plugin, see RumbleBlock in plugin.c.
+     *
+     * @return A direct buffer that stays valid for as long as the library is loaded.
      */
-    static void rumble( int controllerNum, boolean active )
-    {
-        if( sVibrators[controllerNum] == null )
-            return;
-        
-        if( active )
-            sVibrators[controllerNum].vibrate( VIBRATE_TIMEOUT );
-        else
-            sVibrators[controllerNum].cancel();
-    }
+    static native ByteBuffer getRumbleBuffer();
 
     static void registerVibrator( int player, Vibrator vibrator )
     {
@@ -90,7 +81,13 @@ public class NativeInput
 
         if( hasVibrator && player > 0 && player < 5 )
         {
-            sVibrators[player - 1] = vibrator;
+            synchronized( NativeInput.class )
+            {
+                if( sRumbleScheduler == null )
+                    sRumbleScheduler = new RumbleScheduler();
+            }
+
+            sRumbleScheduler.setVibrator( player - 1, vibrator );
         }
     }
 }
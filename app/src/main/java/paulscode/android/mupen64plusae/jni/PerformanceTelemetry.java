@@ -0,0 +1,227 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Authors: fzurita
+ */
+package paulscode.android.mupen64plusae.jni;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Locale;
+
+/**
+ * Reader for the per-session performance telemetry collected by ae-vidext: frame time and core
+ * frame time histograms, slow frame counts and the audio plugin queue depth.
+ *
+ * see mupen64plus-ui-console/ae-bridge/ae_vidext.cpp
+ */
+public class PerformanceTelemetry
+{
+    // Layout, must match TelemetryBlock in ae_vidext.cpp
+    private static final int UNIT_SHIFT = 6;
+    private static final int HISTOGRAM_BUCKETS = 96;
+    private static final int FRAME_TIME_HISTOGRAM = 0;
+    private static final int CORE_FRAME_TIME_HISTOGRAM = FRAME_TIME_HISTOGRAM + HISTOGRAM_BUCKETS;
+    private static final int FRAMES_OVER_16MS = CORE_FRAME_TIME_HISTOGRAM + HISTOGRAM_BUCKETS;
+    private static final int FRAMES_OVER_33MS = FRAMES_OVER_16MS + 1;
+    private static final int AUDIO_QUEUE_DEPTH = FRAMES_OVER_33MS + 1;
+    private static final int AUDIO_QUEUE_DEPTH_MIN = AUDIO_QUEUE_DEPTH + 1;
+    private static final int AUDIO_QUEUE_DEPTH_MAX = AUDIO_QUEUE_DEPTH_MIN + 1;
+    private static final int AUDIO_QUEUE_EMPTY_COUNT = AUDIO_QUEUE_DEPTH_MAX + 1;
+
+    private final IntBuffer mBlock;
+
+    /** Buffer swap interval histogram, see {@link #getBucketLowerBoundUs(int)} for bucket bounds. */
+    public final int[] frameTimeHistogram = new int[HISTOGRAM_BUCKETS];
+
+    /** Core frame interval histogram, see {@link #getBucketLowerBoundUs(int)} for bucket bounds. */
+    public final int[] coreFrameTimeHistogram = new int[HISTOGRAM_BUCKETS];
+
+    /** Frames that took longer than 16.7 ms. */
+    public int framesOver16ms;
+
+    /** Frames that took longer than 33.3 ms. */
+    public int framesOver33ms;
+
+    /** Last audio queue depth in buffers, -1 if unknown. */
+    public int audioQueueDepth;
+
+    /** Lowest audio queue depth seen this session, -1 if unknown. */
+    public int audioQueueDepthMin;
+
+    /** Highest audio queue depth seen this session, -1 if unknown. */
+    public int audioQueueDepthMax;
+
+    /** Number of frames where the audio queue had run dry. */
+    public int audioQueueEmptyCount;
+
+    PerformanceTelemetry()
+    {
+        mBlock = NativeExports.getTelemetryBuffer().order( ByteOrder.nativeOrder() ).asIntBuffer();
+    }
+
+    /**
+     * Copies the latest telemetry into the public fields. Counters are updated concurrently by
+     * the emulation thread, so histograms may be off by a frame with respect to each other.
+     */
+    public void sample()
+    {
+        for( int i = 0; i < HISTOGRAM_BUCKETS; i++ )
+        {
+            frameTimeHistogram[i] = mBlock.get( FRAME_TIME_HISTOGRAM + i );
+            coreFrameTimeHistogram[i] = mBlock.get( CORE_FRAME_TIME_HISTOGRAM + i );
+        }
+
+        framesOver16ms = mBlock.get( FRAMES_OVER_16MS );
+        framesOver33ms = mBlock.get( FRAMES_OVER_33MS );
+        audioQueueDepth = mBlock.get( AUDIO_QUEUE_DEPTH );
+        audioQueueDepthMin = mBlock.get( AUDIO_QUEUE_DEPTH_MIN );
+        audioQueueDepthMax = mBlock.get( AUDIO_QUEUE_DEPTH_MAX );
+        audioQueueEmptyCount = mBlock.get( AUDIO_QUEUE_EMPTY_COUNT );
+    }
+
+    /**
+     * Returns the smallest interval counted by a histogram bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The lower bound of the bucket in microseconds.
+     */
+    public static int getBucketLowerBoundUs( int bucket )
+    {
+        // First 16 buckets are linear, after that each power of two has 8 sub-buckets
+        int magnitude = bucket < 16 ? 0 : ( bucket >> 3 ) - 1;
+        int subBucket = bucket - magnitude * 8;
+        return ( subBucket << magnitude ) << UNIT_SHIFT;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given percentile.
+     *
+     * @param histogram  One of the histograms of this class.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The interval in microseconds, 0 if the histogram is empty.
+     */
+    public static int getPercentileUs( int[] histogram, double percentile )
+    {
+        long total = getCount( histogram );
+        if( total == 0 )
+            return 0;
+
+        long threshold = (long) Math.ceil( total * percentile / 100.0 );
+        long count = 0;
+        for( int i = 0; i < histogram.length; i++ )
+        {
+            count += histogram[i];
+            if( count >= threshold )
+                return getBucketLowerBoundUs( i + 1 );
+        }
+
+        return getBucketLowerBoundUs( histogram.length );
+    }
+
+    /**
+     * @param histogram One of the histograms of this class.
+     * @return The number of samples in the histogram.
+     */
+    public static long getCount( int[] histogram )
+    {
+        long total = 0;
+        for( int value : histogram )
+            total += value;
+        return total;
+    }
+
+    /**
+     * Appends a short human readable summary, suitable for the in-game stats panel.
+     *
+     * @param builder The builder to append to, it is not cleared.
+     */
+    public void appendSummary( StringBuilder builder )
+    {
+        appendHistogramSummary( builder, "Frame", frameTimeHistogram );
+        appendHistogramSummary( builder, "Core frame", coreFrameTimeHistogram );
+
+        builder.append( "Frames > 16.7ms: " ).append( framesOver16ms )
+                .append( "  > 33.3ms: " ).append( framesOver33ms ).append( '\n' );
+
+        builder.append( "Audio queue: " );
+        if( audioQueueDepth < 0 )
+        {
+            builder.append( "n/a" );
+        }
+        else
+        {
+            builder.append( audioQueueDepth ).append( " (min " ).append( audioQueueDepthMin )
+                    .append( ", max " ).append( audioQueueDepthMax ).append( ", empty " )
+                    .append( audioQueueEmptyCount ).append( ')' );
+        }
+    }
+
+    private static void appendHistogramSummary( StringBuilder builder, String name, int[] histogram )
+    {
+        builder.append( name ).append( " p50/p90/p99: " )
+                .append( getPercentileUs( histogram, 50 ) / 1000 ).append( '/' )
+                .append( getPercentileUs( histogram, 90 ) / 1000 ).append( '/' )
+                .append( getPercentileUs( histogram, 99 ) / 1000 ).append( " ms\n" );
+    }
+
+    /**
+     * Writes the full telemetry, including every non-empty histogram bucket, to a text file.
+     *
+     * @param file    The file to write.
+     * @param romName The name of the game the telemetry belongs to.
+     * @throws IOException If the file could not be written.
+     */
+    public void writeReport( File file, String romName ) throws IOException
+    {
+        sample();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append( "# " ).append( romName ).append( '\n' );
+        appendSummary( builder );
+        builder.append( "\n\n" );
+
+        appendHistogram( builder, "frame_time_us", frameTimeHistogram );
+        appendHistogram( builder, "core_frame_time_us", coreFrameTimeHistogram );
+
+        if( !file.getParentFile().exists() && !file.getParentFile().mkdirs() )
+            throw new IOException( "Unable to create " + file.getParent() );
+
+        try( FileWriter writer = new FileWriter( file ) )
+        {
+            writer.write( builder.toString() );
+        }
+    }
+
+    private static void appendHistogram( StringBuilder builder, String name, int[] histogram )
+    {
+        builder.append( "[" ).append( name ).append( "]\n" );
+        for( int i = 0; i < histogram.length; i++ )
+        {
+            if( histogram[i] != 0 )
+            {
+                builder.append( String.format( Locale.US, "%d-%d=%d\n", getBucketLowerBoundUs( i ),
+                        getBucketLowerBoundUs( i + 1 ), histogram[i] ) );
+            }
+        }
+        builder.append( '\n' );
+    }
+}
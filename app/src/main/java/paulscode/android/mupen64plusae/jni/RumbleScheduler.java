@@ -0,0 +1,338 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Authors: fzurita
+ */
+package paulscode.android.mupen64plusae.jni;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Drives the vibrators from the rumble pak state published by input-android. The emulation
+ * thread only bumps counters in a shared block, this class polls the block on its own thread and
+ * coalesces the writes into as few vibrator calls as possible.
+ *
+ * Games that simulate weaker rumble by toggling the motor every frame are mapped to a vibration
+ * amplitude proportional to the fraction of writes that turned the motor on, averaged over about
+ * 100 ms so that the vibrator keeps running at a steady strength.
+ *
+ * Polling slows down while no controller rumbles and stops while the emulator is paused.
+ *
+ * see mupen64plus-input-android/src/plugin.c
+ */
+class RumbleScheduler
+{
+    /** Maximum duration for vibration if no further vibration commands are issued. */
+    private static final long VIBRATE_TIMEOUT = 1000;
+
+    /** How often the rumble state is polled, in milliseconds. About once per N64 frame. */
+    private static final long POLL_PERIOD = 16;
+
+    /** How often the rumble state is polled while nothing rumbles, in milliseconds. */
+    private static final long IDLE_POLL_PERIOD = 64;
+
+    /** Number of polls the duty cycle is averaged over, about 100 ms. */
+    private static final int WINDOW_POLLS = 6;
+
+    /** Vibrations are renewed this long before they would time out, in milliseconds. */
+    private static final long RENEW_MARGIN = 100;
+
+    /** Number of distinct amplitudes, so that small duty cycle changes don't restart the motor. */
+    private static final int AMPLITUDE_LEVELS = 8;
+
+    private static final int MAX_AMPLITUDE = 255;
+
+    private static final int NUM_CONTROLLERS = 4;
+
+    // Field offsets, must match RumbleBlock in plugin.c
+    private static final int ACTIVE = 0;
+    private static final int WRITES = ACTIVE + NUM_CONTROLLERS;
+    private static final int ACTIVE_WRITES = WRITES + NUM_CONTROLLERS;
+
+    private final IntBuffer mBlock;
+    private final Handler mHandler;
+
+    private final Vibrator[] mVibrators = new Vibrator[NUM_CONTROLLERS];
+
+    /** Counters seen in the last poll, per controller. */
+    private final int[] mLastWrites = new int[NUM_CONTROLLERS];
+    private final int[] mLastActiveWrites = new int[NUM_CONTROLLERS];
+
+    /** Amplitude the vibrator is currently running at, 0 if stopped. */
+    private final int[] mAppliedAmplitude = new int[NUM_CONTROLLERS];
+
+    /** Time at which the current vibration ends unless renewed, in uptime milliseconds. */
+    private final long[] mVibrationEnd = new long[NUM_CONTROLLERS];
+
+    /** Whether the game wrote to the rumble pak since the vibration was last started. */
+    private final boolean[] mWrittenSinceVibrate = new boolean[NUM_CONTROLLERS];
+
+    /** Writes and writes that turned the motor on in each poll of the window, per controller. */
+    private final int[][] mWindowWrites = new int[NUM_CONTROLLERS][WINDOW_POLLS];
+    private final int[][] mWindowActiveWrites = new int[NUM_CONTROLLERS][WINDOW_POLLS];
+
+    /** Totals over the window, per controller. */
+    private final int[] mWindowWritesTotal = new int[NUM_CONTROLLERS];
+    private final int[] mWindowActiveWritesTotal = new int[NUM_CONTROLLERS];
+
+    /** Slot of the window the next poll is stored in. */
+    private int mWindowSlot = 0;
+
+    /** Whether the poller is scheduled, false while the emulator is paused or stopped. */
+    private boolean mIsPolling = false;
+
+    private final Runnable mPoller = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            boolean busy = poll();
+            mHandler.postDelayed( this, busy ? POLL_PERIOD : IDLE_POLL_PERIOD );
+        }
+    };
+
+    RumbleScheduler()
+    {
+        mBlock = NativeInput.getRumbleBuffer().order( ByteOrder.nativeOrder() ).asIntBuffer();
+
+        HandlerThread thread = new HandlerThread( "RumbleScheduler", Process.THREAD_PRIORITY_DEFAULT );
+        thread.start();
+        mHandler = new Handler( thread.getLooper() );
+
+        // The emulator may not have started yet, it reports when it does
+        NativeImports.addOnStateCallbackListener( new NativeImports.OnStateCallbackListener()
+        {
+            @Override
+            public void onStateCallback( int paramChanged, final int newValue )
+            {
+                if( paramChanged != NativeConstants.M64CORE_EMU_STATE )
+                    return;
+
+                mHandler.post( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        setPolling( newValue == NativeConstants.EMULATOR_STATE_RUNNING );
+                    }
+                } );
+            }
+        } );
+
+        mHandler.post( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                setPolling( NativeExports.emuGetState() == NativeConstants.EMULATOR_STATE_RUNNING );
+            }
+        } );
+    }
+
+    /**
+     * Sets the vibrator used for a controller. May be called from any thread.
+     *
+     * @param controllerNum Controller index, in the range [0,3].
+     * @param vibrator The vibrator, or null to disable rumble for this controller.
+     */
+    void setVibrator( final int controllerNum, final Vibrator vibrator )
+    {
+        mHandler.post( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if( mVibrators[controllerNum] != null && mAppliedAmplitude[controllerNum] != 0 )
+                    mVibrators[controllerNum].cancel();
+
+                mVibrators[controllerNum] = vibrator;
+                mAppliedAmplitude[controllerNum] = 0;
+                mLastWrites[controllerNum] = mBlock.get( WRITES + controllerNum );
+                mLastActiveWrites[controllerNum] = mBlock.get( ACTIVE_WRITES + controllerNum );
+                clearWindow( controllerNum );
+            }
+        } );
+    }
+
+    /**
+     * Starts or stops polling. Vibrations are stopped along with the emulator.
+     */
+    private void setPolling( boolean polling )
+    {
+        if( polling == mIsPolling )
+            return;
+
+        mIsPolling = polling;
+        if( polling )
+        {
+            // Writes made while paused, such as the game's own stop on pause, are not averaged in
+            for( int i = 0; i < NUM_CONTROLLERS; i++ )
+            {
+                mLastWrites[i] = mBlock.get( WRITES + i );
+                mLastActiveWrites[i] = mBlock.get( ACTIVE_WRITES + i );
+                clearWindow( i );
+            }
+            mHandler.post( mPoller );
+        }
+        else
+        {
+            mHandler.removeCallbacks( mPoller );
+            for( int i = 0; i < NUM_CONTROLLERS; i++ )
+            {
+                if( mVibrators[i] != null )
+                    apply( i, 0, SystemClock.uptimeMillis() );
+            }
+        }
+    }
+
+    /**
+     * @return True if a controller rumbles or the game wrote to a rumble pak within the window.
+     */
+    private boolean poll()
+    {
+        long now = SystemClock.uptimeMillis();
+        int slot = mWindowSlot;
+        mWindowSlot = ( slot + 1 ) % WINDOW_POLLS;
+        boolean busy = false;
+
+        for( int i = 0; i < NUM_CONTROLLERS; i++ )
+        {
+            if( mVibrators[i] == null )
+                continue;
+
+            int writes = mBlock.get( WRITES + i );
+            int activeWrites = mBlock.get( ACTIVE_WRITES + i );
+
+            // Counters go back to zero when the plugin is initialized again
+            int newWrites = Math.max( 0, writes - mLastWrites[i] );
+            int newActiveWrites = Math.max( 0, activeWrites - mLastActiveWrites[i] );
+            mLastWrites[i] = writes;
+            mLastActiveWrites[i] = activeWrites;
+
+            mWindowWritesTotal[i] += newWrites - mWindowWrites[i][slot];
+            mWindowActiveWritesTotal[i] += newActiveWrites - mWindowActiveWrites[i][slot];
+            mWindowWrites[i][slot] = newWrites;
+            mWindowActiveWrites[i][slot] = newActiveWrites;
+
+            int amplitude = mAppliedAmplitude[i];
+
+            // An expired vibration stays off until the game writes again, same as a single
+            // vibrate(VIBRATE_TIMEOUT) call would
+            if( amplitude != 0 && now >= mVibrationEnd[i] )
+                amplitude = mAppliedAmplitude[i] = 0;
+
+            if( newWrites > 0 )
+                mWrittenSinceVibrate[i] = true;
+
+            int windowWrites = mWindowWritesTotal[i];
+            int windowActiveWrites = mWindowActiveWritesTotal[i];
+            if( windowWrites > 0 )
+            {
+                if( windowActiveWrites == windowWrites && mBlock.get( ACTIVE + i ) != 0 )
+                    amplitude = MAX_AMPLITUDE;
+                else
+                    amplitude = quantize( windowActiveWrites, windowWrites );
+
+                // A write more or less in the window is not worth restarting the motor for
+                int applied = mAppliedAmplitude[i];
+                if( amplitude != 0 && applied != 0 && Math.abs( amplitude - applied ) <= MAX_AMPLITUDE / AMPLITUDE_LEVELS )
+                    amplitude = applied;
+            }
+            else if( mBlock.get( ACTIVE + i ) == 0 )
+            {
+                amplitude = 0;
+            }
+
+            apply( i, amplitude, now );
+            busy |= windowWrites > 0 || mAppliedAmplitude[i] != 0;
+        }
+        return busy;
+    }
+
+    private void clearWindow( int controllerNum )
+    {
+        for( int slot = 0; slot < WINDOW_POLLS; slot++ )
+        {
+            mWindowWrites[controllerNum][slot] = 0;
+            mWindowActiveWrites[controllerNum][slot] = 0;
+        }
+        mWindowWritesTotal[controllerNum] = 0;
+        mWindowActiveWritesTotal[controllerNum] = 0;
+    }
+
+    private static int quantize( int activeWrites, int writes )
+    {
+        if( activeWrites <= 0 )
+            return 0;
+
+        int level = ( activeWrites * AMPLITUDE_LEVELS + writes - 1 ) / writes;
+        return Math.min( MAX_AMPLITUDE, level * MAX_AMPLITUDE / AMPLITUDE_LEVELS );
+    }
+
+    private void apply( int controllerNum, int amplitude, long now )
+    {
+        Vibrator vibrator = mVibrators[controllerNum];
+
+        if( amplitude == 0 )
+        {
+            if( mAppliedAmplitude[controllerNum] != 0 )
+            {
+                vibrator.cancel();
+                mAppliedAmplitude[controllerNum] = 0;
+            }
+            return;
+        }
+
+        boolean hasAmplitudeControl = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O &&
+                vibrator.hasAmplitudeControl();
+
+        // Without amplitude control every strength looks the same, don't restart the motor for it
+        if( !hasAmplitudeControl )
+            amplitude = MAX_AMPLITUDE;
+
+        boolean changed = amplitude != mAppliedAmplitude[controllerNum];
+        boolean renew = mWrittenSinceVibrate[controllerNum] &&
+                now >= mVibrationEnd[controllerNum] - RENEW_MARGIN;
+
+        if( !changed && !renew )
+            return;
+
+        if( Build.VERSION.SDK_INT >= Build.VERSION_CODES.O )
+        {
+            int effectAmplitude = hasAmplitudeControl ? amplitude : VibrationEffect.DEFAULT_AMPLITUDE;
+            vibrator.vibrate( VibrationEffect.createOneShot( VIBRATE_TIMEOUT, effectAmplitude ) );
+        }
+        else
+        {
+            vibrator.vibrate( VIBRATE_TIMEOUT );
+        }
+
+        mAppliedAmplitude[controllerNum] = amplitude;
+        mVibrationEnd[controllerNum] = now + VIBRATE_TIMEOUT;
+        mWrittenSinceVibrate[controllerNum] = false;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Authors: fzurita
+ */
+package paulscode.android.mupen64plusae.jni;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import paulscode.android.mupen64plusae.jni.NativeImports.OnStateCallbackListener;
+
+/**
+ * Delivers core state changes to listeners on a dedicated thread. Callers of
+ * {@link #post(int, int)}, usually the emulation thread, only store the (param, value) pair in a
+ * lock-free ring and wake the dispatcher, they never wait for listeners or take a lock. Events
+ * are never dropped: when the ring is full they go to an unbounded overflow queue instead.
+ * <p>
+ * Each event goes to the listeners that were registered when it was posted, except those that
+ * were removed before it was delivered.
+ */
+class StateCallbackDispatcher
+{
+    private static final String TAG = "StateCallbackDispatcher";
+
+    /** Number of pending events that fit in the ring, must be a power of two. */
+    private static final int CAPACITY = 1024;
+
+    private static final OnStateCallbackListener[] NO_LISTENERS = new OnStateCallbackListener[0];
+
+    /** An event that didn't fit in the ring. */
+    private static class Event
+    {
+        final long event;
+        final OnStateCallbackListener[] listeners;
+
+        Event( long event, OnStateCallbackListener[] listeners )
+        {
+            this.event = event;
+            this.listeners = listeners;
+        }
+    }
+
+    // Bounded multi-producer/single-consumer ring. Each slot has a sequence number that tells
+    // producers when it's free and the consumer when it's been published.
+    private final AtomicLongArray mSequences = new AtomicLongArray( CAPACITY );
+    private final long[] mEvents = new long[CAPACITY];
+    private final OnStateCallbackListener[][] mEventListeners = new OnStateCallbackListener[CAPACITY][];
+    private final AtomicLong mProducerPosition = new AtomicLong();
+    private long mConsumerPosition = 0;
+
+    /**
+     * Events posted while the ring was full, and every event posted after them until they are
+     * delivered, so that the order is kept. Delivered once the ring is empty.
+     */
+    private final ConcurrentLinkedQueue<Event> mOverflow = new ConcurrentLinkedQueue<>();
+
+    /** Events that didn't fit in the ring. */
+    private final AtomicInteger mOverflowedEvents = new AtomicInteger();
+
+    /** Listeners, replaced as a whole whenever the set changes. */
+    private volatile OnStateCallbackListener[] mListeners = NO_LISTENERS;
+    private final Object mListenersLock = new Object();
+
+    private final Thread mThread;
+
+    StateCallbackDispatcher()
+    {
+        for( int i = 0; i < CAPACITY; i++ )
+            mSequences.set( i, i );
+
+        mThread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                dispatchLoop();
+            }
+        }, "StateCallbackDispatcher" );
+        mThread.setDaemon( true );
+        mThread.start();
+    }
+
+    void addListener( OnStateCallbackListener listener )
+    {
+        synchronized( mListenersLock )
+        {
+            OnStateCallbackListener[] listeners = mListeners;
+
+            // Do not allow multiple instances, in case listeners want to remove themselves
+            for( OnStateCallbackListener existing : listeners )
+            {
+                if( existing == listener )
+                    return;
+            }
+
+            OnStateCallbackListener[] newListeners = new OnStateCallbackListener[listeners.length + 1];
+            System.arraycopy( listeners, 0, newListeners, 0, listeners.length );
+            newListeners[listeners.length] = listener;
+            mListeners = newListeners;
+        }
+    }
+
+    void removeListener( OnStateCallbackListener listener )
+    {
+        synchronized( mListenersLock )
+        {
+            OnStateCallbackListener[] listeners = mListeners;
+
+            for( int i = 0; i < listeners.length; i++ )
+            {
+                if( listeners[i] == listener )
+                {
+                    OnStateCallbackListener[] newListeners = new OnStateCallbackListener[listeners.length - 1];
+                    System.arraycopy( listeners, 0, newListeners, 0, i );
+                    System.arraycopy( listeners, i + 1, newListeners, i, listeners.length - i - 1 );
+                    mListeners = newListeners;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues a state change for delivery to the listeners registered now. Never blocks, if the
+     * dispatcher has fallen more than {@link #CAPACITY} events behind the event is queued in the
+     * overflow queue instead.
+     *
+     * @param paramChanged The changed parameter's ID.
+     * @param newValue The new value of the changed parameter.
+     */
+    void post( int paramChanged, int newValue )
+    {
+        final long event = ( (long) paramChanged << 32 ) | ( newValue & 0xFFFFFFFFL );
+        final OnStateCallbackListener[] listeners = mListeners;
+
+        // Events waiting in the overflow queue go first
+        if( !mOverflow.isEmpty() || !publish( event, listeners ) )
+        {
+            mOverflow.add( new Event( event, listeners ) );
+            mOverflowedEvents.incrementAndGet();
+        }
+
+        LockSupport.unpark( mThread );
+    }
+
+    /**
+     * @return The number of events that didn't fit in the ring because listeners could not keep up.
+     */
+    int getOverflowedEvents()
+    {
+        return mOverflowedEvents.get();
+    }
+
+    /**
+     * Stores an event in the ring.
+     *
+     * @return False if the ring is full.
+     */
+    private boolean publish( long event, OnStateCallbackListener[] listeners )
+    {
+        long position;
+        int index;
+
+        while( true )
+        {
+            position = mProducerPosition.get();
+            index = (int) ( position & ( CAPACITY - 1 ) );
+            long sequence = mSequences.get( index );
+
+            if( sequence == position )
+            {
+                if( mProducerPosition.compareAndSet( position, position + 1 ) )
+                    break;
+            }
+            else if( sequence < position )
+            {
+                return false;
+            }
+            // Otherwise another producer claimed this slot first, try the next one
+        }
+
+        mEvents[index] = event;
+        mEventListeners[index] = listeners;
+        mSequences.set( index, position + 1 );
+        return true;
+    }
+
+    private void dispatchLoop()
+    {
+        while( true )
+        {
+            int index = (int) ( mConsumerPosition & ( CAPACITY - 1 ) );
+
+            if( mSequences.get( index ) == mConsumerPosition + 1 )
+            {
+                long event = mEvents[index];
+                OnStateCallbackListener[] listeners = mEventListeners[index];
+                mEventListeners[index] = null;
+                mSequences.set( index, mConsumerPosition + CAPACITY );
+                mConsumerPosition++;
+
+                dispatch( event, listeners );
+                continue;
+            }
+
+            Event overflowed = mOverflow.poll();
+            if( overflowed != null )
+            {
+                dispatch( overflowed.event, overflowed.listeners );
+                continue;
+            }
+
+            // Nothing published yet, wait for a producer to wake us up
+            LockSupport.park( this );
+        }
+    }
+
+    private void dispatch( long event, OnStateCallbackListener[] listeners )
+    {
+        int paramChanged = (int) ( event >> 32 );
+        int newValue = (int) event;
+
+        // Traverse the listeners backwards, same order as they were always notified in
+        for( int i = listeners.length; i > 0; i-- )
+        {
+            OnStateCallbackListener listener = listeners[i - 1];
+            if( !isRegistered( listener ) )
+                continue;
+
+            try
+            {
+                listener.onStateCallback( paramChanged, newValue );
+            }
+            catch( RuntimeException e )
+            {
+                // Keep the dispatcher alive for the other listeners
+                Log.e( TAG, "State callback listener failed", e );
+            }
+        }
+    }
+
+    private boolean isRegistered( OnStateCallbackListener listener )
+    {
+        for( OnStateCallbackListener existing : mListeners )
+        {
+            if( existing == listener )
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.jni;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+import paulscode.android.mupen64plusae.persistent.ConfigFile;
+import paulscode.android.mupen64plusae.util.FileUtil;
+
+/**
+ * Values destined for a native config file. They are collected in memory and hashed, the file on
+ * disk is only read and rewritten when the hash differs from the one recorded by the last write,
+ * or when something else modified the file since.
+ */
+class SyncedConfigFile
+{
+    /** Extension of the file recording the hash of the last values written, and the file state. */
+    private static final String STAMP_EXTENSION = ".sync";
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /** Path of the config file. */
+    private final String mFilename;
+
+    /** Section, parameter and value of each put, in order. */
+    private final ArrayList<String> mValues = new ArrayList<>();
+
+    /**
+     * @param filename The config file to write to.
+     */
+    SyncedConfigFile( String filename )
+    {
+        mFilename = filename;
+    }
+
+    /**
+     * Assigns the specified value to the specified parameter under the specified section.
+     *
+     * @param sectionTitle The title of the section to contain the parameter.
+     * @param parameter The name of the parameter.
+     * @param value The value to give the parameter.
+     */
+    void put( String sectionTitle, String parameter, String value )
+    {
+        mValues.add( sectionTitle );
+        mValues.add( parameter );
+        mValues.add( value );
+    }
+
+    /**
+     * Writes the values to the config file, unless it already contains them.
+     *
+     * @return True if the config file is up to date.
+     */
+    boolean save()
+    {
+        final File file = new File( mFilename );
+        final File stampFile = new File( mFilename + STAMP_EXTENSION );
+        final String hash = hashValues();
+
+        if( hash != null && file.isFile() && stampFile.isFile() &&
+                getStamp( hash, file ).equals( readStamp( stampFile ) ) )
+        {
+            return true;
+        }
+
+        final ConfigFile configFile = new ConfigFile( mFilename );
+        for( int i = 0; i < mValues.size(); i += 3 )
+        {
+            configFile.put( mValues.get( i ), mValues.get( i + 1 ), mValues.get( i + 2 ) );
+        }
+
+        if( !configFile.save() )
+            return false;
+
+        Log.i( "SyncedConfigFile", "Updated " + file.getName() );
+
+        if( hash != null )
+        {
+            try
+            {
+                FileUtil.writeStringToFile( stampFile, getStamp( hash, file ) );
+            }
+            catch( IOException e )
+            {
+                // The file is rewritten next time, which is only slower
+                Log.w( "SyncedConfigFile", "Unable to write " + stampFile.getName() );
+            }
+        }
+        return true;
+    }
+
+    private String hashValues()
+    {
+        try
+        {
+            final MessageDigest digester = MessageDigest.getInstance( "SHA-1" );
+            for( String value : mValues )
+            {
+                digester.update( String.valueOf( value ).getBytes( UTF8 ) );
+                digester.update( (byte) 0 );
+            }
+
+            final StringBuilder builder = new StringBuilder();
+            for( byte b : digester.digest() )
+                builder.append( String.format( "%02x", b ) );
+            return builder.toString();
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            return null;
+        }
+    }
+
+    private static String getStamp( String hash, File file )
+    {
+        return hash + " " + file.length() + " " + file.lastModified();
+    }
+
+    private static String readStamp( File stampFile )
+    {
+        try
+        {
+            return FileUtil.readStringFromFile( stampFile );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+    }
+}
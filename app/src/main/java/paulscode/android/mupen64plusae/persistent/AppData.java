@@ -157,15 +157,6 @@ public class AppData
     /** The path of the built-in emulation profiles file. Deleted on uninstall, sometimes overwritten on update. */
     private final String emulationProfiles_cfg;
     
-    /** The controller profiles config */
-    private ConfigFile mControllerProfilesConfig = null;
-    
-    /** The touchscreen profiles config */
-    private ConfigFile mTouchscreenProfilesConfig = null;
-    
-    /** The emulation profiles config */
-    private ConfigFile mEmulationProfilesConfig = null;
-    
     /** True if this is android TV hardware */
     public final boolean isAndroidTv;
     
@@ -499,32 +490,17 @@ public class AppData
     
     public ConfigFile GetEmulationProfilesConfig()
     {
-        if(mEmulationProfilesConfig == null)
-        {
-            mEmulationProfilesConfig = new ConfigFile( emulationProfiles_cfg );
-        }
-
-        return mEmulationProfilesConfig;
+        return PrefsCache.getConfigFile( emulationProfiles_cfg );
     }
     
     public ConfigFile GetTouchscreenProfilesConfig()
     {
-        if(mTouchscreenProfilesConfig == null)
-        {
-            mTouchscreenProfilesConfig = new ConfigFile( touchscreenProfiles_cfg );
-        }
-
-        return mTouchscreenProfilesConfig;
+        return PrefsCache.getConfigFile( touchscreenProfiles_cfg );
     }
     
     public ConfigFile GetControllerProfilesConfig()
     {
-        if(mControllerProfilesConfig == null)
-        {
-            mControllerProfilesConfig = new ConfigFile( controllerProfiles_cfg );
-        }
-
-        return mControllerProfilesConfig;
+        return PrefsCache.getConfigFile( controllerProfiles_cfg );
     }
     
     private static int getMajorVersion(int glEsVersion) {
@@ -72,7 +72,7 @@ public class AudioPrefsActivity extends AppCompatPreferenceActivity implements O
 
         // Get app data and user preferences
         mAppData = new AppData(this);
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
 
         mPrefs = PreferenceManager.getDefaultSharedPreferences(this);
 
@@ -80,7 +80,7 @@ public class AudioPrefsActivity extends AppCompatPreferenceActivity implements O
         addPreferencesFromResource(null, R.xml.preferences_audio);
 
         // Refresh the preference data wrapper
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
     }
 
     @Override
@@ -103,13 +103,14 @@ public class AudioPrefsActivity extends AppCompatPreferenceActivity implements O
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
     {
         // Just refresh the preference screens in place
+        PrefsCache.invalidate();
         refreshViews();
     }
 
     private void refreshViews()
     {
         // Refresh the preferences object
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
 
         // Enable audio prefs if audio is enabled
         PrefUtil.enablePreference(this, AUDIO_SLES_TIME_STRETCH, mGlobalPrefs.audioPlugin.name.equals(AUDIO_SLES_PLUGIN));
@@ -73,7 +73,7 @@ public class DefaultsPrefsActivity extends AppCompatPreferenceActivity implement
 
         // Get app data and user preferences
         mAppData = new AppData(this);
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
 
         mPrefs = PreferenceManager.getDefaultSharedPreferences(this);
 
@@ -84,7 +84,7 @@ public class DefaultsPrefsActivity extends AppCompatPreferenceActivity implement
         addPreferencesFromResource(null, R.xml.preferences_defaults);
 
         // Refresh the preference data wrapper
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
     }
 
     @Override
@@ -120,13 +120,14 @@ public class DefaultsPrefsActivity extends AppCompatPreferenceActivity implement
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
     {
         // Just refresh the preference screens in place
+        PrefsCache.invalidate();
         refreshViews();
     }
 
     private void refreshViews()
     {
         // Refresh the preferences object
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
 
         // Get and update the controller profile information
         final ProfilePreference emulationProfile = (ProfilePreference) findPreference(GlobalPrefs.KEY_EMULATION_PROFILE_DEFAULT);
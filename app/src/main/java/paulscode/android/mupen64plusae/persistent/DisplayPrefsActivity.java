@@ -70,7 +70,7 @@ public class DisplayPrefsActivity extends AppCompatPreferenceActivity implements
 
         // Get app data and user preferences
         mAppData = new AppData(this);
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
 
         mPrefs = PreferenceManager.getDefaultSharedPreferences(this);
 
@@ -78,7 +78,7 @@ public class DisplayPrefsActivity extends AppCompatPreferenceActivity implements
         addPreferencesFromResource(null, R.xml.preferences_display);
 
         // Refresh the preference data wrapper
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
     }
 
     @Override
@@ -101,13 +101,14 @@ public class DisplayPrefsActivity extends AppCompatPreferenceActivity implements
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
     {
         // Just refresh the preference screens in place
+        PrefsCache.invalidate();
         refreshViews();
     }
 
     private void refreshViews()
     {
         // Refresh the preferences object
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
 
         // Enable polygon offset pref if flicker reduction is custom
         PrefUtil.enablePreference(this, VIDEO_POLYGON_OFFSET,
@@ -307,12 +307,12 @@ public class GamePrefs
     /**
      * Directories and file names
      */
-    private static final String SRAM_DATA_DIR = "SramData";
+    static final String SRAM_DATA_DIR = "SramData";
     public static final String AUTO_SAVES_DIR = "AutoSaves";
-    private static final String SLOT_SAVES_DIR = "SlotSaves";
-    private static final String USER_SAVES_DIR = "UserSaves";
-    private static final String SCREENSHOTS_DIR = "Screenshots";
-    private static final String CORE_CONFIG_DIR = "CoreConfig";
+    static final String SLOT_SAVES_DIR = "SlotSaves";
+    static final String USER_SAVES_DIR = "UserSaves";
+    static final String SCREENSHOTS_DIR = "Screenshots";
+    static final String CORE_CONFIG_DIR = "CoreConfig";
     private static final String MUPEN_CONFIG_FILE = "mupen64plus.cfg";
 
 
@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import paulscode.android.mupen64plusae.ActivityHelper;
 import paulscode.android.mupen64plusae.cheat.CheatEditorActivity;
 import paulscode.android.mupen64plusae.cheat.CheatPreference;
+import paulscode.android.mupen64plusae.cheat.CheatProvider;
 import paulscode.android.mupen64plusae.cheat.CheatUtils.Cheat;
 import paulscode.android.mupen64plusae.compat.AppCompatPreferenceActivity;
 import paulscode.android.mupen64plusae.dialog.ConfirmationDialog;
@@ -148,8 +149,8 @@ public class GamePrefsActivity extends AppCompatPreferenceActivity implements On
 
         // Get app data and user preferences
         mAppData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
-        mGamePrefs = new GamePrefs( this, mRomMd5, mRomCrc, mRomHeaderName, mRomGoodName,
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
+        mGamePrefs = PrefsCache.getGamePrefs( this, mRomMd5, mRomCrc, mRomHeaderName, mRomGoodName,
             CountryCode.getCountryCode(mRomCountryCode).toString(), mAppData, mGlobalPrefs, mLegacySaveName );
         mPrefs = getSharedPreferences( mGamePrefs.getSharedPrefsName(), MODE_PRIVATE );
 
@@ -181,6 +182,9 @@ public class GamePrefsActivity extends AppCompatPreferenceActivity implements On
 
         mPrefs.registerOnSharedPreferenceChangeListener( this );
         mMogaController.onResume();
+
+        // Get the game process ready with the plugins of this game
+        ActivityHelper.startCoreWarmupService( this, mAppData, mGlobalPrefs, mGamePrefs );
     }
 
     protected void updateActivity()
@@ -232,6 +236,7 @@ public class GamePrefsActivity extends AppCompatPreferenceActivity implements On
     @Override
     public void onSharedPreferenceChanged( SharedPreferences sharedPreferences, String key )
     {
+        PrefsCache.invalidate();
         refreshViews();
         if( key.equals( GamePrefs.PLAY_SHOW_CHEATS ) )
         {
@@ -258,8 +263,8 @@ public class GamePrefsActivity extends AppCompatPreferenceActivity implements On
         mPrefs.unregisterOnSharedPreferenceChangeListener( this );
 
         // Refresh the preferences objects
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
-        mGamePrefs = new GamePrefs( this, mRomMd5, mRomCrc, mRomHeaderName, mRomGoodName,
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
+        mGamePrefs = PrefsCache.getGamePrefs( this, mRomMd5, mRomCrc, mRomHeaderName, mRomGoodName,
                 CountryCode.getCountryCode(mRomCountryCode).toString(), mAppData, mGlobalPrefs, mLegacySaveName );
 
         // Populate the profile preferences
@@ -313,8 +318,8 @@ public class GamePrefsActivity extends AppCompatPreferenceActivity implements On
         }
 
         // Refresh the preferences objects in case populate* changed a value
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
-        mGamePrefs = new GamePrefs( this, mRomMd5, mRomCrc, mRomHeaderName, mRomGoodName,
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
+        mGamePrefs = PrefsCache.getGamePrefs( this, mRomMd5, mRomCrc, mRomHeaderName, mRomGoodName,
                 CountryCode.getCountryCode(mRomCountryCode).toString(), mAppData, mGlobalPrefs, mLegacySaveName );
 
         // Set cheats screen summary text
@@ -356,7 +361,8 @@ public class GamePrefsActivity extends AppCompatPreferenceActivity implements On
     {
         if (mCategoryCheats != null)
         {
-            ExtractCheatsTask cheatsTask = new ExtractCheatsTask(this, this, mAppData.mupencheat_txt, mRomCrc,
+            ExtractCheatsTask cheatsTask = new ExtractCheatsTask(this, this,
+                new CheatProvider(mAppData.mupencheat_default, mGlobalPrefs.customCheats_txt), mRomCrc,
                 mRomCountryCode);
             cheatsTask.execute((String) null);
         }
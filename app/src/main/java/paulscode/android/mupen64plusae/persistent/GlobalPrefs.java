@@ -138,15 +138,6 @@ public class GlobalPrefs
     /** The path of the custom emulation profiles file. */
     public final String emulationProfiles_cfg;
 
-    /** The controller profiles config */
-    private ConfigFile mControllerProfilesConfig = null;
-
-    /** The touchscreen profiles config */
-    private ConfigFile mTouchscreenProfilesConfig = null;
-
-    /** The emulation profiles config */
-    private ConfigFile mEmulationProfilesConfig = null;
-
     /** The path of the user's custom cheat files. */
     public final String customCheats_txt;
 
@@ -174,6 +165,9 @@ public class GlobalPrefs
     /** True if the touchscreen joystick is animated. */
     public final boolean isTouchscreenAnimated;
 
+    /** True if the touchscreen controls are drawn in cached layers. */
+    public final boolean isTouchscreenLayered;
+
     /** True if the touchscreen joystick is relative. */
     public final boolean isTouchscreenAnalogRelative;
 
@@ -294,6 +288,15 @@ public class GlobalPrefs
     /** Maximum number of auto saves */
     public final int maxAutoSaves;
 
+    /** Memory in megabytes used to record rewind history, 0 if rewinding is disabled */
+    public final int rewindBufferSize;
+
+    /** Size in megabytes the rebuildable caches are trimmed to, 0 if they are never trimmed */
+    public final int storageCacheLimit;
+
+    /** Compression used when writing save states */
+    public final String saveStateCodec;
+
     /** True if specific game data should be saved in a flat file structure */
     final boolean useFlatGameDataPath;
 
@@ -335,6 +338,9 @@ public class GlobalPrefs
     /** True to use a high priority thread for the core */
     public final boolean useHighPriorityThread;
 
+    /** True to load the core libraries in the background before a game is launched */
+    public final boolean isWarmStartEnabled;
+
     // Shared preferences keys and key templates
     static final String KEY_EMULATION_PROFILE_DEFAULT = "emulationProfileDefault";
     static final String KEY_TOUCHSCREEN_PROFILE_DEFAULT = "touchscreenProfileDefault";
@@ -359,7 +365,8 @@ public class GlobalPrefs
     private final String supportedGlesVersion;
 
     /**
-     * Instantiates a new user preferences wrapper.
+     * Instantiates a new user preferences wrapper. Use {@link PrefsCache#getGlobalPrefs} instead,
+     * unless fresh values are needed.
      *
      * @param context
      *            The application context.
@@ -447,6 +454,7 @@ public class GlobalPrefs
         touchscreenAutoHideEnabled = mPreferences.getBoolean( "touchscreenAutoHideEnabled", true );
         touchscreenAutoHideSeconds = mPreferences.getInt( "touchscreenAutoHideSeconds", 5 );
         isTouchscreenAnimated = mPreferences.getBoolean( "touchscreenAnimated_v2", true );
+        isTouchscreenLayered = mPreferences.getBoolean( "touchscreenLayered", true );
         isTouchscreenAnalogRelative = mPreferences.getBoolean( "touchscreenAnalogRelative_global", false );
         // Determine the touchscreen layout
         touchscreenSkin = mPreferences.getString( "touchscreenSkin", "JoshaGibs" );
@@ -589,6 +597,12 @@ public class GlobalPrefs
 
         maxAutoSaves = mPreferences.getInt( "gameAutoSaves", 5 );
 
+        rewindBufferSize = mPreferences.getInt( "rewindBufferSize", 0 );
+
+        storageCacheLimit = mPreferences.getInt( "storageCacheLimit", 0 );
+
+        saveStateCodec = mPreferences.getString( "saveStateCodec", "deflate-fast" );
+
         useFlatGameDataPath = mPreferences.getBoolean( "useFlatGameDataPath", false );
 
         // Determine the key codes that should not be mapped to controls
@@ -643,6 +657,7 @@ public class GlobalPrefs
         showBuiltInControllerProfiles = mPreferences.getBoolean(ManageControllerProfilesActivity.SHOW_BUILT_IN_PREF_KEY, true);
 
         useHighPriorityThread = mPreferences.getBoolean( "useHighPriorityThread", false );
+        isWarmStartEnabled = mPreferences.getBoolean( "warmStart", true );
 
         supportedGlesVersion = AppData.getOpenGlEsVersion(context);
 
@@ -868,32 +883,17 @@ public class GlobalPrefs
 
     public ConfigFile GetEmulationProfilesConfig()
     {
-        if(mEmulationProfilesConfig == null)
-        {
-            mEmulationProfilesConfig = new ConfigFile( emulationProfiles_cfg );
-        }
-
-        return mEmulationProfilesConfig;
+        return PrefsCache.getConfigFile( emulationProfiles_cfg );
     }
 
     public ConfigFile GetTouchscreenProfilesConfig()
     {
-        if(mTouchscreenProfilesConfig == null)
-        {
-            mTouchscreenProfilesConfig = new ConfigFile( touchscreenProfiles_cfg );
-        }
-
-        return mTouchscreenProfilesConfig;
+        return PrefsCache.getConfigFile( touchscreenProfiles_cfg );
     }
 
     public ConfigFile GetControllerProfilesConfig()
     {
-        if(mControllerProfilesConfig == null)
-        {
-            mControllerProfilesConfig = new ConfigFile( controllerProfiles_cfg );
-        }
-
-        return mControllerProfilesConfig;
+        return PrefsCache.getConfigFile( controllerProfiles_cfg );
     }
 
     private static ControllerProfile loadControllerProfile( SharedPreferences prefs, String key,
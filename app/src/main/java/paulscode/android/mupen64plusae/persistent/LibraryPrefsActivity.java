@@ -54,7 +54,7 @@ public class LibraryPrefsActivity extends AppCompatPreferenceActivity
 
         // Get app data and user preferences
         mAppData = new AppData(this);
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
 
         // Load user preference menu structure from XML and update view
         addPreferencesFromResource(null, R.xml.preferences_library);
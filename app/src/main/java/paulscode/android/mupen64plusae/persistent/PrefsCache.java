@@ -0,0 +1,240 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.persistent;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.res.Configuration;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the preference snapshots. Building a {@link GlobalPrefs} or
+ * {@link GamePrefs} reads dozens of preferences and parses the profile config files, so the last
+ * snapshot is handed out again until a preference changes, a profile file changes on disk or the
+ * configuration changes in a way that affects the display values.
+ *
+ * Profile config files are parsed once and shared by all snapshots.
+ */
+public final class PrefsCache
+{
+    private static final String TAG = "PrefsCache";
+
+    /** Configuration changes that affect the values computed by GlobalPrefs. */
+    private static final int CONFIG_CHANGES = Configuration.CONFIG_ORIENTATION |
+            Configuration.CONFIG_SCREEN_SIZE | Configuration.CONFIG_SMALLEST_SCREEN_SIZE |
+            Configuration.CONFIG_SCREEN_LAYOUT | Configuration.CONFIG_DENSITY | Configuration.CONFIG_LOCALE;
+
+    /** Parsed config files, by path. */
+    private static final Map<String, ConfigEntry> sConfigFiles = new HashMap<>();
+
+    /** Incremented whenever a parsed config file is found out of date. */
+    private static int sConfigGeneration = 0;
+
+    private static GlobalPrefs sGlobalPrefs = null;
+    private static Configuration sGlobalConfiguration = null;
+    private static int sGlobalConfigGeneration = -1;
+
+    private static GamePrefs sGamePrefs = null;
+    private static String[] sGameArgs = null;
+    private static GlobalPrefs sGameGlobalPrefs = null;
+    private static int sGameConfigGeneration = -1;
+    private static SharedPreferences sGamePreferences = null;
+
+    /** Registered once, SharedPreferences only keeps weak references to its listeners. */
+    private static SharedPreferences sGlobalPreferences = null;
+
+    private static final OnSharedPreferenceChangeListener sGlobalListener = new OnSharedPreferenceChangeListener()
+    {
+        @Override
+        public void onSharedPreferenceChanged( SharedPreferences sharedPreferences, String key )
+        {
+            invalidate();
+        }
+    };
+
+    private static final OnSharedPreferenceChangeListener sGameListener = new OnSharedPreferenceChangeListener()
+    {
+        @Override
+        public void onSharedPreferenceChanged( SharedPreferences sharedPreferences, String key )
+        {
+            synchronized( PrefsCache.class )
+            {
+                sGamePrefs = null;
+            }
+        }
+    };
+
+    private static class ConfigEntry
+    {
+        final ConfigFile configFile;
+        final long length;
+        final long modified;
+
+        ConfigEntry( ConfigFile configFile, File file )
+        {
+            this.configFile = configFile;
+            this.length = file.length();
+            this.modified = file.lastModified();
+        }
+
+        boolean isValid( File file )
+        {
+            return file.length() == length && file.lastModified() == modified;
+        }
+    }
+
+    private PrefsCache()
+    {
+    }
+
+    /**
+     * Returns the global preferences, built again only if something they depend on changed since
+     * the last call.
+     *
+     * @param context The context of the caller, used for the display and resource values.
+     * @param appData The application data.
+     */
+    public static synchronized GlobalPrefs getGlobalPrefs( Context context, AppData appData )
+    {
+        registerGlobalListener( context );
+        checkConfigFiles();
+
+        final Configuration configuration = context.getResources().getConfiguration();
+        if( sGlobalPrefs == null || sGlobalConfigGeneration != sConfigGeneration ||
+                ( sGlobalConfiguration.diff( configuration ) & CONFIG_CHANGES ) != 0 )
+        {
+            final long start = System.currentTimeMillis();
+            sGlobalPrefs = new GlobalPrefs( context, appData );
+            sGlobalConfiguration = new Configuration( configuration );
+            sGlobalConfigGeneration = sConfigGeneration;
+            sGamePrefs = null;
+            Log.i( TAG, "GlobalPrefs built in " + ( System.currentTimeMillis() - start ) + " ms" );
+        }
+        return sGlobalPrefs;
+    }
+
+    /**
+     * Returns the preferences of a game, built again only if the game, the global preferences or
+     * something they depend on changed since the last call. The result is shared, callers that
+     * change the game data directories must build their own GamePrefs.
+     *
+     * The parameters are the same as for the GamePrefs constructor.
+     */
+    public static synchronized GamePrefs getGamePrefs( Context context, String md5, String crc,
+            String headerName, String goodName, String countrySymbol, AppData appData,
+            GlobalPrefs globalPrefs, String legacySave )
+    {
+        checkConfigFiles();
+
+        final String[] args = { md5, crc, headerName, goodName, countrySymbol, legacySave };
+        if( sGamePrefs == null || sGameGlobalPrefs != globalPrefs ||
+                sGameConfigGeneration != sConfigGeneration || !argsEqual( sGameArgs, args ) )
+        {
+            final GamePrefs gamePrefs = new GamePrefs( context, md5, crc, headerName, goodName,
+                    countrySymbol, appData, globalPrefs, legacySave );
+
+            if( sGamePreferences != null )
+                sGamePreferences.unregisterOnSharedPreferenceChangeListener( sGameListener );
+            sGamePreferences = context.getSharedPreferences( gamePrefs.getSharedPrefsName(), Context.MODE_PRIVATE );
+            sGamePreferences.registerOnSharedPreferenceChangeListener( sGameListener );
+
+            sGamePrefs = gamePrefs;
+            sGameArgs = args;
+            sGameGlobalPrefs = globalPrefs;
+            sGameConfigGeneration = sConfigGeneration;
+        }
+        return sGamePrefs;
+    }
+
+    /**
+     * Drops the cached snapshots, the next call builds them again. Preference listeners are called
+     * in no particular order, so listeners that read the preferences back call this first.
+     */
+    public static synchronized void invalidate()
+    {
+        sGlobalPrefs = null;
+        sGamePrefs = null;
+    }
+
+    /**
+     * Returns a parsed config file shared with every other caller, parsed again if the file
+     * changed on disk. Callers that modify it must save it right away.
+     *
+     * @param filename The path of the config file.
+     */
+    static synchronized ConfigFile getConfigFile( String filename )
+    {
+        final File file = new File( filename );
+        ConfigEntry entry = sConfigFiles.get( filename );
+        if( entry == null || !entry.isValid( file ) )
+        {
+            if( entry != null )
+                sConfigGeneration++;
+
+            entry = new ConfigEntry( new ConfigFile( filename ), file );
+            sConfigFiles.put( filename, entry );
+        }
+        return entry.configFile;
+    }
+
+    /**
+     * Drops the config files that changed on disk, so snapshots built from them are rebuilt.
+     */
+    private static void checkConfigFiles()
+    {
+        final Iterator<Map.Entry<String, ConfigEntry>> iterator = sConfigFiles.entrySet().iterator();
+        while( iterator.hasNext() )
+        {
+            final Map.Entry<String, ConfigEntry> entry = iterator.next();
+            if( !entry.getValue().isValid( new File( entry.getKey() ) ) )
+            {
+                iterator.remove();
+                sConfigGeneration++;
+            }
+        }
+    }
+
+    private static void registerGlobalListener( Context context )
+    {
+        if( sGlobalPreferences == null )
+        {
+            sGlobalPreferences = PreferenceManager.getDefaultSharedPreferences( context );
+            sGlobalPreferences.registerOnSharedPreferenceChangeListener( sGlobalListener );
+        }
+    }
+
+    private static boolean argsEqual( String[] lhs, String[] rhs )
+    {
+        for( int i = 0; i < lhs.length; i++ )
+        {
+            if( !TextUtils.equals( lhs[i], rhs[i] ) )
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,569 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.persistent;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import paulscode.android.mupen64plusae.util.FileUtil;
+
+/**
+ * Size of the user data, per game and per category, kept in a file so that it doesn't have to be
+ * measured again every time.
+ * <p>
+ * The data is split into units: each game data directory and each subdirectory of the texture,
+ * shader, ROM and cover art directories is one unit, measured with all of its contents. Files
+ * directly in those directories form one more unit each. Units are measured in parallel, and only
+ * when the modification times of their directories changed since the last measurement. Files that
+ * change without their directory changing, such as SRAM and texture caches written by the core,
+ * are covered by {@link #markChanged}, which is called at the end of each game.
+ */
+public class StorageIndex
+{
+    private static final String TAG = "StorageIndex";
+
+    private static final String INDEX_FILE = "storage.index";
+    private static final int INDEX_VERSION = 2;
+
+    /** Files modified more recently than this may be in use and are never trimmed. */
+    private static final long TRIM_MIN_AGE_MS = 10 * 60 * 1000;
+
+    /**
+     * Hi-res texture packs imported into the texture cache directory, including partial imports.
+     * The app can't rebuild them, so they count as hi-res textures and are never trimmed.
+     */
+    private static final String TEXTURE_PACK_SUFFIX = "_hirestextures.htc";
+
+    public enum Category
+    {
+        AUTO_SAVES( false ),
+        SLOT_SAVES( false ),
+        SRAM_DATA( false ),
+        USER_SAVES( false ),
+        SCREENSHOTS( false ),
+        GAME_CONFIG( false ),
+        GAME_OTHER( false ),
+        HIRES_TEXTURES( false ),
+        COVER_ART( false ),
+        UNZIPPED_ROMS( true ),
+        TEXTURE_CACHE( true ),
+        SHADER_CACHE( true );
+
+        /** True if the files are rebuilt when missing, and can be trimmed. */
+        public final boolean isCache;
+
+        Category( boolean isCache )
+        {
+            this.isCache = isCache;
+        }
+
+        /**
+         * @return The category of the files in a subdirectory of a game data directory.
+         */
+        static Category fromGameSubdir( String name )
+        {
+            switch( name )
+            {
+                case GamePrefs.AUTO_SAVES_DIR:
+                    return AUTO_SAVES;
+                case GamePrefs.SLOT_SAVES_DIR:
+                    return SLOT_SAVES;
+                case GamePrefs.SRAM_DATA_DIR:
+                    return SRAM_DATA;
+                case GamePrefs.USER_SAVES_DIR:
+                    return USER_SAVES;
+                case GamePrefs.SCREENSHOTS_DIR:
+                    return SCREENSHOTS;
+                case GamePrefs.CORE_CONFIG_DIR:
+                    return GAME_CONFIG;
+                default:
+                    return GAME_OTHER;
+            }
+        }
+    }
+
+    /** A directory measured as a whole. */
+    private static class Unit
+    {
+        final File dir;
+
+        /** The category of all the files, or null for a game data directory. */
+        final Category category;
+
+        /** False if only the files directly in the directory belong to the unit. */
+        final boolean recursive;
+
+        long signature;
+        long[] sizes;
+
+        Unit( File dir, Category category, boolean recursive )
+        {
+            this.dir = dir;
+            this.category = category;
+            this.recursive = recursive;
+        }
+
+        String getKey()
+        {
+            return ( recursive ? "R" : "F" ) + dir.getPath();
+        }
+    }
+
+    private final File mIndexFile;
+    private final File mGameDataDir;
+    private final Map<Category, File> mRoots = new HashMap<>();
+
+    /** The units of the last measurement, by key. */
+    private final Map<String, Unit> mUnits = new HashMap<>();
+    private boolean mLoaded = false;
+
+    public StorageIndex( AppData appData, GlobalPrefs globalPrefs )
+    {
+        mIndexFile = new File( appData.userDataDir + "/GalleryCache/" + INDEX_FILE );
+        mGameDataDir = new File( appData.gameDataDir );
+        mRoots.put( Category.HIRES_TEXTURES, new File( globalPrefs.hiResTextureDir ) );
+        mRoots.put( Category.COVER_ART, new File( globalPrefs.coverArtDir ) );
+        mRoots.put( Category.UNZIPPED_ROMS, new File( globalPrefs.unzippedRomsDir ) );
+        mRoots.put( Category.TEXTURE_CACHE, new File( globalPrefs.textureCacheDir ) );
+        mRoots.put( Category.SHADER_CACHE, new File( globalPrefs.shaderCacheDir ) );
+    }
+
+    /**
+     * Makes the next {@link #refresh()} measure the data a game may have changed in place.
+     */
+    public static void markChanged( GlobalPrefs globalPrefs, GamePrefs gamePrefs )
+    {
+        final long now = System.currentTimeMillis();
+        for( String path : new String[] { gamePrefs.getGameDataDir(), gamePrefs.getSramDataDir(),
+                globalPrefs.textureCacheDir, globalPrefs.shaderCacheDir } )
+        {
+            final File dir = new File( path );
+            if( dir.isDirectory() && !dir.setLastModified( now ) )
+                Log.w( TAG, "Unable to mark " + path );
+        }
+    }
+
+    /**
+     * Measures the units that changed since the last call and saves the result.
+     */
+    public synchronized void refresh()
+    {
+        if( !mLoaded )
+        {
+            load();
+            mLoaded = true;
+        }
+
+        final List<Unit> units = listUnits();
+        final List<Unit> stale = new ArrayList<>();
+        for( Unit unit : units )
+        {
+            unit.signature = getSignature( unit );
+            final Unit previous = mUnits.get( unit.getKey() );
+            if( previous != null && previous.signature == unit.signature )
+                unit.sizes = previous.sizes;
+            else
+                stale.add( unit );
+        }
+
+        final ExecutorService executor = newExecutor();
+        try
+        {
+            final List<Future<long[]>> results = new ArrayList<>();
+            for( final Unit unit : stale )
+            {
+                results.add( executor.submit( new Callable<long[]>()
+                {
+                    @Override
+                    public long[] call()
+                    {
+                        return measure( unit );
+                    }
+                } ) );
+            }
+
+            for( int i = 0; i < stale.size(); i++ )
+                stale.get( i ).sizes = results.get( i ).get();
+        }
+        catch( InterruptedException | ExecutionException e )
+        {
+            Log.e( TAG, "Unable to measure the user data", e );
+            return;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        mUnits.clear();
+        for( Unit unit : units )
+            mUnits.put( unit.getKey(), unit );
+
+        if( !stale.isEmpty() )
+        {
+            Log.i( TAG, "Measured " + stale.size() + " of " + units.size() + " directories" );
+            save();
+        }
+    }
+
+    /**
+     * @return The size in bytes of the data in a category, as of the last {@link #refresh()}.
+     */
+    public synchronized long getSize( Category category )
+    {
+        long size = 0;
+        for( Unit unit : mUnits.values() )
+            size += unit.sizes[category.ordinal()];
+        return size;
+    }
+
+    /**
+     * @return The data directories of all games, as of the last {@link #refresh()}.
+     */
+    public synchronized List<File> getGameDataDirs()
+    {
+        final List<File> dirs = new ArrayList<>();
+        for( Unit unit : mUnits.values() )
+        {
+            if( unit.category == null )
+                dirs.add( unit.dir );
+        }
+        return dirs;
+    }
+
+    /**
+     * Deletes the least recently modified cache files until the caches fit in a given size.
+     * Call {@link #refresh()} first, and again afterwards to update the sizes.
+     *
+     * @param limit The maximum size in bytes of all caches together.
+     *
+     * @return The number of bytes deleted.
+     */
+    public synchronized long trimCaches( long limit )
+    {
+        long total = 0;
+        final List<File> roots = new ArrayList<>();
+        for( Category category : Category.values() )
+        {
+            if( category.isCache )
+            {
+                total += getSize( category );
+                roots.add( mRoots.get( category ) );
+            }
+        }
+
+        if( total <= limit )
+            return 0;
+
+        final List<File> files = new ArrayList<>();
+        for( File root : roots )
+            listFiles( root, files );
+
+        for( int i = files.size() - 1; i >= 0; i-- )
+        {
+            if( isTexturePack( files.get( i ) ) )
+                files.remove( i );
+        }
+
+        // Files don't remember when they were last read, the oldest written go first
+        final long[] modified = new long[files.size()];
+        final Integer[] order = new Integer[files.size()];
+        for( int i = 0; i < files.size(); i++ )
+        {
+            modified[i] = files.get( i ).lastModified();
+            order[i] = i;
+        }
+        Arrays.sort( order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer a, Integer b )
+            {
+                return Long.compare( modified[a], modified[b] );
+            }
+        } );
+
+        final long newest = System.currentTimeMillis() - TRIM_MIN_AGE_MS;
+        long deleted = 0;
+        for( int i = 0; i < order.length && total - deleted > limit; i++ )
+        {
+            final File file = files.get( order[i] );
+            if( modified[order[i]] > newest )
+                break;
+
+            final long length = file.length();
+            if( file.delete() )
+                deleted += length;
+            else
+                Log.w( TAG, "Couldn't delete " + file.getPath() );
+        }
+
+        Log.i( TAG, "Trimmed " + deleted + " bytes of cache, " + ( total - deleted ) + " left" );
+        return deleted;
+    }
+
+    private List<Unit> listUnits()
+    {
+        final List<Unit> units = new ArrayList<>();
+        units.add( new Unit( mGameDataDir, Category.GAME_OTHER, false ) );
+        final File[] gameDirs = mGameDataDir.listFiles();
+        if( gameDirs != null )
+        {
+            for( File dir : gameDirs )
+            {
+                if( dir.isDirectory() )
+                    units.add( new Unit( dir, null, true ) );
+            }
+        }
+
+        for( Map.Entry<Category, File> root : mRoots.entrySet() )
+        {
+            units.add( new Unit( root.getValue(), root.getKey(), false ) );
+            final File[] dirs = root.getValue().listFiles();
+            if( dirs == null )
+                continue;
+
+            for( File dir : dirs )
+            {
+                if( dir.isDirectory() )
+                    units.add( new Unit( dir, root.getKey(), true ) );
+            }
+        }
+        return units;
+    }
+
+    /**
+     * @return A value that changes when a file is added to or removed from the unit, or when it is
+     * marked by {@link #markChanged}.
+     */
+    private static long getSignature( Unit unit )
+    {
+        long signature = unit.dir.lastModified();
+        if( !unit.recursive )
+            return signature;
+
+        // Two levels cover the directories of a game, such as AutoSaves/chunks
+        final File[] children = unit.dir.listFiles();
+        if( children == null )
+            return signature;
+
+        for( File child : children )
+        {
+            if( !child.isDirectory() )
+                continue;
+
+            signature = signature * 31 + child.getName().hashCode() * 17 + child.lastModified();
+            final File[] grandchildren = child.listFiles();
+            if( grandchildren == null )
+                continue;
+
+            for( File grandchild : grandchildren )
+            {
+                if( grandchild.isDirectory() )
+                    signature = signature * 31 + grandchild.lastModified();
+            }
+        }
+        return signature;
+    }
+
+    private static long[] measure( Unit unit )
+    {
+        final long[] sizes = new long[Category.values().length];
+        final File[] children = unit.dir.listFiles();
+        if( children == null )
+            return sizes;
+
+        for( File child : children )
+        {
+            if( !child.isDirectory() )
+            {
+                Category category = unit.category != null ? unit.category : Category.GAME_OTHER;
+                if( category == Category.TEXTURE_CACHE && isTexturePack( child ) )
+                    category = Category.HIRES_TEXTURES;
+                sizes[category.ordinal()] += child.length();
+            }
+            else if( unit.recursive )
+            {
+                final Category category = unit.category != null ? unit.category :
+                        Category.fromGameSubdir( child.getName() );
+                sizes[category.ordinal()] += measureTree( child );
+            }
+        }
+        return sizes;
+    }
+
+    private static boolean isTexturePack( File file )
+    {
+        return file.getName().toLowerCase( Locale.US ).contains( TEXTURE_PACK_SUFFIX );
+    }
+
+    private static long measureTree( File dir )
+    {
+        long size = 0;
+        final ArrayDeque<File> pending = new ArrayDeque<>();
+        pending.push( dir );
+        while( !pending.isEmpty() )
+        {
+            final File[] children = pending.pop().listFiles();
+            if( children == null )
+                continue;
+
+            for( File child : children )
+            {
+                if( child.isDirectory() )
+                    pending.push( child );
+                else
+                    size += child.length();
+            }
+        }
+        return size;
+    }
+
+    private static void listFiles( File dir, List<File> files )
+    {
+        final ArrayDeque<File> pending = new ArrayDeque<>();
+        pending.push( dir );
+        while( !pending.isEmpty() )
+        {
+            final File[] children = pending.pop().listFiles();
+            if( children == null )
+                continue;
+
+            for( File child : children )
+            {
+                if( child.isDirectory() )
+                    pending.push( child );
+                else
+                    files.add( child );
+            }
+        }
+    }
+
+    private static ExecutorService newExecutor()
+    {
+        // Mostly waiting on storage, a few threads keep the queue of the device full
+        final int threads = Math.max( 2, Math.min( 4, Runtime.getRuntime().availableProcessors() ) );
+        return Executors.newFixedThreadPool( threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( final Runnable runnable )
+            {
+                return new Thread( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                        runnable.run();
+                    }
+                }, TAG );
+            }
+        } );
+    }
+
+    private void load()
+    {
+        if( !mIndexFile.exists() )
+            return;
+
+        try
+        {
+            final String[] lines = FileUtil.readStringFromFile( mIndexFile ).split( "\n" );
+            if( lines.length == 0 || !lines[0].equals( Integer.toString( INDEX_VERSION ) ) )
+                return;
+
+            final int count = Category.values().length;
+            for( int i = 1; i < lines.length; i++ )
+            {
+                // key, signature, category, then the sizes
+                final String[] fields = lines[i].split( "\t" );
+                if( fields.length != 3 + count )
+                    continue;
+
+                final String key = fields[0];
+                final Category category = fields[2].isEmpty() ? null : Category.valueOf( fields[2] );
+                final Unit unit = new Unit( new File( key.substring( 1 ) ), category, key.charAt( 0 ) == 'R' );
+                unit.signature = Long.parseLong( fields[1] );
+                unit.sizes = new long[count];
+                for( int j = 0; j < count; j++ )
+                    unit.sizes[j] = Long.parseLong( fields[3 + j] );
+                mUnits.put( key, unit );
+            }
+        }
+        catch( IOException | IllegalArgumentException e )
+        {
+            // Measured again from scratch
+            Log.w( TAG, "Unable to read " + mIndexFile.getPath() + ": " + e.getMessage() );
+            mUnits.clear();
+        }
+    }
+
+    private void save()
+    {
+        final List<String> keys = new ArrayList<>( mUnits.keySet() );
+        Collections.sort( keys );
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append( INDEX_VERSION ).append( '\n' );
+        for( String key : keys )
+        {
+            final Unit unit = mUnits.get( key );
+            builder.append( key ).append( '\t' ).append( unit.signature ).append( '\t' );
+            if( unit.category != null )
+                builder.append( unit.category.name() );
+            for( long size : unit.sizes )
+                builder.append( '\t' ).append( size );
+            builder.append( '\n' );
+        }
+
+        // Replaced in one step so that readers never see half an index
+        final File parent = mIndexFile.getParentFile();
+        if( parent != null )
+            FileUtil.makeDirs( parent.getPath() );
+
+        final File temp = new File( mIndexFile.getPath() + ".tmp" );
+        try
+        {
+            FileUtil.writeStringToFile( temp, builder.toString() );
+            if( !temp.renameTo( mIndexFile ) )
+                Log.w( TAG, "Unable to save " + mIndexFile.getPath() );
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Unable to save " + mIndexFile.getPath() + ": " + e.getMessage() );
+        }
+    }
+}
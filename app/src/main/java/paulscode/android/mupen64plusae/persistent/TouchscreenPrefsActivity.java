@@ -58,7 +58,7 @@ public class TouchscreenPrefsActivity extends AppCompatPreferenceActivity implem
 
         // Get app data and user preferences
         mAppData = new AppData(this);
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
         mPrefs = PreferenceManager.getDefaultSharedPreferences(this);
 
         // Load user preference menu structure from XML and update view
@@ -91,13 +91,14 @@ public class TouchscreenPrefsActivity extends AppCompatPreferenceActivity implem
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
     {
         // Just refresh the preference screens in place
+        PrefsCache.invalidate();
         refreshViews();
     }
 
     private void refreshViews()
     {
         // Refresh the preferences object
-        mGlobalPrefs = new GlobalPrefs(this, mAppData);
+        mGlobalPrefs = PrefsCache.getGlobalPrefs(this, mAppData);
 
         PrefUtil.enablePreference(this, GlobalPrefs.KEY_TOUCHSCREEN_SKIN_CUSTOM_PATH,
                 !TextUtils.isEmpty(mGlobalPrefs.touchscreenSkin) &&
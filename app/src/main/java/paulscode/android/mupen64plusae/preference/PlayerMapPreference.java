@@ -29,6 +29,7 @@ import paulscode.android.mupen64plusae.dialog.PromptInputCodeDialog;
 import paulscode.android.mupen64plusae.input.map.PlayerMap;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.res.TypedArray;
@@ -111,7 +112,7 @@ public class PlayerMapPreference extends DialogPreference implements
         // Set the member variables
         mAssociatedActivity = associatedActivity;
         final AppData appData = new AppData( getContext() );
-        final GlobalPrefs prefs = new GlobalPrefs( getContext(), appData );
+        final GlobalPrefs prefs = PrefsCache.getGlobalPrefs( getContext(), appData );
         mUnmappableKeyCodes = prefs.unmappableKeyCodes;
         mMap.deserialize( mValue );
 
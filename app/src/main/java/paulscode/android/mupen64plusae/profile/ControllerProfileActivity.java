@@ -20,6 +20,8 @@
  */
 package paulscode.android.mupen64plusae.profile;
 
+import android.content.Context;
+import android.hardware.input.InputManager;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
@@ -48,6 +50,8 @@ public class ControllerProfileActivity extends ControllerProfileActivityBase imp
         mMogaProvider.registerListener(this);
         mAxisProvider = new AxisProvider();
         mAxisProvider.registerListener(this);
+        final InputManager inputManager = (InputManager) getSystemService(Context.INPUT_SERVICE);
+        inputManager.registerInputDeviceListener(mAxisProvider, null);
 
         // For narrow screens, use an alternate layout
         setContentView(R.layout.controller_profile_activity);
@@ -97,6 +101,7 @@ public class ControllerProfileActivity extends ControllerProfileActivityBase imp
         setupButton( R.id.buttonSimulateMenu,  InputMap.FUNC_SIMULATE_MENU );
         setupButton( R.id.buttonScreenshot,    InputMap.FUNC_SCREENSHOT );
         setupButton( R.id.buttonSensorToggle,  InputMap.FUNC_SENSOR_TOGGLE );
+        setupButton( R.id.buttonRewind,        InputMap.FUNC_REWIND );
         // @formatter:on
     }
     
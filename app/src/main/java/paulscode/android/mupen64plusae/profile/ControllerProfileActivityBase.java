@@ -22,6 +22,7 @@ package paulscode.android.mupen64plusae.profile;
 
 import android.content.Context;
 import android.content.DialogInterface;
+import android.hardware.input.InputManager;
 import android.os.Bundle;
 import androidx.fragment.app.FragmentManager;
 import androidx.appcompat.app.AppCompatActivity;
@@ -59,6 +60,7 @@ import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.ConfigFile;
 import paulscode.android.mupen64plusae.persistent.ConfigFile.ConfigSection;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.util.LocaleContextWrapper;
 
 public abstract class ControllerProfileActivityBase extends AppCompatActivity implements OnInputListener, PromptInputCodeListener,
@@ -131,7 +133,7 @@ public abstract class ControllerProfileActivityBase extends AppCompatActivity im
         
         // Get the user preferences wrapper
         AppData appData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, appData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, appData );
         
         // Get the command info
         mCommandNames = getResources().getStringArray( R.array.inputMapActivity_entries );
@@ -212,6 +214,12 @@ public abstract class ControllerProfileActivityBase extends AppCompatActivity im
     {
         super.onDestroy();
         mMogaController.exit();
+        
+        if( mAxisProvider != null )
+        {
+            final InputManager inputManager = (InputManager) getSystemService( Context.INPUT_SERVICE );
+            inputManager.unregisterInputDeviceListener( mAxisProvider );
+        }
     }
     
     abstract void initLayout();
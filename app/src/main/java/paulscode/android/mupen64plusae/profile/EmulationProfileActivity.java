@@ -34,7 +34,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import paulscode.android.mupen64plusae.persistent.AppData;
-import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.preference.CompatListPreference;
 import paulscode.android.mupen64plusae.preference.PrefUtil;
 
@@ -91,7 +91,7 @@ public class EmulationProfileActivity extends ProfileActivity
     protected String getConfigFilePath()
     {
         AppData appData = new AppData( this );
-        return new GlobalPrefs( this, appData ).emulationProfiles_cfg;
+        return PrefsCache.getGlobalPrefs( this, appData ).emulationProfiles_cfg;
     }
     
     @Override
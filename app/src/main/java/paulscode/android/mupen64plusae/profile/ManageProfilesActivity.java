@@ -57,6 +57,7 @@ import paulscode.android.mupen64plusae.dialog.ProfileNameEditDialog.OnProfileNam
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.ConfigFile;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.util.LocaleContextWrapper;
 
 abstract public class ManageProfilesActivity extends AppCompatListActivity implements OnDialogMenuItemSelectedListener, OnProfileNameDialogButtonListener,
@@ -198,7 +199,7 @@ abstract public class ManageProfilesActivity extends AppCompatListActivity imple
         setSupportActionBar( toolbar );
         
         mAppData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
         
         // Get the config files from the subclass-specified paths
         mConfigBuiltin = getConfigFile( true );
@@ -62,6 +62,7 @@ import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.ConfigFile;
 import paulscode.android.mupen64plusae.persistent.ConfigFile.ConfigSection;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 import paulscode.android.mupen64plusae.util.LocaleContextWrapper;
 
 public class TouchscreenProfileActivity extends AppCompatActivity implements OnTouchListener, OnDialogMenuItemSelectedListener
@@ -140,7 +141,7 @@ public class TouchscreenProfileActivity extends AppCompatActivity implements OnT
         
         // Get the user preferences wrapper
         mAppData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, mAppData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, mAppData );
         
         // Load the profile; fail fast if there are any programmer usage errors
         Bundle extras = getIntent().getExtras();
@@ -202,7 +203,7 @@ public class TouchscreenProfileActivity extends AppCompatActivity implements OnT
     private void refresh()
     {
         // Reposition the assets and refresh the overlay and options menu
-        mOverlay.initialize( mTouchscreenMap, true, mGlobalPrefs.isFpsEnabled, false, mGlobalPrefs.isTouchscreenAnimated);
+        mOverlay.initialize( mTouchscreenMap, true, mGlobalPrefs.isFpsEnabled, false, mGlobalPrefs.isTouchscreenAnimated, false );
         mTouchscreenMap.load( mGlobalPrefs.touchscreenSkinPath, mProfile,
                 mGlobalPrefs.isTouchscreenAnimated, true, mGlobalPrefs.fpsXPosition,
                 mGlobalPrefs.fpsYPosition, mGlobalPrefs.touchscreenScale,
@@ -218,7 +219,7 @@ public class TouchscreenProfileActivity extends AppCompatActivity implements OnT
         
         // Refresh in case the global settings changed
         AppData appData = new AppData( this );
-        mGlobalPrefs = new GlobalPrefs( this, appData );
+        mGlobalPrefs = PrefsCache.getGlobalPrefs( this, appData );
         
         // Update the dummy SurfaceView size in case global settings changed
         FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) mSurface.getLayoutParams();
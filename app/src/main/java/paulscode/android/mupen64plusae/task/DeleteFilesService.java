@@ -35,12 +35,16 @@ import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Process;
+import android.util.Log;
 import androidx.core.app.NotificationCompat;
 
 import app.cooln64.v5.coolemulators.R;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import paulscode.android.mupen64plusae.ActivityHelper;
 import paulscode.android.mupen64plusae.GalleryActivity;
@@ -60,6 +64,8 @@ public class DeleteFilesService extends Service {
 
     final static int ONGOING_NOTIFICATION_ID = 1;
 
+    final static int DELETE_THREADS = 4;
+
     final static String NOTIFICATION_CHANNEL_ID = "DeleteFilesServiceChannel";
     final static String NOTIFICATION_CHANNEL_ID_V2 = "DeleteFilesServiceChannelV2";
 
@@ -104,12 +110,29 @@ public class DeleteFilesService extends Service {
                 return;
             }
 
+            //Folders are usually on the same storage, a few deletions in flight keep it busy
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(DELETE_THREADS, mDeletePath.size())));
             for (int index = 0 ; index < mDeletePath.size(); ++index) {
-                if (mDeletePath.get(index) != null) {
-                    FileUtil.deleteFolderFilter(new File(mDeletePath.get(index)), mDeleteFilter.get(index));
+                final String path = mDeletePath.get(index);
+                final String filter = mDeleteFilter.get(index);
+                if (path != null) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            FileUtil.deleteFolderFilter(new File(path), filter);
+                        }
+                    });
                 }
             }
 
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Log.w("DeleteFilesService", "Interrupted while deleting files");
+            }
+
             if (mListener != null) {
                 mListener.onDeleteFilesFinished();
             }
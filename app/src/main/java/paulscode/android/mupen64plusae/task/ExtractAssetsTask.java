@@ -27,27 +27,47 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.AssetManager;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import androidx.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import paulscode.android.mupen64plusae.util.FileUtil;
 
 public class ExtractAssetsTask extends AsyncTask<Void, String, List<ExtractAssetsTask.Failure>>
 {
+    /** Manifest generated at build time, listing the hash and size of every asset. */
+    private static final String MANIFEST = "assets.manifest";
 
-    private static final HashMap<String, Integer> mAssetVersions = new HashMap<>();
+    /** Copy of the manifest of the assets installed in the destination folder. */
+    private static final String INSTALLED_MANIFEST = ".assets.manifest";
+
+    /** Preference holding the version of the installed manifest. */
+    private static final String MANIFEST_VERSION_KEY = "assetManifestVersion";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_THREADS = 4;
 
     public interface ExtractAssetsListener
     {
@@ -55,169 +75,23 @@ public class ExtractAssetsTask extends AsyncTask<Void, String, List<ExtractAsset
         void onExtractAssetsFinished( List<Failure> failures );
     }
 
-    static {
-        synchronized (ExtractAssetsTask.class) {
-            mAssetVersions.put("mupen64plus_data/GLideN64.custom.ini", 1);
-            mAssetVersions.put("mupen64plus_data/Glide64mk2.ini", 2);
-            mAssetVersions.put("mupen64plus_data/RiceVideoLinux.ini", 1);
-            mAssetVersions.put("mupen64plus_data/doc/CREDITS", 1);
-            mAssetVersions.put("mupen64plus_data/doc/INSTALL", 1);
-            mAssetVersions.put("mupen64plus_data/doc/LICENSES", 1);
-            mAssetVersions.put("mupen64plus_data/doc/README", 1);
-            mAssetVersions.put("mupen64plus_data/doc/RELEASE", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/apache-license", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Home.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-Core-Parameters.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-Plugin-Parameters.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-API-Versioning.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-Core-API-v1.0.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-Core-Basic.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-Core-Config.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-Core-Debugger.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-Core-Front-End.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-Core-Video-Extension.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-Design-Proposal-3.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-Plugin-API.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/emuwiki-api-doc/Mupen64Plus-v2.0-headers.mediawiki", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/font-license", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/gpl-license", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/gpl-license-3", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/lgpl-license", 1);
-            mAssetVersions.put("mupen64plus_data/doc/doc/new_dynarec.txt", 1);
-            mAssetVersions.put("mupen64plus_data/font.ttf", 1);
-            mAssetVersions.put("mupen64plus_data/gln64.conf", 1);
-            mAssetVersions.put("mupen64plus_data/gln64rom.conf", 1);
-            mAssetVersions.put("mupen64plus_data/mupen64plus.ini", 3);
-            mAssetVersions.put("mupen64plus_data/mupencheat.default", 1);
-            mAssetVersions.put("mupen64plus_data/profiles/controller.cfg", 1);
-            mAssetVersions.put("mupen64plus_data/profiles/emulation.cfg", 3);
-            mAssetVersions.put("mupen64plus_data/profiles/touchscreen.cfg", 2);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/analog-back.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/analog-fore.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/analog.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonL-holdL.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonL-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonL.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonR-holdR.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonR-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonR.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonS-holdS.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonS-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonS.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonSen-holdSen.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonSen-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonSen.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonZ-holdZ.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonZ-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/buttonZ.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/dpad-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/dpad.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-0.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-1.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-2.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-3.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-4.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-5.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-6.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-7.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-8.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps-9.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/fps.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupAB-holdA.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupAB-holdB.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupAB-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupAB.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupC-holdCd.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupC-holdCl.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupC-holdCr.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupC-holdCu.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupC-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/groupC.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/JoshaGibs/skin.ini", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/analog-back.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/analog-fore.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/analog.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonL-holdL.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonL-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonL.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonR-holdR.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonR-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonR.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonS-holdS.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonS-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonS.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonSen-holdSen.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonSen-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonSen.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonZ-holdZ.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonZ-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/buttonZ.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/dpad-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/dpad.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-0.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-1.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-2.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-3.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-4.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-5.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-6.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-7.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-8.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps-9.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/fps.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupAB-holdA.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupAB-holdB.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupAB-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupAB.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupC-holdCd.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupC-holdCl.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupC-holdCr.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupC-holdCu.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupC-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/groupC.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Outline/skin.ini", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/analog-back.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/analog-fore.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/analog.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonL-holdL.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonL-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonL.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonR-holdR.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonR-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonR.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonS-holdS.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonS-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonS.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonSen-holdSen.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonSen-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonSen.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonZ-holdZ.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonZ-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/buttonZ.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/dpad-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/dpad.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-0.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-1.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-2.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-3.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-4.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-5.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-6.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-7.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-8.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps-9.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/fps.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupAB-holdA.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupAB-holdB.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupAB-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupAB.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupC-holdCd.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupC-holdCl.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupC-holdCr.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupC-holdCu.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupC-mask.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/groupC.png", 1);
-            mAssetVersions.put("mupen64plus_data/skins/touchscreen/Shaded/skin.ini", 1);
+    /**
+     * An entry of the asset manifest.
+     */
+    private static final class Asset
+    {
+        final String path;
+        final String hash;
+        final long size;
+        final String line;
+
+        Asset( String line )
+        {
+            final String[] fields = line.split( " ", 3 );
+            this.hash = fields[0];
+            this.size = Long.parseLong( fields[1] );
+            this.path = fields[2];
+            this.line = line;
         }
     }
 
@@ -226,7 +100,7 @@ public class ExtractAssetsTask extends AsyncTask<Void, String, List<ExtractAsset
     private final String mDstPath;
     private final ExtractAssetsListener mListener;
     private final SharedPreferences mPreferences;
-    private int mTotalAssets = 0;
+    private volatile int mTotalAssets = 0;
     
     public ExtractAssetsTask(Context context, AssetManager assetManager, String srcPath, String dstPath, ExtractAssetsListener listener )
     {
@@ -309,77 +183,214 @@ public class ExtractAssetsTask extends AsyncTask<Void, String, List<ExtractAsset
         }
     }
 
-    public static boolean areAllAssetsPresent(String srcPath, String dstPath) {
+    /**
+     * @return True if assets were installed in the destination folder, which is false if the
+     *         folder is not accessible
+     */
+    public static boolean areAllAssetsPresent( String dstPath )
+    {
+        return new File( dstPath, INSTALLED_MANIFEST ).exists();
+    }
 
-        for (Map.Entry<String, Integer> entry : mAssetVersions.entrySet()) {
-            String destinationPath = dstPath + "/" + entry.getKey().replaceAll(srcPath + "/", "");
+    /**
+     * @return True if the installed assets match the manifest of this build
+     */
+    static public boolean areAllAssetsValid( AssetManager assetManager, SharedPreferences preferences, String dstPath )
+    {
+        final String version = readManifestVersion( assetManager );
+        return version != null && version.equals( preferences.getString( MANIFEST_VERSION_KEY, null ) ) &&
+                areAllAssetsPresent( dstPath );
+    }
 
-            if(!(new File(destinationPath).exists())) {
-                return false;
-            }
+    private static String readManifestVersion( AssetManager assetManager )
+    {
+        try( BufferedReader reader = new BufferedReader( new InputStreamReader( assetManager.open( MANIFEST ) ) ) )
+        {
+            final String line = reader.readLine();
+            return line == null ? null : line.substring( 2 );
+        }
+        catch( IOException e )
+        {
+            Log.e( "ExtractAssetsTask", "Unable to read asset manifest" );
+            return null;
         }
-
-        return true;
     }
 
-    static public boolean areAllAssetsValid(SharedPreferences preferences, String srcPath, String dstPath) {
-
-        for (Map.Entry<String, Integer> entry : mAssetVersions.entrySet()) {
-            String key = entry.getKey();
-            Integer value = entry.getValue();
-            String destinationPath = dstPath + "/" + entry.getKey().replaceAll(srcPath + "/", "");
+    /**
+     * Reads a manifest.
+     *
+     * @param in The manifest contents, closed when done.
+     * @param assets Receives the manifest entries by asset path.
+     * @return The version of the manifest.
+     */
+    private static String readManifest( InputStream in, Map<String, Asset> assets ) throws IOException
+    {
+        try( BufferedReader reader = new BufferedReader( new InputStreamReader( in ) ) )
+        {
+            String line = reader.readLine();
+            final String version = line == null ? null : line.substring( 2 );
 
-            if(preferences.getInt( key, 0 ) != value || !(new File(destinationPath).exists())) {
-                return false;
+            while( ( line = reader.readLine() ) != null )
+            {
+                if( !line.isEmpty() )
+                {
+                    final Asset asset = new Asset( line );
+                    assets.put( asset.path, asset );
+                }
             }
+            return version;
         }
-
-        return true;
     }
-    
+
     private List<Failure> extractAssets( String srcPath, String dstPath )
     {
+        final long start = SystemClock.elapsedRealtime();
         final List<Failure> failures = new ArrayList<>();
         
         if( srcPath.startsWith( "/" ) )
             srcPath = srcPath.substring( 1 );
 
-        ArrayList<Map.Entry<String, Integer>> assetsToExtract = new ArrayList<>();
-
         // Ensure the parent directories exist
         FileUtil.makeDirs(dstPath);
 
-        for (Map.Entry<String, Integer> entry : mAssetVersions.entrySet()) {
-            String key = entry.getKey();
-            Integer value = entry.getValue();
-            String destinationPath = dstPath + "/" + entry.getKey().replaceAll(srcPath + "/", "");
+        final Map<String, Asset> assets = new LinkedHashMap<>();
+        final Map<String, Asset> installedAssets = new LinkedHashMap<>();
+        final String version;
+        final File installedManifest = new File( dstPath, INSTALLED_MANIFEST );
+        try
+        {
+            version = readManifest( mAssetManager.open( MANIFEST ), assets );
+        }
+        catch( IOException e )
+        {
+            Failure failure = new Failure( MANIFEST, installedManifest.getPath(), Failure.Reason.ASSET_IO_EXCEPTION );
+            Log.e( "ExtractAssetsTask", failure.toString() );
+            failures.add( failure );
+            return failures;
+        }
 
-            if(getInt(key) != value || !(new File(destinationPath).exists())) {
-                assetsToExtract.add(entry);
-                ++mTotalAssets;
+        if( installedManifest.exists() )
+        {
+            try
+            {
+                readManifest( new FileInputStream( installedManifest ), installedAssets );
+            }
+            catch( IOException e )
+            {
+                // Extract everything
+                installedAssets.clear();
             }
         }
 
-        for(Map.Entry<String, Integer> asset : assetsToExtract) {
-
-            String destinationPath = dstPath + "/" + asset.getKey().replaceAll(srcPath + "/", "");
+        // Only extract the assets that changed since the last extraction
+        final List<Asset> assetsToExtract = new ArrayList<>();
+        long bytesToExtract = 0;
+        for( Asset asset : assets.values() )
+        {
+            if( !asset.path.startsWith( srcPath + "/" ) )
+                continue;
 
-            // Ensure the parent directories exist
-            File directory = new File(destinationPath).getParentFile();
+            final Asset installed = installedAssets.get( asset.path );
+            final File destination = new File( getDestination( asset, srcPath, dstPath ) );
+            if( installed == null || !installed.hash.equals( asset.hash ) || destination.length() != asset.size )
+            {
+                assetsToExtract.add( asset );
+                bytesToExtract += asset.size;
 
-            if(!directory.exists()) {
-                if(!directory.mkdirs()) {
+                // Ensure the parent directories exist, before workers race to create them
+                File directory = destination.getParentFile();
+                if( !directory.exists() && !directory.mkdirs() )
+                {
                     Log.e( "ExtractAssetsTask", "Unable to create folder" );
                 }
             }
+        }
+        mTotalAssets = assetsToExtract.size();
+
+        final int threads = Math.max( 1, Math.min( MAX_THREADS, Runtime.getRuntime().availableProcessors() ) );
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final List<Future<List<Failure>>> results = new ArrayList<>();
+        for( final Asset asset : assetsToExtract )
+        {
+            final String destination = getDestination( asset, srcPath, dstPath );
+            results.add( executor.submit( new Callable<List<Failure>>()
+            {
+                @Override
+                public List<Failure> call()
+                {
+                    return extractSingleFile( asset.path, destination, asset.size );
+                }
+            } ) );
+        }
+        executor.shutdown();
+
+        for( int i = 0; i < results.size(); i++ )
+        {
+            final Asset asset = assetsToExtract.get( i );
+            List<Failure> assetFailures;
+            try
+            {
+                assetFailures = results.get( i ).get();
+            }
+            catch( InterruptedException|ExecutionException e )
+            {
+                assetFailures = Collections.singletonList( new Failure( asset.path,
+                        getDestination( asset, srcPath, dstPath ), Failure.Reason.ASSET_IO_EXCEPTION ) );
+            }
+
+            if( assetFailures.isEmpty() )
+            {
+                installedAssets.put( asset.path, asset );
+            }
+            else
+            {
+                // Forget the asset so it is extracted again next time
+                installedAssets.remove( asset.path );
+                failures.addAll( assetFailures );
+            }
+        }
 
-            failures.addAll(extractSingleFile(asset.getKey(), destinationPath, asset.getValue()));
+        // Record everything that was installed in one go
+        writeInstalledManifest( installedManifest, failures.isEmpty() ? version : null, installedAssets );
+        final SharedPreferences.Editor editor = mPreferences.edit();
+        for( String path : assets.keySet() )
+        {
+            // Versions of single assets were recorded by previous releases
+            editor.remove( path );
         }
+        if( failures.isEmpty() )
+            editor.putString( MANIFEST_VERSION_KEY, version );
+        editor.apply();
+
+        Log.i( "ExtractAssetsTask", "Extracted " + assetsToExtract.size() + " of " + assets.size() + " assets (" +
+                bytesToExtract / 1024 + " KB) in " + ( SystemClock.elapsedRealtime() - start ) + " ms using " +
+                threads + " threads" );
 
         return failures;
     }
 
-    private List<Failure>  extractSingleFile( String asset, String destination, Integer newVersion)
+    private static String getDestination( Asset asset, String srcPath, String dstPath )
+    {
+        return dstPath + "/" + asset.path.substring( srcPath.length() + 1 );
+    }
+
+    private static void writeInstalledManifest( File file, String version, Map<String, Asset> assets )
+    {
+        try( PrintWriter writer = new PrintWriter( file ) )
+        {
+            writer.println( "# " + ( version == null ? "" : version ) );
+            for( Asset asset : assets.values() )
+            {
+                writer.println( asset.line );
+            }
+        }
+        catch( FileNotFoundException e )
+        {
+            Log.e( "ExtractAssetsTask", "Unable to write " + file.getPath() );
+        }
+    }
+
+    private List<Failure> extractSingleFile( String asset, String destination, long size )
     {
         final List<Failure> failures = new ArrayList<>();
 
@@ -394,8 +405,8 @@ public class ExtractAssetsTask extends AsyncTask<Void, String, List<ExtractAsset
         try
         {
             out = new FileOutputStream( destination );
-            in = mAssetManager.open( asset );
-            byte[] buffer = new byte[1024];
+            in = mAssetManager.open( asset, AssetManager.ACCESS_STREAMING );
+            byte[] buffer = new byte[(int) Math.max( 1, Math.min( BUFFER_SIZE, size ) )];
             int read;
 
             while( ( read = in.read( buffer ) ) != -1 )
@@ -403,8 +414,6 @@ public class ExtractAssetsTask extends AsyncTask<Void, String, List<ExtractAsset
                 out.write( buffer, 0, read );
             }
             out.flush();
-
-            putInt(asset, newVersion);
         }
         catch( FileNotFoundException e )
         {
@@ -450,30 +459,4 @@ public class ExtractAssetsTask extends AsyncTask<Void, String, List<ExtractAsset
 
         return failures;
     }
-
-    private void putInt( String key, int value )
-    {
-        mPreferences.edit().putInt( key, value ).apply();
-    }
-
-    private int getInt( String key )
-    {
-        return mPreferences.getInt( key, 0 );
-    }
-    
-    private static String[] getAssetList( AssetManager assetManager, String srcPath )
-    {
-        String[] srcSubPaths = null;
-        
-        try
-        {
-            srcSubPaths = assetManager.list( srcPath );
-        }
-        catch( IOException e )
-        {
-            Log.w( "ExtractAssetsTask", "Failed to get asset file list." );
-        }
-        
-        return srcSubPaths;
-    }
 }
@@ -20,10 +20,9 @@
  */
 package paulscode.android.mupen64plusae.task;
 
-import java.io.BufferedReader;
 import java.util.ArrayList;
 
-import paulscode.android.mupen64plusae.cheat.CheatUtils;
+import paulscode.android.mupen64plusae.cheat.CheatProvider;
 import paulscode.android.mupen64plusae.cheat.CheatUtils.Cheat;
 import android.content.Context;
 import android.os.AsyncTask;
@@ -33,7 +32,7 @@ public class ExtractCheatsTask extends AsyncTask<String, String, String>
 {
     private final Context mContext;
     private final ExtractCheatListener mExtractCheatListener;
-    private final String mCheatPath;
+    private final CheatProvider mCheatProvider;
     private final String mCrc;
     private final byte mCountryCode;
     private final ArrayList<Cheat> mCheats;
@@ -46,11 +45,11 @@ public class ExtractCheatsTask extends AsyncTask<String, String, String>
 
     
     public ExtractCheatsTask( Context context, ExtractCheatListener extractCheatListener,
-        String cheatPath, String crc, byte romCountryCode)
+        CheatProvider cheatProvider, String crc, byte romCountryCode)
     {
         mContext = context;
         mExtractCheatListener = extractCheatListener;
-        mCheatPath = cheatPath;
+        mCheatProvider = cheatProvider;
         mCrc = crc;
         mCountryCode = romCountryCode;
         mCheats = new ArrayList<Cheat>();
@@ -71,19 +70,8 @@ public class ExtractCheatsTask extends AsyncTask<String, String, String>
         if( mCrc == null )
             return;
         
-        // Get the appropriate section of the config file, using CRC as the key
-        
-        String countryString = String.format("%02x", mCountryCode).substring(0, 2);
-        String regularExpression = "^" + mCrc.replace( ' ', '-') + "-C:" + countryString + ".*";
-        
-        BufferedReader cheatLocation = CheatUtils.getCheatsLocation(regularExpression, mCheatPath);
-        if( cheatLocation == null  )
-        {
-            Log.w( "GamePrefsActivity", "No cheat section found for '" + mCrc + "'" );
-            return;
-        }
-
-        mCheats.addAll( CheatUtils.populateWithPosition( cheatLocation, mCrc, mCountryCode, mContext ) );
+        // Get the appropriate section of the cheat files, using CRC as the key
+        mCheats.addAll( mCheatProvider.getCheats( mCrc, mCountryCode, mContext ) );
     }
     
     @Override
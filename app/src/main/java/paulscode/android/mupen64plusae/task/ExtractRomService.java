@@ -57,6 +57,7 @@ import paulscode.android.mupen64plusae.dialog.ProgressDialog.OnCancelListener;
 import paulscode.android.mupen64plusae.util.FileUtil;
 import paulscode.android.mupen64plusae.util.RomHeader;
 import paulscode.android.mupen64plusae.util.SevenZInputStream;
+import paulscode.android.mupen64plusae.util.StartupTrace;
 
 public class ExtractRomService extends Service {
     private String mZipPath;
@@ -127,6 +128,7 @@ public class ExtractRomService extends Service {
                 return;
             }
 
+            final long extractStart = StartupTrace.now();
             final RomHeader romHeader = new RomHeader(mZipPath);
 
             if (romHeader.isZip) {
@@ -135,6 +137,8 @@ public class ExtractRomService extends Service {
                 ExtractSevenZFileIfNeeded(mMd5, mRomPath, mZipPath);
             }
 
+            StartupTrace.record("Extract ROM", extractStart);
+
             if (mListener != null) {
                 mListener.onExtractRomFinished();
             }
@@ -37,11 +37,13 @@ import android.os.Message;
 import android.os.Process;
 import androidx.core.app.NotificationCompat;
 import android.text.TextUtils;
+import android.util.Log;
 import android.widget.Toast;
 
 import app.cooln64.v5.coolemulators.R;
 
 import java.io.File;
+import java.io.IOException;
 
 import paulscode.android.mupen64plusae.ActivityHelper;
 import paulscode.android.mupen64plusae.GalleryActivity;
@@ -49,9 +51,11 @@ import paulscode.android.mupen64plusae.dialog.ProgressDialog;
 import paulscode.android.mupen64plusae.dialog.ProgressDialog.OnCancelListener;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
+import paulscode.android.mupen64plusae.util.FileImporter;
 import paulscode.android.mupen64plusae.util.FileUtil;
 import paulscode.android.mupen64plusae.util.RomHeader;
-import paulscode.android.mupen64plusae.util.TextureInfo;
+import paulscode.android.mupen64plusae.util.TexturePackArchive;
 
 public class ExtractTexturesService extends Service
 {
@@ -127,14 +131,47 @@ public class ExtractTexturesService extends Service
             }
             
             AppData appData = new AppData( ExtractTexturesService.this );
-            GlobalPrefs globalPrefs = new GlobalPrefs( ExtractTexturesService.this, appData );
+            GlobalPrefs globalPrefs = PrefsCache.getGlobalPrefs( ExtractTexturesService.this, appData );
 
             RomHeader header = new RomHeader(mZipPath);
             if(mZipPath.toLowerCase().endsWith("htc"))
             {
                 if(mZipPath.toLowerCase().endsWith("_hirestextures.htc"))
                 {
-                    FileUtil.copyFile(new File(mZipPath), new File(globalPrefs.textureCacheDir + "/" + new File(mZipPath).getName()));
+                    // Texture caches can be several GB, copy them in chunks that survive an interruption
+                    final File cacheFile = new File(mZipPath);
+                    final ProgressDialog progress = mListener != null ? mListener.GetProgressDialog() : null;
+                    if (progress != null) {
+                        progress.setMaxProgress(cacheFile.length());
+                    }
+
+                    // The cache only gets its name once the whole copy succeeded, so a failed import
+                    // never replaces a cache that was already there
+                    final boolean imported = FileImporter.importFile(cacheFile,
+                            new File(globalPrefs.textureCacheDir + "/" + cacheFile.getName()),
+                            new FileImporter.ProgressListener() {
+                                @Override
+                                public void onProgress(long bytes) {
+                                    if (progress != null) {
+                                        progress.incrementProgress(bytes);
+                                    }
+                                }
+                            });
+
+                    if (!imported)
+                    {
+                        final String text = getString(R.string.pathHiResTexturesTask_errorMessageImportHTC);
+
+                        Handler handler = new Handler(Looper.getMainLooper());
+
+                        handler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                Toast.makeText(ExtractTexturesService.this.getApplicationContext(),text,Toast.LENGTH_SHORT).show();
+                            }
+                        });
+                    }
                 }
                 else
                 {
@@ -151,21 +188,22 @@ public class ExtractTexturesService extends Service
                     });
                 }
             } else if (header.isZip || header.is7Zip) {
-                String headerName = header.isZip ? TextureInfo.getTexturePackNameFromZip( mZipPath ) :
-                        TextureInfo.getTexturePackNameFromSevenZ( mZipPath );
-
-                if( !TextUtils.isEmpty( headerName ) )
-                {
-                    String outputFolder = globalPrefs.hiResTextureDir + headerName;
-                    FileUtil.deleteFolder( new File( outputFolder ) );
-
-                    if(header.isZip) {
-                        FileUtil.unzipAll( new File( mZipPath ), outputFolder );
-                    } else {
-                        FileUtil.unSevenZAll( new File( mZipPath ), outputFolder );
+                // The archive index is read once, for both the name and the extraction
+                String headerName = null;
+                try (TexturePackArchive archive = new TexturePackArchive(new File(mZipPath), header.isZip)) {
+                    headerName = archive.getTexturePackName();
+
+                    if( !TextUtils.isEmpty( headerName ) )
+                    {
+                        String outputFolder = globalPrefs.hiResTextureDir + headerName;
+                        FileUtil.deleteFolder( new File( outputFolder ) );
+                        archive.extractAll( outputFolder );
                     }
+                } catch (IOException e) {
+                    Log.e("ExtractTexturesService", "Unable to read texture pack " + mZipPath, e);
                 }
-                else
+
+                if( TextUtils.isEmpty( headerName ) )
                 {
                     final String text = getString(R.string.pathHiResTexturesTask_errorMessage);
 
@@ -0,0 +1,141 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.task;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+
+import paulscode.android.mupen64plusae.game.GameDataManager;
+import paulscode.android.mupen64plusae.jni.CoreService;
+import paulscode.android.mupen64plusae.persistent.AppData;
+import paulscode.android.mupen64plusae.persistent.GamePrefs;
+import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
+import paulscode.android.mupen64plusae.persistent.StorageIndex;
+
+/**
+ * Measures the user data and applies the storage policies in the background: the number of auto
+ * saves kept per game and the size limit of the caches. Runs in the game process, like
+ * CoreWarmupService, because auto saves are only ever modified from there.
+ */
+public class StorageCleanupService extends Service
+{
+    private static final String TAG = "StorageCleanupService";
+
+    private Looper mServiceLooper;
+    private ServiceHandler mServiceHandler;
+    private StorageIndex mIndex = null;
+
+    private final class ServiceHandler extends Handler
+    {
+        ServiceHandler( Looper looper )
+        {
+            super( looper );
+        }
+
+        @Override
+        public void handleMessage( Message msg )
+        {
+            final long start = SystemClock.elapsedRealtime();
+            final AppData appData = new AppData( StorageCleanupService.this );
+            final GlobalPrefs globalPrefs = PrefsCache.getGlobalPrefs( StorageCleanupService.this, appData );
+
+            if( mIndex == null )
+                mIndex = new StorageIndex( appData, globalPrefs );
+            mIndex.refresh();
+
+            // The running game may be reading any of the files, they are cleaned up after it ends
+            if( CoreService.isActive() )
+            {
+                Log.i( TAG, "Game running, storage policies not applied" );
+                stopSelf( msg.arg1 );
+                return;
+            }
+
+            // Applies a lowered limit to the games that weren't played since
+            for( File gameDir : mIndex.getGameDataDirs() )
+            {
+                final File autoSaveDir = new File( gameDir, GamePrefs.AUTO_SAVES_DIR );
+                if( autoSaveDir.isDirectory() )
+                    GameDataManager.compactAutoSaves( autoSaveDir, globalPrefs.maxAutoSaves );
+            }
+
+            if( globalPrefs.storageCacheLimit > 0 )
+                mIndex.trimCaches( globalPrefs.storageCacheLimit * 1024L * 1024L );
+
+            mIndex.refresh();
+
+            Log.i( TAG, "Storage checked in " + ( SystemClock.elapsedRealtime() - start ) + " ms, saves: " +
+                    ( mIndex.getSize( StorageIndex.Category.AUTO_SAVES ) +
+                    mIndex.getSize( StorageIndex.Category.SLOT_SAVES ) +
+                    mIndex.getSize( StorageIndex.Category.SRAM_DATA ) ) + " bytes, caches: " +
+                    ( mIndex.getSize( StorageIndex.Category.UNZIPPED_ROMS ) +
+                    mIndex.getSize( StorageIndex.Category.TEXTURE_CACHE ) +
+                    mIndex.getSize( StorageIndex.Category.SHADER_CACHE ) ) + " bytes" );
+
+            stopSelf( msg.arg1 );
+        }
+    }
+
+    @Override
+    public void onCreate()
+    {
+        final HandlerThread thread = new HandlerThread( "StorageCleanup", Process.THREAD_PRIORITY_BACKGROUND );
+        thread.start();
+
+        mServiceLooper = thread.getLooper();
+        mServiceHandler = new ServiceHandler( mServiceLooper );
+    }
+
+    @Override
+    public int onStartCommand( Intent intent, int flags, int startId )
+    {
+        // Requests made while one is being handled only need one more pass
+        mServiceHandler.removeMessages( 0 );
+
+        final Message msg = mServiceHandler.obtainMessage( 0 );
+        msg.arg1 = startId;
+        mServiceHandler.sendMessage( msg );
+
+        // Done again the next time the gallery is shown
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        mServiceLooper.quit();
+    }
+
+    @Override
+    public IBinder onBind( Intent intent )
+    {
+        return null;
+    }
+}
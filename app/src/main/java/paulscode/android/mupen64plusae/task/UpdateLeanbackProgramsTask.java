@@ -1,37 +1,53 @@
 /*
  * Mupen64PlusAE, an N64 emulator for the Android platform
- * 
+ *
  * Copyright (C) 2013 Paul Lamb
- * 
+ *
  * This file is part of Mupen64PlusAE.
- * 
+ *
  * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
  * GNU General Public License as published by the Free Software Foundation, either version 3 of the
  * License, or (at your option) any later version.
- * 
+ *
  * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
  * GNU General Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
  * not, see <http://www.gnu.org/licenses/>.
- * 
+ *
  * Authors:
  */
 package paulscode.android.mupen64plusae.task;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Process;
+import android.os.RemoteException;
 import android.text.TextUtils;
+import android.util.Log;
 
 import app.cooln64.v5.coolemulators.R;
 
 import java.io.File;
-import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 import androidx.tvprovider.media.tv.PreviewProgram;
 import androidx.tvprovider.media.tv.TvContractCompat;
@@ -41,88 +57,472 @@ import paulscode.android.mupen64plusae.GalleryItem;
 import paulscode.android.mupen64plusae.SplashActivity;
 import paulscode.android.mupen64plusae.util.FileUtil;
 
-public class UpdateLeanbackProgramsTask extends AsyncTask<Void, Void, String>
+/**
+ * Publishes the recently played games to the Leanback channel. The programs published for each
+ * game are remembered along with a signature of their content and their weight, so each update
+ * only inserts, updates or deletes the programs that changed, in one batch. The weight is the time
+ * the game was last played, so playing a game only reweights that game's program. Updates run one
+ * at a time on a low priority thread, and an update requested while another is waiting replaces
+ * it.
+ */
+public class UpdateLeanbackProgramsTask implements Runnable
 {
-    private final WeakReference<Context> mContext;
+    private static final String TAG = "UpdateLeanbackPrograms";
+
+    /** Remembers the published programs, by MD5, and the banners, by art signature. */
+    private static final String PREFS_NAME = "leanback_programs";
+    private static final String KEY_CHANNEL_ID = "channelId";
+    private static final String PROGRAM_PREFIX = "program:";
+    private static final String BANNER_PREFIX = "banner:";
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor( new ThreadFactory()
+    {
+        @Override
+        public Thread newThread( final Runnable runnable )
+        {
+            return new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Process.setThreadPriority( Process.THREAD_PRIORITY_LOWEST );
+                    runnable.run();
+                }
+            }, TAG );
+        }
+    } );
+
+    /** The newest update that hasn't started yet. */
+    private static final AtomicReference<UpdateLeanbackProgramsTask> sPending = new AtomicReference<>();
+
+    /** Banners the launcher was given access to in this process, permissions don't survive a reboot. */
+    private static final Set<String> sGrantedBanners = new HashSet<>();
+
+    private final Context mContext;
     private final List<GalleryItem> mItems;
     private final long mChannelId;
 
-    public UpdateLeanbackProgramsTask(Context context, List<GalleryItem> items, long channelId)
+    /** A program as it was published. */
+    private static class Program
+    {
+        final long id;
+        final String signature;
+        final int weight;
+
+        Program( long id, String signature, int weight )
+        {
+            this.id = id;
+            this.signature = signature;
+            this.weight = weight;
+        }
+    }
+
+    /** Poster art for a program. */
+    private static class Banner
     {
+        final Uri uri;
+        final int aspectRatio;
 
-        mContext = new WeakReference<>(context);
-        mItems = items;
+        Banner( Uri uri, int aspectRatio )
+        {
+            this.uri = uri;
+            this.aspectRatio = aspectRatio;
+        }
+    }
+
+    public UpdateLeanbackProgramsTask(Context context, List<GalleryItem> items, long channelId)
+    {
+        mContext = context.getApplicationContext();
+        mItems = new ArrayList<>( items );
         mChannelId = channelId;
     }
-    
+
+    /**
+     * Queues the update, replacing an update that hasn't started yet.
+     */
+    public void execute()
+    {
+        if( sPending.getAndSet( this ) == null )
+        {
+            sExecutor.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final UpdateLeanbackProgramsTask task = sPending.getAndSet( null );
+                    if( task != null )
+                        task.run();
+                }
+            } );
+        }
+    }
+
     @Override
-    protected String doInBackground( Void... params )
-    {
-        // Clear out the programs first
-        mContext.get().getContentResolver().delete(
-                TvContractCompat.buildPreviewProgramsUriForChannel(mChannelId),
-                null, null);
-
-        // Add recently played games to channel
-        for (GalleryItem item : mItems) {
-            Uri coverArtUri;
-            int aspectRatio = TvContractCompat.PreviewPrograms.ASPECT_RATIO_3_2;
-
-            // Create cover art link
-            if (!TextUtils.isEmpty(item.artPath) && new File(item.artPath).exists()) {
-                coverArtUri = FileUtil.buildBanner(mContext.get(), item.artPath);
-
-                // Determine aspect ratio
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-                BitmapFactory.decodeFile(item.artPath, options);
-                int width = options.outWidth;
-                int height = options.outHeight;
-
-                if (height > width)
+    public void run()
+    {
+        if( mChannelId == -1 )
+        {
+            Log.w( TAG, "No channel to publish to" );
+            return;
+        }
+
+        final SharedPreferences prefs = mContext.getSharedPreferences( PREFS_NAME, Context.MODE_PRIVATE );
+        final SharedPreferences.Editor editor = prefs.edit();
+
+        // Programs published to another channel are gone with it
+        final Map<String, Program> published;
+        if( prefs.getLong( KEY_CHANNEL_ID, -1 ) != mChannelId )
+        {
+            clearPrograms( prefs, editor );
+            editor.putLong( KEY_CHANNEL_ID, mChannelId );
+            published = new HashMap<>();
+        }
+        else
+        {
+            published = readPrograms( prefs );
+        }
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        if( !reconcile( published, operations ) )
+            return;
+
+        final List<String> inserted = new ArrayList<>();
+        final List<String> insertedValues = new ArrayList<>();
+        final Set<String> current = new HashSet<>();
+        final Set<String> usedBanners = new HashSet<>();
+
+        for( GalleryItem item : mItems )
+        {
+            if( !current.add( item.md5 ) )
+                continue;
+
+            // Most recent first, a game keeps its weight until it is played again
+            final int weight = item.lastPlayed;
+            final String artSignature = getArtSignature( item.artPath );
+            final String signature = getSignature( item, artSignature );
+            final Program program = published.get( item.md5 );
+            if( artSignature != null )
+                usedBanners.add( BANNER_PREFIX + artSignature );
+
+            if( program != null && program.signature.equals( signature ) )
+            {
+                // The launcher keeps the program but loses access to the banner on reboot
+                final Banner banner = getCachedBanner( prefs, artSignature );
+                if( banner != null )
+                    grantBanner( banner.uri );
+
+                if( program.weight != weight )
                 {
-                    aspectRatio = TvContractCompat.PreviewPrograms.ASPECT_RATIO_2_3;
+                    operations.add( ContentProviderOperation.newUpdate(
+                            TvContractCompat.buildPreviewProgramUri( program.id ) )
+                            .withValue( TvContractCompat.PreviewPrograms.COLUMN_WEIGHT, weight ).build() );
+                    editor.putString( PROGRAM_PREFIX + item.md5, getProgramValue( program.id, signature, weight ) );
                 }
+                continue;
+            }
+
+            final Banner banner = getBanner( prefs, editor, item.artPath, artSignature );
+            final PreviewProgram.Builder builder = buildProgram( item, banner, weight );
+            if( program != null )
+            {
+                operations.add( ContentProviderOperation.newUpdate(
+                        TvContractCompat.buildPreviewProgramUri( program.id ) )
+                        .withValues( builder.build().toContentValues() ).build() );
+                editor.putString( PROGRAM_PREFIX + item.md5, getProgramValue( program.id, signature, weight ) );
+            }
+            else
+            {
+                operations.add( ContentProviderOperation.newInsert( TvContractCompat.PreviewPrograms.CONTENT_URI )
+                        .withValues( builder.build().toContentValues() ).build() );
+                inserted.add( item.md5 );
+                insertedValues.add( signature + ":" + weight );
+            }
+        }
+
+        for( Map.Entry<String, Program> entry : published.entrySet() )
+        {
+            if( !current.contains( entry.getKey() ) )
+            {
+                operations.add( ContentProviderOperation.newDelete(
+                        TvContractCompat.buildPreviewProgramUri( entry.getValue().id ) ).build() );
+            }
+        }
+
+        // Also forgets the games whose programs are no longer in the channel
+        for( String key : prefs.getAll().keySet() )
+        {
+            if( key.startsWith( PROGRAM_PREFIX ) && !current.contains( key.substring( PROGRAM_PREFIX.length() ) ) )
+                editor.remove( key );
+        }
+
+        if( !operations.isEmpty() )
+        {
+            try
+            {
+                final ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                        TvContractCompat.AUTHORITY, operations );
 
-                if (height == -1 || width == -1) {
-                    coverArtUri = FileUtil.resourceToUri(mContext.get(), R.drawable.default_coverart);
+                // Only inserts have a uri, in the order they were added
+                int insert = 0;
+                for( int i = 0; i < results.length && insert < inserted.size(); i++ )
+                {
+                    if( results[i].uri != null )
+                    {
+                        editor.putString( PROGRAM_PREFIX + inserted.get( insert ),
+                                ContentUris.parseId( results[i].uri ) + ":" + insertedValues.get( insert ) );
+                        insert++;
+                    }
                 }
+            }
+            catch( RemoteException | OperationApplicationException | IllegalArgumentException e )
+            {
+                // What was applied is found by the next update
+                Log.e( TAG, "Unable to update the programs: " + e.getMessage() );
+                return;
+            }
+        }
+
+        // Banners of covers that changed or of games no longer shown
+        for( String key : prefs.getAll().keySet() )
+        {
+            if( key.startsWith( BANNER_PREFIX ) && !usedBanners.contains( key ) )
+                editor.remove( key );
+        }
+
+        editor.apply();
+        Log.i( TAG, operations.size() + " program changes for " + mItems.size() + " recent games" );
+    }
 
-            } else {
-                coverArtUri = FileUtil.resourceToUri(mContext.get(), R.drawable.default_coverart);
+    /**
+     * Compares the published programs with those in the channel. Programs no longer in the channel
+     * are forgotten so they are published again, and programs that aren't remembered, such as
+     * those left by an update that failed part way, are deleted.
+     *
+     * @return False if the channel couldn't be read.
+     */
+    private boolean reconcile( Map<String, Program> published, List<ContentProviderOperation> operations )
+    {
+        final Set<Long> existing = new HashSet<>();
+        try( Cursor cursor = mContext.getContentResolver().query(
+                TvContractCompat.buildPreviewProgramsUriForChannel( mChannelId ),
+                new String[] { TvContractCompat.PreviewPrograms._ID,
+                        TvContractCompat.PreviewPrograms.COLUMN_INTERNAL_PROVIDER_ID }, null, null, null ) )
+        {
+            if( cursor == null )
+                return false;
+
+            while( cursor.moveToNext() )
+            {
+                final long id = cursor.getLong( 0 );
+                final Program program = published.get( cursor.getString( 1 ) );
+                if( program != null && program.id == id )
+                    existing.add( id );
+                else
+                    operations.add( ContentProviderOperation.newDelete(
+                            TvContractCompat.buildPreviewProgramUri( id ) ).build() );
             }
+        }
+        catch( SecurityException | IllegalArgumentException e )
+        {
+            Log.w( TAG, "Unable to list the programs: " + e.getMessage() );
+            return false;
+        }
+
+        final List<String> removed = new ArrayList<>();
+        for( Map.Entry<String, Program> entry : published.entrySet() )
+        {
+            if( !existing.contains( entry.getValue().id ) )
+                removed.add( entry.getKey() );
+        }
+        for( String md5 : removed )
+            published.remove( md5 );
+        return true;
+    }
+
+    private PreviewProgram.Builder buildProgram( GalleryItem item, Banner banner, int weight )
+    {
+        Intent gameIntent = new Intent(mContext, SplashActivity.class);
+
+        gameIntent.putExtra(GalleryActivity.KEY_IS_LEANBACK, true);
+        gameIntent.putExtra(ActivityHelper.Keys.ROM_PATH, item.romFile != null ? item.romFile.getAbsolutePath() : null);
+        gameIntent.putExtra(ActivityHelper.Keys.ZIP_PATH, item.zipFile != null ? item.zipFile.getAbsolutePath() : null);
+        gameIntent.putExtra(ActivityHelper.Keys.ROM_MD5, item.md5);
+        gameIntent.putExtra(ActivityHelper.Keys.ROM_CRC, item.crc);
+        gameIntent.putExtra(ActivityHelper.Keys.ROM_HEADER_NAME, item.headerName);
+        gameIntent.putExtra(ActivityHelper.Keys.ROM_COUNTRY_CODE, item.countryCode.getValue());
+        gameIntent.putExtra(ActivityHelper.Keys.ROM_ART_PATH, item.artPath);
+        gameIntent.putExtra(ActivityHelper.Keys.ROM_GOOD_NAME, item.goodName);
+        gameIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_MULTIPLE_TASK);
+
+        PreviewProgram.Builder builder = new PreviewProgram.Builder();
+        builder.setChannelId(mChannelId)
+                .setType(TvContractCompat.PreviewPrograms.TYPE_GAME)
+                .setTitle(item.goodName)
+                .setPosterArtUri(banner.uri)
+                .setPosterArtAspectRatio(banner.aspectRatio)
+                .setWeight(weight)
+                .setInternalProviderId(item.md5)
+                .setIntent(gameIntent);
+        return builder;
+    }
 
-            Intent gameIntent = new Intent(mContext.get(), SplashActivity.class);
+    /**
+     * @return The poster art for a cover, from the banners already built when the cover didn't
+     * change.
+     */
+    private Banner getBanner( SharedPreferences prefs, SharedPreferences.Editor editor, String artPath,
+            String artSignature )
+    {
+        if( artSignature == null )
+            return getDefaultBanner();
 
-            gameIntent.putExtra(GalleryActivity.KEY_IS_LEANBACK, true);
-            gameIntent.putExtra(ActivityHelper.Keys.ROM_PATH, item.romFile != null ? item.romFile.getAbsolutePath() : null);
-            gameIntent.putExtra(ActivityHelper.Keys.ZIP_PATH, item.zipFile != null ? item.zipFile.getAbsolutePath() : null);
-            gameIntent.putExtra(ActivityHelper.Keys.ROM_MD5, item.md5);
-            gameIntent.putExtra(ActivityHelper.Keys.ROM_CRC, item.crc);
-            gameIntent.putExtra(ActivityHelper.Keys.ROM_HEADER_NAME, item.headerName);
-            gameIntent.putExtra(ActivityHelper.Keys.ROM_COUNTRY_CODE, item.countryCode.getValue());
-            gameIntent.putExtra(ActivityHelper.Keys.ROM_ART_PATH, item.artPath);
-            gameIntent.putExtra(ActivityHelper.Keys.ROM_GOOD_NAME, item.goodName);
-            gameIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_MULTIPLE_TASK);
+        final Banner cached = getCachedBanner( prefs, artSignature );
+        if( cached != null )
+        {
+            grantBanner( cached.uri );
+            return cached;
+        }
 
-            PreviewProgram.Builder builder = new PreviewProgram.Builder();
-            builder.setChannelId(mChannelId)
-                    .setType(TvContractCompat.PreviewPrograms.TYPE_GAME)
-                    .setTitle(item.goodName)
-                    .setPosterArtUri(coverArtUri)
-                    .setPosterArtAspectRatio(aspectRatio)
-                    .setIntent(gameIntent);
+        // Determine aspect ratio
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(artPath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return getDefaultBanner();
+        }
 
-            mContext.get().getContentResolver().insert(TvContractCompat.PreviewPrograms.CONTENT_URI,
-                    builder.build().toContentValues());
+        final Uri uri = FileUtil.buildBanner( mContext, artPath );
+        if( uri == null )
+            return getDefaultBanner();
+
+        final int aspectRatio = options.outHeight > options.outWidth ?
+                TvContractCompat.PreviewPrograms.ASPECT_RATIO_2_3 : TvContractCompat.PreviewPrograms.ASPECT_RATIO_3_2;
+        synchronized( sGrantedBanners )
+        {
+            sGrantedBanners.add( uri.toString() );
         }
+        editor.putString( BANNER_PREFIX + artSignature, aspectRatio + ":" + uri.toString() );
+        return new Banner( uri, aspectRatio );
+    }
+
+    /**
+     * @return The banner built for a cover, or null if none was built yet.
+     */
+    private static Banner getCachedBanner( SharedPreferences prefs, String artSignature )
+    {
+        if( artSignature == null )
+            return null;
+
+        final String cached = prefs.getString( BANNER_PREFIX + artSignature, null );
+        if( cached == null )
+            return null;
 
-        return "";
+        final int separator = cached.indexOf( ':' );
+        try
+        {
+            return new Banner( Uri.parse( cached.substring( separator + 1 ) ),
+                    Integer.parseInt( cached.substring( 0, separator ) ) );
+        }
+        catch( NumberFormatException | IndexOutOfBoundsException e )
+        {
+            return null;
+        }
     }
 
-    @Override
-    protected void onPostExecute( String result )
+    private Banner getDefaultBanner()
+    {
+        return new Banner( FileUtil.resourceToUri( mContext, R.drawable.default_coverart ),
+                TvContractCompat.PreviewPrograms.ASPECT_RATIO_3_2 );
+    }
+
+    /**
+     * Lets the launcher read a cached banner, once per process.
+     */
+    private void grantBanner( Uri uri )
+    {
+        synchronized( sGrantedBanners )
+        {
+            if( !sGrantedBanners.add( uri.toString() ) )
+                return;
+        }
+
+        try
+        {
+            mContext.grantUriPermission( FileUtil.LEANBACK_PACKAGE, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION );
+        }
+        catch( SecurityException e )
+        {
+            Log.w( TAG, "Unable to grant access to " + uri );
+        }
+    }
+
+    private void clearPrograms( SharedPreferences prefs, SharedPreferences.Editor editor )
+    {
+        for( String key : prefs.getAll().keySet() )
+        {
+            if( key.startsWith( PROGRAM_PREFIX ) )
+                editor.remove( key );
+        }
+    }
+
+    private static Map<String, Program> readPrograms( SharedPreferences prefs )
+    {
+        final Map<String, Program> programs = new HashMap<>();
+        for( Map.Entry<String, ?> entry : prefs.getAll().entrySet() )
+        {
+            if( !entry.getKey().startsWith( PROGRAM_PREFIX ) || !( entry.getValue() instanceof String ) )
+                continue;
+
+            // Saved as id:signature:weight, programs saved without a weight get it on the next update
+            final String[] parts = ( (String) entry.getValue() ).split( ":" );
+            if( parts.length != 2 && parts.length != 3 )
+                continue;
+
+            try
+            {
+                final int weight = parts.length == 3 ? Integer.parseInt( parts[2] ) : Integer.MIN_VALUE;
+                programs.put( entry.getKey().substring( PROGRAM_PREFIX.length() ),
+                        new Program( Long.parseLong( parts[0] ), parts[1], weight ) );
+            }
+            catch( NumberFormatException e )
+            {
+                // Published again
+            }
+        }
+        return programs;
+    }
+
+    /**
+     * @return A value that changes when the cover art changes, or null if there is no cover art.
+     */
+    private static String getArtSignature( String artPath )
+    {
+        if( TextUtils.isEmpty( artPath ) )
+            return null;
+
+        final File art = new File( artPath );
+        final long modified = art.lastModified();
+        if( modified == 0 )
+            return null;
+
+        return Integer.toHexString( artPath.hashCode() ) + "-" + art.length() + "-" + modified;
+    }
+
+    private static String getProgramValue( long id, String signature, int weight )
+    {
+        return id + ":" + signature + ":" + weight;
+    }
+
+    /**
+     * @return A value that changes when the content of the program changes, not including its
+     * weight, which is compared separately.
+     */
+    private static String getSignature( GalleryItem item, String artSignature )
     {
-        // Nothing to do here
+        final String content = item.goodName + "\n" + artSignature + "\n" +
+                ( item.romFile != null ? item.romFile.getAbsolutePath() : "" ) + "\n" +
+                ( item.zipFile != null ? item.zipFile.getAbsolutePath() : "" ) + "\n" +
+                item.crc + "\n" + item.headerName + "\n" + item.countryCode.getValue();
+        return Integer.toHexString( content.hashCode() );
     }
-}
\ No newline at end of file
+}
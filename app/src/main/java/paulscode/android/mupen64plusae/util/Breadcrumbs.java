@@ -0,0 +1,81 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+
+/**
+ * The most recent events of the app in the current process, written to the crash log by
+ * {@link CrashHandler}. Adding an event only stores references in a fixed ring, so events can be
+ * left from anywhere, including often-called code.
+ */
+public final class Breadcrumbs
+{
+    private static final int CAPACITY = 128;
+
+    private static final long[] sTimes = new long[CAPACITY];
+    private static final String[] sThreads = new String[CAPACITY];
+    private static final String[] sEvents = new String[CAPACITY];
+    private static long sCount = 0;
+
+    private Breadcrumbs()
+    {
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param event Description of the event, should be a constant or already built string.
+     */
+    public static void add( String event )
+    {
+        final long time = SystemClock.elapsedRealtime();
+        final String thread = Thread.currentThread().getName();
+        synchronized( sEvents )
+        {
+            final int index = (int) ( sCount % CAPACITY );
+            sTimes[index] = time;
+            sThreads[index] = thread;
+            sEvents[index] = event;
+            sCount++;
+        }
+    }
+
+    /**
+     * Writes the events, oldest first, each with its age.
+     */
+    static void write( PrintWriter out )
+    {
+        final long now = SystemClock.elapsedRealtime();
+        synchronized( sEvents )
+        {
+            for( long i = Math.max( 0, sCount - CAPACITY ); i < sCount; i++ )
+            {
+                final int index = (int) ( i % CAPACITY );
+                out.print( now - sTimes[index] );
+                out.print( " ms ago [" );
+                out.print( sThreads[index] );
+                out.print( "] " );
+                out.println( sEvents[index] );
+            }
+        }
+    }
+}
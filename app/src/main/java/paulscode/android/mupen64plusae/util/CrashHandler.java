@@ -1,52 +1,133 @@
 /**
  * Mupen64PlusAE, an N64 emulator for the Android platform
- * 
+ *
  * Copyright (C) 2013 Paul Lamb
- * 
+ *
  * This file is part of Mupen64PlusAE.
- * 
+ *
  * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
  * GNU General Public License as published by the Free Software Foundation, either version 3 of the
  * License, or (at your option) any later version.
- * 
+ *
  * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
  * GNU General Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
  * not, see <http://www.gnu.org/licenses/>.
- * 
+ *
  * Authors: littleguy77
  */
 package paulscode.android.mupen64plusae.util;
 
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Process;
 import android.util.Log;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.persistent.PrefsCache;
 
+/**
+ * Writes a crash log when an exception isn't caught. The log file is opened when the process
+ * starts, so the crashing thread only writes what is already in memory: the stack trace, the
+ * {@link Breadcrumbs} and a few numbers. A crash before the file is open is written to the app's
+ * internal storage instead. The logcat, CPU and peripheral information take seconds to collect and
+ * are added the next time the app starts or the gallery is shown, whichever comes first.
+ */
 public class CrashHandler implements UncaughtExceptionHandler
 {
+    private static final String TAG = "CrashHandler";
+
+    /** Crash logs waiting for the diagnostics, followed by the pid of the process. */
+    private static final String PENDING_PREFIX = "Pending_";
+    private static final String PENDING_EXTENSION = ".txt";
+
+    /** Crash logs of crashes before the log file was opened, relative to the internal files. */
+    private static final String FALLBACK_DIR = "CrashLogs";
+
     public static void init( Context context )
     {
-        DeviceUtil.clearLogCat();
-        Thread.setDefaultUncaughtExceptionHandler( new CrashHandler( context ) );
+        final CrashHandler crashHandler = new CrashHandler( context, new File( context.getFilesDir(), FALLBACK_DIR ) );
+        Thread.setDefaultUncaughtExceptionHandler( crashHandler );
+
+        if( context.getApplicationContext() instanceof Application )
+            leaveBreadcrumbs( (Application) context.getApplicationContext() );
+
+        // Nothing that touches storage or runs commands is done on the main thread
+        new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                crashHandler.prepare();
+            }
+        }, TAG ).start();
     }
-    
+
+    /**
+     * Adds the diagnostics to the crash logs left by processes that crashed since. Used when the
+     * gallery is shown, a crashed game process is usually not restarted right away.
+     */
+    public static void finishPendingLogs( Context context )
+    {
+        final Context appContext = context.getApplicationContext();
+        new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                final AppData appData = new AppData( appContext );
+                final GlobalPrefs globalPrefs = PrefsCache.getGlobalPrefs( appContext, appData );
+                final File dir = new File( globalPrefs.crashLogDir );
+                FileUtil.makeDirs( dir.getPath() );
+                finishPendingLogs( new File( appContext.getFilesDir(), FALLBACK_DIR ), dir );
+                finishPendingLogs( dir, dir );
+            }
+        }, TAG ).start();
+    }
+
     private final Context mContext;
     private final UncaughtExceptionHandler mDefaultHandler;
-    
-    private CrashHandler( Context context )
+    private final AtomicBoolean mCrashed = new AtomicBoolean( false );
+
+    /** Where the crash log goes if the process crashes before it is opened. */
+    private final File mFallbackDir;
+
+    /** The crash log of this process, opened ahead of time, null until it is. */
+    private volatile FileOutputStream mCrashLog = null;
+    private volatile String mDescription;
+
+    private CrashHandler( Context context, File fallbackDir )
     {
         mContext = context;
-        
+        mFallbackDir = fallbackDir;
+
+        // Completed once the app data is read in the background
+        mDescription = "Process: " + Process.myPid() + "\nDevice: " + Build.MANUFACTURER + " " + Build.MODEL +
+                ", Android " + Build.VERSION.RELEASE + " (API " + Build.VERSION.SDK_INT + ")";
+
         // Remember the original handler so that we can let it handle the exception when we're done
         UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
         if( handler instanceof CrashHandler )
@@ -54,51 +135,236 @@ public class CrashHandler implements UncaughtExceptionHandler
         else
             mDefaultHandler = Thread.getDefaultUncaughtExceptionHandler();
     }
-    
+
     @Override
     public void uncaughtException( Thread thread, Throwable ex )
     {
-        try
+        // Only the first of several crashing threads is logged
+        if( mCrashed.compareAndSet( false, true ) )
         {
-            // Setup crash log
-            AppData appData = new AppData( mContext );
-            GlobalPrefs globalPrefs = new GlobalPrefs( mContext, appData );
-            String filename = String.format( Locale.US, "%s/Crash_%s_%03d.txt",
-                    globalPrefs.crashLogDir, Utility.getDateString(), System.currentTimeMillis() % 1000 );
-            File log = new File( filename );
-            FileUtil.makeDirs(log.getParentFile().getPath());
-            
-            // Write to crash log
             try
             {
-                final PrintWriter out = new PrintWriter( log );
-                out.println( "Uncaught exception in package " + mContext.getPackageName() );
-                out.println( "\n****MESSAGE****" );
-                out.println( ex.getMessage() );
-                out.println( "\n****STACK TRACE****" );
-                ex.printStackTrace( out );
+                writeCrashLog( thread, ex );
+            }
+            catch( Throwable ignored )
+            {
+                // Quietly discard our own exceptions to avoid infinite recursion
+            }
+        }
+
+        // Pass the information to the default handler
+        if( mDefaultHandler != null )
+            mDefaultHandler.uncaughtException( thread, ex );
+    }
+
+    private void writeCrashLog( Thread thread, Throwable ex ) throws IOException
+    {
+        FileOutputStream stream = mCrashLog;
+        if( stream == null )
+        {
+            // Crashed during startup, the internal storage needs no preferences to find
+            Log.e( TAG, "Crash log not open yet, writing it to internal storage" );
+            if( !mFallbackDir.isDirectory() && !mFallbackDir.mkdirs() )
+                return;
+            stream = new FileOutputStream( new File( mFallbackDir, PENDING_PREFIX + Process.myPid() + PENDING_EXTENSION ) );
+        }
+
+        final PrintWriter out = new PrintWriter( new OutputStreamWriter( stream, "UTF-8" ) );
+        out.println( "Uncaught exception in package " + mContext.getPackageName() );
+        out.println( mDescription );
+        out.println( "\n****MESSAGE****" );
+        out.println( ex.getMessage() );
+        out.println( "\n****THREAD****" );
+        out.println( thread.getName() );
+        out.println( "\n****STACK TRACE****" );
+        ex.printStackTrace( out );
+        out.println( "\n****BREADCRUMBS****" );
+        Breadcrumbs.write( out );
+        out.println( "\n****MEMORY****" );
+        final Runtime runtime = Runtime.getRuntime();
+        out.println( "Java heap: " + ( runtime.totalMemory() - runtime.freeMemory() ) / 1024 + " KB used of " +
+                runtime.maxMemory() / 1024 + " KB" );
+        out.println( "Native heap: " + Debug.getNativeHeapAllocatedSize() / 1024 + " KB" );
+        out.flush();
+
+        // The process is killed right after, make sure the log reaches storage
+        stream.getFD().sync();
+        out.close();
+    }
+
+    /**
+     * Finishes the crash logs of previous runs and opens the crash log of this process.
+     */
+    private void prepare()
+    {
+        final AppData appData = new AppData( mContext );
+        final GlobalPrefs globalPrefs = PrefsCache.getGlobalPrefs( mContext, appData );
+        final File dir = new File( globalPrefs.crashLogDir );
+        FileUtil.makeDirs( dir.getPath() );
+
+        mDescription = "Version: " + appData.appVersion + "\nProcess: " + StartupTrace.readProcessName( mContext ) +
+                " (" + Process.myPid() + ")\nDevice: " + Build.MANUFACTURER + " " + Build.MODEL +
+                ", Android " + Build.VERSION.RELEASE + " (API " + Build.VERSION.SDK_INT + ")";
+
+        finishPendingLogs( mFallbackDir, dir );
+        finishPendingLogs( dir, dir );
+
+        // Only the log of this run is wanted in the next crash log
+        DeviceUtil.clearLogCat();
+
+        final File crashLog = new File( dir, PENDING_PREFIX + Process.myPid() + PENDING_EXTENSION );
+        try
+        {
+            mCrashLog = new FileOutputStream( crashLog );
+        }
+        catch( FileNotFoundException e )
+        {
+            Log.e( TAG, "Crash log could not be opened for writing: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Adds the slow diagnostics to the crash logs left by crashed processes and gives them their
+     * final name. Empty logs of processes that ended without crashing are deleted.
+     *
+     * @param pendingDir The directory of the pending logs.
+     * @param dir The crash log directory, where the finished logs go.
+     */
+    private static void finishPendingLogs( File pendingDir, File dir )
+    {
+        final File[] files = pendingDir.listFiles();
+        if( files == null )
+            return;
+
+        for( File pending : files )
+        {
+            final String name = pending.getName();
+            if( !name.startsWith( PENDING_PREFIX ) || !name.endsWith( PENDING_EXTENSION ) )
+                continue;
+
+            // The other process of the app may still be running
+            final String pid = name.substring( PENDING_PREFIX.length(), name.length() - PENDING_EXTENSION.length() );
+            if( new File( "/proc/" + pid ).exists() )
+                continue;
+
+            if( pending.length() == 0 )
+            {
+                if( !pending.delete() )
+                    Log.w( TAG, "Unable to delete " + pending.getPath() );
+                continue;
+            }
+
+            // Renaming first keeps the other process from finishing the same log
+            final long crashTime = pending.lastModified();
+            final String logName = String.format( Locale.US, "Crash_%s_%03d.txt",
+                    Utility.getDateString( new Date( crashTime ) ), crashTime % 1000 );
+            File log = new File( pendingDir, logName );
+            if( !pending.renameTo( log ) )
+                continue;
+
+            // Logs written to internal storage are moved where the user can find them
+            if( !pendingDir.equals( dir ) )
+            {
+                final File movedLog = new File( dir, logName );
+                if( FileUtil.copyFile( log, movedLog ) && log.delete() )
+                    log = movedLog;
+                else
+                    Log.w( TAG, "Unable to move " + log.getPath() );
+            }
+
+            try( PrintWriter out = new PrintWriter( new FileWriter( log, true ) ) )
+            {
                 out.println( "\n****LOGCAT****" );
-                out.println( DeviceUtil.getLogCat() );
+                out.println( "(collected when the app was next started or the gallery was shown)" );
+                try
+                {
+                    DeviceUtil.writeLogCat( out );
+                }
+                catch( IOException e )
+                {
+                    out.println( "Unable to read logcat: " + e.getMessage() );
+                }
                 out.println( "\n****DEVICE****" );
                 out.println( DeviceUtil.getCpuInfo() );
                 out.println( "\n****PERIPHERALS****" );
                 out.println( DeviceUtil.getAxisInfo() );
                 out.println( DeviceUtil.getPeripheralInfo() );
-                out.close();
             }
-            catch( FileNotFoundException fnfe )
+            catch( IOException e )
             {
-                Log.e( "CrashHandler",
-                        "Crash log could not be opened for writing: " + fnfe.getMessage() );
+                Log.w( TAG, "Unable to finish " + log.getPath() + ": " + e.getMessage() );
             }
+
+            Log.i( TAG, "Crash log from a previous run: " + log.getPath() );
         }
-        catch( Throwable ignored )
+    }
+
+    /**
+     * Records the activity lifecycle and memory pressure as breadcrumbs.
+     */
+    private static void leaveBreadcrumbs( Application application )
+    {
+        application.registerActivityLifecycleCallbacks( new Application.ActivityLifecycleCallbacks()
         {
-            // Quietly discard our own exceptions to avoid infinite recursion
-        }
-        
-        // Pass the information to the default handler
-        if( mDefaultHandler != null )
-            mDefaultHandler.uncaughtException( thread, ex );
+            @Override
+            public void onActivityCreated( Activity activity, Bundle savedInstanceState )
+            {
+                Breadcrumbs.add( activity.getClass().getSimpleName() + " created" );
+            }
+
+            @Override
+            public void onActivityStarted( Activity activity )
+            {
+            }
+
+            @Override
+            public void onActivityResumed( Activity activity )
+            {
+                Breadcrumbs.add( activity.getClass().getSimpleName() + " resumed" );
+            }
+
+            @Override
+            public void onActivityPaused( Activity activity )
+            {
+                Breadcrumbs.add( activity.getClass().getSimpleName() + " paused" );
+            }
+
+            @Override
+            public void onActivityStopped( Activity activity )
+            {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState( Activity activity, Bundle outState )
+            {
+            }
+
+            @Override
+            public void onActivityDestroyed( Activity activity )
+            {
+                Breadcrumbs.add( activity.getClass().getSimpleName() + " destroyed" );
+            }
+        } );
+
+        application.registerComponentCallbacks( new ComponentCallbacks2()
+        {
+            @Override
+            public void onTrimMemory( int level )
+            {
+                Breadcrumbs.add( "Trim memory, level " + level );
+            }
+
+            @Override
+            public void onConfigurationChanged( Configuration newConfig )
+            {
+                Breadcrumbs.add( "Configuration changed" );
+            }
+
+            @Override
+            public void onLowMemory()
+            {
+                Breadcrumbs.add( "Low memory" );
+            }
+        } );
     }
-}
\ No newline at end of file
+}
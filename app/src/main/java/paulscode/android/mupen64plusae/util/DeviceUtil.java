@@ -31,6 +31,10 @@ import android.view.InputDevice.MotionRange;
 import android.view.MotionEvent;
 import android.view.View;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -68,9 +72,27 @@ public final class DeviceUtil
         return result;
     }
     
-    public static String getLogCat()
+    /**
+     * Writes the device log line by line, without holding it in memory.
+     * 
+     * @param out The writer the log is written to.
+     */
+    public static void writeLogCat( Writer out ) throws IOException
     {
-        return Utility.executeShellCommand( "logcat", "-d", "-v", "long" );
+        final Process process = Runtime.getRuntime().exec( new String[] { "logcat", "-d", "-v", "threadtime" } );
+        try( BufferedReader reader = new BufferedReader( new InputStreamReader( process.getInputStream() ) ) )
+        {
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                out.write( line );
+                out.write( '\n' );
+            }
+        }
+        finally
+        {
+            process.destroy();
+        }
     }
     
     public static void clearLogCat()
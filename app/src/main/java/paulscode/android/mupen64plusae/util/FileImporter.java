@@ -0,0 +1,258 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Imports large files, such as hi-res texture caches, into the app's storage. The data is moved
+ * by the kernel with {@link FileChannel#transferTo}, in chunks, into a ".part" file next to the
+ * destination. Each chunk of the source is checksummed as it is read, the transfer then copies it
+ * from the page cache, so the data only passes through the app once and the destination is never
+ * read back. The checksums are saved once the chunk is forced to disk, so an import that was
+ * interrupted continues where it stopped instead of starting over. The destination only gets its
+ * name once every chunk has been copied.
+ */
+public class FileImporter
+{
+    private static final String TAG = "FileImporter";
+
+    /** Amount of data copied between progress reports and saves of the state. */
+    private static final long CHUNK_SIZE = 64 * 1024 * 1024;
+
+    /** Size of the reads done for the checksums. */
+    private static final int CHECKSUM_BUFFER_SIZE = 256 * 1024;
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".part.state";
+
+    public interface ProgressListener
+    {
+        /**
+         * Called after each chunk is copied.
+         *
+         * @param bytes The number of bytes copied since the last call.
+         */
+        void onProgress( long bytes );
+    }
+
+    /**
+     * Copies a file, continuing a previous copy of the same file if one was interrupted.
+     *
+     * @param src Source file.
+     * @param dest Desired destination, replaced if it exists.
+     * @param listener Notified of the progress, can be null.
+     *
+     * @return True if the copy succeeded, false otherwise.
+     */
+    public static boolean importFile( File src, File dest, ProgressListener listener )
+    {
+        final File part = new File( dest.getPath() + PART_SUFFIX );
+        final File state = new File( dest.getPath() + STATE_SUFFIX );
+
+        final File parent = dest.getParentFile();
+        if( parent == null )
+        {
+            Log.e( TAG, "dest parent folder null" );
+            return false;
+        }
+        FileUtil.makeDirs( parent.getPath() );
+
+        final long length = src.length();
+        final long modified = src.lastModified();
+        final List<Long> checksums = new ArrayList<>();
+
+        try( FileInputStream in = new FileInputStream( src );
+             RandomAccessFile out = new RandomAccessFile( part, "rw" ) )
+        {
+            final FileChannel srcChannel = in.getChannel();
+            final FileChannel destChannel = out.getChannel();
+
+            long copied = resume( destChannel, state, length, modified, checksums );
+            if( copied > 0 )
+                Log.i( TAG, "Resuming import of " + src.getName() + " at " + copied + " bytes" );
+            if( listener != null && copied > 0 )
+                listener.onProgress( copied );
+
+            if( parent.getUsableSpace() < length - copied )
+            {
+                Log.e( TAG, "Not enough space to import " + src.getName() );
+                return false;
+            }
+
+            destChannel.truncate( copied );
+            destChannel.position( copied );
+
+            final ByteBuffer buffer = ByteBuffer.allocate( CHECKSUM_BUFFER_SIZE );
+            while( copied < length )
+            {
+                final long count = Math.min( CHUNK_SIZE, length - copied );
+
+                // Reading the chunk for the checksum also brings it into the page cache, the
+                // transfer then copies it from there without it passing through the app
+                final long checksum = getChecksum( srcChannel, copied, count, buffer );
+
+                long transferred = 0;
+                while( transferred < count )
+                {
+                    final long result = srcChannel.transferTo( copied + transferred, count - transferred, destChannel );
+                    if( result <= 0 )
+                        throw new IOException( "Source ended early" );
+                    transferred += result;
+                }
+
+                // Only remember chunks that made it to disk
+                destChannel.force( false );
+                copied += count;
+                checksums.add( checksum );
+                writeState( state, length, modified, checksums );
+
+                if( listener != null )
+                    listener.onProgress( count );
+            }
+
+            if( src.length() != length || src.lastModified() != modified )
+            {
+                // Chunks copied before the change would not match the rest
+                Log.e( TAG, src.getName() + " changed during the import" );
+                out.close();
+                deleteImport( part, state );
+                return false;
+            }
+        }
+        catch( IOException e )
+        {
+            // Whatever was saved in the state is kept for the next attempt
+            Log.e( TAG, "Unable to import " + src.getPath(), e );
+            return false;
+        }
+
+        if( dest.exists() && !dest.delete() )
+        {
+            Log.e( TAG, "Unable to replace " + dest.getPath() );
+            return false;
+        }
+
+        if( !part.renameTo( dest ) )
+        {
+            Log.e( TAG, "Unable to rename " + part.getPath() );
+            return false;
+        }
+
+        state.delete();
+        return true;
+    }
+
+    /**
+     * Finds where an interrupted copy of the same source stopped.
+     *
+     * @return The number of bytes already copied, the checksums of their chunks are added to the
+     * list.
+     */
+    private static long resume( FileChannel destChannel, File state, long length, long modified,
+            List<Long> checksums ) throws IOException
+    {
+        if( !state.exists() )
+            return 0;
+
+        try
+        {
+            final String[] lines = FileUtil.readStringFromFile( state ).split( "\n" );
+            if( lines.length < 2 || Long.parseLong( lines[0] ) != length ||
+                    Long.parseLong( lines[1] ) != modified )
+            {
+                // Left over from another source
+                return 0;
+            }
+
+            for( int i = 2; i < lines.length; i++ )
+            {
+                if( !lines[i].isEmpty() )
+                    checksums.add( Long.parseLong( lines[i], 16 ) );
+            }
+        }
+        catch( NumberFormatException e )
+        {
+            checksums.clear();
+            return 0;
+        }
+
+        // Chunks are only saved in the state after they were forced to disk
+        final long copied = Math.min( checksums.size() * CHUNK_SIZE, length );
+        if( destChannel.size() < copied )
+        {
+            checksums.clear();
+            return 0;
+        }
+
+        return copied;
+    }
+
+    /**
+     * @return The CRC32 of a range of the source, read in bounded pieces through a reused buffer.
+     */
+    private static long getChecksum( FileChannel channel, long position, long count, ByteBuffer buffer )
+            throws IOException
+    {
+        final CRC32 crc = new CRC32();
+        long read = 0;
+        while( read < count )
+        {
+            buffer.clear();
+            buffer.limit( (int) Math.min( buffer.capacity(), count - read ) );
+            final int result = channel.read( buffer, position + read );
+            if( result <= 0 )
+                throw new IOException( "File ended early" );
+            crc.update( buffer.array(), 0, result );
+            read += result;
+        }
+        return crc.getValue();
+    }
+
+    private static void writeState( File state, long length, long modified, List<Long> checksums )
+            throws IOException
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append( length ).append( '\n' ).append( modified ).append( '\n' );
+        for( long checksum : checksums )
+            builder.append( Long.toHexString( checksum ) ).append( '\n' );
+
+        // Replaced in one step so an interruption never leaves half a state
+        final File temp = new File( state.getPath() + ".tmp" );
+        FileUtil.writeStringToFile( temp, builder.toString() );
+        if( !temp.renameTo( state ) )
+            throw new IOException( "Unable to save " + state.getPath() );
+    }
+
+    private static void deleteImport( File part, File state )
+    {
+        part.delete();
+        state.delete();
+    }
+}
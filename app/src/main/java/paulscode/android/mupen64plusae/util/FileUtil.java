@@ -160,8 +160,10 @@ public final class FileUtil
      * @param folder The folder to delete.
      */
     public static void deleteFolder(File folder) {
-        if (folder.exists() && folder.isDirectory() && folder.listFiles() != null)
-            for (File child : folder.listFiles())
+        //Listing is the slow part on large folders, do it once
+        final File[] children = folder.listFiles();
+        if (children != null)
+            for (File child : children)
                 deleteFolder(child);
 
         if (!folder.delete()) {
@@ -175,8 +177,9 @@ public final class FileUtil
      * @param folder The folder to delete.
      */
     public static void deleteFolderFilter(File folder, String filter) {
-        if (folder.exists() && folder.isDirectory() && folder.listFiles() != null)
-            for (File child : folder.listFiles())
+        final File[] children = folder.listFiles();
+        if (children != null)
+            for (File child : children)
                 deleteFolderFilter(child,filter);
 
         if (folder.getName().contains(filter) && !folder.delete()) {
@@ -191,8 +194,9 @@ public final class FileUtil
      * @param extension The extension of files to be deleted
      */
     public static void deleteExtensionFolder(File folder, String extension) {
-        if (folder.exists() && folder.isDirectory() && folder.listFiles() != null) {
-            for (File child : folder.listFiles()) {
+        final File[] children = folder.listFiles();
+        if (children != null) {
+            for (File child : children) {
                 if (child.getName().endsWith(extension)) {
                     if (!child.delete()) {
                         Log.w("deleteExtensionFolder", "Couldn't delete " + child.getPath());
@@ -387,21 +391,7 @@ public final class FileUtil
         try
         {
             zipfile = new ZipFile( archive );
-            Enumeration<? extends ZipEntry> e = zipfile.entries();
-            while( e.hasMoreElements() )
-            {
-                ZipEntry entry = e.nextElement();
-                if (!entry.isDirectory())
-                {
-                    File f = new File( outputDir + "/" + entry.toString() );
-                    f = f.getParentFile();
-                    if( f != null )
-                    {
-                        FileUtil.makeDirs(f.getPath());
-                        unzipEntry( zipfile, entry, outputDir );
-                    }
-                }
-            }
+            unzipAll( zipfile, outputDir );
         }
         catch( Exception ze )
         {
@@ -420,6 +410,31 @@ public final class FileUtil
         }
     }
 
+    /**
+     * Unzips an open ZIP file in its entirety.
+     *
+     * @param zipfile   The archive to extract.
+     * @param outputDir Directory to place all of the extracted files.
+     */
+    public static void unzipAll( @NonNull ZipFile zipfile, String outputDir ) throws IOException
+    {
+        Enumeration<? extends ZipEntry> e = zipfile.entries();
+        while( e.hasMoreElements() )
+        {
+            ZipEntry entry = e.nextElement();
+            if (!entry.isDirectory())
+            {
+                File f = new File( outputDir + "/" + entry.toString() );
+                f = f.getParentFile();
+                if( f != null )
+                {
+                    FileUtil.makeDirs(f.getPath());
+                    unzipEntry( zipfile, entry, outputDir );
+                }
+            }
+        }
+    }
+
     // Unzips a specific entry from a ZIP file into the given output directory.
     //
     // Returns the absolute path to the outputted entry.
@@ -456,19 +471,7 @@ public final class FileUtil
         try
         {
             zipfile = new SevenZFile(archive);
-            SevenZArchiveEntry zipEntry;
-
-            while( (zipEntry = zipfile.getNextEntry()) != null)
-            {
-                File f = new File( outputDir + "/" + zipEntry.getName() );
-
-                f = f.getParentFile();
-                if( f != null )
-                {
-                    FileUtil.makeDirs(f.getPath());
-                    unSevenZEntry( zipfile, zipEntry, outputDir );
-                }
-            }
+            unSevenZAll( zipfile, outputDir );
         }
         catch( Exception ze )
         {
@@ -491,6 +494,29 @@ public final class FileUtil
         }
     }
 
+    /**
+     * Unzips an open 7Z file in its entirety, no entry of the file must have been read yet.
+     *
+     * @param zipfile   The archive to extract.
+     * @param outputDir Directory to place all of the extracted files.
+     */
+    public static void unSevenZAll( @NonNull SevenZFile zipfile, String outputDir ) throws IOException
+    {
+        SevenZArchiveEntry zipEntry;
+
+        while( (zipEntry = zipfile.getNextEntry()) != null)
+        {
+            File f = new File( outputDir + "/" + zipEntry.getName() );
+
+            f = f.getParentFile();
+            if( f != null )
+            {
+                FileUtil.makeDirs(f.getPath());
+                unSevenZEntry( zipfile, zipEntry, outputDir );
+            }
+        }
+    }
+
     // Unzips a specific entry from a ZIP file into the given output directory.
     //
     // Returns the absolute path to the outputted entry.
@@ -706,7 +732,7 @@ public final class FileUtil
         return context.getPackageName() + ".filesprovider";
     }
 
-    private static final String LEANBACK_PACKAGE = "com.google.android.tvlauncher";
+    public static final String LEANBACK_PACKAGE = "com.google.android.tvlauncher";
 
     /**
      * Leanback lanucher requires a uri for poster art so we create a contentUri and
@@ -20,12 +20,11 @@
  */
 package paulscode.android.mupen64plusae.util;
 
-import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
 
 /**
  * The Image class provides a simple interface to common image manipulation methods.
@@ -33,7 +32,6 @@ import android.graphics.drawable.BitmapDrawable;
 public final class Image
 {
     public final Bitmap image;
-    public final BitmapDrawable drawable;
     public final int width;
     public final int height;
     public final int hWidth;
@@ -44,18 +42,22 @@ public final class Image
     public int y = 0;
     public final Rect drawRect = new Rect();
     
+    /** The area of the bitmap holding this image, or null for the whole bitmap. */
+    private final Rect mSource;
+    
+    /** Same flags as BitmapDrawable. */
+    private final Paint mPaint = new Paint( Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG );
+    
     /**
      * Constructor: Loads an image file and sets the initial properties.
      * 
-     * @param res
-     *            A handle to the app resources.
      * @param filename
      *            The path to the image file.
      */
-    public Image( Resources res, String filename )
+    public Image( String filename )
     {
         image = BitmapFactory.decodeFile( filename );
-        drawable = new BitmapDrawable( res, image );
+        mSource = null;
         
         if( image == null )
         {
@@ -72,20 +74,42 @@ public final class Image
         hHeight = (int) ( height / 2.0f );
     }
     
+    /**
+     * Constructor: Uses an area of a bitmap shared with other images, such as a texture atlas.
+     * The area may have been scaled down, the image keeps the dimensions of the original so it is
+     * laid out the same.
+     * 
+     * @param bitmap
+     *            The bitmap containing the image.
+     * @param source
+     *            The area of the bitmap holding the image.
+     * @param width
+     *            The width of the original image.
+     * @param height
+     *            The height of the original image.
+     */
+    public Image( Bitmap bitmap, Rect source, int width, int height )
+    {
+        image = bitmap;
+        mSource = new Rect( source );
+        this.width = width;
+        this.height = height;
+        hWidth  = (int) ( width  / 2.0f ); 
+        hHeight = (int) ( height / 2.0f );
+    }
+    
     /**
      * Constructor: Creates a clone copy of a given Image.
      * 
-     * @param res
-     *            A handle to the app resources.
      * @param clone
      *            The Image to make a copy of.
      */
-    public Image( Resources res, Image clone )
+    public Image( Image clone )
     {
         if( clone == null )
         {
             image = null;
-            drawable = null;
+            mSource = null;
             width = 0;
             height = 0;
             hWidth = 0;
@@ -94,7 +118,7 @@ public final class Image
         else
         {
             image = clone.image;
-            drawable = new BitmapDrawable( res, image );
+            mSource = clone.mSource;
             width = clone.width;
             height = clone.height;
             hWidth = clone.hWidth;
@@ -103,6 +127,30 @@ public final class Image
         }
     }
     
+    /**
+     * Gets the color of a pixel of the image.
+     * 
+     * @param px
+     *            X-coordinate, in pixels of the original image.
+     * @param py
+     *            Y-coordinate, in pixels of the original image.
+     * 
+     * @return The color of the pixel, or 0 if there is no image.
+     */
+    public int getPixel( int px, int py )
+    {
+        if( image == null || width == 0 || height == 0 )
+            return 0;
+        
+        px = Math.max( 0, Math.min( px, width - 1 ) );
+        py = Math.max( 0, Math.min( py, height - 1 ) );
+        if( mSource == null )
+            return image.getPixel( px, py );
+        
+        return image.getPixel( mSource.left + px * mSource.width() / width,
+                mSource.top + py * mSource.height() / height );
+    }
+    
     /**
      * Sets the scaling factor of the image.
      * 
@@ -128,8 +176,6 @@ public final class Image
         this.x = x;
         this.y = y;
         drawRect.set( x, y, x + (int) ( width * scale ), y + (int) ( height * scale ) );
-        if( drawable != null )
-            drawable.setBounds( drawRect );
     }
     
     /**
@@ -195,8 +241,8 @@ public final class Image
      */
     public void draw( Canvas canvas )
     {
-        if( drawable != null )
-            drawable.draw( canvas );
+        if( image != null )
+            canvas.drawBitmap( image, mSource, drawRect, mPaint );
     }
     
     /**
@@ -207,7 +253,6 @@ public final class Image
      */
     public void setAlpha( int alpha ) 
     {
-        if( drawable != null )
-            drawable.setAlpha( alpha );
+        mPaint.setAlpha( alpha );
     }
 }
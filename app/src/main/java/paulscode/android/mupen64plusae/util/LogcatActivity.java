@@ -1,26 +1,58 @@
 package paulscode.android.mupen64plusae.util;
 
 import android.os.Bundle;
-import androidx.appcompat.app.AppCompatActivity;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.Button;
-import android.widget.ScrollView;
+import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.TextView;
 
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import app.cooln64.v5.coolemulators.R;
 
 import paulscode.android.mupen64plusae.ActivityHelper;
 
 public class LogcatActivity extends AppCompatActivity
 {
+    /** Number of log lines kept, older lines are dropped. */
+    private static final int CAPACITY = 20000;
+
+    /** How often new log lines are picked up. */
+    private static final int REFRESH_PERIOD_MS = 250;
+
+    /** Same limit as ActivityHelper.launchPlainText. */
+    private static final int SHARE_LIMIT = 1024 * 512 - 1000;
+
     private Button mCancelButton;
     private Button mShareButton;
-    private TextView mLogText;
-    private ScrollView mTextScroll;
-    private String mLogTextString = null;
+    private Spinner mLevelSpinner;
+    private EditText mFilterText;
+    private RecyclerView mLogList;
+    private LinearLayoutManager mLayoutManager;
+
+    private final LogcatReader mReader = new LogcatReader( CAPACITY );
+    private final Handler mHandler = new Handler();
 
-    private final String TEXT_KEY = "TEXT_KEY";
-    private final String TEXT_SCROLL = "TEXT_SCROLL";
+    /** The lines that pass the filter, oldest first. */
+    private final ArrayList<LogcatReader.Entry> mEntries = new ArrayList<>();
+    private final ArrayList<LogcatReader.Entry> mNewEntries = new ArrayList<>();
+    private final LogAdapter mAdapter = new LogAdapter( mEntries );
+    private long mNextSequence = 0;
+    private int mMinPriority = Log.VERBOSE;
+    private String mTagFilter = "";
 
     @Override
     protected void onCreate( Bundle savedInstanceState )
@@ -29,30 +61,39 @@ public class LogcatActivity extends AppCompatActivity
 
         setContentView(R.layout.logcat_activity);
 
-        mTextScroll = findViewById( R.id.logcatScroll );
+        mLayoutManager = new LinearLayoutManager( this );
+        mLayoutManager.setStackFromEnd( true );
+        mLogList = findViewById( R.id.logcatList );
+        mLogList.setLayoutManager( mLayoutManager );
+        mLogList.setAdapter( mAdapter );
 
-        if(savedInstanceState != null)
-        {
-            mLogTextString = savedInstanceState.getString(TEXT_KEY);
-
-            final int[] position = savedInstanceState.getIntArray(TEXT_SCROLL);
-            if(position != null)
-                mTextScroll.post(new Runnable() {
-                    public void run() {
-                        mTextScroll.scrollTo(position[0], position[1]);
-                    }
-                });
-        }
+        mLevelSpinner = findViewById( R.id.logcatLevel );
+        mLevelSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                setFilter( Log.VERBOSE + position, mTagFilter );
+            }
 
-        if(mLogTextString == null)
-        {
-            mLogTextString = DeviceUtil.getLogCat();
-            mLogTextString = mLogTextString.replace("]\n", "]: ");
-            mLogTextString = mLogTextString.replace("\r\n", "\n");
-        }
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        mFilterText = findViewById( R.id.logcatFilter );
+        mFilterText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
 
-        mLogText = findViewById( R.id.logcatText );
-        mLogText.setText(mLogTextString);
+            @Override
+            public void afterTextChanged(Editable s) {
+                setFilter( mMinPriority, s.toString().trim() );
+            }
+        });
 
         mCancelButton = findViewById( R.id.logcatCancel );
         mCancelButton.setOnClickListener(new View.OnClickListener() {
@@ -64,21 +105,180 @@ public class LogcatActivity extends AppCompatActivity
         mShareButton = findViewById( R.id.logcatShare );
         mShareButton.setOnClickListener(new View.OnClickListener() {
             public void onClick(View v) {
-                ActivityHelper.launchPlainText( getBaseContext(), mLogTextString,
+                ActivityHelper.launchPlainText( getBaseContext(), getShareText(),
                         getText( R.string.actionShare_title ));
             }
         });
+
+        mReader.start();
+    }
+
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        mHandler.post( mRefresher );
     }
-    
+
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        mHandler.removeCallbacks( mRefresher );
+    }
+
     @Override
-    public void onSaveInstanceState( Bundle savedInstanceState )
+    protected void onDestroy()
     {
-        if( mLogTextString != null )
-            savedInstanceState.putString(TEXT_KEY, mLogTextString);
+        super.onDestroy();
+        mReader.stop();
+    }
+
+    //Picks up the new log lines while the activity is visible
+    private final Runnable mRefresher = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+            mHandler.postDelayed( mRefresher, REFRESH_PERIOD_MS );
+        }
+    };
+
+    private void refresh()
+    {
+        if( mReader.getNextSequence() == mNextSequence )
+            return;
 
-        if(mTextScroll != null)
-            savedInstanceState.putIntArray(TEXT_SCROLL, new int[]{ mTextScroll.getScrollX(), mTextScroll.getScrollY()});
+        // Follow the end of the log unless the user scrolled up
+        final boolean atEnd = mEntries.isEmpty() ||
+                mLayoutManager.findLastVisibleItemPosition() >= mEntries.size() - 1;
 
-        super.onSaveInstanceState( savedInstanceState );
+        // Drop the lines the reader dropped
+        final long firstSequence = mReader.getFirstSequence();
+        int dropped = 0;
+        while( dropped < mEntries.size() && mEntries.get( dropped ).sequence < firstSequence )
+            dropped++;
+        if( dropped > 0 )
+        {
+            mEntries.subList( 0, dropped ).clear();
+            mAdapter.notifyItemRangeRemoved( 0, dropped );
+        }
+
+        // Add the new lines that pass the filter
+        mNewEntries.clear();
+        mNextSequence = mReader.copy( mNextSequence, mNewEntries );
+        final int start = mEntries.size();
+        for( LogcatReader.Entry entry : mNewEntries )
+        {
+            if( matches( entry ) )
+                mEntries.add( entry );
+        }
+        mNewEntries.clear();
+        mAdapter.notifyItemRangeInserted( start, mEntries.size() - start );
+
+        if( atEnd && !mEntries.isEmpty() )
+            mLogList.scrollToPosition( mEntries.size() - 1 );
+    }
+
+    private void setFilter( int minPriority, String tagFilter )
+    {
+        if( minPriority == mMinPriority && tagFilter.equals( mTagFilter ) )
+            return;
+
+        mMinPriority = minPriority;
+        mTagFilter = tagFilter;
+
+        // Filter the kept lines again
+        mEntries.clear();
+        mNextSequence = 0;
+        mAdapter.notifyDataSetChanged();
+        refresh();
+    }
+
+    private boolean matches( LogcatReader.Entry entry )
+    {
+        if( entry.priority < mMinPriority )
+            return false;
+
+        if( mTagFilter.isEmpty() )
+            return true;
+
+        // Case insensitive search without allocating
+        final int length = mTagFilter.length();
+        for( int i = 0; i + length <= entry.tag.length(); i++ )
+        {
+            if( entry.tag.regionMatches( true, i, mTagFilter, 0, length ) )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The most recent lines that pass the filter, as much as can be shared.
+     */
+    private String getShareText()
+    {
+        int first = mEntries.size();
+        int length = 0;
+        while( first > 0 && length + mEntries.get( first - 1 ).text.length() + 1 <= SHARE_LIMIT )
+        {
+            first--;
+            length += mEntries.get( first ).text.length() + 1;
+        }
+
+        final StringBuilder builder = new StringBuilder( length );
+        for( int i = first; i < mEntries.size(); i++ )
+            builder.append( mEntries.get( i ).text ).append( '\n' );
+        return builder.toString();
+    }
+
+    private static class LogAdapter extends RecyclerView.Adapter<LogAdapter.ViewHolder>
+    {
+        private final List<LogcatReader.Entry> mEntries;
+
+        static class ViewHolder extends RecyclerView.ViewHolder
+        {
+            final TextView text;
+            final int defaultColor;
+
+            ViewHolder( TextView view )
+            {
+                super( view );
+                text = view;
+                defaultColor = view.getCurrentTextColor();
+            }
+        }
+
+        LogAdapter( List<LogcatReader.Entry> entries )
+        {
+            mEntries = entries;
+        }
+
+        @Override
+        public ViewHolder onCreateViewHolder( ViewGroup parent, int viewType )
+        {
+            final TextView view = (TextView) LayoutInflater.from( parent.getContext() ).inflate(
+                    R.layout.logcat_item, parent, false );
+            return new ViewHolder( view );
+        }
+
+        @Override
+        public void onBindViewHolder( ViewHolder holder, int position )
+        {
+            final LogcatReader.Entry entry = mEntries.get( position );
+            holder.text.setText( entry.text );
+
+            if( entry.priority >= Log.ERROR )
+                holder.text.setTextColor( 0xFFFF5252 );
+            else if( entry.priority == Log.WARN )
+                holder.text.setTextColor( 0xFFFFB74D );
+            else
+                holder.text.setTextColor( holder.defaultColor );
+        }
+
+        @Override
+        public int getItemCount()
+        {
+            return mEntries.size();
+        }
     }
 }
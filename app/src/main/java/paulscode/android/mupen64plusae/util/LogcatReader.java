@@ -0,0 +1,249 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+
+/**
+ * Follows the device log on a background thread and keeps the most recent lines in a bounded
+ * ring, so memory use doesn't depend on the size of the log buffers. Readers copy the lines they
+ * haven't seen yet whenever they want, see {@link #getNextSequence()}.
+ */
+public class LogcatReader
+{
+    private static final String TAG = "LogcatReader";
+
+    /** One line of the log. */
+    public static class Entry
+    {
+        /** Position of the line in the log, increases by one for every line. */
+        public final long sequence;
+
+        /** The priority of the line, one of the {@link Log} priorities. */
+        public final int priority;
+
+        /** The tag of the line, empty for lines logcat adds itself. */
+        public final String tag;
+
+        /** The whole line, as printed by logcat. */
+        public final String text;
+
+        Entry( long sequence, int priority, String tag, String text )
+        {
+            this.sequence = sequence;
+            this.priority = priority;
+            this.tag = tag;
+            this.text = text;
+        }
+    }
+
+    private final Entry[] mRing;
+    private long mNextSequence = 0;
+
+    private Process mProcess = null;
+    private Thread mThread = null;
+    private volatile boolean mRunning = false;
+
+    /**
+     * @param capacity The number of lines kept, older lines are dropped.
+     */
+    public LogcatReader( int capacity )
+    {
+        mRing = new Entry[capacity];
+    }
+
+    /**
+     * Starts following the log, lines already in the log buffers come first.
+     */
+    public synchronized void start()
+    {
+        if( mRunning )
+            return;
+
+        mRunning = true;
+        mThread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                follow();
+            }
+        }, "LogcatReader" );
+        mThread.start();
+    }
+
+    /**
+     * Stops following the log, the lines read so far are kept.
+     */
+    public void stop()
+    {
+        final Process process;
+        synchronized( this )
+        {
+            mRunning = false;
+            process = mProcess;
+            mProcess = null;
+        }
+
+        // Unblocks the reading thread
+        if( process != null )
+            process.destroy();
+    }
+
+    /**
+     * @return The sequence number the next line will get, changes whenever lines are added.
+     */
+    public synchronized long getNextSequence()
+    {
+        return mNextSequence;
+    }
+
+    /**
+     * @return The sequence number of the oldest line still kept.
+     */
+    public synchronized long getFirstSequence()
+    {
+        return Math.max( 0, mNextSequence - mRing.length );
+    }
+
+    /**
+     * Copies the lines from a given sequence number on, or from the oldest line still kept if
+     * lines were dropped since.
+     *
+     * @param fromSequence The sequence number of the first line wanted.
+     * @param out The list the lines are appended to.
+     *
+     * @return The sequence number to pass to the next call.
+     */
+    public synchronized long copy( long fromSequence, List<Entry> out )
+    {
+        for( long sequence = Math.max( fromSequence, getFirstSequence() ); sequence < mNextSequence; sequence++ )
+            out.add( mRing[(int) ( sequence % mRing.length )] );
+        return mNextSequence;
+    }
+
+    private synchronized void append( String line )
+    {
+        mRing[(int) ( mNextSequence % mRing.length )] = parse( mNextSequence, line );
+        mNextSequence++;
+    }
+
+    private void follow()
+    {
+        final Process process;
+        try
+        {
+            process = Runtime.getRuntime().exec( new String[] { "logcat", "-v", "threadtime" } );
+        }
+        catch( IOException e )
+        {
+            Log.w( TAG, "Unable to start logcat: " + e.getMessage() );
+            return;
+        }
+
+        synchronized( this )
+        {
+            if( !mRunning )
+            {
+                process.destroy();
+                return;
+            }
+            mProcess = process;
+        }
+
+        try( BufferedReader reader = new BufferedReader( new InputStreamReader( process.getInputStream() ) ) )
+        {
+            String line;
+            while( mRunning && ( line = reader.readLine() ) != null )
+                append( line );
+        }
+        catch( IOException e )
+        {
+            // Stopped
+        }
+        finally
+        {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Parses a line in the logcat threadtime format, "date time pid tid priority tag: message".
+     */
+    static Entry parse( long sequence, String line )
+    {
+        // Skip the date, time, pid and tid fields
+        int position = 0;
+        for( int field = 0; field < 4; field++ )
+        {
+            position = skipSpaces( line, position );
+            while( position < line.length() && line.charAt( position ) != ' ' )
+                position++;
+        }
+        position = skipSpaces( line, position );
+
+        final int priority = position + 1 < line.length() && line.charAt( position + 1 ) == ' ' ?
+                getPriority( line.charAt( position ) ) : 0;
+        if( priority == 0 )
+        {
+            // Separator lines such as "--------- beginning of main"
+            return new Entry( sequence, Log.INFO, "", line );
+        }
+
+        final int tagStart = position + 2;
+        int tagEnd = line.indexOf( ": ", tagStart );
+        if( tagEnd < 0 )
+            tagEnd = line.length();
+        return new Entry( sequence, priority, line.substring( tagStart, tagEnd ).trim(), line );
+    }
+
+    private static int skipSpaces( String line, int position )
+    {
+        while( position < line.length() && line.charAt( position ) == ' ' )
+            position++;
+        return position;
+    }
+
+    private static int getPriority( char letter )
+    {
+        switch( letter )
+        {
+            case 'V':
+                return Log.VERBOSE;
+            case 'D':
+                return Log.DEBUG;
+            case 'I':
+                return Log.INFO;
+            case 'W':
+                return Log.WARN;
+            case 'E':
+                return Log.ERROR;
+            case 'F':
+            case 'A':
+                return Log.ASSERT;
+            default:
+                return 0;
+        }
+    }
+}
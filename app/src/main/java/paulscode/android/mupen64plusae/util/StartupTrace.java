@@ -0,0 +1,509 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import app.cooln64.v5.coolemulators.BuildConfig;
+
+/**
+ * Trace of the phases of the last game launch, from the gallery to the first frame. Phases are
+ * timed with {@link SystemClock#elapsedRealtimeNanos()}, which reads the same clock in every
+ * process and in native code, and appended to a file shared by the app process and the game
+ * process. Launching a game starts a new trace.
+ *
+ * Tracing is off unless it is a debug build or it was turned on in {@link StartupTraceActivity}.
+ * Phases are kept in memory and written in one go on a background thread, once the first frame
+ * is sampled or after a short delay, so recording a phase never touches the disk.
+ *
+ * The trace is shown by {@link StartupTraceActivity} and can be exported in the Chrome trace
+ * event format, which chrome://tracing and Perfetto open directly.
+ */
+public final class StartupTrace
+{
+    private static final String TAG = "StartupTrace";
+
+    private static final String TRACE_FILE = "startup.trace";
+    private static final String SEPARATOR = "\t";
+    private static final String LAUNCH_PREFIX = "Launch ";
+
+    private static final String PREFERENCES_NAME = "startupTrace";
+    private static final String KEY_ENABLED = "enabled";
+
+    /** How long phases are kept in memory when nothing asks for them to be written. */
+    private static final long FLUSH_DELAY_MS = 2000;
+
+    /**
+     * Names of the phases recorded by native code, in the order of vidExtTracePhase in
+     * ae_vidext.h.
+     */
+    private static final String[] NATIVE_PHASES = {
+        "Load native libraries",
+        "emuStart",
+        "Core startup",
+        "Read ROM file",
+        "Open ROM",
+        "Load plugins",
+        "Start emulation",
+        "First VI",
+        "First frame",
+    };
+
+    private static File sTraceFile = null;
+    private static String sProcessName = "";
+    private static volatile boolean sEnabled = false;
+
+    /** Lines not written to the trace file yet, guarded by the class lock. */
+    private static final StringBuilder sPending = new StringBuilder();
+    private static boolean sFlushScheduled = false;
+    private static Handler sWriteHandler = null;
+
+    private static final Runnable sFlush = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            final String lines;
+            final File traceFile;
+            synchronized( StartupTrace.class )
+            {
+                lines = sPending.toString();
+                sPending.setLength( 0 );
+                sFlushScheduled = false;
+                traceFile = sTraceFile;
+            }
+
+            if( lines.isEmpty() )
+                return;
+
+            // Both processes append to the file, each batch is written in a single call
+            try( FileWriter writer = new FileWriter( traceFile, true ) )
+            {
+                writer.write( lines );
+            }
+            catch( IOException e )
+            {
+                Log.w( TAG, "Unable to write trace: " + e.getMessage() );
+            }
+        }
+    };
+
+    /** One phase of the trace. Instants have the same start and end. */
+    public static class Event
+    {
+        public final String name;
+        public final long startNs;
+        public final long endNs;
+        public final int pid;
+        public final String process;
+        public final int tid;
+        public final String thread;
+
+        Event( String name, long startNs, long endNs, int pid, String process, int tid, String thread )
+        {
+            this.name = name;
+            this.startNs = startNs;
+            this.endNs = endNs;
+            this.pid = pid;
+            this.process = process;
+            this.tid = tid;
+            this.thread = thread;
+        }
+    }
+
+    private StartupTrace()
+    {
+    }
+
+    /**
+     * Sets up tracing in the current process, called once per process.
+     */
+    public static void init( Context context )
+    {
+        sTraceFile = new File( context.getCacheDir(), TRACE_FILE );
+        sProcessName = readProcessName( context );
+
+        // The game process starts after the setting is changed, so it reads the current value
+        final SharedPreferences preferences = context.getSharedPreferences( PREFERENCES_NAME, Context.MODE_PRIVATE );
+        setEnabled( preferences.getBoolean( KEY_ENABLED, BuildConfig.DEBUG ) );
+    }
+
+    /**
+     * @return True if phases are being recorded.
+     */
+    public static boolean isEnabled()
+    {
+        return sEnabled;
+    }
+
+    /**
+     * Turns tracing on or off in the current process and for processes started later.
+     */
+    public static void setEnabled( Context context, boolean enabled )
+    {
+        context.getSharedPreferences( PREFERENCES_NAME, Context.MODE_PRIVATE ).edit()
+                .putBoolean( KEY_ENABLED, enabled ).apply();
+        setEnabled( enabled );
+    }
+
+    private static synchronized void setEnabled( boolean enabled )
+    {
+        if( enabled && sWriteHandler == null )
+        {
+            final HandlerThread thread = new HandlerThread( TAG, Process.THREAD_PRIORITY_BACKGROUND );
+            thread.start();
+            sWriteHandler = new Handler( thread.getLooper() );
+        }
+        sEnabled = enabled;
+    }
+
+    /**
+     * @return The current trace timestamp, to be passed to {@link #record(String, long)} once the
+     * phase is over.
+     */
+    public static long now()
+    {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Drops the trace of the previous launch and starts a new one.
+     *
+     * @param gameName The name of the game being launched.
+     */
+    public static synchronized void startLaunch( String gameName )
+    {
+        if( !sEnabled || sTraceFile == null )
+            return;
+
+        // Runs ahead of the delayed write, the game process is not started yet
+        sPending.setLength( 0 );
+        final File traceFile = sTraceFile;
+        sWriteHandler.post( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if( traceFile.exists() && !traceFile.delete() )
+                    Log.w( TAG, "Unable to delete previous trace" );
+            }
+        } );
+
+        mark( LAUNCH_PREFIX + gameName );
+    }
+
+    /**
+     * Records a phase that started at the given time and ends now.
+     *
+     * @param name The name of the phase.
+     * @param startNs The start of the phase, as returned by {@link #now()}.
+     */
+    public static void record( String name, long startNs )
+    {
+        if( sEnabled )
+            append( name, startNs, now() );
+    }
+
+    /**
+     * Records an instant.
+     *
+     * @param name The name of the instant.
+     */
+    public static void mark( String name )
+    {
+        if( !sEnabled )
+            return;
+
+        final long time = now();
+        append( name, time, time );
+    }
+
+    /**
+     * Records the phases timed by native code.
+     *
+     * @param block The startup trace block of ae-vidext, see StartupTraceBlock in ae_vidext.cpp.
+     */
+    public static void recordNativePhases( ByteBuffer block )
+    {
+        if( !sEnabled )
+            return;
+
+        final LongBuffer times = block.order( ByteOrder.nativeOrder() ).asLongBuffer();
+        final int count = NATIVE_PHASES.length;
+
+        for( int phase = 0; phase < count; phase++ )
+        {
+            final long startNs = times.get( phase );
+            final long endNs = times.get( count + phase );
+
+            // Phases that have not happened, or were interrupted, are left out
+            if( startNs != 0 && endNs >= startNs )
+                append( NATIVE_PHASES[phase], startNs, endNs, 0, "native" );
+        }
+    }
+
+    private static void append( String name, long startNs, long endNs )
+    {
+        append( name, startNs, endNs, Process.myTid(), Thread.currentThread().getName() );
+    }
+
+    private static synchronized void append( String name, long startNs, long endNs, int tid, String thread )
+    {
+        if( !sEnabled || sTraceFile == null )
+            return;
+
+        sPending.append( startNs ).append( SEPARATOR ).append( endNs ).append( SEPARATOR )
+                .append( Process.myPid() ).append( SEPARATOR ).append( clean( sProcessName ) ).append( SEPARATOR )
+                .append( tid ).append( SEPARATOR ).append( clean( thread ) ).append( SEPARATOR )
+                .append( clean( name ) ).append( '\n' );
+
+        if( !sFlushScheduled )
+        {
+            sFlushScheduled = true;
+            sWriteHandler.postDelayed( sFlush, FLUSH_DELAY_MS );
+        }
+    }
+
+    /**
+     * Writes the phases recorded so far on the background thread, called once startup is over.
+     */
+    public static synchronized void flush()
+    {
+        if( !sFlushScheduled )
+            return;
+
+        sWriteHandler.removeCallbacks( sFlush );
+        sWriteHandler.post( sFlush );
+    }
+
+    /**
+     * @return The events of the last launch, sorted by start time.
+     */
+    public static List<Event> read()
+    {
+        final List<Event> events = new ArrayList<>();
+        if( sTraceFile == null )
+            return events;
+
+        // Phases of this process that are still in memory
+        final String pending;
+        synchronized( StartupTrace.class )
+        {
+            pending = sPending.toString();
+        }
+        for( String line : pending.split( "\n" ) )
+            parse( line, events );
+
+        if( sTraceFile.exists() )
+        {
+            try( BufferedReader reader = new BufferedReader( new FileReader( sTraceFile ) ) )
+            {
+                String line;
+                while( ( line = reader.readLine() ) != null )
+                    parse( line, events );
+            }
+            catch( IOException e )
+            {
+                Log.w( TAG, "Unable to read trace: " + e.getMessage() );
+            }
+        }
+
+        Collections.sort( events, new Comparator<Event>()
+        {
+            @Override
+            public int compare( Event lhs, Event rhs )
+            {
+                return Long.compare( lhs.startNs, rhs.startNs );
+            }
+        } );
+        return events;
+    }
+
+    private static void parse( String line, List<Event> events )
+    {
+        final String[] fields = line.split( SEPARATOR, -1 );
+        if( fields.length != 7 )
+            return;
+
+        try
+        {
+            events.add( new Event( fields[6], Long.parseLong( fields[0] ), Long.parseLong( fields[1] ),
+                    Integer.parseInt( fields[2] ), fields[3], Integer.parseInt( fields[4] ), fields[5] ) );
+        }
+        catch( NumberFormatException e )
+        {
+            // Partially written line
+        }
+    }
+
+    /**
+     * Formats events as a readable table, with times relative to the launch. Libraries loaded
+     * ahead of the launch show up with negative times.
+     */
+    public static String toText( List<Event> events )
+    {
+        final StringBuilder builder = new StringBuilder();
+        if( events.isEmpty() )
+            return builder.toString();
+
+        long origin = events.get( 0 ).startNs;
+        for( Event event : events )
+        {
+            if( event.name.startsWith( LAUNCH_PREFIX ) )
+            {
+                origin = event.startNs;
+                break;
+            }
+        }
+        builder.append( String.format( Locale.US, "%9s %9s  %-10s %s\n", "start ms", "dur ms", "process", "phase" ) );
+        for( Event event : events )
+        {
+            builder.append( String.format( Locale.US, "%9.1f %9.1f  %-10s %s\n",
+                    ( event.startNs - origin ) / 1e6, ( event.endNs - event.startNs ) / 1e6,
+                    shortProcessName( event.process ), event.name ) );
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Formats events in the Chrome trace event format.
+     */
+    public static String toChromeTrace( List<Event> events )
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append( "{\"displayTimeUnit\":\"ms\",\"traceEvents\":[" );
+
+        // Name the processes and threads once
+        final Map<Integer, String> processes = new LinkedHashMap<>();
+        final Map<Long, String> threads = new LinkedHashMap<>();
+        for( Event event : events )
+        {
+            processes.put( event.pid, event.process );
+            threads.put( ( (long) event.pid << 32 ) | event.tid, event.thread );
+        }
+
+        boolean first = true;
+        for( Map.Entry<Integer, String> process : processes.entrySet() )
+        {
+            first = appendSeparator( builder, first );
+            builder.append( "{\"ph\":\"M\",\"name\":\"process_name\",\"pid\":" ).append( process.getKey() )
+                    .append( ",\"args\":{\"name\":" ).append( quote( process.getValue() ) ).append( "}}" );
+        }
+        for( Map.Entry<Long, String> thread : threads.entrySet() )
+        {
+            first = appendSeparator( builder, first );
+            builder.append( "{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":" ).append( thread.getKey() >> 32 )
+                    .append( ",\"tid\":" ).append( thread.getKey() & 0xffffffffL )
+                    .append( ",\"args\":{\"name\":" ).append( quote( thread.getValue() ) ).append( "}}" );
+        }
+
+        for( Event event : events )
+        {
+            first = appendSeparator( builder, first );
+            final boolean instant = event.endNs == event.startNs;
+            builder.append( "{\"name\":" ).append( quote( event.name ) )
+                    .append( ",\"cat\":\"startup\",\"ph\":\"" ).append( instant ? "i" : "X" )
+                    .append( "\",\"ts\":" ).append( event.startNs / 1000 );
+            if( instant )
+                builder.append( ",\"s\":\"g\"" );
+            else
+                builder.append( ",\"dur\":" ).append( ( event.endNs - event.startNs ) / 1000 );
+            builder.append( ",\"pid\":" ).append( event.pid ).append( ",\"tid\":" ).append( event.tid ).append( "}" );
+        }
+
+        builder.append( "]}" );
+        return builder.toString();
+    }
+
+    private static boolean appendSeparator( StringBuilder builder, boolean first )
+    {
+        if( !first )
+            builder.append( ',' );
+        return false;
+    }
+
+    private static String quote( String text )
+    {
+        final StringBuilder builder = new StringBuilder( text.length() + 2 );
+        builder.append( '"' );
+        for( int i = 0; i < text.length(); i++ )
+        {
+            final char c = text.charAt( i );
+            if( c == '"' || c == '\\' )
+                builder.append( '\\' ).append( c );
+            else if( c < 0x20 )
+                builder.append( String.format( Locale.US, "\\u%04x", (int) c ) );
+            else
+                builder.append( c );
+        }
+        return builder.append( '"' ).toString();
+    }
+
+    private static String clean( String text )
+    {
+        return text == null ? "" : text.replace( '\t', ' ' ).replace( '\n', ' ' );
+    }
+
+    private static String shortProcessName( String process )
+    {
+        final int separator = process.lastIndexOf( '.' );
+        return separator < 0 ? process : process.substring( separator + 1 );
+    }
+
+    static String readProcessName( Context context )
+    {
+        // The game process is a separate process of the same package
+        try( BufferedReader reader = new BufferedReader( new FileReader( "/proc/self/cmdline" ) ) )
+        {
+            final String line = reader.readLine();
+            if( line != null )
+            {
+                final int end = line.indexOf( '\0' );
+                return end < 0 ? line : line.substring( 0, end );
+            }
+        }
+        catch( IOException e )
+        {
+            // Fall through to the package name
+        }
+        return context.getPackageName();
+    }
+}
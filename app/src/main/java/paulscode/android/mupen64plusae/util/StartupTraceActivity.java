@@ -0,0 +1,59 @@
+package paulscode.android.mupen64plusae.util;
+
+import android.os.Bundle;
+import androidx.appcompat.app.AppCompatActivity;
+import android.view.View;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.TextView;
+
+import java.util.List;
+
+import app.cooln64.v5.coolemulators.R;
+
+import paulscode.android.mupen64plusae.ActivityHelper;
+
+/**
+ * Shows the phases of the last game launch and exports them as a Chrome trace.
+ */
+public class StartupTraceActivity extends AppCompatActivity
+{
+    @Override
+    protected void onCreate( Bundle savedInstanceState )
+    {
+        super.onCreate(savedInstanceState);
+
+        setContentView(R.layout.startup_trace_activity);
+
+        final List<StartupTrace.Event> events = StartupTrace.read();
+
+        TextView traceText = findViewById( R.id.startupTraceText );
+        traceText.setText( events.isEmpty() ? getString( R.string.startupTrace_empty ) : StartupTrace.toText( events ) );
+
+        CheckBox enabledCheckBox = findViewById( R.id.startupTraceEnabled );
+        enabledCheckBox.setChecked( StartupTrace.isEnabled() );
+        enabledCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                StartupTrace.setEnabled( getApplicationContext(), isChecked );
+            }
+        });
+
+        Button cancelButton = findViewById( R.id.startupTraceCancel );
+        cancelButton.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                StartupTraceActivity.this.finish();
+            }
+        });
+
+        Button exportButton = findViewById( R.id.startupTraceExport );
+        exportButton.setEnabled( !events.isEmpty() );
+        exportButton.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                ActivityHelper.launchPlainText( getBaseContext(), StartupTrace.toChromeTrace( events ),
+                        getText( R.string.actionShare_title ));
+            }
+        });
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2013 Paul Lamb
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import android.util.Log;
+
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An open zip or 7z texture pack. The index of the archive is read once, when the pack is opened,
+ * and used both to find the name of the pack and to extract it. Nothing is decompressed to find
+ * the name.
+ */
+public class TexturePackArchive implements Closeable
+{
+    private static final String TAG = "TexturePackArchive";
+
+    private final File mArchive;
+    private final ZipFile mZipFile;
+    private final SevenZFile mSevenZFile;
+
+    /** The names of the files in the archive, in archive order. */
+    private final List<String> mFilenames = new ArrayList<>();
+
+    /**
+     * Opens a texture pack and reads its index.
+     *
+     * @param archive The texture pack.
+     * @param isZip True for a zip archive, false for a 7z archive.
+     */
+    public TexturePackArchive( File archive, boolean isZip ) throws IOException
+    {
+        mArchive = archive;
+        if( isZip )
+        {
+            mZipFile = new ZipFile( archive );
+            mSevenZFile = null;
+
+            final Enumeration<? extends ZipEntry> entries = mZipFile.entries();
+            while( entries.hasMoreElements() )
+            {
+                final ZipEntry entry = entries.nextElement();
+                if( !entry.isDirectory() )
+                    mFilenames.add( entry.getName() );
+            }
+        }
+        else
+        {
+            mZipFile = null;
+            mSevenZFile = new SevenZFile( archive );
+
+            // Listed from the header, unlike getNextEntry which sets up decoding
+            for( SevenZArchiveEntry entry : mSevenZFile.getEntries() )
+            {
+                if( !entry.isDirectory() )
+                    mFilenames.add( entry.getName() );
+            }
+        }
+    }
+
+    /**
+     * @return The name embedded in the texture pack, or null if there is none.
+     */
+    public String getTexturePackName()
+    {
+        return TextureInfo.getTexturePackName( mFilenames );
+    }
+
+    /**
+     * Extracts the whole texture pack, can only be called once.
+     *
+     * @param outputDir Directory to place all of the extracted files.
+     */
+    public void extractAll( String outputDir )
+    {
+        try
+        {
+            if( mZipFile != null )
+                FileUtil.unzipAll( mZipFile, outputDir );
+            else
+                FileUtil.unSevenZAll( mSevenZFile, outputDir );
+        }
+        catch( IOException e )
+        {
+            Log.e( TAG, "Unable to extract " + mArchive.getPath(), e );
+        }
+        catch( OutOfMemoryError e )
+        {
+            Log.w( TAG, "Out of memory while extracting " + mArchive.getPath() );
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if( mZipFile != null )
+            mZipFile.close();
+        if( mSevenZFile != null )
+            mSevenZFile.close();
+    }
+}
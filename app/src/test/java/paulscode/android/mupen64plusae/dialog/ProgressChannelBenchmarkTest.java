@@ -0,0 +1,135 @@
+package paulscode.android.mupen64plusae.dialog;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ProgressChannelBenchmarkTest
+{
+    private static final int FILES = 200000;
+    private static final int MESSAGE_SEARCHING = 1;
+    private static final int MESSAGE_COMPUTING_MD5 = 2;
+
+    private static String[] fileNames()
+    {
+        String[] names = new String[FILES];
+        for( int i = 0; i < FILES; i++ )
+            names[i] = "rom" + i + ".z64";
+        return names;
+    }
+
+    /** The updates CacheRomInfoService makes for each file of a scan. */
+    private static void scan( ProgressChannel channel, String[] names )
+    {
+        channel.setMaxProgress( names.length );
+        for( String name : names )
+        {
+            channel.setSubtext( "" );
+            channel.setText( name );
+            channel.setMessage( MESSAGE_SEARCHING );
+            channel.setMessage( MESSAGE_COMPUTING_MD5 );
+            channel.incrementProgress( 1 );
+        }
+    }
+
+    /**
+     * Attaches a UI like ProgressDialog does: each wake up is posted to the UI thread, which
+     * clears the flag and reads the state.
+     */
+    private static void attach( final ProgressChannel channel, final ExecutorService uiThread,
+            final AtomicInteger samples )
+    {
+        final Runnable sample = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                channel.clearChanged();
+                channel.getText();
+                channel.getSubtext();
+                channel.getMessageId();
+                channel.getProgress();
+                samples.incrementAndGet();
+            }
+        };
+
+        channel.setOnChangedListener( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                uiThread.execute( sample );
+            }
+        } );
+    }
+
+    /** The same updates, posted to a UI thread one Runnable at a time like runOnUiThread. */
+    private static void legacyScan( ExecutorService uiThread, final AtomicInteger applied, String[] names )
+    {
+        for( final String name : names )
+        {
+            for( int update = 0; update < 5; update++ )
+            {
+                uiThread.execute( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if( name != null )
+                            applied.incrementAndGet();
+                    }
+                } );
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkScanThroughput() throws Exception
+    {
+        String[] names = fileNames();
+
+        // Warm up
+        scan( new ProgressChannel(), names );
+
+        ProgressChannel detached = new ProgressChannel();
+        long start = System.nanoTime();
+        scan( detached, names );
+        long detachedNs = System.nanoTime() - start;
+
+        ProgressChannel attached = new ProgressChannel();
+        ExecutorService uiThread = Executors.newSingleThreadExecutor();
+        AtomicInteger samples = new AtomicInteger();
+        attach( attached, uiThread, samples );
+        start = System.nanoTime();
+        scan( attached, names );
+        long attachedNs = System.nanoTime() - start;
+        uiThread.shutdown();
+        assertTrue( uiThread.awaitTermination( 1, TimeUnit.MINUTES ) );
+
+        uiThread = Executors.newSingleThreadExecutor();
+        AtomicInteger applied = new AtomicInteger();
+        start = System.nanoTime();
+        legacyScan( uiThread, applied, names );
+        long legacyPostNs = System.nanoTime() - start;
+        uiThread.shutdown();
+        assertTrue( uiThread.awaitTermination( 1, TimeUnit.MINUTES ) );
+        long legacyNs = System.nanoTime() - start;
+
+        System.out.println( String.format( "Progress reporting, %d files: channel %.1f ms without UI, "
+                + "%.1f ms with UI (%d samples), runnables %.1f ms posting, %.1f ms until the UI "
+                + "caught up (%d runnables)", FILES, detachedNs / 1e6, attachedNs / 1e6, samples.get(),
+                legacyPostNs / 1e6, legacyNs / 1e6, applied.get() ) );
+
+        // Updates are never lost, and the UI is never woken more than once per update
+        assertEquals( FILES, attached.getProgress() );
+        assertEquals( names[FILES - 1], attached.getText() );
+        assertEquals( MESSAGE_COMPUTING_MD5, attached.getMessageId() );
+        assertTrue( samples.get() <= FILES * 5 );
+        assertEquals( FILES * 5, applied.get() );
+    }
+}
@@ -0,0 +1,147 @@
+package paulscode.android.mupen64plusae.dialog;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ProgressChannelTest
+{
+    private static final int MESSAGE_SEARCHING = 1;
+    private static final int MESSAGE_COMPUTING_MD5 = 2;
+
+    private static class CountingListener implements Runnable
+    {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void run()
+        {
+            calls.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void latestStateWins()
+    {
+        ProgressChannel channel = new ProgressChannel();
+        assertNull( channel.getText() );
+        assertEquals( -1, channel.getMaxProgress() );
+
+        channel.setText( "first" );
+        channel.setText( "second" );
+        channel.setSubtext( "sub" );
+        assertEquals( "second", channel.getText() );
+        assertEquals( "sub", channel.getSubtext() );
+
+        channel.setMessage( "text" );
+        channel.setMessage( MESSAGE_SEARCHING );
+        assertEquals( MESSAGE_SEARCHING, channel.getMessageId() );
+        channel.setMessage( "text" );
+        assertEquals( 0, channel.getMessageId() );
+        assertEquals( "text", channel.getMessage() );
+    }
+
+    @Test
+    public void progressAddsUpUntilMaxIsSet()
+    {
+        ProgressChannel channel = new ProgressChannel();
+        channel.setMaxProgress( 10 );
+        channel.incrementProgress( 3 );
+        channel.incrementProgress( 4 );
+        assertEquals( 10, channel.getMaxProgress() );
+        assertEquals( 7, channel.getProgress() );
+
+        channel.setMaxProgress( 5 );
+        assertEquals( 5, channel.getMaxProgress() );
+        assertEquals( 0, channel.getProgress() );
+    }
+
+    @Test
+    public void updatesBetweenSamplesAreMerged()
+    {
+        ProgressChannel channel = new ProgressChannel();
+        CountingListener listener = new CountingListener();
+        channel.setOnChangedListener( listener );
+
+        // The updates CacheRomInfoService makes for each file of a scan
+        channel.setMaxProgress( 100 );
+        for( int i = 0; i < 100; i++ )
+        {
+            channel.setSubtext( "" );
+            channel.setText( "rom" + i + ".z64" );
+            channel.setMessage( MESSAGE_SEARCHING );
+            channel.setMessage( MESSAGE_COMPUTING_MD5 );
+            channel.incrementProgress( 1 );
+        }
+
+        assertEquals( 1, listener.calls.get() );
+        assertTrue( channel.clearChanged() );
+        assertEquals( "rom99.z64", channel.getText() );
+        assertEquals( "", channel.getSubtext() );
+        assertEquals( MESSAGE_COMPUTING_MD5, channel.getMessageId() );
+        assertEquals( 100, channel.getProgress() );
+    }
+
+    @Test
+    public void listenerOnlyCalledForChangesAfterSample()
+    {
+        ProgressChannel channel = new ProgressChannel();
+        CountingListener listener = new CountingListener();
+
+        // Changes made before the listener is set are reported by the first sample
+        channel.setText( "before" );
+        channel.setOnChangedListener( listener );
+        channel.setText( "still before" );
+        assertEquals( 0, listener.calls.get() );
+        assertTrue( channel.clearChanged() );
+
+        // Nothing new, nothing to draw
+        assertFalse( channel.clearChanged() );
+        assertEquals( 0, listener.calls.get() );
+
+        channel.incrementProgress( 1 );
+        channel.incrementProgress( 1 );
+        assertEquals( 1, listener.calls.get() );
+        assertTrue( channel.clearChanged() );
+
+        channel.setText( "after" );
+        assertEquals( 2, listener.calls.get() );
+
+        channel.clearChanged();
+        channel.setOnChangedListener( null );
+        channel.setText( "removed" );
+        assertEquals( 2, listener.calls.get() );
+        assertEquals( "removed", channel.getText() );
+    }
+
+    @Test
+    public void progressFromSeveralThreadsIsNotLost() throws InterruptedException
+    {
+        final ProgressChannel channel = new ProgressChannel();
+        final int threads = 4;
+        final int increments = 10000;
+        channel.setMaxProgress( threads * increments );
+
+        Thread[] workers = new Thread[threads];
+        for( int i = 0; i < threads; i++ )
+        {
+            workers[i] = new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for( int j = 0; j < increments; j++ )
+                        channel.incrementProgress( 1 );
+                }
+            } );
+            workers[i].start();
+        }
+        for( Thread worker : workers )
+            worker.join();
+
+        assertEquals( threads * increments, channel.getProgress() );
+        assertTrue( channel.clearChanged() );
+    }
+}
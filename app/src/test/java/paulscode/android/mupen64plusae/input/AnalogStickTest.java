@@ -0,0 +1,98 @@
+package paulscode.android.mupen64plusae.input;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnalogStickTest
+{
+    private static final int[] DEADZONES = { 0, 5, 10, 25, 50 };
+    private static final int[] SENSITIVITIES = { 50, 100, 150 };
+    private static final int STEPS = 40;
+
+    /** PeripheralController's stick math before the deadzone was resolved per controller. */
+    private static float[] legacyStick( float strengthX, float strengthY, int inputDeadzone,
+            int inputSensitivityX, int inputSensitivityY )
+    {
+        float deadzoneFraction = ( (float) inputDeadzone ) / 100f;
+        float sensitivityFractionX = ( (float) inputSensitivityX ) / 100f;
+        float sensitivityFractionY = ( (float) inputSensitivityY ) / 100f;
+
+        // Calculate the net position of the analog stick
+        float rawX = sensitivityFractionX * strengthX;
+        float rawY = sensitivityFractionY * strengthY;
+        float magnitude = (float) Math.sqrt( ( rawX * rawX ) + ( rawY * rawY ) );
+
+        // Update controller state
+        if( magnitude > deadzoneFraction )
+        {
+            // Normalize the vector
+            float normalizedX = rawX / magnitude;
+            float normalizedY = rawY / magnitude;
+
+            // Rescale strength to account for deadzone
+            magnitude = ( magnitude - deadzoneFraction ) / ( 1f - deadzoneFraction );
+            magnitude = Math.min( Math.max( magnitude, 0f ), 1f );
+            return new float[] { normalizedX * magnitude, normalizedY * magnitude };
+        }
+        else
+        {
+            // In the deadzone
+            return new float[] { 0, 0 };
+        }
+    }
+
+    @Test
+    public void stickMatchesLegacyMath()
+    {
+        for( int deadzone : DEADZONES )
+        {
+            for( int sensitivityX : SENSITIVITIES )
+            {
+                for( int sensitivityY : SENSITIVITIES )
+                {
+                    AnalogStick stick = new AnalogStick( deadzone, sensitivityX, sensitivityY );
+                    for( int i = -STEPS; i <= STEPS; i++ )
+                    {
+                        for( int j = -STEPS; j <= STEPS; j++ )
+                        {
+                            float strengthX = (float) i / STEPS;
+                            float strengthY = (float) j / STEPS;
+                            float[] expected = legacyStick( strengthX, strengthY, deadzone, sensitivityX, sensitivityY );
+                            stick.apply( strengthX, strengthY );
+
+                            String message = "deadzone " + deadzone + " sensitivity " + sensitivityX + "/"
+                                    + sensitivityY + " strength " + strengthX + "," + strengthY;
+                            assertEquals( message, expected[0], stick.x, 1e-6f );
+                            assertEquals( message, expected[1], stick.y, 1e-6f );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deadzoneIsRound()
+    {
+        AnalogStick stick = new AnalogStick( 20, 100, 100 );
+
+        // Each axis is past the deadzone on the diagonal only when combined
+        stick.apply( 0.15f, 0.15f );
+        assertTrue( stick.x > 0 && stick.y > 0 );
+
+        stick.apply( 0.19f, 0 );
+        assertEquals( 0, stick.x, 0 );
+        assertEquals( 0, stick.y, 0 );
+    }
+
+    @Test
+    public void magnitudeIsClamped()
+    {
+        AnalogStick stick = new AnalogStick( 10, 150, 150 );
+        stick.apply( 1, 1 );
+        float magnitude = (float) Math.sqrt( stick.x * stick.x + stick.y * stick.y );
+        assertEquals( 1, magnitude, 1e-6f );
+        assertEquals( stick.x, stick.y, 0 );
+    }
+}
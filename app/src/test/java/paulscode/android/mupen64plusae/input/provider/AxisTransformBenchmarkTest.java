@@ -0,0 +1,171 @@
+package paulscode.android.mupen64plusae.input.provider;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import paulscode.android.mupen64plusae.input.map.AxisMap;
+
+import static org.junit.Assert.*;
+
+public class AxisTransformBenchmarkTest
+{
+    private static final int SOURCE_JOYSTICK = 0x01000010;
+    private static final int SOURCE_GAMEPAD = 0x00000401;
+
+    /** The axes of a typical gamepad: sticks, triggers and hat. */
+    private static final int[] AXES = { 0, 1, 11, 14, 17, 18, 15, 16 };
+    private static final float FLAT = 0.1f;
+
+    private static final int EVENTS = 200000;
+    private static final int ITERATIONS = 5;
+
+    /** A motion range as InputDevice keeps them, in one list that getMotionRange scans. */
+    private static class Range
+    {
+        final int axis;
+        final int source;
+        final float flat;
+
+        Range( int axis, int source, float flat )
+        {
+            this.axis = axis;
+            this.source = source;
+            this.flat = flat;
+        }
+    }
+
+    private static final List<Range> sRanges = new ArrayList<>();
+    static
+    {
+        for( int axis : AXES )
+        {
+            sRanges.add( new Range( axis, SOURCE_JOYSTICK, FLAT ) );
+            sRanges.add( new Range( axis, SOURCE_GAMEPAD, FLAT ) );
+        }
+    }
+
+    /** The lookup InputDevice.getMotionRange does. */
+    private static Range getMotionRange( int axis, int source )
+    {
+        for( int i = 0; i < sRanges.size(); i++ )
+        {
+            Range range = sRanges.get( i );
+            if( range.axis == axis && range.source == source )
+                return range;
+        }
+        return null;
+    }
+
+    /** The per event path AxisProvider used before the calibration was resolved per device. */
+    private static float legacyEvent( int source, int[] inputCodes, float[] values )
+    {
+        float[] strengths = new float[inputCodes.length];
+        for( int i = 0; i < inputCodes.length; i++ )
+        {
+            int axisCode = AbstractProvider.inputToAxisCode( inputCodes[i] );
+            float value = values[axisCode & 31];
+
+            float strength = 0;
+            Range range = getMotionRange( axisCode, source );
+            if( range != null )
+            {
+                float flat = range.flat > 0.5f || range.flat < 0 ? 0.25f : range.flat;
+                if( Math.abs( value ) > flat )
+                    strength = value;
+            }
+
+            if( strength != 0 )
+            {
+                Range joystickRange = getMotionRange( axisCode, SOURCE_JOYSTICK );
+                if( joystickRange != null )
+                {
+                    float flat = joystickRange.flat > 0.5f || joystickRange.flat < 0 ? 0.25f : joystickRange.flat;
+                    strength = ( Math.abs( strength ) - flat ) / ( 1.0f - flat ) * Math.signum( strength );
+                }
+            }
+
+            boolean direction = AbstractProvider.inputToAxisDirection( inputCodes[i] );
+            strengths[i] = direction == strength > 0 ? Math.abs( strength ) : 0;
+        }
+
+        float sum = 0;
+        for( float strength : strengths )
+            sum += strength;
+        return sum;
+    }
+
+    /** The per event path with the curves resolved once, like AxisTransform.apply. */
+    private static float cachedEvent( AxisTransform.Curve[] curves, int[] axisCodes, boolean[] positive,
+            float[] values, float[] strengths )
+    {
+        for( int i = 0; i < curves.length; i++ )
+        {
+            float strength = curves[i].get( values[axisCodes[i] & 31] );
+            strengths[i] = positive[i] == strength > 0 ? Math.abs( strength ) : 0;
+        }
+
+        float sum = 0;
+        for( float strength : strengths )
+            sum += strength;
+        return sum;
+    }
+
+    @Test
+    public void benchmarkAgainstLegacyPath()
+    {
+        // Both directions of every axis, like a mapped controller profile
+        int[] inputCodes = new int[AXES.length * 2];
+        for( int i = 0; i < AXES.length; i++ )
+        {
+            inputCodes[2 * i] = AbstractProvider.axisToInputCode( AXES[i], true );
+            inputCodes[2 * i + 1] = AbstractProvider.axisToInputCode( AXES[i], false );
+        }
+
+        AxisTransform.Curve[] curves = new AxisTransform.Curve[inputCodes.length];
+        int[] axisCodes = new int[inputCodes.length];
+        boolean[] positive = new boolean[inputCodes.length];
+        for( int i = 0; i < inputCodes.length; i++ )
+        {
+            axisCodes[i] = AbstractProvider.inputToAxisCode( inputCodes[i] );
+            positive[i] = AbstractProvider.inputToAxisDirection( inputCodes[i] );
+            Range range = getMotionRange( axisCodes[i], SOURCE_GAMEPAD );
+            curves[i] = AxisTransform.compile( range.flat, AxisMap.AXIS_CLASS_NORMAL, true,
+                    getMotionRange( axisCodes[i], SOURCE_JOYSTICK ).flat );
+        }
+
+        // Sticks sweeping through their whole range
+        float[][] events = new float[256][32];
+        for( int e = 0; e < events.length; e++ )
+        {
+            for( int axis = 0; axis < 32; axis++ )
+                events[e][axis] = (float) Math.sin( e * 0.05 + axis );
+        }
+
+        float[] strengths = new float[inputCodes.length];
+        long legacyNs = Long.MAX_VALUE;
+        long cachedNs = Long.MAX_VALUE;
+        for( int iteration = 0; iteration < ITERATIONS; iteration++ )
+        {
+            float legacySum = 0;
+            long start = System.nanoTime();
+            for( int e = 0; e < EVENTS; e++ )
+                legacySum += legacyEvent( SOURCE_GAMEPAD, inputCodes, events[e & 255] );
+            legacyNs = Math.min( legacyNs, System.nanoTime() - start );
+
+            float cachedSum = 0;
+            start = System.nanoTime();
+            for( int e = 0; e < EVENTS; e++ )
+                cachedSum += cachedEvent( curves, axisCodes, positive, events[e & 255], strengths );
+            cachedNs = Math.min( cachedNs, System.nanoTime() - start );
+
+            // Both paths compute the same strengths
+            assertEquals( legacySum, cachedSum, Math.abs( legacySum ) * 1e-6f );
+        }
+
+        System.out.println( String.format( "Axis transform, %d input codes: legacy %.1f ns/event, "
+                + "cached %.1f ns/event", inputCodes.length, (double) legacyNs / EVENTS,
+                (double) cachedNs / EVENTS ) );
+    }
+}
@@ -0,0 +1,149 @@
+package paulscode.android.mupen64plusae.input.provider;
+
+import org.junit.Test;
+
+import paulscode.android.mupen64plusae.input.map.AxisMap;
+
+import static org.junit.Assert.*;
+
+public class AxisTransformTest
+{
+    /** Stands for a device without an AxisMap, which the old code checked for separately. */
+    private static final int NO_AXIS_MAP = Integer.MIN_VALUE;
+
+    private static final int[] CLASSES = { AxisMap.AXIS_CLASS_NORMAL, AxisMap.AXIS_CLASS_N64_USB_STICK,
+            AxisMap.AXIS_CLASS_UNKNOWN, AxisMap.AXIS_CLASS_IGNORED, NO_AXIS_MAP };
+
+    /** Includes flat regions that bad drivers report, which are overridden. */
+    private static final float[] FLATS = { 0f, 0.05f, 0.1f, 0.3f, 0.5f, 0.6f, -0.1f };
+
+    private static final int SAMPLES = 2001;
+
+    /** AxisProvider.getCenteredAxis before the calibration was resolved per device. */
+    private static float legacyCenteredAxis( float value, float flat )
+    {
+        //Some devices with bad drivers report invalid flat regions
+        if(flat > 0.5f || flat < 0.0)
+        {
+            flat = 0.25f;
+        }
+
+        // Ignore axis values that are within the 'flat' region of the
+        // joystick axis center.
+        if (Math.abs(value) > flat) {
+            return value;
+        }
+
+        return 0;
+    }
+
+    /** AxisProvider.normalizeStrength before the calibration was resolved per device. */
+    private static float legacyNormalizeStrength( float strength, int axisClass, boolean hasJoystickRange,
+            float joystickFlat )
+    {
+        if( axisClass != NO_AXIS_MAP )
+        {
+            float tempStrengh = 0;
+
+            if( axisClass == AxisMap.AXIS_CLASS_IGNORED )
+            {
+                // We should ignore this axis
+                strength = 0;
+            }
+            else if( hasJoystickRange )
+            {
+                float flat = joystickFlat;
+                //Some devices with bad drivers report invalid flat regions
+                if(flat > 0.5f || flat < 0.0)
+                {
+                    flat = 0.25f;
+                }
+
+                switch( axisClass )
+                {
+                    case AxisMap.AXIS_CLASS_NORMAL:
+                        // Normalize
+                        tempStrengh = (Math.abs(strength) - flat) / (1.0f - flat);
+                        //Restore sign
+                        strength = tempStrengh * Math.signum(strength);
+                        break;
+                    case AxisMap.AXIS_CLASS_N64_USB_STICK:
+                        // Normalize to [-1,1]
+                        strength = strength / 0.63f;
+                        break;
+                    case AxisMap.AXIS_CLASS_UNKNOWN:
+                    default:
+                        // Do nothing
+                }
+            }
+        }
+        return strength;
+    }
+
+    /** The strength the old AxisProvider.onGenericMotion computed for one axis. */
+    private static float legacyStrength( float value, float flat, int axisClass, boolean hasJoystickRange,
+            float joystickFlat )
+    {
+        float strength = legacyCenteredAxis( value, flat );
+        return strength != 0 ? legacyNormalizeStrength( strength, axisClass, hasJoystickRange, joystickFlat ) : 0.0f;
+    }
+
+    @Test
+    public void curvesMatchLegacyMath()
+    {
+        for( int axisClass : CLASSES )
+        {
+            int mapClass = axisClass == NO_AXIS_MAP ? AxisMap.AXIS_CLASS_UNKNOWN : axisClass;
+            for( boolean hasJoystickRange : new boolean[] { true, false } )
+            {
+                for( float flat : FLATS )
+                {
+                    for( float joystickFlat : FLATS )
+                    {
+                        AxisTransform.Curve curve = AxisTransform.compile( flat, mapClass, hasJoystickRange, joystickFlat );
+                        for( int i = 0; i < SAMPLES; i++ )
+                        {
+                            // Past both ends of the range too, some devices report values outside it
+                            float value = -1.2f + 2.4f * i / ( SAMPLES - 1 );
+                            float expected = legacyStrength( value, flat, axisClass, hasJoystickRange, joystickFlat );
+                            float actual = curve == null ? 0 : curve.get( value );
+                            assertEquals( "class " + axisClass + " joystick range " + hasJoystickRange + " flat "
+                                    + flat + "/" + joystickFlat + " value " + value, expected, actual, 0f );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void flatRegionBoundaryMatchesLegacyMath()
+    {
+        for( float flat : FLATS )
+        {
+            AxisTransform.Curve curve = AxisTransform.compile( flat, AxisMap.AXIS_CLASS_NORMAL, true, flat );
+            float sanitized = AxisTransform.sanitizeFlat( flat );
+            float[] values = { sanitized, -sanitized, Math.nextUp( sanitized ), -Math.nextUp( sanitized ) };
+            for( float value : values )
+            {
+                assertEquals( "flat " + flat + " value " + value,
+                        legacyStrength( value, flat, AxisMap.AXIS_CLASS_NORMAL, true, flat ), curve.get( value ), 0f );
+            }
+        }
+    }
+
+    @Test
+    public void ignoredAxesHaveNoCurve()
+    {
+        assertNull( AxisTransform.compile( 0.1f, AxisMap.AXIS_CLASS_IGNORED, true, 0.1f ) );
+        assertNull( AxisTransform.compile( 0.1f, AxisMap.AXIS_CLASS_IGNORED, false, 0 ) );
+    }
+
+    @Test
+    public void flatRegionIsSanitized()
+    {
+        assertEquals( 0.25f, AxisTransform.sanitizeFlat( 0.9f ), 0f );
+        assertEquals( 0.25f, AxisTransform.sanitizeFlat( -0.1f ), 0f );
+        assertEquals( 0.2f, AxisTransform.sanitizeFlat( 0.2f ), 0f );
+    }
+}
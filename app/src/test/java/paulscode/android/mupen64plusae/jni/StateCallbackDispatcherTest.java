@@ -0,0 +1,228 @@
+package paulscode.android.mupen64plusae.jni;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StateCallbackDispatcherTest
+{
+    @Test
+    public void postDoesNotWaitForBlockedListener() throws Exception
+    {
+        final StateCallbackDispatcher dispatcher = new StateCallbackDispatcher();
+        final CountDownLatch listenerEntered = new CountDownLatch( 1 );
+        final CountDownLatch releaseListener = new CountDownLatch( 1 );
+        final CountDownLatch allDelivered = new CountDownLatch( 100 );
+        final List<Integer> received = new ArrayList<>();
+
+        dispatcher.addListener( new NativeImports.OnStateCallbackListener()
+        {
+            @Override
+            public void onStateCallback( int paramChanged, int newValue )
+            {
+                listenerEntered.countDown();
+                try
+                {
+                    releaseListener.await();
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized( received )
+                {
+                    received.add( newValue );
+                }
+                allDelivered.countDown();
+            }
+        } );
+
+        // Simulated emulation thread, posts while the listener is stuck on the first event
+        final CountDownLatch emulationDone = new CountDownLatch( 1 );
+        Thread emulationThread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for( int i = 0; i < 100; i++ )
+                {
+                    dispatcher.post( NativeConstants.M64CORE_STATE_SAVECOMPLETE, i );
+                }
+                emulationDone.countDown();
+            }
+        } );
+        emulationThread.start();
+
+        assertTrue( listenerEntered.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( "Emulation thread blocked on listener", emulationDone.await( 5, TimeUnit.SECONDS ) );
+
+        releaseListener.countDown();
+        assertTrue( allDelivered.await( 5, TimeUnit.SECONDS ) );
+
+        synchronized( received )
+        {
+            for( int i = 0; i < 100; i++ )
+                assertEquals( i, (int) received.get( i ) );
+        }
+    }
+
+    @Test
+    public void listenerCanRemoveItself() throws Exception
+    {
+        final StateCallbackDispatcher dispatcher = new StateCallbackDispatcher();
+        final CountDownLatch delivered = new CountDownLatch( 2 );
+        final int[] calls = new int[1];
+
+        dispatcher.addListener( new NativeImports.OnStateCallbackListener()
+        {
+            @Override
+            public void onStateCallback( int paramChanged, int newValue )
+            {
+                calls[0]++;
+                dispatcher.removeListener( this );
+                delivered.countDown();
+            }
+        } );
+        dispatcher.addListener( new NativeImports.OnStateCallbackListener()
+        {
+            @Override
+            public void onStateCallback( int paramChanged, int newValue )
+            {
+                delivered.countDown();
+            }
+        } );
+
+        dispatcher.post( NativeConstants.M64CORE_EMU_STATE, 2 );
+        dispatcher.post( NativeConstants.M64CORE_EMU_STATE, 3 );
+
+        assertTrue( delivered.await( 5, TimeUnit.SECONDS ) );
+        Thread.sleep( 100 );
+        assertEquals( 1, calls[0] );
+    }
+
+    @Test
+    public void fullRingOverflowsWithoutDroppingOrBlocking() throws Exception
+    {
+        final StateCallbackDispatcher dispatcher = new StateCallbackDispatcher();
+        final CountDownLatch releaseListener = new CountDownLatch( 1 );
+        final CountDownLatch allDelivered = new CountDownLatch( 5000 );
+        final List<Integer> received = new ArrayList<>();
+
+        dispatcher.addListener( new NativeImports.OnStateCallbackListener()
+        {
+            @Override
+            public void onStateCallback( int paramChanged, int newValue )
+            {
+                try
+                {
+                    releaseListener.await();
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized( received )
+                {
+                    received.add( newValue );
+                }
+                allDelivered.countDown();
+            }
+        } );
+
+        for( int i = 0; i < 5000; i++ )
+            dispatcher.post( NativeConstants.M64CORE_SPEED_FACTOR, i );
+
+        assertTrue( dispatcher.getOverflowedEvents() > 0 );
+        releaseListener.countDown();
+        assertTrue( allDelivered.await( 5, TimeUnit.SECONDS ) );
+
+        synchronized( received )
+        {
+            assertEquals( 5000, received.size() );
+            for( int i = 0; i < 5000; i++ )
+                assertEquals( i, (int) received.get( i ) );
+        }
+    }
+
+    @Test
+    public void eventsGoToListenersRegisteredWhenPosted() throws Exception
+    {
+        final StateCallbackDispatcher dispatcher = new StateCallbackDispatcher();
+        final CountDownLatch listenerEntered = new CountDownLatch( 1 );
+        final CountDownLatch releaseListener = new CountDownLatch( 1 );
+        final CountDownLatch delivered = new CountDownLatch( 3 );
+        final List<Integer> lateReceived = new ArrayList<>();
+        final List<Integer> removedReceived = new ArrayList<>();
+
+        final NativeImports.OnStateCallbackListener removed = new NativeImports.OnStateCallbackListener()
+        {
+            @Override
+            public void onStateCallback( int paramChanged, int newValue )
+            {
+                synchronized( removedReceived )
+                {
+                    removedReceived.add( newValue );
+                }
+            }
+        };
+        dispatcher.addListener( removed );
+
+        // Notified first, as the last one added
+        dispatcher.addListener( new NativeImports.OnStateCallbackListener()
+        {
+            @Override
+            public void onStateCallback( int paramChanged, int newValue )
+            {
+                listenerEntered.countDown();
+                try
+                {
+                    releaseListener.await();
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.countDown();
+            }
+        } );
+
+        // The first event holds the dispatcher while the listeners change
+        dispatcher.post( NativeConstants.M64CORE_EMU_STATE, 1 );
+        assertTrue( listenerEntered.await( 5, TimeUnit.SECONDS ) );
+        dispatcher.post( NativeConstants.M64CORE_EMU_STATE, 2 );
+
+        dispatcher.removeListener( removed );
+        dispatcher.addListener( new NativeImports.OnStateCallbackListener()
+        {
+            @Override
+            public void onStateCallback( int paramChanged, int newValue )
+            {
+                synchronized( lateReceived )
+                {
+                    lateReceived.add( newValue );
+                }
+            }
+        } );
+        dispatcher.post( NativeConstants.M64CORE_EMU_STATE, 3 );
+
+        releaseListener.countDown();
+        assertTrue( delivered.await( 5, TimeUnit.SECONDS ) );
+        Thread.sleep( 100 );
+
+        synchronized( removedReceived )
+        {
+            // Removed before its turn came for the first event
+            assertTrue( removedReceived.isEmpty() );
+        }
+        synchronized( lateReceived )
+        {
+            assertEquals( 1, lateReceived.size() );
+            assertEquals( 3, (int) lateReceived.get( 0 ) );
+        }
+    }
+}
@@ -1227,3 +1227,13 @@ EXPORT const char * CALL VolumeGetString(void)
     return "100%";
 }
 
+
+/* Number of buffers currently queued in the OpenSL ES player, polled by the front-end for
+ * performance telemetry. Returns -1 when audio is not running. */
+extern "C" EXPORT int CALL GetAudioQueueDepth(void)
+{
+    if (!l_PluginInit || critical_failure || bufferQueue == NULL)
+        return -1;
+
+    return state.limit - state.value;
+}
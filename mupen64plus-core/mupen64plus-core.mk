@@ -44,6 +44,7 @@ LOCAL_SRC_FILES :=                                              \
     $(SRCDIR)/main/eventloop.c                                  \
     $(SRCDIR)/main/main.c                                       \
     $(SRCDIR)/main/profile.c                                    \
+    $(SRCDIR)/main/rewind.c                                     \
     $(SRCDIR)/main/rom.c                                        \
     $(SRCDIR)/main/savestates.c                                 \
     $(SRCDIR)/main/sdl_key_converter.c                          \
@@ -44,6 +44,7 @@
 #include "device/rcp/ai/ai_controller.h"
 #include "device/rcp/vi/vi_controller.h"
 #include "main/main.h"
+#include "main/rewind.h"
 #include "main/savestates.h"
 
 
@@ -524,6 +525,12 @@ void gen_interrupt(struct r4300_core* r4300)
             return;
         }
 
+        if (rewind_get_job() == rewind_job_step)
+        {
+            rewind_run_job();
+            return;
+        }
+
         if (r4300->reset_hard_job)
         {
             call_interrupt_handler(&r4300->cp0, 11);
@@ -616,6 +623,11 @@ void gen_interrupt(struct r4300_core* r4300)
             savestates_save();
             return;
         }
+
+        if (rewind_get_job() == rewind_job_capture)
+        {
+            rewind_run_job();
+        }
     }
 }
 
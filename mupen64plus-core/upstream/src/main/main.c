@@ -72,6 +72,7 @@
 #if defined(PROFILE)
 #include "profile.h"
 #endif
+#include "rewind.h"
 #include "rom.h"
 #include "savestates.h"
 #include "screenshot.h"
@@ -310,6 +311,9 @@ int main_set_core_defaults(void)
     ConfigSetDefaultBool(g_CoreConfig, "RandomizeInterrupt", 1, "Randomize PI/SI Interrupt Timing");
     ConfigSetDefaultInt(g_CoreConfig, "SiDmaDuration", -1, "Duration of SI DMA (-1: use per game settings)");
     ConfigSetDefaultString(g_CoreConfig, "GbCameraVideoCaptureBackend1", DEFAULT_VIDEO_CAPTURE_BACKEND, "Gameboy Camera Video Capture backend");
+    ConfigSetDefaultInt(g_CoreConfig, "RewindBufferSize", 0, "Memory in megabytes used to record rewind history, including two full snapshots. 0 disables rewinding");
+    ConfigSetDefaultInt(g_CoreConfig, "RewindInterval", 10, "Number of frames between rewind snapshots");
+    ConfigSetDefaultString(g_CoreConfig, "SaveStateCodec", "deflate", "Compression of save states: deflate, deflate-fast, rle or none. All of them can be loaded regardless of this setting");
 
     /* handle upgrades */
     if (bUpgrade)
@@ -556,6 +560,9 @@ m64p_error main_core_state_query(m64p_core_param param, int *rval)
         case M64CORE_INPUT_GAMESHARK:
             *rval = event_gameshark_active();
             break;
+        case M64CORE_REWIND:
+            *rval = rewind_is_active();
+            break;
         // these are only used for callbacks; they cannot be queried or set
         case M64CORE_STATE_LOADCOMPLETE:
         case M64CORE_STATE_SAVECOMPLETE:
@@ -651,6 +658,11 @@ m64p_error main_core_state_set(m64p_core_param param, int val)
                 return M64ERR_INVALID_STATE;
             event_set_gameshark(val);
             return M64ERR_SUCCESS;
+        case M64CORE_REWIND:
+            if (!g_EmulatorRunning)
+                return M64ERR_INVALID_STATE;
+            rewind_set_active(val);
+            return M64ERR_SUCCESS;
         // these are only used for callbacks; they cannot be queried or set
         case M64CORE_STATE_LOADCOMPLETE:
         case M64CORE_STATE_SAVECOMPLETE:
@@ -903,6 +915,8 @@ void new_vi(void)
 
     gs_apply_cheats(&g_cheat_ctx);
 
+    rewind_new_frame();
+
     apply_speed_limiter();
     main_check_inputs();
 
@@ -1303,6 +1317,7 @@ m64p_error main_run(void)
 
     /* set some other core parameters based on the config file values */
     savestates_set_autoinc_slot(ConfigGetParamBool(g_CoreConfig, "AutoStateSlotIncrement"));
+    savestates_set_codec(ConfigGetParamString(g_CoreConfig, "SaveStateCodec"));
     savestates_select_slot(ConfigGetParamInt(g_CoreConfig, "CurrentStateSlot"));
     no_compiled_jump = ConfigGetParamBool(g_CoreConfig, "NoCompiledJump");
     randomize_interrupt = ConfigGetParamBool(g_CoreConfig, "RandomizeInterrupt");
@@ -1598,10 +1613,16 @@ m64p_error main_run(void)
     g_EmulatorRunning = 1;
     StateChanged(M64CORE_EMU_STATE, M64EMU_RUNNING);
 
+    rewind_init((size_t)ConfigGetParamInt(g_CoreConfig, "RewindBufferSize") * 1024 * 1024,
+                ConfigGetParamInt(g_CoreConfig, "RewindInterval"));
+
     poweron_device(&g_dev);
     pif_bootrom_hle_execute(&g_dev.r4300);
     run_device(&g_dev);
 
+    rewind_deinit();
+    savestates_flush_slots();
+
     /* now begin to shut down */
 #ifdef WITH_LIRC
     lircStop();
@@ -0,0 +1,410 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   Mupen64plus - rewind.c                                                *
+ *   Mupen64Plus homepage: https://mupen64plus.org/                        *
+ *   Copyright (C) 2012 Mupen64plus development team                       *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.          *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+/* Rewind history.
+ *
+ * The latest snapshot is kept uncompressed. Every older snapshot is stored as the XOR of
+ * itself with the snapshot that followed it, so stepping back is just XOR'ing the newest
+ * delta into the latest snapshot. Consecutive snapshots only differ in a small part of
+ * RDRAM, so deltas are dominated by runs of zero words which are encoded as
+ * (zero run, literal run) pairs. That is much cheaper than deflate and about as
+ * effective on this kind of data. */
+
+#include <SDL.h>
+#include <stdint.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include "api/callbacks.h"
+#include "api/m64p_types.h"
+#include "main/main.h"
+#include "rewind.h"
+#include "savestates.h"
+
+enum { REWIND_MAX_ENTRIES = 4096 };
+
+/* Delta encoding works on blocks so that the output buffer stays small */
+enum { REWIND_BLOCK_WORDS = 16384 };
+
+/* A literal run is only ended by at least this many zero words, so that a block never
+ * encodes to more than its size plus two headers */
+enum { REWIND_MIN_ZERO_RUN = 4 };
+
+enum { REWIND_STATE_WORDS = SAVESTATE_M64P_SIZE / sizeof(uint32_t) };
+
+struct rewind_entry {
+    uint8_t *data;
+    size_t size;
+};
+
+static struct rewind_entry l_entries[REWIND_MAX_ENTRIES];
+static unsigned int l_first = 0;
+static unsigned int l_count = 0;
+static size_t l_used = 0;
+static size_t l_budget = 0;
+
+static uint32_t *l_current = NULL;  /* latest snapshot */
+static uint32_t *l_scratch = NULL;  /* new snapshot, or copy of l_current while loading */
+static int l_have_current = 0;
+static int l_current_loaded = 0;
+
+/* Encode output, a block grows by at most a leading and a trailing header */
+static uint32_t l_block_out[REWIND_BLOCK_WORDS + 4];
+static uint8_t *l_delta = NULL;
+static size_t l_delta_capacity = 0;
+
+static unsigned int l_interval = 0;
+static unsigned int l_frames = 0;
+static rewind_job l_job = rewind_job_nothing;
+static volatile int l_active = 0;
+
+/* Statistics for the session summary */
+static uint64_t l_capture_ticks = 0;
+static uint64_t l_capture_max_ticks = 0;
+static uint64_t l_delta_bytes = 0;
+static unsigned int l_captures = 0;
+static unsigned int l_total_frames = 0;
+
+static void rewind_free_entries(void)
+{
+    while (l_count > 0)
+    {
+        free(l_entries[l_first].data);
+        l_first = (l_first + 1) % REWIND_MAX_ENTRIES;
+        l_count--;
+    }
+    l_first = 0;
+    l_used = 0;
+}
+
+/* XORs next into current, leaving next in current and the delta encoded in l_delta.
+ * Returns the encoded size. */
+static size_t rewind_encode(uint32_t *current, const uint32_t *next, size_t words)
+{
+    size_t out_size = 0;
+    size_t block;
+
+    for (block = 0; block < words; block += REWIND_BLOCK_WORDS)
+    {
+        size_t end = (block + REWIND_BLOCK_WORDS < words) ? block + REWIND_BLOCK_WORDS : words;
+        size_t i = block;
+        size_t out = 0;
+
+        while (i < end)
+        {
+            size_t zeros = 0;
+            size_t literals = 0;
+            size_t header = out;
+
+            while (i < end && current[i] == next[i])
+            {
+                ++zeros;
+                ++i;
+            }
+
+            out += 2;
+            while (i < end)
+            {
+                size_t run = 0;
+                while (i + run < end && run < REWIND_MIN_ZERO_RUN && current[i + run] == next[i + run])
+                    ++run;
+
+                if (run == REWIND_MIN_ZERO_RUN || (run > 0 && i + run == end))
+                    break;
+
+                /* Short zero runs are cheaper as literals */
+                run = (run == 0) ? 1 : run;
+                while (run-- > 0)
+                {
+                    l_block_out[out++] = current[i] ^ next[i];
+                    current[i] = next[i];
+                    ++literals;
+                    ++i;
+                }
+            }
+
+            l_block_out[header] = (uint32_t)zeros;
+            l_block_out[header + 1] = (uint32_t)literals;
+        }
+
+        if (out_size + out * sizeof(uint32_t) > l_delta_capacity)
+        {
+            size_t capacity = (l_delta_capacity == 0) ? sizeof(l_block_out) : l_delta_capacity;
+            uint8_t *delta;
+
+            while (capacity < out_size + out * sizeof(uint32_t))
+                capacity *= 2;
+
+            delta = realloc(l_delta, capacity);
+            if (delta == NULL)
+                return 0;
+
+            l_delta = delta;
+            l_delta_capacity = capacity;
+        }
+
+        memcpy(l_delta + out_size, l_block_out, out * sizeof(uint32_t));
+        out_size += out * sizeof(uint32_t);
+    }
+
+    return out_size;
+}
+
+/* XORs an encoded delta into current */
+static void rewind_decode(uint32_t *current, const uint8_t *delta, size_t size)
+{
+    const uint8_t *end = delta + size;
+    size_t i = 0;
+
+    while (delta < end)
+    {
+        uint32_t header[2];
+        uint32_t literal;
+        uint32_t n;
+
+        memcpy(header, delta, sizeof(header));
+        delta += sizeof(header);
+
+        i += header[0];
+        for (n = 0; n < header[1]; ++n)
+        {
+            memcpy(&literal, delta, sizeof(literal));
+            delta += sizeof(literal);
+            current[i++] ^= literal;
+        }
+    }
+}
+
+static void rewind_push(uint8_t *data, size_t size)
+{
+    size_t fixed = 2 * (size_t)SAVESTATE_M64P_SIZE + l_delta_capacity;
+
+    /* Drop the oldest history to make room */
+    while (l_count > 0 && (l_count == REWIND_MAX_ENTRIES || fixed + l_used + size > l_budget))
+    {
+        l_used -= l_entries[l_first].size;
+        free(l_entries[l_first].data);
+        l_first = (l_first + 1) % REWIND_MAX_ENTRIES;
+        l_count--;
+    }
+
+    if (fixed + size > l_budget)
+    {
+        free(data);
+        return;
+    }
+
+    l_entries[(l_first + l_count) % REWIND_MAX_ENTRIES].data = data;
+    l_entries[(l_first + l_count) % REWIND_MAX_ENTRIES].size = size;
+    l_count++;
+    l_used += size;
+}
+
+static void rewind_capture(void)
+{
+    uint64_t start = SDL_GetPerformanceCounter();
+    uint64_t ticks;
+
+    savestates_save_m64p_buffer(&g_dev, (char *)l_scratch);
+
+    if (!l_have_current)
+    {
+        memcpy(l_current, l_scratch, SAVESTATE_M64P_SIZE);
+        l_have_current = 1;
+    }
+    else
+    {
+        size_t size = rewind_encode(l_current, l_scratch, REWIND_STATE_WORDS);
+        uint8_t *data = (size > 0) ? malloc(size) : NULL;
+
+        if (data == NULL)
+        {
+            /* l_current may be half updated, start over */
+            DebugMessage(M64MSG_WARNING, "Rewind: out of memory, clearing history");
+            rewind_free_entries();
+            memcpy(l_current, l_scratch, SAVESTATE_M64P_SIZE);
+        }
+        else
+        {
+            memcpy(data, l_delta, size);
+            rewind_push(data, size);
+            l_delta_bytes += size;
+        }
+    }
+
+    l_current_loaded = 0;
+
+    ticks = SDL_GetPerformanceCounter() - start;
+    l_capture_ticks += ticks;
+    if (ticks > l_capture_max_ticks)
+        l_capture_max_ticks = ticks;
+    l_captures++;
+}
+
+static void rewind_step(void)
+{
+    if (!l_have_current)
+        return;
+
+    if (l_current_loaded)
+    {
+        struct rewind_entry *entry;
+
+        if (l_count == 0)
+            return;
+
+        /* Go back one snapshot */
+        entry = &l_entries[(l_first + l_count - 1) % REWIND_MAX_ENTRIES];
+        rewind_decode(l_current, entry->data, entry->size);
+        l_used -= entry->size;
+        free(entry->data);
+        entry->data = NULL;
+        l_count--;
+    }
+
+    /* Loading may modify the buffer, keep l_current intact for the next step */
+    memcpy(l_scratch, l_current, SAVESTATE_M64P_SIZE);
+    if (!savestates_load_m64p_buffer(&g_dev, (unsigned char *)l_scratch, SAVESTATE_M64P_SIZE))
+    {
+        DebugMessage(M64MSG_WARNING, "Rewind: could not restore snapshot");
+        return;
+    }
+
+    l_current_loaded = 1;
+}
+
+void rewind_init(size_t budget, unsigned int interval)
+{
+    rewind_deinit();
+
+    if (budget == 0 || interval == 0)
+        return;
+
+    if (budget < 2 * (size_t)SAVESTATE_M64P_SIZE + sizeof(l_block_out))
+    {
+        DebugMessage(M64MSG_WARNING, "Rewind: buffer of %u bytes is too small, rewinding disabled", (unsigned int)budget);
+        return;
+    }
+
+    l_current = malloc(SAVESTATE_M64P_SIZE);
+    l_scratch = malloc(SAVESTATE_M64P_SIZE);
+    if (l_current == NULL || l_scratch == NULL)
+    {
+        DebugMessage(M64MSG_WARNING, "Rewind: insufficient memory, rewinding disabled");
+        rewind_deinit();
+        return;
+    }
+
+    l_budget = budget;
+    l_interval = interval;
+    DebugMessage(M64MSG_INFO, "Rewind: %u KB buffer, snapshot every %u frames", (unsigned int)(budget / 1024), interval);
+}
+
+void rewind_deinit(void)
+{
+    if (l_captures > 0)
+    {
+        double frequency = (double)SDL_GetPerformanceFrequency();
+
+        /* Snapshot cost, averaged per snapshot and amortized per emulated frame */
+        DebugMessage(M64MSG_INFO, "Rewind: %u snapshots, avg %.2f ms, max %.2f ms, %.3f ms/frame, avg delta %u KB",
+                     l_captures,
+                     l_capture_ticks * 1000.0 / frequency / l_captures,
+                     l_capture_max_ticks * 1000.0 / frequency,
+                     l_capture_ticks * 1000.0 / frequency / (l_total_frames > 0 ? l_total_frames : 1),
+                     (unsigned int)(l_delta_bytes / l_captures / 1024));
+    }
+
+    rewind_free_entries();
+
+    free(l_current);
+    free(l_scratch);
+    free(l_delta);
+    l_current = NULL;
+    l_scratch = NULL;
+    l_delta = NULL;
+    l_delta_capacity = 0;
+
+    l_have_current = 0;
+    l_current_loaded = 0;
+    l_budget = 0;
+    l_interval = 0;
+    l_frames = 0;
+    l_job = rewind_job_nothing;
+    l_active = 0;
+
+    l_capture_ticks = 0;
+    l_capture_max_ticks = 0;
+    l_delta_bytes = 0;
+    l_captures = 0;
+    l_total_frames = 0;
+}
+
+void rewind_new_frame(void)
+{
+    if (l_current == NULL)
+        return;
+
+    l_total_frames++;
+
+    if (l_active)
+    {
+        /* Step back at twice the speed history was recorded at */
+        if (++l_frames >= (l_interval + 1) / 2)
+        {
+            l_frames = 0;
+            l_job = rewind_job_step;
+        }
+    }
+    else if (++l_frames >= l_interval)
+    {
+        l_frames = 0;
+        l_job = rewind_job_capture;
+    }
+}
+
+rewind_job rewind_get_job(void)
+{
+    return l_job;
+}
+
+void rewind_run_job(void)
+{
+    rewind_job job = l_job;
+    l_job = rewind_job_nothing;
+
+    switch (job)
+    {
+        case rewind_job_capture: rewind_capture(); break;
+        case rewind_job_step: rewind_step(); break;
+        default: break;
+    }
+}
+
+void rewind_set_active(int active)
+{
+    l_active = active;
+}
+
+int rewind_is_active(void)
+{
+    return l_active;
+}
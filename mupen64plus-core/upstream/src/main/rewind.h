@@ -0,0 +1,53 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   Mupen64plus - rewind.h                                                *
+ *   Mupen64Plus homepage: https://mupen64plus.org/                        *
+ *   Copyright (C) 2012 Mupen64plus development team                       *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.          *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+#ifndef __REWIND_H__
+#define __REWIND_H__
+
+#include <stddef.h>
+
+typedef enum _rewind_job
+{
+    rewind_job_nothing,
+    rewind_job_capture,
+    rewind_job_step
+} rewind_job;
+
+/* Starts recording history. budget is the total memory in bytes the rewind buffer may use,
+ * including the two full snapshots it keeps. interval is the number of frames between
+ * snapshots. Recording stays disabled if the budget is too small. */
+void rewind_init(size_t budget, unsigned int interval);
+void rewind_deinit(void);
+
+/* Called on every vertical interrupt, schedules the next capture or rewind step */
+void rewind_new_frame(void);
+
+rewind_job rewind_get_job(void);
+
+/* Performs the scheduled job, must be called when the machine state is consistent */
+void rewind_run_job(void);
+
+/* While active, the emulator steps back through history instead of recording it.
+ * May be called from any thread. */
+void rewind_set_active(int active);
+int rewind_is_active(void);
+
+#endif /* __REWIND_H__ */
@@ -67,6 +67,22 @@ static char *fname = NULL;
 static unsigned int slot = 0;
 static int autoinc_save_slot = 0;
 
+/* m64p savestates are always gzip streams, so any codec can be read back by gzread.
+ * Codecs only choose how much work zlib puts into compressing them. */
+struct savestate_codec {
+    const char *name;
+    const char *mode;
+};
+
+static const struct savestate_codec savestate_codecs[] = {
+    { "deflate",      "wb"   },  /* zlib default level */
+    { "none",         "wb0"  },  /* stored blocks */
+    { "deflate-fast", "wb1"  },  /* fastest deflate level */
+    { "rle",          "wb1R" }   /* run-length matches only, cheapest on sparse memory */
+};
+
+static const char *savestate_write_mode = "wb";
+
 static SDL_mutex *savestates_lock;
 
 struct savestate_work {
@@ -76,6 +92,27 @@ struct savestate_work {
     struct work_struct work;
 };
 
+/* Slot savestates are held in memory so that saving and loading a slot doesn't wait for
+ * storage. Slot files are written by a background thread, pending writes are finished when
+ * emulation stops. Only the selected slot and slots still waiting to be written are kept. */
+enum { SAVESTATE_SLOTS = 10 };
+
+struct savestate_slot {
+    char *filepath;        /* slot file the state belongs to */
+    char *data;            /* latest state, NULL if the slot isn't held in memory */
+    char *spare;           /* buffer recycled for the next save */
+    const char *flushing;  /* buffer being written to the slot file */
+    int dirty;             /* data hasn't been written to the slot file yet */
+};
+
+static struct savestate_slot slots[SAVESTATE_SLOTS];
+static SDL_mutex *slots_lock;
+static SDL_cond *slots_cond;
+static SDL_Thread *slots_thread;
+static int slots_quit = 0;
+
+static void savestates_trim_slots(void);
+
 /* Returns the malloc'd full path of the currently selected savestate. */
 static char *savestates_generate_path(savestates_type type)
 {
@@ -118,6 +155,12 @@ void savestates_select_slot(unsigned int s)
     if(s>9||s==slot)
         return;
     slot = s;
+    if (slots_lock != NULL)
+    {
+        SDL_LockMutex(slots_lock);
+        savestates_trim_slots();
+        SDL_UnlockMutex(slots_lock);
+    }
     ConfigSetParameter(g_CoreConfig, "CurrentStateSlot", M64TYPE_INT, &s);
     StateChanged(M64CORE_SAVESTATE_SLOT, slot);
 
@@ -140,9 +183,32 @@ void savestates_inc_slot(void)
 {
     if(++slot>9)
         slot = 0;
+    if (slots_lock != NULL)
+    {
+        SDL_LockMutex(slots_lock);
+        savestates_trim_slots();
+        SDL_UnlockMutex(slots_lock);
+    }
     StateChanged(M64CORE_SAVESTATE_SLOT, slot);
 }
 
+void savestates_set_codec(const char *name)
+{
+    size_t i;
+
+    for (i = 0; i < sizeof(savestate_codecs) / sizeof(savestate_codecs[0]); i++)
+    {
+        if (name != NULL && strcmp(name, savestate_codecs[i].name) == 0)
+        {
+            savestate_write_mode = savestate_codecs[i].mode;
+            return;
+        }
+    }
+
+    DebugMessage(M64MSG_WARNING, "Unknown savestate codec '%s', using deflate", name != NULL ? name : "");
+    savestate_write_mode = savestate_codecs[0].mode;
+}
+
 savestates_job savestates_get_job(void)
 {
     return job;
@@ -182,126 +248,16 @@ static void savestates_clear_job(void)
 #define PUTDATA(buff, type, value) \
     do { type x = value; PUTARRAY(&x, buff, type, 1); } while(0)
 
-static int savestates_load_m64p(struct device* dev, char *filepath)
+/* Restores the machine state from the sections of an m64p savestate. */
+static void savestates_load_m64p_state(struct device* dev, unsigned int version, unsigned char *curr,
+                                       char *queue, unsigned char *additionalData, unsigned char *data_0001_0200)
 {
-    unsigned char header[44];
-    gzFile f;
-    unsigned int version;
     int i;
     uint32_t FCR31;
-
-    size_t savestateSize;
-    unsigned char *savestateData, *curr;
-    char queue[1024];
-    unsigned char additionalData[4];
-    unsigned char data_0001_0200[4096]; // 4k for extra state from v1.2
     uint64_t flashram_status;
 
     uint32_t* cp0_regs = r4300_cp0_regs(&dev->r4300.cp0);
 
-    SDL_LockMutex(savestates_lock);
-
-    f = gzopen(filepath, "rb");
-    if(f==NULL)
-    {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not open state file: %s", filepath);
-        SDL_UnlockMutex(savestates_lock);
-        return 0;
-    }
-
-    /* Read and check Mupen64Plus magic number. */
-    if (gzread(f, header, 44) != 44)
-    {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not read header from state file %s", filepath);
-        gzclose(f);
-        SDL_UnlockMutex(savestates_lock);
-        return 0;
-    }
-    curr = header;
-
-    if(strncmp((char *)curr, savestate_magic, 8)!=0)
-    {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State file: %s is not a valid Mupen64plus savestate.", filepath);
-        gzclose(f);
-        SDL_UnlockMutex(savestates_lock);
-        return 0;
-    }
-    curr += 8;
-
-    version = *curr++;
-    version = (version << 8) | *curr++;
-    version = (version << 8) | *curr++;
-    version = (version << 8) | *curr++;
-    if((version >> 16) != (savestate_latest_version >> 16))
-    {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State version (%08x) isn't compatible. Please update Mupen64Plus.", version);
-        gzclose(f);
-        SDL_UnlockMutex(savestates_lock);
-        return 0;
-    }
-
-    if(memcmp((char *)curr, ROM_SETTINGS.MD5, 32))
-    {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State ROM MD5 does not match current ROM.");
-        gzclose(f);
-        SDL_UnlockMutex(savestates_lock);
-        return 0;
-    }
-    curr += 32;
-
-    /* Read the rest of the savestate */
-    savestateSize = 16788244;
-    savestateData = curr = (unsigned char *)malloc(savestateSize);
-    if (savestateData == NULL)
-    {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Insufficient memory to load state.");
-        gzclose(f);
-        SDL_UnlockMutex(savestates_lock);
-        return 0;
-    }
-    if (version == 0x00010000) /* original savestate version */
-    {
-        if (gzread(f, savestateData, savestateSize) != (int)savestateSize ||
-            (gzread(f, queue, sizeof(queue)) % 4) != 0)
-        {
-            main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not read Mupen64Plus savestate 1.0 data from %s", filepath);
-            free(savestateData);
-            gzclose(f);
-            SDL_UnlockMutex(savestates_lock);
-            return 0;
-        }
-    }
-    else if (version == 0x00010100) // saves entire eventqueue plus 4-byte using_tlb flags
-    {
-        if (gzread(f, savestateData, savestateSize) != (int)savestateSize ||
-            gzread(f, queue, sizeof(queue)) != sizeof(queue) ||
-            gzread(f, additionalData, sizeof(additionalData)) != sizeof(additionalData))
-        {
-            main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not read Mupen64Plus savestate 1.1 data from %s", filepath);
-            free(savestateData);
-            gzclose(f);
-            SDL_UnlockMutex(savestates_lock);
-            return 0;
-        }
-    }
-    else // version >= 0x00010200  saves entire eventqueue, 4-byte using_tlb flags and extra state
-    {
-        if (gzread(f, savestateData, savestateSize) != (int)savestateSize ||
-            gzread(f, queue, sizeof(queue)) != sizeof(queue) ||
-            gzread(f, additionalData, sizeof(additionalData)) != sizeof(additionalData) ||
-            gzread(f, data_0001_0200, sizeof(data_0001_0200)) != sizeof(data_0001_0200))
-        {
-            main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not read Mupen64Plus savestate 1.2 data from %s", filepath);
-            free(savestateData);
-            gzclose(f);
-            SDL_UnlockMutex(savestates_lock);
-            return 0;
-        }
-    }
-
-    gzclose(f);
-    SDL_UnlockMutex(savestates_lock);
-
     // Parse savestate
     dev->rdram.regs[0][RDRAM_CONFIG_REG]       = GETDATA(curr, uint32_t);
     dev->rdram.regs[0][RDRAM_DEVICE_ID_REG]    = GETDATA(curr, uint32_t);
@@ -902,12 +858,155 @@ static int savestates_load_m64p(struct device* dev, char *filepath)
     dev->r4300.cp0.interrupt_unsafe_state = 0;
 
     *r4300_cp0_last_addr(&dev->r4300.cp0) = *r4300_pc(&dev->r4300);
+}
+
+static int savestates_load_m64p(struct device* dev, char *filepath)
+{
+    unsigned char header[44];
+    gzFile f;
+    unsigned int version;
+
+    size_t savestateSize;
+    unsigned char *savestateData, *curr;
+    char queue[1024];
+    unsigned char additionalData[4];
+    unsigned char data_0001_0200[4096]; // 4k for extra state from v1.2
+
+    SDL_LockMutex(savestates_lock);
+
+    f = gzopen(filepath, "rb");
+    if(f==NULL)
+    {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not open state file: %s", filepath);
+        SDL_UnlockMutex(savestates_lock);
+        return 0;
+    }
+
+    /* Read and check Mupen64Plus magic number. */
+    if (gzread(f, header, 44) != 44)
+    {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not read header from state file %s", filepath);
+        gzclose(f);
+        SDL_UnlockMutex(savestates_lock);
+        return 0;
+    }
+    curr = header;
+
+    if(strncmp((char *)curr, savestate_magic, 8)!=0)
+    {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State file: %s is not a valid Mupen64plus savestate.", filepath);
+        gzclose(f);
+        SDL_UnlockMutex(savestates_lock);
+        return 0;
+    }
+    curr += 8;
+
+    version = *curr++;
+    version = (version << 8) | *curr++;
+    version = (version << 8) | *curr++;
+    version = (version << 8) | *curr++;
+    if((version >> 16) != (savestate_latest_version >> 16))
+    {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State version (%08x) isn't compatible. Please update Mupen64Plus.", version);
+        gzclose(f);
+        SDL_UnlockMutex(savestates_lock);
+        return 0;
+    }
+
+    if(memcmp((char *)curr, ROM_SETTINGS.MD5, 32))
+    {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State ROM MD5 does not match current ROM.");
+        gzclose(f);
+        SDL_UnlockMutex(savestates_lock);
+        return 0;
+    }
+    curr += 32;
+
+    /* Read the rest of the savestate */
+    savestateSize = SAVESTATE_M64P_DATA_SIZE;
+    savestateData = curr = (unsigned char *)malloc(savestateSize);
+    if (savestateData == NULL)
+    {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Insufficient memory to load state.");
+        gzclose(f);
+        SDL_UnlockMutex(savestates_lock);
+        return 0;
+    }
+    if (version == 0x00010000) /* original savestate version */
+    {
+        if (gzread(f, savestateData, savestateSize) != (int)savestateSize ||
+            (gzread(f, queue, sizeof(queue)) % 4) != 0)
+        {
+            main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not read Mupen64Plus savestate 1.0 data from %s", filepath);
+            free(savestateData);
+            gzclose(f);
+            SDL_UnlockMutex(savestates_lock);
+            return 0;
+        }
+    }
+    else if (version == 0x00010100) // saves entire eventqueue plus 4-byte using_tlb flags
+    {
+        if (gzread(f, savestateData, savestateSize) != (int)savestateSize ||
+            gzread(f, queue, sizeof(queue)) != sizeof(queue) ||
+            gzread(f, additionalData, sizeof(additionalData)) != sizeof(additionalData))
+        {
+            main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not read Mupen64Plus savestate 1.1 data from %s", filepath);
+            free(savestateData);
+            gzclose(f);
+            SDL_UnlockMutex(savestates_lock);
+            return 0;
+        }
+    }
+    else // version >= 0x00010200  saves entire eventqueue, 4-byte using_tlb flags and extra state
+    {
+        if (gzread(f, savestateData, savestateSize) != (int)savestateSize ||
+            gzread(f, queue, sizeof(queue)) != sizeof(queue) ||
+            gzread(f, additionalData, sizeof(additionalData)) != sizeof(additionalData) ||
+            gzread(f, data_0001_0200, sizeof(data_0001_0200)) != sizeof(data_0001_0200))
+        {
+            main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not read Mupen64Plus savestate 1.2 data from %s", filepath);
+            free(savestateData);
+            gzclose(f);
+            SDL_UnlockMutex(savestates_lock);
+            return 0;
+        }
+    }
+
+    gzclose(f);
+    SDL_UnlockMutex(savestates_lock);
+
+    savestates_load_m64p_state(dev, version, savestateData, queue, additionalData, data_0001_0200);
 
     free(savestateData);
     main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State loaded from: %s", namefrompath(filepath));
     return 1;
 }
 
+int savestates_load_m64p_buffer(struct device* dev, unsigned char *data, size_t size)
+{
+    unsigned char *curr = data;
+    unsigned int version;
+
+    /* Only the current layout is produced in memory */
+    if (size != SAVESTATE_M64P_SIZE || strncmp((char *)curr, savestate_magic, 8) != 0)
+        return 0;
+    curr += 8;
+
+    version = *curr++;
+    version = (version << 8) | *curr++;
+    version = (version << 8) | *curr++;
+    version = (version << 8) | *curr++;
+    if (version != (unsigned int)savestate_latest_version || memcmp((char *)curr, ROM_SETTINGS.MD5, 32) != 0)
+        return 0;
+    curr += 32;
+
+    savestates_load_m64p_state(dev, version, curr,
+                               (char *)(curr + SAVESTATE_M64P_DATA_SIZE),
+                               curr + SAVESTATE_M64P_DATA_SIZE + 1024,
+                               curr + SAVESTATE_M64P_DATA_SIZE + 1024 + 4);
+    return 1;
+}
+
 static int savestates_load_pj64(struct device* dev,
                                 char *filepath, void *handle,
                                 int (*read_func)(void *, void *, size_t))
@@ -1348,6 +1447,276 @@ static savestates_type savestates_detect_type(char *filepath)
     }
 }
 
+/* Writes an m64p savestate to a GZIP file. Returns 1 on success. */
+static int savestates_write_m64p(const char *filepath, const char *data, size_t size)
+{
+    gzFile f;
+    int gzres;
+
+    f = gzopen(filepath, savestate_write_mode);
+
+    if (f==NULL)
+    {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not open state file: %s", filepath);
+        return 0;
+    }
+
+    gzres = gzwrite(f, data, size);
+    if ((gzres < 0) || ((size_t)gzres != size))
+    {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not write data to state file: %s", filepath);
+        gzclose(f);
+        return 0;
+    }
+
+    gzclose(f);
+    return 1;
+}
+
+/* Keeps a buffer no longer used by a slot for its next save, must hold slots_lock. */
+static void savestates_recycle_slot_buffer(struct savestate_slot *s, char *data)
+{
+    if (s->spare == NULL)
+        s->spare = data;
+    else
+        free(data);
+}
+
+/* Frees the buffers of slots that are neither selected nor waiting to be written,
+ * must hold slots_lock. */
+static void savestates_trim_slots(void)
+{
+    unsigned int i;
+
+    for (i = 0; i < SAVESTATE_SLOTS; i++)
+    {
+        struct savestate_slot *s = &slots[i];
+
+        if (i == slot || s->dirty || s->flushing != NULL)
+            continue;
+
+        free(s->data);
+        free(s->spare);
+        s->data = NULL;
+        s->spare = NULL;
+    }
+}
+
+static int savestates_slot_thread(void *unused)
+{
+    unsigned int i;
+
+    SDL_LockMutex(slots_lock);
+    for (;;)
+    {
+        struct savestate_slot *s;
+        char *filepath;
+        const char *data;
+
+        for (i = 0; i < SAVESTATE_SLOTS && !slots[i].dirty; i++)
+            ;
+
+        if (i == SAVESTATE_SLOTS)
+        {
+            if (slots_quit)
+                break;
+            SDL_CondWait(slots_cond, slots_lock);
+            continue;
+        }
+
+        /* Write without holding the lock, the emulation thread saves into other buffers */
+        s = &slots[i];
+        filepath = (s->filepath != NULL) ? strdup(s->filepath) : NULL;
+        data = s->data;
+        s->flushing = data;
+        s->dirty = 0;
+        SDL_UnlockMutex(slots_lock);
+
+        if (filepath != NULL)
+            savestates_write_m64p(filepath, data, SAVESTATE_M64P_SIZE);
+        free(filepath);
+
+        SDL_LockMutex(slots_lock);
+        s->flushing = NULL;
+        if (data != s->data)
+            savestates_recycle_slot_buffer(s, (char *)data);
+        savestates_trim_slots();
+        SDL_CondBroadcast(slots_cond);
+    }
+    SDL_UnlockMutex(slots_lock);
+
+    return 0;
+}
+
+static int savestates_save_m64p_slot(const struct device* dev, char *filepath)
+{
+    struct savestate_slot *s = &slots[slot];
+    char *data;
+    char *old;
+
+    SDL_LockMutex(slots_lock);
+    data = s->spare;
+    s->spare = NULL;
+    SDL_UnlockMutex(slots_lock);
+
+    if (data == NULL)
+    {
+        data = malloc(SAVESTATE_M64P_SIZE);
+        if (data == NULL)
+        {
+            main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Insufficient memory to save state.");
+            return 0;
+        }
+    }
+
+    savestates_save_m64p_buffer(dev, data);
+
+    SDL_LockMutex(slots_lock);
+    old = s->data;
+    s->data = data;
+    s->dirty = 1;
+    if (s->filepath == NULL || strcmp(s->filepath, filepath) != 0)
+    {
+        free(s->filepath);
+        s->filepath = strdup(filepath);
+    }
+    if (old != NULL && old != s->flushing)
+        savestates_recycle_slot_buffer(s, old);
+
+    if (slots_thread == NULL)
+    {
+        /* No background thread, write the file right away */
+        if (s->filepath != NULL)
+            savestates_write_m64p(s->filepath, data, SAVESTATE_M64P_SIZE);
+        s->dirty = 0;
+    }
+    SDL_CondBroadcast(slots_cond);
+    SDL_UnlockMutex(slots_lock);
+
+    main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Saved state to slot %d", slot);
+
+    if(autoinc_save_slot)
+        savestates_inc_slot();
+
+    return 1;
+}
+
+/* Restores a slot held in memory, must hold slots_lock. */
+static int savestates_restore_slot(struct device* dev, struct savestate_slot *s)
+{
+#if defined(M64P_BIG_ENDIAN)
+    /* Restoring swaps the buffer in place, keep the slot intact for the next load */
+    int ret;
+    char *copy = s->spare != NULL ? s->spare : malloc(SAVESTATE_M64P_SIZE);
+    if (copy == NULL)
+        return 0;
+    s->spare = NULL;
+    memcpy(copy, s->data, SAVESTATE_M64P_SIZE);
+    ret = savestates_load_m64p_buffer(dev, (unsigned char *)copy, SAVESTATE_M64P_SIZE);
+    savestates_recycle_slot_buffer(s, copy);
+    return ret;
+#else
+    return savestates_load_m64p_buffer(dev, (unsigned char *)s->data, SAVESTATE_M64P_SIZE);
+#endif
+}
+
+/* Loads the selected slot if it is held in memory. Returns 1 if it was. */
+static int savestates_load_m64p_slot(struct device* dev, const char *filepath)
+{
+    struct savestate_slot *s = &slots[slot];
+    int ret = 0;
+
+    SDL_LockMutex(slots_lock);
+    if (s->data != NULL && s->filepath != NULL && strcmp(s->filepath, filepath) == 0)
+        ret = savestates_restore_slot(dev, s);
+    SDL_UnlockMutex(slots_lock);
+
+    if (ret)
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State loaded from slot %d", slot);
+    return ret;
+}
+
+/* Loads a slot file into memory so that the next loads of the slot don't read it again.
+ * Returns 0 if the file isn't a current version savestate for this ROM. */
+static int savestates_load_m64p_slot_file(struct device* dev, const char *filepath)
+{
+    struct savestate_slot *s = &slots[slot];
+    gzFile f;
+    char *data;
+    int ret;
+
+    SDL_LockMutex(slots_lock);
+    if (s->dirty || s->flushing != NULL)
+    {
+        /* The slot holds a state of another ROM that is still being written */
+        SDL_UnlockMutex(slots_lock);
+        return 0;
+    }
+    data = s->spare;
+    s->spare = NULL;
+    SDL_UnlockMutex(slots_lock);
+
+    if (data == NULL && (data = malloc(SAVESTATE_M64P_SIZE)) == NULL)
+        return 0;
+
+    f = gzopen(filepath, "rb");
+    ret = f != NULL && gzread(f, data, SAVESTATE_M64P_SIZE) == SAVESTATE_M64P_SIZE;
+    if (f != NULL)
+        gzclose(f);
+
+    SDL_LockMutex(slots_lock);
+    free(s->data);
+    s->data = NULL;
+    if (ret)
+    {
+        free(s->filepath);
+        s->filepath = strdup(filepath);
+        s->data = data;
+        ret = s->filepath != NULL && savestates_restore_slot(dev, s);
+        if (!ret)
+        {
+            s->data = NULL;
+            savestates_recycle_slot_buffer(s, data);
+        }
+    }
+    else
+    {
+        savestates_recycle_slot_buffer(s, data);
+    }
+    SDL_UnlockMutex(slots_lock);
+
+    if (ret)
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "State loaded from: %s", namefrompath(filepath));
+    return ret;
+}
+
+void savestates_flush_slots(void)
+{
+    unsigned int i;
+
+    if (slots_lock == NULL)
+        return;
+
+    SDL_LockMutex(slots_lock);
+    for (;;)
+    {
+        for (i = 0; i < SAVESTATE_SLOTS && !slots[i].dirty && slots[i].flushing == NULL; i++)
+            ;
+        if (i == SAVESTATE_SLOTS)
+            break;
+        SDL_CondWait(slots_cond, slots_lock);
+    }
+
+    for (i = 0; i < SAVESTATE_SLOTS; i++)
+    {
+        free(slots[i].filepath);
+        free(slots[i].data);
+        free(slots[i].spare);
+        memset(&slots[i], 0, sizeof(slots[i]));
+    }
+    SDL_UnlockMutex(slots_lock);
+}
+
 int savestates_load(void)
 {
     FILE *fPtr = NULL;
@@ -1359,6 +1728,16 @@ int savestates_load(void)
         // try M64P type first
         type = savestates_type_m64p;
         filepath = savestates_generate_path(type);
+
+        // the slot may be held in memory and not written yet
+        if (filepath != NULL && savestates_load_m64p_slot(&g_dev, filepath))
+        {
+            free(filepath);
+            StateChanged(M64CORE_STATE_LOADCOMPLETE, 1);
+            savestates_clear_job();
+            return 1;
+        }
+
         fPtr = fopen(filepath, "rb"); // can I open this?
         if (fPtr == NULL)
         {
@@ -1411,7 +1790,11 @@ int savestates_load(void)
 
         switch (type)
         {
-            case savestates_type_m64p: ret = savestates_load_m64p(dev, filepath); break;
+            case savestates_type_m64p:
+                // older versions are only parsed from the file
+                ret = (fname == NULL && savestates_load_m64p_slot_file(dev, filepath)) ||
+                      savestates_load_m64p(dev, filepath);
+                break;
             case savestates_type_pj64_zip: ret = savestates_load_pj64_zip(dev, filepath); break;
             case savestates_type_pj64_unc: ret = savestates_load_pj64_unc(dev, filepath); break;
             default: ret = 0; break;
@@ -1430,33 +1813,14 @@ int savestates_load(void)
 
 static void savestates_save_m64p_work(struct work_struct *work)
 {
-    gzFile f;
-    int gzres;
     struct savestate_work *save = container_of(work, struct savestate_work, work);
 
     SDL_LockMutex(savestates_lock);
 
     // Write the state to a GZIP file
-    f = gzopen(save->filepath, "wb");
-
-    if (f==NULL)
-    {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not open state file: %s", save->filepath);
-        free(save->data);
-        return;
-    }
+    if (savestates_write_m64p(save->filepath, save->data, save->size))
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Saved state to: %s", namefrompath(save->filepath));
 
-    gzres = gzwrite(f, save->data, save->size);
-    if ((gzres < 0) || ((size_t)gzres != save->size))
-    {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Could not write data to state file: %s", save->filepath);
-        gzclose(f);
-        free(save->data);
-        return;
-    }
-
-    gzclose(f);
-    main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Saved state to: %s", namefrompath(save->filepath));
     free(save->data);
     free(save->filepath);
     free(save);
@@ -1464,7 +1828,7 @@ static void savestates_save_m64p_work(struct work_struct *work)
     SDL_UnlockMutex(savestates_lock);
 }
 
-static int savestates_save_m64p(const struct device* dev, char *filepath)
+void savestates_save_m64p_buffer(const struct device* dev, char *data)
 {
     unsigned char outbuf[4];
     int i;
@@ -1472,38 +1836,13 @@ static int savestates_save_m64p(const struct device* dev, char *filepath)
 
     char queue[1024];
 
-    struct savestate_work *save;
-    char *curr;
+    char *curr = data;
 
     /* OK to cast away const qualifier */
     const uint32_t* cp0_regs = r4300_cp0_regs((struct cp0*)&dev->r4300.cp0);
 
-    save = malloc(sizeof(*save));
-    if (!save) {
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Insufficient memory to save state.");
-        return 0;
-    }
-
-    save->filepath = strdup(filepath);
-
-    if(autoinc_save_slot)
-        savestates_inc_slot();
-
     save_eventqueue_infos(&dev->r4300.cp0, queue);
 
-    // Allocate memory for the save state data
-    save->size = 16788288 + sizeof(queue) + 4 + 4096;
-    save->data = curr = malloc(save->size);
-    if (save->data == NULL)
-    {
-        free(save->filepath);
-        free(save);
-        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Insufficient memory to save state.");
-        return 0;
-    }
-
-    memset(save->data, 0, save->size);
-
     // Write the save state data to memory
     PUTARRAY(savestate_magic, curr, unsigned char, 8);
 
@@ -1802,8 +2141,12 @@ static int savestates_save_m64p(const struct device* dev, char *filepath)
         : NULL;
 
     if (disk_id == NULL) {
+        size_t dd_size = (3+DD_ASIC_REGS_COUNT)*sizeof(uint32_t) + 0x100 + 0x40 + 2*sizeof(int64_t) + 2*sizeof(unsigned int);
+
         PUTDATA(curr, uint32_t, 0);
-        curr += (3+DD_ASIC_REGS_COUNT)*sizeof(uint32_t) + 0x100 + 0x40 + 2*sizeof(int64_t) + 2*sizeof(unsigned int);
+        /* The buffer may be reused, so clear what isn't written */
+        memset(curr, 0, dd_size);
+        curr += dd_size;
     }
     else {
         PUTDATA(curr, uint32_t, *disk_id);
@@ -1840,6 +2183,37 @@ static int savestates_save_m64p(const struct device* dev, char *filepath)
         PUTDATA(curr, unsigned int, dev->dd.bm_track_offset);
     }
 
+    memset(curr, 0, data + SAVESTATE_M64P_SIZE - curr);
+}
+
+static int savestates_save_m64p(const struct device* dev, char *filepath)
+{
+    struct savestate_work *save;
+
+    save = malloc(sizeof(*save));
+    if (!save) {
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Insufficient memory to save state.");
+        return 0;
+    }
+
+    save->filepath = strdup(filepath);
+
+    if(autoinc_save_slot)
+        savestates_inc_slot();
+
+    // Allocate memory for the save state data
+    save->size = SAVESTATE_M64P_SIZE;
+    save->data = malloc(save->size);
+    if (save->data == NULL)
+    {
+        free(save->filepath);
+        free(save);
+        main_message(M64MSG_STATUS, OSD_BOTTOM_LEFT, "Insufficient memory to save state.");
+        return 0;
+    }
+
+    savestates_save_m64p_buffer(dev, save->data);
+
     init_work(&save->work, savestates_save_m64p_work);
     queue_work(&save->work);
 
@@ -2100,7 +2474,9 @@ int savestates_save(void)
     {
         switch (type)
         {
-            case savestates_type_m64p: ret = savestates_save_m64p(dev, filepath); break;
+            case savestates_type_m64p:
+                ret = (fname == NULL) ? savestates_save_m64p_slot(dev, filepath) : savestates_save_m64p(dev, filepath);
+                break;
             case savestates_type_pj64_zip: ret = savestates_save_pj64_zip(dev, filepath); break;
             case savestates_type_pj64_unc: ret = savestates_save_pj64_unc(dev, filepath); break;
             default: ret = 0; break;
@@ -2122,10 +2498,41 @@ void savestates_init(void)
         DebugMessage(M64MSG_ERROR, "Could not create savestates list lock");
         return;
     }
+
+    slots_lock = SDL_CreateMutex();
+    slots_cond = SDL_CreateCond();
+    if (!slots_lock || !slots_cond) {
+        DebugMessage(M64MSG_ERROR, "Could not create savestates slots lock");
+        return;
+    }
+
+    slots_quit = 0;
+#if SDL_VERSION_ATLEAST(2,0,0)
+    slots_thread = SDL_CreateThread(savestates_slot_thread, "m64pslots", NULL);
+#else
+    slots_thread = SDL_CreateThread(savestates_slot_thread, NULL);
+#endif
+    if (!slots_thread)
+        DebugMessage(M64MSG_WARNING, "Could not create savestates slots thread, slots will be written immediately");
 }
 
 void savestates_deinit(void)
 {
+    if (slots_thread != NULL)
+    {
+        SDL_LockMutex(slots_lock);
+        slots_quit = 1;
+        SDL_CondBroadcast(slots_cond);
+        SDL_UnlockMutex(slots_lock);
+        SDL_WaitThread(slots_thread, NULL);
+        slots_thread = NULL;
+    }
+    savestates_flush_slots();
+    SDL_DestroyCond(slots_cond);
+    SDL_DestroyMutex(slots_lock);
+    slots_cond = NULL;
+    slots_lock = NULL;
+
     SDL_DestroyMutex(savestates_lock);
     savestates_clear_job();
 }
@@ -25,6 +25,15 @@
 #ifndef __SAVESTAVES_H__
 #define __SAVESTAVES_H__
 
+#include <stddef.h>
+
+struct device;
+
+/* Size of an m64p savestate: 44 bytes of header, the machine state, the event queue,
+ * the using_tlb flag and the extra state added in 1.2 */
+enum { SAVESTATE_M64P_DATA_SIZE = 16788244 };
+enum { SAVESTATE_M64P_SIZE = 44 + SAVESTATE_M64P_DATA_SIZE + 1024 + 4 + 4096 };
+
 typedef enum _savestates_job
 {
     savestates_job_nothing,
@@ -48,9 +57,24 @@ void savestates_deinit(void);
 int savestates_load(void);
 int savestates_save(void);
 
+/* Waits until the slots held in memory are written to their files, then releases them */
+void savestates_flush_slots(void);
+
+/* Serializes the machine state into a SAVESTATE_M64P_SIZE bytes buffer, in the same
+ * layout as an uncompressed m64p savestate file */
+void savestates_save_m64p_buffer(const struct device* dev, char *data);
+
+/* Restores the machine state from a buffer filled by savestates_save_m64p_buffer.
+ * The buffer may be modified. Returns 1 on success, 0 if the buffer isn't a valid
+ * savestate for the current ROM */
+int savestates_load_m64p_buffer(struct device* dev, unsigned char *data, size_t size);
+
 void savestates_select_slot(unsigned int s);
 unsigned int savestates_get_slot(void);
 void savestates_set_autoinc_slot(int b);
+
+/* Selects how m64p savestates are compressed: "deflate", "none", "deflate-fast" or "rle" */
+void savestates_set_codec(const char *name);
 void savestates_inc_slot(void);
 
 #endif /* __SAVESTAVES_H__ */
@@ -0,0 +1,213 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   Mupen64plus - savestate_codec_bench.c                                 *
+ *   Mupen64Plus homepage: https://mupen64plus.org/                        *
+ *   Copyright (C) 2012 Mupen64plus development team                       *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.          *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+/* Measures save and load latency and file size of every savestate codec the core
+ * supports (see savestate_codecs in src/main/savestates.c).
+ *
+ * To compile, go to the root of the Mupen64Plus source code and type:
+ *
+ *   gcc -O2 -o savestate_codec_bench tools/savestate_codec_bench.c -lz
+ *
+ * Pass one or more existing m64p savestates (.st files) to measure real RDRAM images.
+ * Without arguments, a synthetic image is used: an 8MB RDRAM that is mostly empty with
+ * code, tables and framebuffers in it, which roughly matches what games leave in memory.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+#include <zlib.h>
+
+struct codec {
+    const char *name;
+    const char *mode;
+};
+
+/* Must match savestate_codecs in src/main/savestates.c */
+static const struct codec codecs[] = {
+    { "deflate",      "wb"   },
+    { "none",         "wb0"  },
+    { "deflate-fast", "wb1"  },
+    { "rle",          "wb1R" }
+};
+
+#define RUNS 3
+#define STATE_SIZE 16793412
+
+static double now_ms(void)
+{
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return ts.tv_sec * 1000.0 + ts.tv_nsec / 1000000.0;
+}
+
+static unsigned char *read_state(const char *path, size_t *size)
+{
+    gzFile f = gzopen(path, "rb");
+    unsigned char *data = malloc(STATE_SIZE);
+    int read;
+
+    if (f == NULL || data == NULL)
+    {
+        if (f != NULL)
+            gzclose(f);
+        free(data);
+        return NULL;
+    }
+
+    read = gzread(f, data, STATE_SIZE);
+    gzclose(f);
+    if (read <= 0)
+    {
+        free(data);
+        return NULL;
+    }
+
+    *size = (size_t)read;
+    return data;
+}
+
+static unsigned char *synthetic_state(size_t *size)
+{
+    unsigned char *data = calloc(1, STATE_SIZE);
+    unsigned int seed = 12345;
+    size_t i;
+
+    if (data == NULL)
+        return NULL;
+
+    /* code and data segments: repetitive instruction words with varying operands */
+    for (i = 0x1000; i < 0x180000; i += 4)
+    {
+        seed = seed * 1103515245 + 12345;
+        data[i] = 0x24 + (seed >> 28);
+        data[i + 1] = (unsigned char)(seed >> 20);
+        data[i + 2] = (unsigned char)(i >> 8);
+        data[i + 3] = (unsigned char)(seed >> 12);
+    }
+
+    /* heap with noisy game objects */
+    for (i = 0x200000; i < 0x280000; i++)
+    {
+        seed = seed * 1103515245 + 12345;
+        data[i] = (seed >> 24) & ((i & 0x40) ? 0xff : 0x0f);
+    }
+
+    /* two 320x240 16 bits framebuffers with smooth gradients */
+    for (i = 0; i < 2 * 320 * 240 * 2; i++)
+        data[0x300000 + i] = (unsigned char)((i / 2) % 320 / 5 + (i / 1280));
+
+    *size = STATE_SIZE;
+    return data;
+}
+
+static void bench(const char *label, const unsigned char *state, size_t size)
+{
+    const char *tmp = "savestate_codec_bench.tmp";
+    unsigned char *check = malloc(size);
+    size_t c;
+    int run;
+
+    printf("%s (%zu bytes)\n", label, size);
+    printf("  %-13s %10s %10s %12s %7s\n", "codec", "save ms", "load ms", "size", "ratio");
+
+    for (c = 0; c < sizeof(codecs) / sizeof(codecs[0]); c++)
+    {
+        double save_ms = 0, load_ms = 0;
+        long file_size = 0;
+
+        for (run = 0; run < RUNS; run++)
+        {
+            double start;
+            gzFile f;
+            FILE *raw;
+
+            start = now_ms();
+            f = gzopen(tmp, codecs[c].mode);
+            if (f == NULL || gzwrite(f, state, (unsigned int)size) != (int)size)
+            {
+                fprintf(stderr, "Could not write %s\n", tmp);
+                exit(1);
+            }
+            gzclose(f);
+            save_ms += now_ms() - start;
+
+            start = now_ms();
+            f = gzopen(tmp, "rb");
+            if (f == NULL || gzread(f, check, (unsigned int)size) != (int)size)
+            {
+                fprintf(stderr, "Could not read %s\n", tmp);
+                exit(1);
+            }
+            gzclose(f);
+            load_ms += now_ms() - start;
+
+            if (memcmp(check, state, size) != 0)
+            {
+                fprintf(stderr, "Codec %s did not round trip\n", codecs[c].name);
+                exit(1);
+            }
+
+            raw = fopen(tmp, "rb");
+            fseek(raw, 0, SEEK_END);
+            file_size = ftell(raw);
+            fclose(raw);
+        }
+
+        printf("  %-13s %10.1f %10.1f %12ld %6.1f%%\n", codecs[c].name,
+               save_ms / RUNS, load_ms / RUNS, file_size, 100.0 * file_size / size);
+    }
+
+    remove(tmp);
+    free(check);
+}
+
+int main(int argc, char *argv[])
+{
+    unsigned char *state;
+    size_t size;
+    int i;
+
+    if (argc < 2)
+    {
+        state = synthetic_state(&size);
+        if (state == NULL)
+            return 1;
+        bench("synthetic", state, size);
+        free(state);
+        return 0;
+    }
+
+    for (i = 1; i < argc; i++)
+    {
+        state = read_state(argv[i], &size);
+        if (state == NULL)
+        {
+            fprintf(stderr, "Could not read savestate %s\n", argv[i]);
+            return 1;
+        }
+        bench(argv[i], state, size);
+        free(state);
+    }
+
+    return 0;
+}
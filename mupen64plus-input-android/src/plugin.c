@@ -21,6 +21,7 @@
 
 #include <string.h>
 #include <stdio.h>
+#include <stdint.h>
 #include <jni.h>
 #include <android/log.h>
 
@@ -65,10 +66,18 @@ static const unsigned short BUTTON_BITS[] =
         0x8000   // Reserved2
 };
 
+// Rumble state shared with RumbleScheduler.java, layout must match the Java reader. The
+// emulation thread only updates these counters, Java polls them and drives the vibrators.
+struct RumbleBlock
+{
+    int32_t active[4];          // last value written to the rumble pak, 0 or 1
+    int32_t writes[4];          // number of rumble pak writes so far
+    int32_t activeWrites[4];    // number of those writes that turned rumble on
+};
+
 // Internal variables
 static JavaVM* _javaVM;
-static jclass _jniClass = NULL;
-static jmethodID _jniRumble = NULL;
+static struct RumbleBlock _rumbleBlock;
 static int _androidPluggedState[4];
 static int _androidPakType[4];
 static unsigned char _androidButtonState[4][16];
@@ -129,13 +138,12 @@ JNIEXPORT void JNICALL Java_paulscode_android_mupen64plusae_jni_NativeInput_init
     // Discard stale pointer
     _controllerInfos = NULL;
 
-    _jniClass = (jclass)(*env)->NewGlobalRef(env, cls);
+    memset(&_rumbleBlock, 0, sizeof(_rumbleBlock));
+}
 
-    _jniRumble = (*env)->GetStaticMethodID(env, cls, "rumble", "(IZ)V");
-    if (!_jniRumble)
-    {
-        DebugMessage(M64MSG_WARNING, "Couldn't locate Java callbacks, check that they're named and typed correctly");
-    }
+JNIEXPORT jobject JNICALL Java_paulscode_android_mupen64plusae_jni_NativeInput_getRumbleBuffer(JNIEnv* env, jclass cls)
+{
+    return (*env)->NewDirectByteBuffer(env, &_rumbleBlock, sizeof(_rumbleBlock));
 }
 
 JNIEXPORT void JNICALL Java_paulscode_android_mupen64plusae_jni_NativeInput_setConfig(JNIEnv* env, jclass jcls, jint controllerNum, jboolean plugged,
@@ -172,16 +180,18 @@ JNIEXPORT void JNICALL Java_paulscode_android_mupen64plusae_jni_NativeInput_setS
 }
 
 //*****************************************************************************
-// JNI imported function definitions
+// Rumble
 //*****************************************************************************
 
-JNIEXPORT void JNICALL JNI_Rumble(int controllerNum, int active)
+static void SetRumble(int controllerNum, int active)
 {
-    JNIEnv *env;
-    if ((*_javaVM)->GetEnv(_javaVM, (void**) &env, JNI_VERSION_1_6) != JNI_OK)
-        return;
-    jboolean a = active == 0 ? JNI_FALSE : JNI_TRUE;
-    (*env)->CallStaticVoidMethod(env, _jniClass, _jniRumble, controllerNum, a);
+    // No call into Java here, this runs on the emulation thread and games may toggle the motor
+    // every frame to simulate weaker rumble. The counters let Java work out the duty cycle.
+    active = active == 0 ? 0 : 1;
+    __atomic_store_n(&_rumbleBlock.active[controllerNum], active, __ATOMIC_RELAXED);
+    if (active)
+        __atomic_add_fetch(&_rumbleBlock.activeWrites[controllerNum], 1, __ATOMIC_RELAXED);
+    __atomic_add_fetch(&_rumbleBlock.writes[controllerNum], 1, __ATOMIC_RELEASE);
 }
 
 //*****************************************************************************
@@ -320,7 +330,7 @@ EXPORT void CALL ControllerCommand(int controllerNum, unsigned char* command)
     case RD_WRITEPAK:
         if (dwAddress == PAK_IO_RUMBLE)
         {
-            JNI_Rumble(controllerNum, data[0]);
+            SetRumble(controllerNum, data[0]);
         }
         data[32] = DataCRC(data, 32);
         break;
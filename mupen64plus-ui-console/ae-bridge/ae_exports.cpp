@@ -47,6 +47,11 @@ static void *handleAEI;      // libae-imports.so
 static void *handleCore;     // libmupen64plus-core.so
 static void *handleFront;    // libmupen64plus-ui-console.so
 
+// Plugins opened ahead of emuStart, kept open so ui-console's own dlopen finds them resident
+#define MAX_PRELOADED 8
+static void *handlePreloaded[MAX_PRELOADED];
+static int numPreloaded = 0;
+
 // Function types
 typedef jint        (*pJNI_OnLoad)      (JavaVM* vm, void* reserved);
 typedef int         (*pAeiInit)         (JNIEnv* env, jclass cls);
@@ -121,6 +126,7 @@ extern jint JNI_OnLoad(JavaVM* vm, void* reserved)
 extern "C" DECLSPEC void SDLCALL Java_paulscode_android_mupen64plusae_jni_NativeExports_loadLibraries(JNIEnv* env, jclass cls, jstring jlibPath, jint jandroidSDK)
 {
     LOGI("Loading native libraries");
+    vidExtTraceBegin(TRACE_LOAD_LIBRARIES);
 
     // Clear stale error messages
     dlerror();
@@ -163,6 +169,8 @@ extern "C" DECLSPEC void SDLCALL Java_paulscode_android_mupen64plusae_jni_Native
 		jclass nativeImports = env->FindClass("paulscode/android/mupen64plusae/jni/NativeImports");
 		aeiInit(env, nativeImports);
 	}
+
+    vidExtTraceEnd(TRACE_LOAD_LIBRARIES);
 }
 
 extern "C" DECLSPEC void SDLCALL Java_paulscode_android_mupen64plusae_jni_NativeExports_unloadLibraries(JNIEnv* env, jclass cls)
@@ -189,10 +197,43 @@ extern "C" DECLSPEC void SDLCALL Java_paulscode_android_mupen64plusae_jni_Native
     handleFront    = NULL;
     handleCore     = NULL;
     handleAEI      = NULL;
+
+    // Close preloaded plugins
+    while (numPreloaded > 0)
+    {
+        numPreloaded--;
+        unloadLibrary(handlePreloaded[numPreloaded], "preloaded plugin");
+        handlePreloaded[numPreloaded] = NULL;
+    }
+}
+
+extern "C" DECLSPEC jboolean SDLCALL Java_paulscode_android_mupen64plusae_jni_NativeExports_preloadLibrary(JNIEnv* env, jclass cls, jstring jlibPath)
+{
+    if (numPreloaded >= MAX_PRELOADED)
+        return JNI_FALSE;
+
+    // Clear stale error messages
+    dlerror();
+
+    // Relocate and page in the library now, the plugin is only started by ui-console at emuStart
+    const char *libPath = env->GetStringUTFChars(jlibPath, 0);
+    void* handle = dlopen(libPath, RTLD_NOW);
+    if (!handle)
+        LOGE("Failed to preload %s", libPath);
+    checkLibraryError(libPath);
+    env->ReleaseStringUTFChars(jlibPath, libPath);
+
+    if (!handle)
+        return JNI_FALSE;
+
+    handlePreloaded[numPreloaded++] = handle;
+    return JNI_TRUE;
 }
 
 extern "C" DECLSPEC jint SDLCALL Java_paulscode_android_mupen64plusae_jni_NativeExports_emuStart(JNIEnv* env, jclass cls, jstring juserDataPath, jstring juserCachePath, jobjectArray jargv)
 {
+    vidExtTraceMark(TRACE_EMU_START);
+
     // Define some environment variables needed by rice video plugin
     const char *userDataPath = env->GetStringUTFChars(juserDataPath, 0);
     const char *userCachePath = env->GetStringUTFChars(juserCachePath, 0);
@@ -304,6 +345,18 @@ extern "C" DECLSPEC void Java_paulscode_android_mupen64plusae_jni_NativeExports_
     if (coreDoCommand) coreDoCommand(M64CMD_CORE_STATE_SET, M64CORE_INPUT_GAMESHARK, &p);
 }
 
+extern "C" DECLSPEC void Java_paulscode_android_mupen64plusae_jni_NativeExports_emuRewindStart(JNIEnv* env, jclass cls)
+{
+    int active = 1;
+    if (coreDoCommand) coreDoCommand(M64CMD_CORE_STATE_SET, M64CORE_REWIND, &active);
+}
+
+extern "C" DECLSPEC void Java_paulscode_android_mupen64plusae_jni_NativeExports_emuRewindStop(JNIEnv* env, jclass cls)
+{
+    int active = 0;
+    if (coreDoCommand) coreDoCommand(M64CMD_CORE_STATE_SET, M64CORE_REWIND, &active);
+}
+
 extern "C" DECLSPEC jint Java_paulscode_android_mupen64plusae_jni_NativeExports_emuGetState(JNIEnv* env, jclass cls)
 {
     int state = 0;
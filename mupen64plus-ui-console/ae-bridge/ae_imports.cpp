@@ -33,7 +33,6 @@ static jclass mActivityClass;
 
 // Imported java method references
 static jmethodID midStateCallback;
-static jmethodID midFPSCounter;
 
 /*******************************************************************************
  Functions called automatically by JNI framework
@@ -56,8 +55,7 @@ extern DECLSPEC void Android_JNI_InitImports(JNIEnv* env, jclass cls)
 
     mActivityClass = (jclass) env->NewGlobalRef(cls);
     midStateCallback = env->GetStaticMethodID(mActivityClass, "stateCallback", "(II)V");
-    midFPSCounter = env->GetStaticMethodID(mActivityClass, "FPSCounter", "(I)V");
-    if (!midStateCallback || !midFPSCounter)
+    if (!midStateCallback)
     {
         LOGE("Couldn't locate Java callbacks, check that they're named and typed correctly");
     }
@@ -99,13 +97,3 @@ extern DECLSPEC void Android_JNI_StateCallback(void* context, m64p_core_param pa
         return;
     env->CallStaticVoidMethod(mActivityClass, midStateCallback, (int) paramChanged, newValue);
 }
-
-extern DECLSPEC void Android_JNI_FPSCounter(int fps)
-{
-    JNIEnv *env;
-    if (mJavaVM->GetEnv((void**) &env, JNI_VERSION_1_6) != JNI_OK) {
-        mJavaVM->AttachCurrentThread(&env, NULL);
-        return;
-    }
-    env->CallStaticVoidMethod(mActivityClass, midFPSCounter, fps);
-}
\ No newline at end of file
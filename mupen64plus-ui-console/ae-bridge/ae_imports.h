@@ -53,8 +53,6 @@ extern void         Android_JNI_DestroyImports(JNIEnv* env);
 // Called by mupen64plus-ui-console
 extern void         Android_JNI_StateCallback(void* context, m64p_core_param paramChanged, int newValue);
 
-// Called by ae-vidext
-extern void         Android_JNI_FPSCounter(int fps);
 #ifdef __cplusplus
 }
 #endif
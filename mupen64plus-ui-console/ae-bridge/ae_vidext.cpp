@@ -23,6 +23,59 @@ bool new_surface = false;
 int FPSRecalcPeriod = 0;
 uint32_t frameCount = 0;
 int64_t oldTime;
+int64_t lastSwapTime = 0;
+int64_t maxSwapInterval = 0;
+uint32_t coreFrameCount = 0;
+uint32_t totalFrameCount = 0;
+
+// Frame statistics shared with Java through a direct ByteBuffer, see FrameStats.java.
+// The emulation thread is the only writer. Readers use the sequence number to detect
+// torn reads: it is odd while an update is in progress.
+struct FrameStatsBlock
+{
+    int32_t sequence;
+    int32_t fps;
+    int32_t coreFps;
+    int32_t frameTimeAvgUs;
+    int32_t frameTimeMaxUs;
+    int32_t frameCount;
+};
+static FrameStatsBlock frameStats = {};
+
+// Performance telemetry shared with Java through a direct ByteBuffer, see PerformanceTelemetry.java.
+// Histograms count intervals in log-linear buckets of 64us units: the first 16 buckets are linear,
+// after that every power of two is split in 8 sub-buckets, which keeps the relative error of
+// each bucket under 12.5%. Counters are cumulative for the emulation session.
+#define TELEMETRY_UNIT_SHIFT 6
+#define TELEMETRY_HISTOGRAM_BUCKETS 96
+#define TELEMETRY_SLOW_FRAME_US 16667
+#define TELEMETRY_VERY_SLOW_FRAME_US 33333
+
+struct TelemetryBlock
+{
+    int32_t frameTimeHistogram[TELEMETRY_HISTOGRAM_BUCKETS];
+    int32_t coreFrameTimeHistogram[TELEMETRY_HISTOGRAM_BUCKETS];
+    int32_t framesOver16ms;
+    int32_t framesOver33ms;
+    int32_t audioQueueDepth;
+    int32_t audioQueueDepthMin;
+    int32_t audioQueueDepthMax;
+    int32_t audioQueueEmptyCount;
+};
+static TelemetryBlock telemetry = {};
+
+// Start and end of each startup phase shared with Java through a direct ByteBuffer, see
+// StartupTrace.java. Times are CLOCK_BOOTTIME nanoseconds, the clock behind
+// SystemClock.elapsedRealtimeNanos(), so they line up with the Java phases of the trace.
+// Zero means the phase has not happened in this process.
+struct StartupTraceBlock
+{
+    int64_t begin[TRACE_PHASE_COUNT];
+    int64_t end[TRACE_PHASE_COUNT];
+};
+static StartupTraceBlock startupTrace = {};
+static int64_t lastCoreFrameTime = 0;
+static int (*audioQueueDepthFunc)(void) = nullptr;
 int vsync = 1;
 int oldVsync = 1;
 bool isPaused = false;
@@ -69,11 +122,23 @@ size_t FindIndex( const EGLint a[], size_t size, int value )
     return ( index == (size/sizeof(EGLint)) ? -1 : index );
 }
 
+static void resetTelemetry()
+{
+	memset(&telemetry, 0, sizeof(telemetry));
+	telemetry.audioQueueDepth = -1;
+	telemetry.audioQueueDepthMin = -1;
+	telemetry.audioQueueDepthMax = -1;
+	lastCoreFrameTime = 0;
+}
+
 extern DECLSPEC m64p_error VidExtFuncInit()
 {
 	std::unique_lock<std::mutex> guard(nativeWindowAccess);
 
     frameCount = 0;
+    lastSwapTime = 0;
+    maxSwapInterval = 0;
+    resetTelemetry();
     surface = EGL_NO_SURFACE;
     context = EGL_NO_CONTEXT;
     display = EGL_NO_DISPLAY;
@@ -326,6 +391,74 @@ extern DECLSPEC m64p_error VidExtFuncGLGetAttr(m64p_GLattr Attr, int *pValue)
     return M64ERR_SUCCESS;
 }
 
+static int64_t monotonicTimeNs()
+{
+	struct timespec spec;
+	clock_gettime(CLOCK_MONOTONIC, &spec);
+	return (int64_t) spec.tv_sec * 1000000000LL + spec.tv_nsec;
+}
+
+static int64_t bootTimeNs()
+{
+	struct timespec spec;
+	clock_gettime(CLOCK_BOOTTIME, &spec);
+	return (int64_t) spec.tv_sec * 1000000000LL + spec.tv_nsec;
+}
+
+static int telemetryBucket(int64_t intervalUs)
+{
+	uint32_t units = (uint32_t) (intervalUs >> TELEMETRY_UNIT_SHIFT);
+	int magnitude = units < 16 ? 0 : (31 - __builtin_clz(units)) - 3;
+	int bucket = magnitude * 8 + (int) (units >> magnitude);
+
+	return bucket < TELEMETRY_HISTOGRAM_BUCKETS ? bucket : TELEMETRY_HISTOGRAM_BUCKETS - 1;
+}
+
+static void recordFrameTelemetry(int64_t intervalUs)
+{
+	__atomic_add_fetch(&telemetry.frameTimeHistogram[telemetryBucket(intervalUs)], 1, __ATOMIC_RELAXED);
+
+	if (intervalUs > TELEMETRY_SLOW_FRAME_US) {
+		__atomic_add_fetch(&telemetry.framesOver16ms, 1, __ATOMIC_RELAXED);
+	}
+	if (intervalUs > TELEMETRY_VERY_SLOW_FRAME_US) {
+		__atomic_add_fetch(&telemetry.framesOver33ms, 1, __ATOMIC_RELAXED);
+	}
+
+	if (audioQueueDepthFunc != nullptr) {
+		int depth = audioQueueDepthFunc();
+		if (depth >= 0) {
+			__atomic_store_n(&telemetry.audioQueueDepth, depth, __ATOMIC_RELAXED);
+			if (telemetry.audioQueueDepthMin < 0 || depth < telemetry.audioQueueDepthMin) {
+				__atomic_store_n(&telemetry.audioQueueDepthMin, depth, __ATOMIC_RELAXED);
+			}
+			if (depth > telemetry.audioQueueDepthMax) {
+				__atomic_store_n(&telemetry.audioQueueDepthMax, depth, __ATOMIC_RELAXED);
+			}
+			if (depth == 0) {
+				__atomic_add_fetch(&telemetry.audioQueueEmptyCount, 1, __ATOMIC_RELAXED);
+			}
+		}
+	}
+}
+
+static void publishFrameStats(int32_t fps, int32_t coreFps, int32_t frameTimeAvgUs, int32_t frameTimeMaxUs)
+{
+	int32_t sequence = frameStats.sequence;
+
+	// Odd sequence number tells readers an update is in progress
+	__atomic_store_n(&frameStats.sequence, sequence + 1, __ATOMIC_RELAXED);
+	__atomic_thread_fence(__ATOMIC_RELEASE);
+
+	__atomic_store_n(&frameStats.fps, fps, __ATOMIC_RELAXED);
+	__atomic_store_n(&frameStats.coreFps, coreFps, __ATOMIC_RELAXED);
+	__atomic_store_n(&frameStats.frameTimeAvgUs, frameTimeAvgUs, __ATOMIC_RELAXED);
+	__atomic_store_n(&frameStats.frameTimeMaxUs, frameTimeMaxUs, __ATOMIC_RELAXED);
+	__atomic_store_n(&frameStats.frameCount, (int32_t) totalFrameCount, __ATOMIC_RELAXED);
+
+	__atomic_store_n(&frameStats.sequence, sequence + 2, __ATOMIC_RELEASE);
+}
+
 extern DECLSPEC m64p_error VidExtFuncGLSwapBuf()
 {
 	std::unique_lock<std::mutex> guard(nativeWindowAccess);
@@ -366,19 +499,33 @@ extern DECLSPEC m64p_error VidExtFuncGLSwapBuf()
 
 			if (!isPaused) {
 				eglSwapBuffers(display, surface);
+				vidExtTraceMark(TRACE_FIRST_SWAP);
 			}
 		}
 	}
 
 	if (FPSRecalcPeriod > 0) {
+		int64_t currentTime = monotonicTimeNs();
+
+		if (lastSwapTime != 0 && !isPaused) {
+			int64_t interval = currentTime - lastSwapTime;
+			if (interval > maxSwapInterval) {
+				maxSwapInterval = interval;
+			}
+			recordFrameTelemetry(interval / 1000);
+		}
+		lastSwapTime = currentTime;
+
 		frameCount++;
+		totalFrameCount++;
 		if (frameCount >= FPSRecalcPeriod) {
-			struct timespec spec;
-			clock_gettime(CLOCK_MONOTONIC, &spec);
-			int64_t currentTime = (int64_t) spec.tv_sec * 1000000000LL + spec.tv_nsec;
-			float fFPS = ((float) frameCount / (float) (currentTime - oldTime)) * 1000000000.0f;
-			Android_JNI_FPSCounter(lround(fFPS));
+			int64_t elapsed = currentTime - oldTime;
+			float fFPS = ((float) frameCount / (float) elapsed) * 1000000000.0f;
+			float fCoreFPS = ((float) __atomic_exchange_n(&coreFrameCount, 0, __ATOMIC_RELAXED) / (float) elapsed) * 1000000000.0f;
+			publishFrameStats(lround(fFPS), lround(fCoreFPS), (int32_t) (elapsed / frameCount / 1000),
+				(int32_t) (maxSwapInterval / 1000));
 			frameCount = 0;
+			maxSwapInterval = 0;
 			oldTime = currentTime;
 		}
 	}
@@ -440,6 +587,9 @@ extern DECLSPEC m64p_error VidExtFuncQuit()
 
 	LOGI("VidExtFuncQuit");
 
+	// The audio plugin may be unloaded after this point
+	audioQueueDepthFunc = nullptr;
+
 	eglMakeCurrent(display, EGL_NO_SURFACE, EGL_NO_SURFACE, EGL_NO_CONTEXT);
 
 	if (surface != EGL_NO_SURFACE) {
@@ -475,6 +625,61 @@ extern "C" DECLSPEC void Java_paulscode_android_mupen64plusae_jni_NativeExports_
     FPSRecalcPeriod = recalc;
 }
 
+extern "C" DECLSPEC jobject Java_paulscode_android_mupen64plusae_jni_NativeExports_getFrameStatsBuffer(JNIEnv* env, jclass cls)
+{
+    return env->NewDirectByteBuffer(&frameStats, sizeof(frameStats));
+}
+
+extern "C" DECLSPEC jobject Java_paulscode_android_mupen64plusae_jni_NativeExports_getTelemetryBuffer(JNIEnv* env, jclass cls)
+{
+    return env->NewDirectByteBuffer(&telemetry, sizeof(telemetry));
+}
+
+extern DECLSPEC void vidExtCoreFrame(void)
+{
+    __atomic_add_fetch(&coreFrameCount, 1, __ATOMIC_RELAXED);
+    vidExtTraceMark(TRACE_FIRST_VI);
+
+    if (FPSRecalcPeriod > 0) {
+        int64_t currentTime = monotonicTimeNs();
+        if (lastCoreFrameTime != 0 && !isPaused) {
+            int64_t intervalUs = (currentTime - lastCoreFrameTime) / 1000;
+            __atomic_add_fetch(&telemetry.coreFrameTimeHistogram[telemetryBucket(intervalUs)], 1, __ATOMIC_RELAXED);
+        }
+        lastCoreFrameTime = currentTime;
+    }
+}
+
+extern "C" DECLSPEC jobject Java_paulscode_android_mupen64plusae_jni_NativeExports_getStartupTraceBuffer(JNIEnv* env, jclass cls)
+{
+    return env->NewDirectByteBuffer(&startupTrace, sizeof(startupTrace));
+}
+
+extern DECLSPEC void vidExtTraceBegin(int phase)
+{
+    __atomic_store_n(&startupTrace.begin[phase], bootTimeNs(), __ATOMIC_RELAXED);
+}
+
+extern DECLSPEC void vidExtTraceEnd(int phase)
+{
+    __atomic_store_n(&startupTrace.end[phase], bootTimeNs(), __ATOMIC_RELEASE);
+}
+
+extern DECLSPEC void vidExtTraceMark(int phase)
+{
+    // Only the first occurrence is of interest, later ones cost a single load
+    if (__atomic_load_n(&startupTrace.end[phase], __ATOMIC_RELAXED) == 0) {
+        int64_t now = bootTimeNs();
+        __atomic_store_n(&startupTrace.begin[phase], now, __ATOMIC_RELAXED);
+        __atomic_store_n(&startupTrace.end[phase], now, __ATOMIC_RELEASE);
+    }
+}
+
+extern DECLSPEC void vidExtSetAudioQueueDepthFunc(int (*func)(void))
+{
+    audioQueueDepthFunc = func;
+}
+
 extern DECLSPEC void vsyncEnabled(int enabled)
 {
     vsync = enabled;
@@ -487,5 +692,8 @@ extern DECLSPEC void pauseEmulator()
 
 extern DECLSPEC void resumeEmulator()
 {
+    // Don't count the time spent paused as a frame interval
+    lastSwapTime = 0;
+    lastCoreFrameTime = 0;
     isPaused = false;
 }
@@ -46,6 +46,26 @@ extern uint32_t VidExtFuncGLGetDefaultFramebuffer(void);
 extern void vsyncEnabled(int enabled);
 extern void pauseEmulator();
 extern void resumeEmulator();
+extern void vidExtCoreFrame(void);
+extern void vidExtSetAudioQueueDepthFunc(int (*func)(void));
+
+/* Phases of the game start path recorded for the startup trace, see StartupTrace.java */
+enum vidExtTracePhase
+{
+    TRACE_LOAD_LIBRARIES = 0,
+    TRACE_EMU_START,
+    TRACE_CORE_STARTUP,
+    TRACE_ROM_READ,
+    TRACE_ROM_OPEN,
+    TRACE_PLUGIN_LOAD,
+    TRACE_EXECUTE,
+    TRACE_FIRST_VI,
+    TRACE_FIRST_SWAP,
+    TRACE_PHASE_COUNT
+};
+extern void vidExtTraceBegin(int phase);
+extern void vidExtTraceEnd(int phase);
+extern void vidExtTraceMark(int phase);
 
 m64p_video_extension_functions vidExtFunctions = {12,
                                                   VidExtFuncInit,
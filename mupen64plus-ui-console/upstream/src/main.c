@@ -40,6 +40,7 @@
 #include "debugger.h"
 #include "m64p_types.h"
 #include "main.h"
+#include "osal_dynamiclib.h"
 #include "osal_preproc.h"
 #include "osal_files.h"
 #include "plugin.h"
@@ -140,6 +141,11 @@ void DebugCallback(void *Context, int level, const char *message)
 
 static void FrameCallback(unsigned int FrameIndex)
 {
+#ifdef ANDROID
+    // count core frames for the frame statistics block
+    vidExtCoreFrame();
+#endif
+
     // take a screenshot if we need to
     if (l_TestShotList != NULL)
     {
@@ -874,6 +880,10 @@ int main(int argc, char *argv[])
     if (ParseCommandLineInitial(argc, (const char **) argv) != 0)
         return 1;
 
+#ifdef ANDROID
+    vidExtTraceBegin(TRACE_CORE_STARTUP);
+#endif
+
     /* load the Mupen64Plus core library */
     if (AttachCoreLib(l_CoreLibPath) != M64ERR_SUCCESS)
         return 2;
@@ -915,6 +925,10 @@ int main(int argc, char *argv[])
         return 5;
     }
 
+#ifdef ANDROID
+    vidExtTraceEnd(TRACE_CORE_STARTUP);
+#endif
+
     /* Ensure that the core supports comparison feature if necessary */
     if (l_CoreCompareMode != 0 && !(g_CoreCapabilities & M64CAPS_CORE_COMPARE))
     {
@@ -936,6 +950,10 @@ int main(int argc, char *argv[])
     if (l_SaveOptions)
         SaveConfigurationOptions();
 
+#ifdef ANDROID
+    vidExtTraceBegin(TRACE_ROM_READ);
+#endif
+
     /* load ROM image */
     FILE *fPtr = fopen(l_ROMFilepath, "rb");
     if (fPtr == NULL)
@@ -971,6 +989,11 @@ int main(int argc, char *argv[])
     }
     fclose(fPtr);
 
+#ifdef ANDROID
+    vidExtTraceEnd(TRACE_ROM_READ);
+    vidExtTraceBegin(TRACE_ROM_OPEN);
+#endif
+
     /* Try to load the ROM image into the core */
     if ((*CoreDoCommand)(M64CMD_ROM_OPEN, (int) romlength, ROM_buffer) != M64ERR_SUCCESS)
     {
@@ -982,6 +1005,10 @@ int main(int argc, char *argv[])
     }
     free(ROM_buffer); /* the core copies the ROM image, so we can release this buffer immediately */
 
+#ifdef ANDROID
+    vidExtTraceEnd(TRACE_ROM_OPEN);
+#endif
+
     /* handle the cheat codes */
     CheatStart(l_CheatMode, l_CheatNumList);
     if (l_CheatMode == CHEAT_SHOW_LIST)
@@ -992,6 +1019,10 @@ int main(int argc, char *argv[])
         return 11;
     }
 
+#ifdef ANDROID
+    vidExtTraceBegin(TRACE_PLUGIN_LOAD);
+#endif
+
     /* search for and load plugins */
     rval = PluginSearchLoad(l_ConfigUI);
     if (rval != M64ERR_SUCCESS)
@@ -1015,6 +1046,24 @@ int main(int argc, char *argv[])
         }
     }
 
+#ifdef ANDROID
+    vidExtTraceEnd(TRACE_PLUGIN_LOAD);
+
+    /* let the video extension poll the audio plugin for telemetry, if it supports it */
+    for (i = 0; i < 4; i++)
+    {
+        if (g_PluginMap[i].type == M64PLUGIN_AUDIO && g_PluginMap[i].handle != NULL)
+            vidExtSetAudioQueueDepthFunc((int (*)(void)) osal_dynlib_getproc(g_PluginMap[i].handle, "GetAudioQueueDepth"));
+    }
+#endif
+
+#ifdef ANDROID
+    /* set up Frame Callback, Android always uses it for frame statistics */
+    if ((*CoreDoCommand)(M64CMD_SET_FRAME_CALLBACK, 0, FrameCallback) != M64ERR_SUCCESS)
+    {
+        DebugMessage(M64MSG_WARNING, "couldn't set frame callback, frame statistics and --testshots will not work.");
+    }
+#else
     /* set up Frame Callback if --testshots is enabled */
     if (l_TestShotList != NULL)
     {
@@ -1023,6 +1072,7 @@ int main(int argc, char *argv[])
             DebugMessage(M64MSG_WARNING, "couldn't set frame callback, --testshots will not work.");
         }
     }
+#endif
 
     /* set gb cart loader */
     if ((*CoreDoCommand)(M64CMD_SET_MEDIA_LOADER, sizeof(l_media_loader), &l_media_loader) != M64ERR_SUCCESS)
@@ -1062,6 +1112,9 @@ int main(int argc, char *argv[])
     }
 
     /* run the game */
+#ifdef ANDROID
+    vidExtTraceMark(TRACE_EXECUTE);
+#endif
     (*CoreDoCommand)(M64CMD_EXECUTE, 0, NULL);
 
     /* detach plugins from core and unload them */